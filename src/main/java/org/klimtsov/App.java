@@ -1,9 +1,11 @@
 package org.klimtsov;
 
 import org.klimtsov.console.ConsoleHelper;
-import org.klimtsov.dao.UserDao;
-import org.klimtsov.dao.UserDaoImpl;
+import org.klimtsov.analytics.UserCounters;
+import org.klimtsov.dao.UserFields;
 import org.klimtsov.service.UserService;
+import org.klimtsov.tracing.Span;
+import org.klimtsov.tracing.Tracing;
 import org.klimtsov.userservice.model.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,9 +19,11 @@ public class App {
 
     public static void main(String[] args) {
         logger.info("Запуск пользовательского сервиса");
+        AppConfig config = AppConfig.load();
         ConsoleHelper ch = new ConsoleHelper();
-        UserDao dao = new UserDaoImpl();
-        UserService userService = new UserService(dao);
+        Tracing.configure(config);
+        UserDaoStack stack = UserDaoStack.build(config);
+        UserService userService = new UserService(stack.getDao());
 
         mainLoop:
         while (true) {
@@ -35,6 +39,7 @@ public class App {
             String choice = ch.readLine("\nВыберите пункт: ");
             logger.debug("Пользователь выбрал пункт меню: {}", choice);
 
+            Span span = Tracing.start("App.menu", Span.KIND_SERVER).setAttribute("menu.choice", choice);
             try {
                 switch (choice) {
                     case "1" -> {
@@ -79,6 +84,7 @@ public class App {
                             break;
                         }
                         User u = maybe.get();
+                        UserFields expected = UserFields.of(u);
                         logger.debug("Текущие данные пользователя: {}", u);
 
                         System.out.println("Текущие данные: " + u);
@@ -102,7 +108,13 @@ public class App {
                             u.setAge(newAge);
                         }
 
-                        userService.updateUser(u);
+                        //Запись одним условным UPDATE: если за время ввода данные изменил кто-то другой,
+                        //они не перезаписываются.
+                        if (!userService.compareAndSetUser(id, expected, UserFields.of(u))) {
+                            logger.warn("Пользователь изменён или удалён во время редактирования: id={}", id);
+                            System.out.println("Данные пользователя изменились во время редактирования, обновление не выполнено. Повторите.");
+                            break;
+                        }
                         logger.info("Пользователь обновлен успешно: id={}", id);
                         System.out.println("Данные обновлены.");
                     }
@@ -128,13 +140,21 @@ public class App {
                     }
                 }
             } catch (Exception e) {
+                span.recordError(e);
                 logger.error("Ошибка при выполнении операции '{}': {}", choice, e.getMessage(), e);
                 System.out.println("Произошла ошибка: " + e.getMessage());
+            } finally {
+                span.close();
             }
         }
 
         logger.info("Завершение работы приложения");
-        HibernateUtil.shutdown();
+        UserCounters counters = stack.getCounters();
+        if (counters != null) {
+            logger.info("Пользователей: {}, по возрасту: {}", counters.getTotal(), counters.getAgeBrackets());
+        }
+        stack.close();
+        Tracing.shutdown();
         System.out.println("Сервис завершён.");
     }
 }
\ No newline at end of file
@@ -3,7 +3,11 @@ package org.klimtsov;
 import lombok.Getter;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
+import org.klimtsov.dao.UserDaoFactory;
+import org.klimtsov.dao.UserEmailConstraint;
+import org.klimtsov.dao.UserUpdatedAtBackfill;
 import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserOutboxEvent;
 
 public class HibernateUtil {
     @Getter
@@ -11,10 +15,16 @@ public class HibernateUtil {
 
     static {
         try {
-            sessionFactory = new Configuration()
+            Configuration configuration = new Configuration()
                     .configure("hibernate.cfg.xml")
                     .addAnnotatedClass(User.class)
-                    .buildSessionFactory();
+                    .addAnnotatedClass(UserOutboxEvent.class);
+            UserDaoFactory.configureConnections(configuration, AppConfig.load());
+            sessionFactory = configuration.buildSessionFactory();
+            //hbm2ddl=update молча пропускает uk_users_email при дублях: проверяем и создаём его явно.
+            new UserEmailConstraint(sessionFactory).ensure();
+            //hbm2ddl=update добавляет updated_at пустым в старых строках: заполняем, иначе их не видно в выборке изменений.
+            new UserUpdatedAtBackfill(sessionFactory).ensure();
         } catch (Exception e) {
             e.printStackTrace();
             throw new ExceptionInInitializerError("Initial SessionFactory creation failed" + e);
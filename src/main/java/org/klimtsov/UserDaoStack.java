@@ -0,0 +1,111 @@
+package org.klimtsov;
+
+import org.klimtsov.analytics.CountingUserDao;
+import org.klimtsov.analytics.UserCounterPersister;
+import org.klimtsov.analytics.UserCounterStore;
+import org.klimtsov.analytics.UserCounters;
+import org.klimtsov.audit.AuditLog;
+import org.klimtsov.audit.AuditingUserDao;
+import org.klimtsov.dao.CoalescingUserDao;
+import org.klimtsov.dao.ResilientUserDao;
+import org.klimtsov.dao.TracingUserDao;
+import org.klimtsov.dao.UserDao;
+import org.klimtsov.dao.UserDaoFactory;
+import org.klimtsov.dao.UserPartitioning;
+import org.klimtsov.service.AdmissionControlledUserDao;
+import org.klimtsov.service.AdmissionController;
+import org.klimtsov.tracing.Tracing;
+
+import java.time.Duration;
+
+//Хранилище и цепочка декораторов по настройкам: Tracing → Counting → Auditing → Admission → Resilient
+//→ Coalescing. Одна сборка для App и нагрузочного прогона, чтобы нагрузка шла через тот же стек.
+//Владеет ресурсами стека (журнал аудита, сохранение счётчиков, хранилище) и закрывает их в close().
+//Tracing настраивается до сборки и закрывается вызывающим.
+public class UserDaoStack implements AutoCloseable {
+    private final AppConfig config;
+    private final UserDao storage;
+    private final UserDao dao;
+    private final UserCounters counters;
+    private final UserCounterPersister counterPersister;
+    private final AuditLog auditLog;
+    private final AdmissionController admission;
+
+    private UserDaoStack(AppConfig config, UserDao storage, UserDao dao, UserCounters counters,
+                         UserCounterPersister counterPersister, AuditLog auditLog, AdmissionController admission) {
+        this.config = config;
+        this.storage = storage;
+        this.dao = dao;
+        this.counters = counters;
+        this.counterPersister = counterPersister;
+        this.auditLog = auditLog;
+        this.admission = admission;
+    }
+
+    public static UserDaoStack build(AppConfig config) {
+        UserDao storage = UserDaoFactory.create(config, HibernateUtil::getSessionFactory);
+        UserDao dao = Tracing.isEnabled() ? new TracingUserDao(storage) : storage;
+        UserCounters counters = null;
+        UserCounterPersister counterPersister = null;
+        if (config.getBoolean("counters.enabled", false)) {
+            counters = new UserCounters();
+            dao = new CountingUserDao(dao, counters);
+            if (UserDaoFactory.usesDatabase(config)) {
+                counterPersister = new UserCounterPersister(counters, new UserCounterStore(HibernateUtil.getSessionFactory()),
+                        Duration.ofSeconds(config.getLong("counters.persistIntervalSeconds", 60)));
+                counterPersister.start();
+            } else {
+                counters.reconcile(counters.snapshot(), UserCounters.countAll(storage.findAll()));
+            }
+        }
+        if (config.getBoolean("users.partitioned", false)) {
+            new UserPartitioning(HibernateUtil.getSessionFactory()).enable(config.getInt("users.partitions.ahead", 3),
+                    config.getBoolean("users.partitioned.allowDuplicateEmails", false));
+        }
+        AuditLog auditLog = null;
+        if (config.getBoolean("audit.enabled", false)) {
+            auditLog = AuditLog.fromConfig(config);
+            dao = new AuditingUserDao(dao, auditLog);
+        }
+        AdmissionController admission = null;
+        if (config.getBoolean("admission.enabled", false)) {
+            admission = AdmissionController.from(config);
+            dao = new AdmissionControlledUserDao(dao, admission);
+        }
+        if (config.getBoolean("resilience.enabled", false)) {
+            dao = ResilientUserDao.from(dao, config);
+        }
+        if (config.getBoolean("coalesce.enabled", false)) {
+            dao = CoalescingUserDao.from(dao, config);
+        }
+        return new UserDaoStack(config, storage, dao, counters, counterPersister, auditLog, admission);
+    }
+
+    public UserDao getDao() {
+        return dao;
+    }
+
+    //null - счётчики выключены (counters.enabled=false).
+    public UserCounters getCounters() {
+        return counters;
+    }
+
+    //null - допуск выключен (admission.enabled=false).
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+
+    @Override
+    public void close() {
+        if (auditLog != null) {
+            auditLog.close();
+        }
+        if (counterPersister != null) {
+            counterPersister.close();
+        }
+        UserDaoFactory.close(storage);
+        if (UserDaoFactory.usesDatabase(config)) {
+            HibernateUtil.shutdown();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.klimtsov.analytics;
+
+import org.klimtsov.dao.ForwardingUserDao;
+import org.klimtsov.dao.UpsertResult;
+import org.klimtsov.dao.UserDao;
+import org.klimtsov.dao.UserFieldUpdate;
+import org.klimtsov.dao.UserFields;
+import org.klimtsov.dao.UserFilter;
+import org.klimtsov.userservice.model.User;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+//Обновляет UserCounters по результатам изменяющих операций. Для update и delete прежний возраст
+//возвращает само изменение (updateReturningPrevious, deleteReturning) - отдельного чтения до записи нет.
+//Внутри inTransaction изменения копятся отдельно и попадают в общие счётчики только после успешного commit.
+public class CountingUserDao extends ForwardingUserDao {
+    private final UserCounters counters;
+
+    public CountingUserDao(UserDao delegate, UserCounters counters) {
+        super(delegate);
+        this.counters = counters;
+    }
+
+    @Override
+    protected <T> T invoke(String operation, boolean idempotent, Supplier<T> call) {
+        return call.get();
+    }
+
+    @Override
+    public Long create(User user) {
+        Long id = delegate.create(user);
+        counters.recordCreate(user.getAge());
+        return id;
+    }
+
+    @Override
+    public void update(User user) {
+        updateReturningPrevious(user);
+    }
+
+    @Override
+    public Optional<User> updateReturningPrevious(User user) {
+        Optional<User> previous = delegate.updateReturningPrevious(user);
+        previous.ifPresent(p -> counters.recordAgeChange(p.getAge(), user.getAge()));
+        return previous;
+    }
+
+    @Override
+    public boolean delete(Long id) {
+        return deleteReturning(id).isPresent();
+    }
+
+    @Override
+    public Optional<User> deleteReturning(Long id) {
+        Optional<User> deleted = delegate.deleteReturning(id);
+        deleted.ifPresent(u -> counters.recordDelete(u.getAge()));
+        return deleted;
+    }
+
+    @Override
+    public UpsertResult upsertByEmail(User user) {
+        UpsertResult result = delegate.upsertByEmail(user);
+        recordUpsert(result, user.getAge());
+        return result;
+    }
+
+    //Повторы email в пакете получают один результат - каждая строка учитывается один раз
+    //с возрастом последнего вхождения.
+    @Override
+    public List<UpsertResult> upsertAll(List<User> users) {
+        List<UpsertResult> results = delegate.upsertAll(users);
+        Map<Long, Integer> ages = new LinkedHashMap<>();
+        Map<Long, UpsertResult> byId = new LinkedHashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            UpsertResult result = results.get(i);
+            ages.put(result.id(), users.get(i).getAge());
+            byId.put(result.id(), result);
+        }
+        byId.forEach((id, result) -> recordUpsert(result, ages.get(id)));
+        return results;
+    }
+
+    @Override
+    public int bulkUpdate(UserFilter filter, UserFieldUpdate update) {
+        int updated = delegate.bulkUpdate(filter, update);
+        if (updated > 0 && update.age() != null) {
+            counters.markStale();
+        }
+        return updated;
+    }
+
+    //Прежний возраст известен точно - он входит в условие обновления.
+    @Override
+    public boolean compareAndSet(Long id, UserFields expected, UserFields updated) {
+        boolean applied = delegate.compareAndSet(id, expected, updated);
+        if (applied) {
+            counters.recordAgeChange(expected.age(), updated.age());
+        }
+        return applied;
+    }
+
+    @Override
+    public <T> T inTransaction(boolean readOnly, Function<UserDao, T> work) {
+        if (readOnly) {
+            return delegate.inTransaction(true, work);
+        }
+        UserCounters unit = new UserCounters();
+        T result = delegate.inTransaction(false, dao -> work.apply(new CountingUserDao(dao, unit)));
+        counters.addAll(unit);
+        return result;
+    }
+
+    //Обновлённая строка могла сменить возрастную группу, а прежний возраст неизвестен.
+    private void recordUpsert(UpsertResult result, Integer age) {
+        if (result.inserted()) {
+            counters.recordCreate(age);
+        } else {
+            counters.markStale();
+        }
+    }
+}
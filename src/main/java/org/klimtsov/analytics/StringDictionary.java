@@ -0,0 +1,47 @@
+package org.klimtsov.analytics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//Словарное кодирование строк: каждая различная строка хранится один раз, в колонках - int-коды.
+//Только дополняется; чтение по коду без блокировок (массив публикуется через volatile).
+class StringDictionary {
+    static final int NULL_CODE = -1;
+
+    private final Map<String, Integer> codes = new HashMap<>();
+    private volatile String[] values = new String[16];
+    private int size;
+
+    synchronized int encode(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        String[] current = values;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[size] = value;
+        values = current;
+        codes.put(value, size);
+        return size++;
+    }
+
+    String decode(int code) {
+        return code == NULL_CODE ? null : values[code];
+    }
+
+    //Код строки без добавления; NULL_CODE, если строки нет в словаре.
+    synchronized int find(String value) {
+        Integer code = value == null ? null : codes.get(value);
+        return code == null ? NULL_CODE : code;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,277 @@
+package org.klimtsov.analytics;
+
+import org.klimtsov.dao.UserDao;
+import org.klimtsov.outbox.ChangeEventSink;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserChangeType;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+//Колоночный снимок пользователей в памяти для аналитики: примитивные массивы вместо List<User>,
+//строки закодированы словарём. Обновляется инкрементально через UserDao.findChangedSince,
+//удаления приходят событиями outbox (снимок подключается к OutboxRelay как ChangeEventSink).
+//Читатели работают с неизменяемой версией колонок без блокировок.
+public class UserColumnarSnapshot implements ChangeEventSink {
+    private static final Logger logger = LoggerFactory.getLogger(UserColumnarSnapshot.class);
+
+    public static final int NULL_AGE = -1;
+    public static final long NULL_TIME = Long.MIN_VALUE;
+    //Меньше этого числа строк параллельный обход не окупается.
+    private static final int PARALLEL_THRESHOLD = 50_000;
+
+    private final UserDao userDao;
+    private final int pageSize;
+    private final StringDictionary names = new StringDictionary();
+    private final StringDictionary emails = new StringDictionary();
+
+    private volatile Columns columns = Columns.EMPTY;
+    private Instant cursorUpdatedAt = Instant.EPOCH;
+    private Long cursorId;
+
+    //Неизменяемая версия колонок; строки упорядочены по id.
+    private static final class Columns {
+        static final Columns EMPTY = new Columns(0, new long[0], new int[0], new long[0], new int[0], new int[0]);
+
+        final int size;
+        final long[] ids;
+        final int[] ages;
+        final long[] createdAt;
+        final int[] nameCodes;
+        final int[] emailCodes;
+
+        Columns(int size, long[] ids, int[] ages, long[] createdAt, int[] nameCodes, int[] emailCodes) {
+            this.size = size;
+            this.ids = ids;
+            this.ages = ages;
+            this.createdAt = createdAt;
+            this.nameCodes = nameCodes;
+            this.emailCodes = emailCodes;
+        }
+
+        int indexOf(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            return index >= 0 ? index : -1;
+        }
+    }
+
+    public UserColumnarSnapshot(UserDao userDao, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.userDao = userDao;
+        this.pageSize = pageSize;
+    }
+
+    //Догружает изменения с момента прошлого обновления; возвращает число применённых строк.
+    public synchronized int refresh() {
+        Map<Long, User> delta = new HashMap<>();
+        List<User> page;
+        do {
+            page = userDao.findChangedSince(cursorUpdatedAt, cursorId, pageSize);
+            for (User user : page) {
+                delta.put(user.getId(), user);
+            }
+            if (!page.isEmpty()) {
+                User last = page.get(page.size() - 1);
+                cursorUpdatedAt = last.getUpdatedAt();
+                cursorId = last.getId();
+            }
+        } while (page.size() == pageSize);
+        if (!delta.isEmpty()) {
+            columns = merge(columns, delta);
+        }
+        logger.info("Колоночный снимок обновлён: изменений {}, всего строк {}", delta.size(), columns.size);
+        return delta.size();
+    }
+
+    private Columns merge(Columns old, Map<Long, User> delta) {
+        int appended = 0;
+        for (Long id : delta.keySet()) {
+            if (old.indexOf(id) < 0) {
+                appended++;
+            }
+        }
+        int size = old.size + appended;
+        long[] ids = Arrays.copyOf(old.ids, size);
+        int[] ages = Arrays.copyOf(old.ages, size);
+        long[] createdAt = Arrays.copyOf(old.createdAt, size);
+        int[] nameCodes = Arrays.copyOf(old.nameCodes, size);
+        int[] emailCodes = Arrays.copyOf(old.emailCodes, size);
+        int next = old.size;
+        boolean sorted = true;
+        for (User user : delta.values()) {
+            int index = old.indexOf(user.getId());
+            if (index < 0) {
+                index = next++;
+                if (index > 0 && ids[index - 1] > user.getId()) {
+                    sorted = false;
+                }
+            }
+            ids[index] = user.getId();
+            ages[index] = user.getAge() == null ? NULL_AGE : user.getAge();
+            createdAt[index] = user.getCreatedAt() == null ? NULL_TIME : user.getCreatedAt().toEpochMilli();
+            nameCodes[index] = names.encode(user.getName());
+            emailCodes[index] = emails.encode(user.getEmail());
+        }
+        Columns merged = new Columns(size, ids, ages, createdAt, nameCodes, emailCodes);
+        return sorted ? merged : sortById(merged);
+    }
+
+    private static Columns sortById(Columns c) {
+        Integer[] order = new Integer[c.size];
+        for (int i = 0; i < c.size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(c.ids[a], c.ids[b]));
+        long[] ids = new long[c.size];
+        int[] ages = new int[c.size];
+        long[] createdAt = new long[c.size];
+        int[] nameCodes = new int[c.size];
+        int[] emailCodes = new int[c.size];
+        for (int i = 0; i < c.size; i++) {
+            int from = order[i];
+            ids[i] = c.ids[from];
+            ages[i] = c.ages[from];
+            createdAt[i] = c.createdAt[from];
+            nameCodes[i] = c.nameCodes[from];
+            emailCodes[i] = c.emailCodes[from];
+        }
+        return new Columns(c.size, ids, ages, createdAt, nameCodes, emailCodes);
+    }
+
+    //Удаления из outbox; создание и изменение подтягиваются через refresh().
+    @Override
+    public void publish(List<UserOutboxEvent> events) {
+        Set<Long> deleted = new HashSet<>();
+        for (UserOutboxEvent event : events) {
+            if (event.getType() == UserChangeType.DELETED) {
+                deleted.add(event.getUserId());
+            }
+        }
+        if (!deleted.isEmpty()) {
+            removeAll(deleted);
+        }
+    }
+
+    public synchronized void removeAll(Set<Long> userIds) {
+        Columns c = columns;
+        long[] ids = new long[c.size];
+        int[] ages = new int[c.size];
+        long[] createdAt = new long[c.size];
+        int[] nameCodes = new int[c.size];
+        int[] emailCodes = new int[c.size];
+        int size = 0;
+        for (int i = 0; i < c.size; i++) {
+            if (!userIds.contains(c.ids[i])) {
+                ids[size] = c.ids[i];
+                ages[size] = c.ages[i];
+                createdAt[size] = c.createdAt[i];
+                nameCodes[size] = c.nameCodes[i];
+                emailCodes[size] = c.emailCodes[i];
+                size++;
+            }
+        }
+        columns = new Columns(size, ids, ages, createdAt, nameCodes, emailCodes);
+        logger.debug("Из колоночного снимка удалено строк: {}", c.size - size);
+    }
+
+    public int size() {
+        return columns.size;
+    }
+
+    private static IntStream rows(Columns c) {
+        IntStream stream = IntStream.range(0, c.size);
+        return c.size >= PARALLEL_THRESHOLD ? stream.parallel() : stream;
+    }
+
+    //Число пользователей с возрастом в [minAge, maxAge] и createdAt в [from, to); null - без ограничения.
+    public long count(int minAge, int maxAge, Instant from, Instant to) {
+        Columns c = columns;
+        boolean byTime = from != null || to != null;
+        long fromMillis = from == null ? Long.MIN_VALUE : from.toEpochMilli();
+        long toMillis = to == null ? Long.MAX_VALUE : to.toEpochMilli();
+        return rows(c).filter(i -> {
+            int age = c.ages[i];
+            long created = c.createdAt[i];
+            return age != NULL_AGE && age >= minAge && age <= maxAge
+                    && (!byTime || created != NULL_TIME && created >= fromMillis && created < toMillis);
+        }).count();
+    }
+
+    public long countCreatedBetween(Instant from, Instant to) {
+        Columns c = columns;
+        long fromMillis = from.toEpochMilli();
+        long toMillis = to.toEpochMilli();
+        return rows(c).filter(i -> c.createdAt[i] >= fromMillis && c.createdAt[i] < toMillis).count();
+    }
+
+    public long countByAge(IntPredicate agePredicate) {
+        Columns c = columns;
+        return rows(c).filter(i -> c.ages[i] != NULL_AGE && agePredicate.test(c.ages[i])).count();
+    }
+
+    //Средний возраст среди пользователей с известным возрастом; NaN, если таких нет.
+    public double averageAge() {
+        Columns c = columns;
+        return rows(c).map(i -> c.ages[i]).filter(age -> age != NULL_AGE).average().orElse(Double.NaN);
+    }
+
+    //Гистограмма возрастов: корзина i содержит возраста [i * width, (i + 1) * width).
+    public long[] ageHistogram(int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+        Columns c = columns;
+        int buckets = 120 / width + 1;
+        return rows(c).collect(() -> new long[buckets], (acc, i) -> {
+            int age = c.ages[i];
+            if (age != NULL_AGE) {
+                acc[Math.min(age / width, buckets - 1)]++;
+            }
+        }, (a, b) -> {
+            for (int k = 0; k < buckets; k++) {
+                a[k] += b[k];
+            }
+        });
+    }
+
+    //Число пользователей с данным именем: сравниваются int-коды, строки не читаются.
+    public long countByName(String name) {
+        int code = names.find(name);
+        if (code == StringDictionary.NULL_CODE) {
+            return 0;
+        }
+        Columns c = columns;
+        return rows(c).filter(i -> c.nameCodes[i] == code).count();
+    }
+
+    //id пользователей, удовлетворяющих фильтру по возрасту, по возрастанию.
+    public long[] idsByAge(IntPredicate agePredicate) {
+        Columns c = columns;
+        return rows(c).filter(i -> c.ages[i] != NULL_AGE && agePredicate.test(c.ages[i]))
+                .mapToLong(i -> c.ids[i]).sorted().toArray();
+    }
+
+    //Восстанавливает пользователя из колонок (для точечного просмотра результатов).
+    public User get(long id) {
+        Columns c = columns;
+        int i = c.indexOf(id);
+        if (i < 0) {
+            return null;
+        }
+        return new User(c.ids[i], names.decode(c.nameCodes[i]), emails.decode(c.emailCodes[i]),
+                c.ages[i] == NULL_AGE ? null : c.ages[i],
+                c.createdAt[i] == NULL_TIME ? null : Instant.ofEpochMilli(c.createdAt[i]));
+    }
+}
@@ -0,0 +1,90 @@
+package org.klimtsov.analytics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//Связь UserCounters с БД: при запуске счётчики сразу берут сохранённые значения, затем в фоне
+//сверяются с точным пересчётом по users. Далее раз в interval значения сохраняются в user_counters,
+//а если счётчики помечены устаревшими - перед сохранением снова пересчитываются.
+public class UserCounterPersister implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(UserCounterPersister.class);
+
+    private final UserCounters counters;
+    private final UserCounterStore store;
+    private final Duration interval;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "user-counters");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public UserCounterPersister(UserCounters counters, UserCounterStore store, Duration interval) {
+        this.counters = counters;
+        this.store = store;
+        this.interval = interval;
+    }
+
+    public void start() {
+        store.createTableIfMissing();
+        Map<String, Long> saved = store.load();
+        if (!saved.isEmpty()) {
+            counters.reconcile(counters.snapshot(), saved);
+            logger.info("Счётчики пользователей загружены: всего {}", counters.getTotal());
+        }
+        //Первая сверка - отдельной задачей: она выполнится и при close() сразу после запуска,
+        //а периодическая задача при остановке планировщика отменяется.
+        counters.markStale();
+        scheduler.execute(this::tick);
+        long millis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::tick, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    //Точный пересчёт: значения, изменённые во время прохода по таблице, сохраняются (UserCounters.reconcile).
+    public void reconcileNow() {
+        counters.clearStale();
+        Map<String, Long> before = counters.snapshot();
+        Map<String, Long> exact = store.recount();
+        counters.reconcile(before, exact);
+        if (!before.equals(exact)) {
+            logger.info("Счётчики пользователей сверены с БД: всего {} -> {}",
+                    before.get(UserCounters.TOTAL), exact.get(UserCounters.TOTAL));
+        }
+    }
+
+    public void persistNow() {
+        store.save(counters.snapshot());
+    }
+
+    private void tick() {
+        try {
+            if (counters.isStale()) {
+                reconcileNow();
+            }
+            persistNow();
+        } catch (RuntimeException e) {
+            logger.error("Ошибка обслуживания счётчиков пользователей: {}", e.getMessage(), e);
+        }
+    }
+
+    //Останавливает фоновые задачи и сохраняет последние значения.
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            persistNow();
+        } catch (RuntimeException e) {
+            logger.error("Не удалось сохранить счётчики пользователей: {}", e.getMessage(), e);
+        }
+    }
+}
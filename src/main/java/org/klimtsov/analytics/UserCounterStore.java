@@ -0,0 +1,92 @@
+package org.klimtsov.analytics;
+
+import org.hibernate.SessionFactory;
+import org.klimtsov.dao.JdbcWork;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//Хранение счётчиков в таблице user_counters (строка на счётчик) и точный пересчёт по users.
+public class UserCounterStore {
+    private final SessionFactory sessionFactory;
+
+    public UserCounterStore(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public void createTableIfMissing() {
+        JdbcWork.inTransaction(sessionFactory, connection -> {
+            try (Statement st = connection.createStatement()) {
+                st.execute("CREATE TABLE IF NOT EXISTS user_counters (name varchar(64) PRIMARY KEY, "
+                        + "value bigint NOT NULL, updated_at timestamptz NOT NULL DEFAULT now())");
+            }
+            return null;
+        }, "создании таблицы счётчиков");
+    }
+
+    //Сохранённые значения; пустая карта, если счётчики ещё не сохранялись.
+    public Map<String, Long> load() {
+        return JdbcWork.inTransaction(sessionFactory, connection -> {
+            Map<String, Long> values = new LinkedHashMap<>();
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT name, value FROM user_counters")) {
+                while (rs.next()) {
+                    values.put(rs.getString(1), rs.getLong(2));
+                }
+            }
+            return values;
+        }, "чтении счётчиков");
+    }
+
+    public void save(Map<String, Long> values) {
+        JdbcWork.inTransaction(sessionFactory, connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("INSERT INTO user_counters (name, value) "
+                    + "VALUES (?, ?) ON CONFLICT (name) DO UPDATE SET value = EXCLUDED.value, updated_at = now()")) {
+                for (Map.Entry<String, Long> entry : values.entrySet()) {
+                    ps.setString(1, entry.getKey());
+                    ps.setLong(2, entry.getValue());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            return null;
+        }, "сохранении счётчиков");
+    }
+
+    //Точные значения одним проходом по users с группировкой по возрастной группе.
+    public Map<String, Long> recount() {
+        return JdbcWork.inTransaction(sessionFactory, connection -> {
+            long[] counts = new long[UserCounters.buckets()];
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT " + bucketSql("age") + ", count(*) FROM users GROUP BY 1")) {
+                while (rs.next()) {
+                    counts[rs.getInt(1)] = rs.getLong(2);
+                }
+            }
+            Map<String, Long> values = new LinkedHashMap<>();
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            values.put(UserCounters.TOTAL, total);
+            for (int i = 0; i < counts.length; i++) {
+                values.put(UserCounters.AGE_PREFIX + UserCounters.bucketName(i), counts[i]);
+            }
+            return values;
+        }, "пересчёте счётчиков");
+    }
+
+    //Номер группы в SQL по тем же границам, что и UserCounters.bucketOf.
+    static String bucketSql(String column) {
+        StringBuilder sql = new StringBuilder("CASE WHEN ").append(column).append(" IS NULL THEN ")
+                .append(UserCounters.UNKNOWN_BUCKET);
+        for (int i = 0; i < UserCounters.AGE_BOUNDS.length; i++) {
+            sql.append(" WHEN ").append(column).append(" < ").append(UserCounters.AGE_BOUNDS[i])
+                    .append(" THEN ").append(i);
+        }
+        return sql.append(" ELSE ").append(UserCounters.AGE_BOUNDS.length).append(" END").toString();
+    }
+}
@@ -0,0 +1,143 @@
+package org.klimtsov.analytics;
+
+import org.klimtsov.userservice.model.User;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+//Счётчики для дашбордов: всего пользователей и пользователей по возрастным группам.
+//Меняются как побочный эффект create/update/delete (CountingUserDao), поэтому чтение не требует
+//count(*) по таблице. LongAdder распределяет одновременные инкременты по ячейкам без общей блокировки.
+//Операции с неизвестным прежним возрастом (массовое обновление, upsert существующей строки)
+//помечают счётчики устаревшими - их уточняет пересчёт в UserCounterPersister.
+public class UserCounters {
+    //Нижние границы групп; возраст ниже первой границы - первая группа, null - последняя.
+    static final int[] AGE_BOUNDS = {18, 25, 35, 45, 55, 65};
+    private static final String[] BUCKET_NAMES = {"0-17", "18-24", "25-34", "35-44", "45-54", "55-64", "65+", "unknown"};
+    static final int UNKNOWN_BUCKET = BUCKET_NAMES.length - 1;
+
+    static final String TOTAL = "total";
+    static final String AGE_PREFIX = "age.";
+
+    private final LongAdder total = new LongAdder();
+    private final LongAdder[] buckets = new LongAdder[BUCKET_NAMES.length];
+    private volatile boolean stale;
+
+    public UserCounters() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    static int bucketOf(Integer age) {
+        if (age == null) {
+            return UNKNOWN_BUCKET;
+        }
+        int bucket = 0;
+        while (bucket < AGE_BOUNDS.length && age >= AGE_BOUNDS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    static String bucketName(int bucket) {
+        return BUCKET_NAMES[bucket];
+    }
+
+    static int buckets() {
+        return BUCKET_NAMES.length;
+    }
+
+    public void recordCreate(Integer age) {
+        total.increment();
+        buckets[bucketOf(age)].increment();
+    }
+
+    public void recordDelete(Integer age) {
+        total.decrement();
+        buckets[bucketOf(age)].decrement();
+    }
+
+    public void recordAgeChange(Integer before, Integer after) {
+        int from = bucketOf(before);
+        int to = bucketOf(after);
+        if (from != to) {
+            buckets[from].decrement();
+            buckets[to].increment();
+        }
+    }
+
+    public void markStale() {
+        stale = true;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    //Снимает отметку перед пересчётом; отметка, поставленная во время пересчёта, сохранится.
+    boolean clearStale() {
+        boolean wasStale = stale;
+        stale = false;
+        return wasStale;
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    //Число пользователей по группам в порядке возрастания; "unknown" - возраст не указан.
+    public Map<String, Long> getAgeBrackets() {
+        Map<String, Long> brackets = new LinkedHashMap<>();
+        for (int i = 0; i < buckets.length; i++) {
+            brackets.put(BUCKET_NAMES[i], buckets[i].sum());
+        }
+        return brackets;
+    }
+
+    //Все значения под ключами хранилища: total и age.<группа>.
+    public Map<String, Long> snapshot() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put(TOTAL, total.sum());
+        getAgeBrackets().forEach((name, count) -> values.put(AGE_PREFIX + name, count));
+        return values;
+    }
+
+    //Точные значения по полному списку пользователей - для хранилищ в памяти, где обход дёшев.
+    public static Map<String, Long> countAll(Iterable<User> users) {
+        UserCounters counters = new UserCounters();
+        for (User user : users) {
+            counters.recordCreate(user.getAge());
+        }
+        return counters.snapshot();
+    }
+
+    //Прибавляет изменения, накопленные в другом экземпляре (единица работы после commit).
+    public void addAll(UserCounters delta) {
+        total.add(delta.total.sum());
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i].add(delta.buckets[i].sum());
+        }
+        if (delta.stale) {
+            stale = true;
+        }
+    }
+
+    //Приводит счётчики к точным значениям exact, посчитанным по данным, когда они равнялись before.
+    //Изменения, внесённые после снятия before, сохраняются: добавляется только разница exact - before.
+    //Отсутствующие в exact ключи не меняются.
+    public void reconcile(Map<String, Long> before, Map<String, Long> exact) {
+        adjust(total, before.get(TOTAL), exact.get(TOTAL));
+        for (int i = 0; i < buckets.length; i++) {
+            String key = AGE_PREFIX + BUCKET_NAMES[i];
+            adjust(buckets[i], before.get(key), exact.get(key));
+        }
+    }
+
+    private static void adjust(LongAdder adder, Long before, Long exact) {
+        if (exact != null) {
+            adder.add(exact - (before == null ? 0 : before));
+        }
+    }
+}
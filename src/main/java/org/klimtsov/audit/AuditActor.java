@@ -0,0 +1,33 @@
+package org.klimtsov.audit;
+
+import java.util.function.Supplier;
+
+//Кто выполняет изменения в текущем потоке. По умолчанию - пользователь ОС, под которым запущено
+//приложение (консольный сервис работает от имени оператора).
+public final class AuditActor {
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+    private static final String DEFAULT = System.getProperty("user.name", "unknown");
+
+    private AuditActor() {
+    }
+
+    public static String current() {
+        String actor = CURRENT.get();
+        return actor != null ? actor : DEFAULT;
+    }
+
+    //Выполняет call от имени actor; вложенные вызовы восстанавливают прежнее значение.
+    public static <T> T as(String actor, Supplier<T> call) {
+        String previous = CURRENT.get();
+        CURRENT.set(actor);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
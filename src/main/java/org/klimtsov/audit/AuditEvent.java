@@ -0,0 +1,16 @@
+package org.klimtsov.audit;
+
+import org.klimtsov.userservice.model.User;
+
+import java.time.Instant;
+
+//Одно изменение для журнала аудита: кто (actor), что (operation, userId, details) и состояние
+//пользователя до и после. before/after - копии, не связанные с сущностями сессии.
+public record AuditEvent(Instant at, String actor, String operation, Long userId, User before, User after,
+                         String details) {
+
+    static User copyOf(User user) {
+        return user == null ? null : new User(user.getId(), user.getName(), user.getEmail(), user.getAge(),
+                user.getCreatedAt(), user.getUpdatedAt());
+    }
+}
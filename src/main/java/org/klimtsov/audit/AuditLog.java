@@ -0,0 +1,361 @@
+package org.klimtsov.audit;
+
+import org.klimtsov.AppConfig;
+import org.klimtsov.Json;
+import org.klimtsov.userservice.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+//Журнал аудита: файл только дописывается, одна JSON-строка на изменение. Изменяющие потоки лишь
+//кладут событие в неблокирующую очередь; фоновый поток забирает накопившееся пачкой, пишет её
+//одним вызовом и делает один fsync на всю пачку (групповая фиксация). Очередь ограничена
+//capacity событиями: при отставании записи событие либо отбрасывается (DROP), либо поток ждёт
+//места не дольше blockTimeout (BLOCK). Файл больше maxFileBytes переименовывается с отметкой
+//времени, хранятся maxFiles последних таких файлов.
+public class AuditLog implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(AuditLog.class);
+    private static final DateTimeFormatter ROTATED_SUFFIX =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    public enum Overflow {
+        DROP, BLOCK
+    }
+
+    private final Path file;
+    private final int capacity;
+    private final Overflow overflow;
+    private final long blockTimeoutNanos;
+    private final int batchSize;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final boolean fsync;
+
+    private final Queue<AuditEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    //accepted увеличивается до помещения в очередь, processed - после записи пачки: flush()
+    //ждёт, пока processed догонит значение accepted на момент вызова.
+    private final AtomicLong accepted = new AtomicLong();
+    private volatile long processed;
+    private final Object processedMonitor = new Object();
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder rotations = new LongAdder();
+
+    private final Thread writer;
+    private volatile boolean idle;
+    private volatile boolean running = true;
+    private FileChannel channel;
+    private long fileSize;
+
+    public AuditLog(Path file, int capacity, Overflow overflow, long blockTimeoutMillis, int batchSize,
+                    long maxFileBytes, int maxFiles, boolean fsync) {
+        if (capacity <= 0 || batchSize <= 0 || maxFileBytes <= 0 || maxFiles < 0) {
+            throw new IllegalArgumentException("Audit log limits must be positive");
+        }
+        this.file = file.toAbsolutePath();
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        this.batchSize = batchSize;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(this.file.getParent());
+            openFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть журнал аудита " + file, e);
+        }
+        this.writer = new Thread(this::writeLoop, "audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public static AuditLog fromConfig(AppConfig config) {
+        Overflow overflow = Overflow.valueOf(config.getString("audit.overflow", "block").trim().toUpperCase(Locale.ROOT));
+        AuditLog log = new AuditLog(Path.of(config.getString("audit.path", "data/audit/audit.log")),
+                config.getInt("audit.queueCapacity", 10_000), overflow,
+                config.getLong("audit.blockTimeoutMillis", 1000), config.getInt("audit.batchSize", 512),
+                config.getLong("audit.maxFileBytes", 64L << 20), config.getInt("audit.maxFiles", 10),
+                config.getBoolean("audit.fsync", true));
+        logger.info("Журнал аудита включён: файл {}, очередь {}, при переполнении {}", log.file, log.capacity, overflow);
+        return log;
+    }
+
+    //true - событие принято к записи; false - отброшено из-за переполнения очереди или закрытия журнала.
+    public boolean record(AuditEvent event) {
+        if (!running || !reserve()) {
+            dropped.increment();
+            return false;
+        }
+        accepted.incrementAndGet();
+        queue.offer(event);
+        //Журнал закрылся между проверкой и offer: писатель мог уже завершиться. Событие, которое он
+        //не успел забрать, считается отброшенным.
+        if (!running && queue.remove(event)) {
+            size.decrementAndGet();
+            dropped.increment();
+            markProcessed(1);
+            return false;
+        }
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    //Место в очереди без блокировок: CAS по счётчику размера.
+    private boolean reserve() {
+        long deadline = 0;
+        while (true) {
+            int current = size.get();
+            if (current < capacity) {
+                if (size.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+                continue;
+            }
+            if (overflow == Overflow.DROP || !running) {
+                return false;
+            }
+            long now = System.nanoTime();
+            if (deadline == 0) {
+                deadline = now + blockTimeoutNanos;
+            } else if (now - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+        }
+    }
+
+    //Ждёт, пока все события, принятые до вызова, будут записаны (и переданы на диск, если fsync включён).
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = accepted.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        LockSupport.unpark(writer);
+        synchronized (processedMonitor) {
+            while (processed < target) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(processedMonitor, left);
+            }
+        }
+        return true;
+    }
+
+    private void writeLoop() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            AuditEvent event;
+            while (batch.size() < batchSize && (event = queue.poll()) != null) {
+                batch.add(event);
+            }
+            if (batch.isEmpty()) {
+                idle = true;
+                //Повторная проверка после выставления флага: событие, добавленное до этого, не ждёт таймаута.
+                if (queue.isEmpty() && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+                continue;
+            }
+            size.addAndGet(-batch.size());
+            write(batch);
+            markProcessed(batch.size());
+            batch.clear();
+        }
+    }
+
+    private void markProcessed(int count) {
+        synchronized (processedMonitor) {
+            processed += count;
+            processedMonitor.notifyAll();
+        }
+    }
+
+    private void write(List<AuditEvent> batch) {
+        StringBuilder sb = new StringBuilder(batch.size() * 256);
+        for (AuditEvent event : batch) {
+            sb.append(toJson(event)).append('\n');
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        if (fileSize > 0 && fileSize + bytes.remaining() > maxFileBytes) {
+            try {
+                rotate();
+            } catch (IOException e) {
+                logger.error("Ошибка переименования журнала аудита {}, запись продолжается в него: {}",
+                        file, e.getMessage(), e);
+            }
+        }
+        try {
+            while (bytes.hasRemaining()) {
+                fileSize += channel.write(bytes);
+            }
+            if (fsync) {
+                channel.force(false);
+                syncs.increment();
+            }
+            written.add(batch.size());
+        } catch (IOException e) {
+            failed.add(batch.size());
+            logger.error("Ошибка записи {} событий в журнал аудита {}: {}", batch.size(), file, e.getMessage(), e);
+        }
+    }
+
+    //Файл переименовывается при открытом канале, новый канал подменяет старый только после открытия:
+    //при любой ошибке запись продолжается в прежний канал под прежним именем.
+    private void rotate() throws IOException {
+        String rotatedName = file.getFileName() + "." + ROTATED_SUFFIX.format(Instant.now());
+        Path target = file.resolveSibling(rotatedName);
+        for (int i = 1; Files.exists(target); i++) {
+            target = file.resolveSibling(rotatedName + "-" + i);
+        }
+        Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel rotated = channel;
+        boolean opened = false;
+        try {
+            openFile();
+            opened = true;
+        } finally {
+            if (!opened) {
+                Files.move(target, file, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        rotations.increment();
+        logger.info("Журнал аудита переименован в {}", target.getFileName());
+        try {
+            rotated.close();
+        } catch (IOException e) {
+            logger.error("Ошибка закрытия журнала аудита {}: {}", target, e.getMessage(), e);
+        }
+        pruneRotated();
+    }
+
+    private void openFile() throws IOException {
+        FileChannel opened = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        try {
+            fileSize = opened.size();
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        channel = opened;
+    }
+
+    //Суффикс - время в UTC с ведущими нулями, поэтому порядок имён совпадает с порядком переименования.
+    private void pruneRotated() throws IOException {
+        String prefix = file.getFileName() + ".";
+        List<Path> rotated;
+        try (Stream<Path> files = Files.list(file.getParent())) {
+            rotated = files.filter(p -> p.getFileName().toString().startsWith(prefix)).sorted().toList();
+        }
+        for (int i = 0; i < rotated.size() - maxFiles; i++) {
+            Files.deleteIfExists(rotated.get(i));
+        }
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getSyncs() {
+        return syncs.sum();
+    }
+
+    public long getRotations() {
+        return rotations.sum();
+    }
+
+    public int getQueued() {
+        return size.get();
+    }
+
+    //Новые события больше не принимаются; уже принятые дописываются до закрытия файла.
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Ошибка закрытия журнала аудита {}: {}", file, e.getMessage(), e);
+        }
+        logger.info("Журнал аудита закрыт: записано {}, отброшено {}, ошибок записи {}",
+                getWritten(), getDropped(), getFailed());
+    }
+
+    static String toJson(AuditEvent event) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"at\":\"").append(event.at()).append('"')
+                .append(",\"actor\":");
+        Json.appendString(sb, event.actor());
+        sb.append(",\"op\":\"").append(event.operation()).append('"')
+                .append(",\"userId\":").append(event.userId());
+        sb.append(",\"before\":");
+        appendUser(sb, event.before());
+        sb.append(",\"after\":");
+        appendUser(sb, event.after());
+        if (event.details() != null) {
+            sb.append(",\"details\":");
+            Json.appendString(sb, event.details());
+        }
+        return sb.append('}').toString();
+    }
+
+    private static void appendUser(StringBuilder sb, User user) {
+        if (user == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append("{\"id\":").append(user.getId()).append(",\"name\":");
+        Json.appendString(sb, user.getName());
+        sb.append(",\"email\":");
+        Json.appendString(sb, user.getEmail());
+        sb.append(",\"age\":").append(user.getAge()).append('}');
+    }
+}
@@ -0,0 +1,153 @@
+package org.klimtsov.audit;
+
+import org.klimtsov.dao.ForwardingUserDao;
+import org.klimtsov.dao.UpsertResult;
+import org.klimtsov.dao.UserDao;
+import org.klimtsov.dao.UserFieldUpdate;
+import org.klimtsov.dao.UserFields;
+import org.klimtsov.dao.UserFilter;
+import org.klimtsov.userservice.model.User;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+//Пишет в AuditLog каждое успешное изменение: кто, какая операция, состояние до и после.
+//Для update и delete прежнее состояние возвращает само изменение (updateReturningPrevious, deleteReturning):
+//ни отдельного чтения до записи, ни лишней единицы работы на каждое изменение.
+//Для upsert прежнее состояние не читается (лишний запрос на строку пакета): before = null,
+//а операция показывает, была ли строка вставлена или обновлена. Внутри inTransaction события
+//копятся и попадают в журнал только после успешного commit.
+public class AuditingUserDao extends ForwardingUserDao {
+    private final AuditLog log;
+    //События единицы работы; null - писать сразу в журнал.
+    private final List<AuditEvent> unit;
+
+    public AuditingUserDao(UserDao delegate, AuditLog log) {
+        this(delegate, log, null);
+    }
+
+    private AuditingUserDao(UserDao delegate, AuditLog log, List<AuditEvent> unit) {
+        super(delegate);
+        this.log = log;
+        this.unit = unit;
+    }
+
+    @Override
+    protected <T> T invoke(String operation, boolean idempotent, Supplier<T> call) {
+        return call.get();
+    }
+
+    @Override
+    public Long create(User user) {
+        Long id = delegate.create(user);
+        emit("create", id, null, user, null);
+        return id;
+    }
+
+    @Override
+    public void update(User user) {
+        updateReturningPrevious(user);
+    }
+
+    @Override
+    public Optional<User> updateReturningPrevious(User user) {
+        Optional<User> previous = delegate.updateReturningPrevious(user);
+        previous.ifPresent(before -> emit("update", user.getId(), AuditEvent.copyOf(before), user, null));
+        return previous;
+    }
+
+    @Override
+    public boolean delete(Long id) {
+        return deleteReturning(id).isPresent();
+    }
+
+    @Override
+    public Optional<User> deleteReturning(Long id) {
+        Optional<User> deleted = delegate.deleteReturning(id);
+        deleted.ifPresent(before -> emit("delete", id, AuditEvent.copyOf(before), null, null));
+        return deleted;
+    }
+
+    @Override
+    public UpsertResult upsertByEmail(User user) {
+        UpsertResult result = delegate.upsertByEmail(user);
+        emitUpsert(result, user);
+        return result;
+    }
+
+    //Повторяющийся email в пакете записывается один раз - последним вхождением; событие пишется только для него.
+    @Override
+    public List<UpsertResult> upsertAll(List<User> users) {
+        List<UpsertResult> results = delegate.upsertAll(users);
+        Map<Long, Integer> lastById = new LinkedHashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            lastById.put(results.get(i).id(), i);
+        }
+        lastById.values().forEach(i -> emitUpsert(results.get(i), users.get(i)));
+        return results;
+    }
+
+    //Затронутые строки не перечисляются: в журнал попадают условие, изменение и число строк.
+    @Override
+    public int bulkUpdate(UserFilter filter, UserFieldUpdate update) {
+        int updated = delegate.bulkUpdate(filter, update);
+        if (updated > 0) {
+            emit("bulkUpdate", null, null, null, "filter=" + filter + ", update=" + update + ", rows=" + updated);
+        }
+        return updated;
+    }
+
+    //Состояние до - ожидаемые значения: изменение применено, только если строка их содержала.
+    @Override
+    public boolean compareAndSet(Long id, UserFields expected, UserFields updated) {
+        boolean applied = delegate.compareAndSet(id, expected, updated);
+        if (applied) {
+            emit("compareAndSet", id, fieldsOf(id, expected), fieldsOf(id, updated), null);
+        }
+        return applied;
+    }
+
+    @Override
+    public <T> T inTransaction(boolean readOnly, Function<UserDao, T> work) {
+        if (readOnly) {
+            return delegate.inTransaction(true, work);
+        }
+        List<AuditEvent> events = new ArrayList<>();
+        T result = delegate.inTransaction(false, dao -> work.apply(new AuditingUserDao(dao, log, events)));
+        events.forEach(this::emit);
+        return result;
+    }
+
+    private static User fieldsOf(Long id, UserFields fields) {
+        User user = new User();
+        user.setId(id);
+        fields.applyTo(user);
+        return user;
+    }
+
+    private void emitUpsert(UpsertResult result, User user) {
+        User after = AuditEvent.copyOf(user);
+        after.setId(result.id());
+        emit(result.inserted() ? "upsert.insert" : "upsert.update", result.id(), null, after, null);
+    }
+
+    private void emit(String operation, Long userId, User before, User after, String details) {
+        emit(new AuditEvent(Instant.now(), AuditActor.current(), operation, userId, before,
+                AuditEvent.copyOf(after), details));
+    }
+
+    //Во вложенной единице работы событие уходит во внешнюю и пишется после её commit.
+    private void emit(AuditEvent event) {
+        if (unit != null) {
+            unit.add(event);
+        } else {
+            log.record(event);
+        }
+    }
+}
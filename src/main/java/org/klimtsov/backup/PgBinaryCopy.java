@@ -0,0 +1,74 @@
+package org.klimtsov.backup;
+
+import org.klimtsov.userservice.model.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+//Кодирование пользователей в двоичный формат COPY PostgreSQL для колонок
+//(id bigint, name varchar, email varchar, age integer, created_at timestamptz, updated_at timestamptz).
+//Сервер не разбирает текст построчно, поэтому COPY binary - самый быстрый путь загрузки.
+final class PgBinaryCopy {
+    static final String COPY_SQL =
+            "COPY users (id, name, email, age, created_at, updated_at) FROM STDIN (FORMAT binary)";
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final short FIELDS = 6;
+    //2000-01-01T00:00:00Z - начало отсчёта timestamptz в PostgreSQL, в микросекундах от эпохи Unix.
+    private static final long PG_EPOCH_MICROS = 946_684_800_000_000L;
+
+    private PgBinaryCopy() {
+    }
+
+    static byte[] encode(List<User> users) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * users.size() + 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(SIGNATURE);
+            out.writeInt(0);
+            out.writeInt(0);
+            for (User user : users) {
+                out.writeShort(FIELDS);
+                out.writeInt(8);
+                out.writeLong(user.getId());
+                writeText(out, user.getName());
+                writeText(out, user.getEmail());
+                if (user.getAge() == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(4);
+                    out.writeInt(user.getAge());
+                }
+                writeTimestamp(out, user.getCreatedAt());
+                writeTimestamp(out, user.getUpdatedAt());
+            }
+            out.writeShort(-1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeText(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static void writeTimestamp(DataOutputStream out, Instant value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(8);
+        out.writeLong(UserSnapshotFormat.toMicros(value) - PG_EPOCH_MICROS);
+    }
+}
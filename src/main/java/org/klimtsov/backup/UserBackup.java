@@ -0,0 +1,214 @@
+package org.klimtsov.backup;
+
+import org.hibernate.SessionFactory;
+import org.klimtsov.dao.DaoException;
+import org.klimtsov.dao.JdbcWork;
+import org.klimtsov.userservice.model.User;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+//Резервная копия таблицы users без pg_dump: снимок в файл формата UserSnapshotFormat
+//и восстановление из него через COPY binary, блоки загружаются параллельно в отдельных транзакциях.
+//Восстановление не пишет события outbox и допускается только в пустую таблицу; при ошибке часть
+//блоков может остаться загруженной - таблицу нужно очистить и повторить.
+public class UserBackup {
+    private static final Logger logger = LoggerFactory.getLogger(UserBackup.class);
+    private static final int FETCH_SIZE = 10_000;
+
+    private final SessionFactory sessionFactory;
+    private final int chunkUsers;
+
+    public UserBackup(SessionFactory sessionFactory) {
+        this(sessionFactory, UserSnapshotWriter.DEFAULT_CHUNK_USERS);
+    }
+
+    public UserBackup(SessionFactory sessionFactory, int chunkUsers) {
+        this.sessionFactory = sessionFactory;
+        this.chunkUsers = chunkUsers;
+    }
+
+    //Записывает согласованный снимок (одна REPEATABLE READ транзакция, курсор по id) во временный
+    //файл и атомарно переименовывает его в file. Возвращает число пользователей в снимке.
+    public long snapshot(Path file) throws IOException {
+        long started = System.nanoTime();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long users = JdbcWork.inTransaction(sessionFactory, connection -> {
+                try (Statement st = connection.createStatement()) {
+                    st.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ READ ONLY");
+                }
+                try (PreparedStatement ps = connection.prepareStatement(
+                        "SELECT " + JdbcWork.USER_COLUMNS + " FROM users ORDER BY id")) {
+                    ps.setFetchSize(FETCH_SIZE);
+                    try (ResultSet rs = ps.executeQuery();
+                         UserSnapshotWriter writer = new UserSnapshotWriter(channel, Instant.now(), chunkUsers)) {
+                        while (rs.next()) {
+                            writer.write(JdbcWork.readUser(rs));
+                        }
+                        return writer.getUsers();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }, "создании снимка пользователей");
+            channel.force(true);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Снимок пользователей записан в {}: {} записей, {} байт за {} мс",
+                    file, users, Files.size(file), (System.nanoTime() - started) / 1_000_000);
+            return users;
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(tmp);
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    //Загружает снимок в пустую таблицу users в parallelism потоков и сдвигает генератор id
+    //за максимальный восстановленный id. Возвращает число восстановленных пользователей.
+    public long restore(Path file, int parallelism) throws IOException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        long started = System.nanoTime();
+        try (UserSnapshotReader reader = new UserSnapshotReader(FileChannel.open(file, StandardOpenOption.READ))) {
+            boolean hasUsers = JdbcWork.inTransaction(sessionFactory, connection -> {
+                try (Statement st = connection.createStatement();
+                     ResultSet rs = st.executeQuery("SELECT EXISTS (SELECT 1 FROM users)")) {
+                    rs.next();
+                    return rs.getBoolean(1);
+                }
+            }, "проверке таблицы перед восстановлением");
+            if (hasUsers) {
+                throw new DaoException("Восстановление возможно только в пустую таблицу users", null);
+            }
+            logger.info("Восстановление пользователей из снимка {} от {}", file, reader.getTakenAt());
+            loadChunks(reader, parallelism);
+            resetIdGenerator();
+            logger.info("Восстановлено пользователей: {} за {} мс",
+                    reader.getUsersRead(), (System.nanoTime() - started) / 1_000_000);
+            return reader.getUsersRead();
+        }
+    }
+
+    //Блоки читаются и проверяются в текущем потоке, COPY выполняют потоки пула. В памяти не больше
+    //2 * parallelism блоков; после первой ошибки новые блоки не отправляются.
+    private void loadChunks(UserSnapshotReader reader, int parallelism) throws IOException {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, task -> {
+            Thread thread = new Thread(task, "user-restore-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore inFlight = new Semaphore(2 * parallelism);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        List<Future<?>> loads = new ArrayList<>();
+        try {
+            List<User> chunk;
+            while (failure.get() == null && (chunk = reader.readChunk()) != null) {
+                List<User> users = chunk;
+                //Снимок таблицы до заполнения updated_at (UserUpdatedAtBackfill) может содержать пустые
+                //значения, а столбец теперь NOT NULL: они заполняются так же, как при заполнении.
+                for (User user : users) {
+                    if (user.getUpdatedAt() == null) {
+                        user.setUpdatedAt(user.getCreatedAt() != null ? user.getCreatedAt() : reader.getTakenAt());
+                    }
+                }
+                inFlight.acquire();
+                loads.add(pool.submit(() -> {
+                    try {
+                        copy(users);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                        throw e;
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            for (Future<?> load : loads) {
+                load.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DaoException("Восстановление пользователей прервано", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new DaoException("Ошибка при загрузке блока снимка", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void copy(List<User> users) {
+        byte[] data = PgBinaryCopy.encode(users);
+        JdbcWork.inTransaction(sessionFactory, connection -> {
+            CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(PgBinaryCopy.COPY_SQL);
+            try {
+                copy.writeToCopy(data, 0, data.length);
+                return copy.endCopy();
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        }, "загрузке блока снимка");
+    }
+
+    //id вставлены явно, поэтому identity или последовательность serial (как в UserPartitioning)
+    //переводится за максимальный id, иначе следующий create получит занятый id.
+    private void resetIdGenerator() {
+        JdbcWork.inTransaction(sessionFactory, connection -> {
+            try (Statement st = connection.createStatement()) {
+                String sequence;
+                boolean identity;
+                long maxId;
+                try (ResultSet rs = st.executeQuery("SELECT pg_get_serial_sequence('users', 'id'), "
+                        + "(SELECT attidentity <> '' FROM pg_attribute WHERE attrelid = 'users'::regclass AND attname = 'id'), "
+                        + "(SELECT coalesce(max(id), 0) FROM users)")) {
+                    rs.next();
+                    sequence = rs.getString(1);
+                    identity = rs.getBoolean(2);
+                    maxId = rs.getLong(3);
+                }
+                if (identity) {
+                    st.execute("ALTER TABLE users ALTER COLUMN id RESTART WITH " + (maxId + 1));
+                } else if (sequence != null && maxId > 0) {
+                    try (PreparedStatement ps = connection.prepareStatement("SELECT setval(?, ?)")) {
+                        ps.setString(1, sequence);
+                        ps.setLong(2, maxId);
+                        ps.execute();
+                    }
+                }
+            }
+            return null;
+        }, "сдвиге генератора id после восстановления");
+    }
+}
@@ -0,0 +1,49 @@
+package org.klimtsov.backup;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.klimtsov.AppConfig;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+
+//Снимок и восстановление users из командной строки:
+//  snapshot <файл> - записать снимок; restore <файл> - загрузить снимок в пустую таблицу.
+//Размер блока и число потоков восстановления - backup.chunkUsers и backup.restoreThreads.
+public class UserBackupMain {
+    private static final Logger logger = LoggerFactory.getLogger(UserBackupMain.class);
+
+    public static void main(String[] args) {
+        if (args.length != 2 || !(args[0].equals("snapshot") || args[0].equals("restore"))) {
+            System.out.println("Использование: snapshot <файл> | restore <файл>");
+            return;
+        }
+        AppConfig config = AppConfig.load();
+        Path file = Path.of(args[1]);
+        SessionFactory sessionFactory = new Configuration()
+                .configure("hibernate.cfg.xml")
+                .setProperty("hibernate.show_sql", "false")
+                .setProperty("hibernate.format_sql", "false")
+                .setProperty("hibernate.use_sql_comments", "false")
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(UserOutboxEvent.class)
+                .buildSessionFactory();
+        try {
+            UserBackup backup = new UserBackup(sessionFactory,
+                    config.getInt("backup.chunkUsers", UserSnapshotWriter.DEFAULT_CHUNK_USERS));
+            if (args[0].equals("snapshot")) {
+                System.out.println("Сохранено пользователей: " + backup.snapshot(file));
+            } else {
+                System.out.println("Восстановлено пользователей: "
+                        + backup.restore(file, config.getInt("backup.restoreThreads", 4)));
+            }
+        } catch (Exception e) {
+            logger.error("Операция {} с файлом {} завершилась ошибкой: {}", args[0], file, e.getMessage(), e);
+        } finally {
+            sessionFactory.close();
+        }
+    }
+}
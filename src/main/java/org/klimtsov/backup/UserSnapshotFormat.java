@@ -0,0 +1,75 @@
+package org.klimtsov.backup;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+//Формат снимка users, версия 1 (все числа фиксированной длины - big-endian):
+//  заголовок: int MAGIC, short VERSION, short 0, long время снимка (мкс от эпохи Unix);
+//  блоки:     int число записей (> 0), int длина данных, int CRC32 данных, данные;
+//  конец:     int 0, long общее число записей.
+//Запись в блоке: байт с флагами null, затем присутствующие поля: id - varint zigzag разности
+//с предыдущим id блока, name и email - varint длины и UTF-8, age - varint zigzag, created_at и
+//updated_at - varint zigzag разности в микросекундах с предыдущим значением того же поля в блоке.
+//В начале блока все предыдущие значения равны 0, так что блок декодируется независимо.
+final class UserSnapshotFormat {
+    static final int MAGIC = 0x55534E50; //"USNP"
+    static final short VERSION = 1;
+
+    static final int FILE_HEADER_BYTES = 16;
+    static final int CHUNK_HEADER_BYTES = 12;
+    static final int TRAILER_BYTES = CHUNK_HEADER_BYTES;
+
+    static final int NULL_NAME = 1;
+    static final int NULL_EMAIL = 1 << 1;
+    static final int NULL_AGE = 1 << 2;
+    static final int NULL_CREATED_AT = 1 << 3;
+    static final int NULL_UPDATED_AT = 1 << 4;
+
+    //Флаги, id, две длины строк, age и два времени - по varint не длиннее 10 байт.
+    static final int MAX_FIXED_RECORD_BYTES = 1 + 6 * 10;
+
+    private UserSnapshotFormat() {
+    }
+
+    //Точность микросекунд, как у timestamp в PostgreSQL.
+    static long toMicros(Instant instant) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+
+    static Instant fromMicros(long micros) {
+        return Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer buffer) throws StreamCorruptedException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                throw new StreamCorruptedException("Запись снимка обрывается внутри числа");
+            }
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Слишком длинное число в записи снимка");
+    }
+}
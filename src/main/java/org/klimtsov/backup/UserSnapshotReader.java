@@ -0,0 +1,145 @@
+package org.klimtsov.backup;
+
+import org.klimtsov.userservice.model.User;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+//Чтение снимка, записанного UserSnapshotWriter, по блокам. Контрольная сумма блока проверяется
+//до разбора: повреждённый снимок - StreamCorruptedException, обрезанный - EOFException.
+public class UserSnapshotReader implements AutoCloseable {
+    //Защита от выделения памяти под мусорную длину блока.
+    private static final int MAX_CHUNK_BYTES = 256 << 20;
+
+    private final ReadableByteChannel channel;
+    private final Instant takenAt;
+    private final ByteBuffer header = ByteBuffer.allocate(UserSnapshotFormat.CHUNK_HEADER_BYTES);
+    private final CRC32 crc = new CRC32();
+    private long read;
+    private boolean finished;
+
+    public UserSnapshotReader(ReadableByteChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer fileHeader = ByteBuffer.allocate(UserSnapshotFormat.FILE_HEADER_BYTES);
+        readFully(fileHeader);
+        if (fileHeader.getInt() != UserSnapshotFormat.MAGIC) {
+            throw new StreamCorruptedException("Файл не является снимком пользователей");
+        }
+        short version = fileHeader.getShort();
+        if (version != UserSnapshotFormat.VERSION) {
+            throw new StreamCorruptedException("Неподдерживаемая версия снимка: " + version);
+        }
+        fileHeader.getShort();
+        this.takenAt = UserSnapshotFormat.fromMicros(fileHeader.getLong());
+    }
+
+    public Instant getTakenAt() {
+        return takenAt;
+    }
+
+    //Следующий блок пользователей или null, если снимок прочитан до конца.
+    public List<User> readChunk() throws IOException {
+        if (finished) {
+            return null;
+        }
+        header.clear();
+        readFully(header);
+        int count = header.getInt();
+        if (count == 0) {
+            //Завершающая запись той же длины, что и заголовок блока: после нуля - общее число записей.
+            long expected = header.getLong();
+            if (expected != read) {
+                throw new StreamCorruptedException("В снимке " + read + " записей вместо " + expected);
+            }
+            finished = true;
+            return null;
+        }
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if (count < 0 || length <= 0 || length > MAX_CHUNK_BYTES) {
+            throw new StreamCorruptedException("Некорректный заголовок блока снимка");
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload);
+        crc.reset();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != checksum) {
+            throw new StreamCorruptedException("Контрольная сумма блока снимка не совпадает");
+        }
+        List<User> users = decode(payload, count);
+        read += count;
+        return users;
+    }
+
+    public long getUsersRead() {
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static List<User> decode(ByteBuffer payload, int count) throws StreamCorruptedException {
+        List<User> users = new ArrayList<>(count);
+        long id = 0;
+        long created = 0;
+        long updated = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                int nulls = payload.get();
+                id += UserSnapshotFormat.unZigZag(UserSnapshotFormat.getVarLong(payload));
+                String name = (nulls & UserSnapshotFormat.NULL_NAME) != 0 ? null : getString(payload);
+                String email = (nulls & UserSnapshotFormat.NULL_EMAIL) != 0 ? null : getString(payload);
+                Integer age = (nulls & UserSnapshotFormat.NULL_AGE) != 0 ? null
+                        : (int) UserSnapshotFormat.unZigZag(UserSnapshotFormat.getVarLong(payload));
+                Instant createdAt = null;
+                if ((nulls & UserSnapshotFormat.NULL_CREATED_AT) == 0) {
+                    created += UserSnapshotFormat.unZigZag(UserSnapshotFormat.getVarLong(payload));
+                    createdAt = UserSnapshotFormat.fromMicros(created);
+                }
+                Instant updatedAt = null;
+                if ((nulls & UserSnapshotFormat.NULL_UPDATED_AT) == 0) {
+                    updated += UserSnapshotFormat.unZigZag(UserSnapshotFormat.getVarLong(payload));
+                    updatedAt = UserSnapshotFormat.fromMicros(updated);
+                }
+                users.add(new User(id, name, email, age, createdAt, updatedAt));
+            }
+        } catch (RuntimeException e) {
+            //Буфер кончился раньше записей или длина строки за пределами блока.
+            throw new StreamCorruptedException("Некорректная запись в блоке снимка: " + e);
+        }
+        if (payload.hasRemaining()) {
+            throw new StreamCorruptedException("Лишние байты в конце блока снимка");
+        }
+        return users;
+    }
+
+    private static String getString(ByteBuffer payload) throws StreamCorruptedException {
+        long length = UserSnapshotFormat.getVarLong(payload);
+        if (length > payload.remaining()) {
+            throw new StreamCorruptedException("Строка выходит за пределы блока снимка");
+        }
+        String value = new String(payload.array(), payload.arrayOffset() + payload.position(), (int) length,
+                StandardCharsets.UTF_8);
+        payload.position(payload.position() + (int) length);
+        return value;
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Снимок обрывается: нет завершающей записи");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,159 @@
+package org.klimtsov.backup;
+
+import org.klimtsov.userservice.model.User;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.CRC32;
+
+//Запись снимка пользователей в компактном двоичном формате (см. UserSnapshotFormat).
+//Пользователи копятся в блоке до chunkUsers записей, затем блок с CRC32 уходит в канал.
+//Каждый блок кодируется независимо, поэтому при восстановлении блоки обрабатываются параллельно.
+public class UserSnapshotWriter implements AutoCloseable {
+    public static final int DEFAULT_CHUNK_USERS = 10_000;
+
+    private final WritableByteChannel channel;
+    private final int chunkUsers;
+    private final ByteBuffer header = ByteBuffer.allocate(UserSnapshotFormat.CHUNK_HEADER_BYTES);
+    private ByteBuffer payload = ByteBuffer.allocate(1 << 20);
+    private final CRC32 crc = new CRC32();
+
+    private int chunkCount;
+    private long previousId;
+    private long previousCreated;
+    private long previousUpdated;
+    private long total;
+    private boolean closed;
+
+    public UserSnapshotWriter(WritableByteChannel channel, Instant takenAt) throws IOException {
+        this(channel, takenAt, DEFAULT_CHUNK_USERS);
+    }
+
+    public UserSnapshotWriter(WritableByteChannel channel, Instant takenAt, int chunkUsers) throws IOException {
+        if (chunkUsers <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.channel = channel;
+        this.chunkUsers = chunkUsers;
+        ByteBuffer fileHeader = ByteBuffer.allocate(UserSnapshotFormat.FILE_HEADER_BYTES);
+        fileHeader.putInt(UserSnapshotFormat.MAGIC)
+                .putShort(UserSnapshotFormat.VERSION)
+                .putShort((short) 0)
+                .putLong(UserSnapshotFormat.toMicros(takenAt))
+                .flip();
+        writeFully(fileHeader);
+    }
+
+    public void write(User user) throws IOException {
+        if (user.getId() == null) {
+            throw new IllegalArgumentException("User id must not be null");
+        }
+        byte[] name = user.getName() == null ? null : user.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] email = user.getEmail() == null ? null : user.getEmail().getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(UserSnapshotFormat.MAX_FIXED_RECORD_BYTES
+                + (name == null ? 0 : name.length) + (email == null ? 0 : email.length));
+
+        int nulls = 0;
+        if (name == null) {
+            nulls |= UserSnapshotFormat.NULL_NAME;
+        }
+        if (email == null) {
+            nulls |= UserSnapshotFormat.NULL_EMAIL;
+        }
+        if (user.getAge() == null) {
+            nulls |= UserSnapshotFormat.NULL_AGE;
+        }
+        if (user.getCreatedAt() == null) {
+            nulls |= UserSnapshotFormat.NULL_CREATED_AT;
+        }
+        if (user.getUpdatedAt() == null) {
+            nulls |= UserSnapshotFormat.NULL_UPDATED_AT;
+        }
+        payload.put((byte) nulls);
+
+        long id = user.getId();
+        UserSnapshotFormat.putVarLong(payload, UserSnapshotFormat.zigZag(id - previousId));
+        previousId = id;
+        putBytes(name);
+        putBytes(email);
+        if (user.getAge() != null) {
+            UserSnapshotFormat.putVarLong(payload, UserSnapshotFormat.zigZag(user.getAge()));
+        }
+        if (user.getCreatedAt() != null) {
+            long created = UserSnapshotFormat.toMicros(user.getCreatedAt());
+            UserSnapshotFormat.putVarLong(payload, UserSnapshotFormat.zigZag(created - previousCreated));
+            previousCreated = created;
+        }
+        if (user.getUpdatedAt() != null) {
+            long updated = UserSnapshotFormat.toMicros(user.getUpdatedAt());
+            UserSnapshotFormat.putVarLong(payload, UserSnapshotFormat.zigZag(updated - previousUpdated));
+            previousUpdated = updated;
+        }
+        chunkCount++;
+        total++;
+        if (chunkCount == chunkUsers) {
+            flushChunk();
+        }
+    }
+
+    public long getUsers() {
+        return total;
+    }
+
+    //Дописывает последний блок и завершающую запись с общим числом пользователей.
+    //Без неё снимок при чтении считается обрезанным. Сам канал не закрывается.
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flushChunk();
+        ByteBuffer trailer = ByteBuffer.allocate(UserSnapshotFormat.TRAILER_BYTES);
+        trailer.putInt(0).putLong(total).flip();
+        writeFully(trailer);
+    }
+
+    private void putBytes(byte[] bytes) {
+        if (bytes != null) {
+            UserSnapshotFormat.putVarLong(payload, bytes.length);
+            payload.put(bytes);
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        if (chunkCount == 0) {
+            return;
+        }
+        payload.flip();
+        crc.reset();
+        crc.update(payload.duplicate());
+        header.clear();
+        header.putInt(chunkCount).putInt(payload.remaining()).putInt((int) crc.getValue()).flip();
+        writeFully(header);
+        writeFully(payload);
+        payload.clear();
+        chunkCount = 0;
+        previousId = 0;
+        previousCreated = 0;
+        previousUpdated = 0;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (payload.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(payload.capacity() * 2, payload.position() + bytes));
+            payload.flip();
+            larger.put(payload);
+            payload = larger;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -1,19 +1,15 @@
 package org.klimtsov.console;
 
+import org.klimtsov.validation.UserValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Scanner;
-import java.util.regex.Pattern;
 
 public class ConsoleHelper {
     private static final Logger logger = LoggerFactory.getLogger(ConsoleHelper.class);
     private final Scanner scanner = new Scanner(System.in);
 
-    //Простой regex для проверки email.
-    private static final Pattern EMAIL_PATTERN =
-            Pattern.compile("^[A-Za-z0-9._%+\\-]+@[A-Za-z0-9.\\-]+\\.[A-Za-z]{2,}$");
-
     public String readLine(String prompt) {
         logger.debug("Запрос ввода: prompt='{}'", prompt);
         System.out.print(prompt);
@@ -56,14 +52,14 @@ public class ConsoleHelper {
         }
     }
 
-    //Проверяем, что возраст целое в диапазоне от 0 до 120.
+    //Проверяем, что возраст целое в допустимом диапазоне (UserValidator).
     public int readAge(String prompt) {
         logger.debug("Запрос возраста: prompt='{}'", prompt);
         while (true) {
             String s = readLine(prompt + " (целое 0..120): ");
             try {
                 int v = Integer.parseInt(s.trim());
-                if (v < 0 || v > 120) {
+                if (!UserValidator.isValidAge(v)) {
                     logger.warn("Некорректный возраст: {}", v);
                     System.out.println("Возраст должен быть от 0 до 120. Попробуйте ещё раз.");
                     continue;
@@ -88,7 +84,7 @@ public class ConsoleHelper {
             }
             try {
                 int v = Integer.parseInt(s.trim());
-                if (v < 0 || v > 120) {
+                if (!UserValidator.isValidAge(v)) {
                     logger.warn("Некорректный опциональный возраст: {}", v);
                     System.out.println("Возраст должен быть от 0 до 120. Попробуйте ещё раз.");
                     continue;
@@ -102,7 +98,7 @@ public class ConsoleHelper {
         }
     }
 
-    // Проверяем email на правильный вид.
+    // Проверяем email на правильный вид (UserValidator.isValidEmail).
     public String readEmail(String prompt) {
         logger.debug("Запрос email: prompt='{}'", prompt);
         while (true) {
@@ -112,7 +108,7 @@ public class ConsoleHelper {
                 System.out.println("Email не может быть пустым. Попробуйте ещё раз.");
                 continue;
             }
-            if (!EMAIL_PATTERN.matcher(s).matches()) {
+            if (!UserValidator.isValidEmail(s)) {
                 logger.warn("Некорректный формат email: '{}'", s);
                 System.out.println("Неверный формат email. Пример корректного: user@example.com");
                 continue;
@@ -131,7 +127,7 @@ public class ConsoleHelper {
                 logger.debug("Пользователь оставил email без изменений (пустой ввод)");
                 return null;
             }
-            if (!EMAIL_PATTERN.matcher(s).matches()) {
+            if (!UserValidator.isValidEmail(s)) {
                 logger.warn("Некорректный формат опционального email: '{}'", s);
                 System.out.println("Неверный формат email. Пример корректного: user@example.com");
                 continue;
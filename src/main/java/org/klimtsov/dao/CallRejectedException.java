@@ -0,0 +1,9 @@
+package org.klimtsov.dao;
+
+//Вызов отклонён до обращения к БД (предохранитель, контроль допуска). О доступности БД
+//такой отказ ничего не говорит, поэтому ни сбоем, ни успехом для предохранителя не считается.
+public class CallRejectedException extends DaoException {
+    public CallRejectedException(String message) {
+        super(message, null);
+    }
+}
@@ -0,0 +1,87 @@
+package org.klimtsov.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+//Предохранитель: после failureThreshold сбоев подключения подряд размыкается на openDuration
+//и отклоняет вызовы сразу. Затем пропускает один пробный вызов (HALF_OPEN): успех замыкает цепь,
+//сбой снова размыкает.
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier clock) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("Failure threshold must be positive");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.clock = clock;
+    }
+
+    //Бросает CircuitOpenException, если вызов сейчас не разрешён.
+    public synchronized void acquirePermission() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openNanos) {
+                throw new CircuitOpenException("База данных недоступна, запрос отклонён без ожидания");
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+            logger.info("Предохранитель БД: пробный запрос");
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                throw new CircuitOpenException("База данных недоступна, выполняется пробный запрос");
+            }
+            trialInFlight = true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        if (state != State.CLOSED) {
+            state = State.CLOSED;
+            logger.info("Предохранитель БД замкнут, БД снова доступна");
+        }
+    }
+
+    //Вызов завершился, ничего не сказав о доступности БД: состояние не меняется,
+    //но место пробного вызова освобождается.
+    public synchronized void onIgnored() {
+        trialInFlight = false;
+    }
+
+    public synchronized void onConnectionFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                logger.warn("Предохранитель БД разомкнут после {} сбоев подключения", consecutiveFailures);
+            }
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
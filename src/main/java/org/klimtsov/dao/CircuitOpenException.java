@@ -0,0 +1,8 @@
+package org.klimtsov.dao;
+
+//Вызов отклонён без обращения к БД: предохранитель разомкнут после серии сбоев подключения.
+public class CircuitOpenException extends CallRejectedException {
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,154 @@
+package org.klimtsov.dao;
+
+import org.klimtsov.AppConfig;
+import org.klimtsov.userservice.model.User;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+//Склейка одновременных findById в один findAllByIds (в духе DataLoader). Первый вызов открывает
+//пакет и ждёт window (или пока пакет не наберёт maxBatch id), затем сам выполняет пакетный запрос
+//и раздаёт результаты остальным. Отдельного потока нет: запрос идёт в потоке первого вызова.
+//Вызовы с дедлайном идут напрямую - дедлайн привязан к потоку и в чужой пакет не переносится;
+//вызовы внутри inTransaction сюда не попадают, так как работают с DAO единицы работы.
+public class CoalescingUserDao extends ForwardingUserDao {
+    private final long windowNanos;
+    private final int maxBatch;
+
+    private final Object lock = new Object();
+    //Пакет, в который сейчас собираются id; null - следующий вызов откроет новый.
+    private Batch open;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder coalescedCalls = new LongAdder();
+
+    private static final class Batch {
+        final Set<Long> ids = new LinkedHashSet<>();
+        Map<Long, User> result;
+        RuntimeException failure;
+        boolean done;
+    }
+
+    public CoalescingUserDao(UserDao delegate, Duration window, int maxBatch) {
+        super(delegate);
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("Max batch must be positive");
+        }
+        this.windowNanos = window.toNanos();
+        this.maxBatch = maxBatch;
+    }
+
+    public static CoalescingUserDao from(UserDao delegate, AppConfig config) {
+        return new CoalescingUserDao(delegate,
+                Duration.ofMillis(config.getLong("coalesce.windowMillis", 2)),
+                config.getInt("coalesce.maxBatch", 100));
+    }
+
+    @Override
+    protected <T> T invoke(String operation, boolean idempotent, Supplier<T> call) {
+        return call.get();
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        if (id == null || Deadline.current() != null) {
+            return delegate.findById(id);
+        }
+        Batch batch;
+        boolean leader;
+        synchronized (lock) {
+            leader = open == null;
+            if (leader) {
+                open = new Batch();
+            }
+            batch = open;
+            batch.ids.add(id);
+            if (batch.ids.size() >= maxBatch) {
+                open = null;
+                lock.notifyAll();
+            }
+        }
+        if (leader) {
+            collect(batch);
+            load(batch);
+        } else {
+            coalescedCalls.increment();
+            awaitResult(batch);
+        }
+        if (batch.failure != null) {
+            throw batch.failure;
+        }
+        //Каждый вызов получает свою копию: результат общий для всех, кто просил тот же id.
+        return Optional.ofNullable(batch.result.get(id)).map(CoalescingUserDao::copy);
+    }
+
+    //Ожидание окна сбора; пакет закрывается раньше, если набрал maxBatch id.
+    private void collect(Batch batch) {
+        synchronized (lock) {
+            long deadline = System.nanoTime() + windowNanos;
+            long remaining = windowNanos;
+            while (open == batch && remaining > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = deadline - System.nanoTime();
+            }
+            if (open == batch) {
+                open = null;
+            }
+        }
+    }
+
+    private void load(Batch batch) {
+        Map<Long, User> result = null;
+        RuntimeException failure = null;
+        try {
+            result = delegate.findAllByIds(new ArrayList<>(batch.ids));
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        batches.increment();
+        synchronized (lock) {
+            batch.result = result;
+            batch.failure = failure;
+            batch.done = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void awaitResult(Batch batch) {
+        synchronized (lock) {
+            while (!batch.done) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DaoException("Ожидание пакетного запроса прервано", e);
+                }
+            }
+        }
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    //Вызовы findById, обслуженные чужим пакетным запросом.
+    public long getCoalescedCalls() {
+        return coalescedCalls.sum();
+    }
+
+    private static User copy(User u) {
+        return new User(u.getId(), u.getName(), u.getEmail(), u.getAge(), u.getCreatedAt(), u.getUpdatedAt());
+    }
+}
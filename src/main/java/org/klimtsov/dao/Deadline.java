@@ -0,0 +1,63 @@
+package org.klimtsov.dao;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+//Крайний срок операции, привязанный к потоку: UserDaoImpl превращает остаток времени
+//в таймауты запросов. Вложенный дедлайн не может быть позже внешнего.
+public final class Deadline {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos());
+    }
+
+    //Текущий дедлайн потока или null.
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(deadlineNanos - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    //Бюджет операции в миллисекундах: меньшее из остатка текущего дедлайна и defaultTimeout
+    //(null - без таймаута по умолчанию). 0 - без ограничения, -1 - дедлайн уже истёк.
+    static long budgetMillis(Duration defaultTimeout) {
+        Duration budget = defaultTimeout;
+        Deadline deadline = CURRENT.get();
+        if (deadline != null) {
+            Duration remaining = deadline.remaining();
+            if (remaining.isNegative() || remaining.isZero()) {
+                return -1;
+            }
+            budget = budget == null || remaining.compareTo(budget) < 0 ? remaining : budget;
+        }
+        return budget == null ? 0 : Math.max(1, budget.toMillis());
+    }
+
+    //Выполняет call с этим дедлайном (или с внешним, если он раньше).
+    public <T> T call(Supplier<T> call) {
+        Deadline outer = CURRENT.get();
+        CURRENT.set(outer != null && outer.deadlineNanos - deadlineNanos < 0 ? outer : this);
+        try {
+            return call.get();
+        } finally {
+            if (outer == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(outer);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.klimtsov.dao;
+
+import org.klimtsov.userservice.model.User;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+//Основа для декораторов UserDao: каждый вызов проходит через invoke(), где наследник
+//добавляет свою обвязку. idempotent = true - повтор вызова не меняет данные.
+public abstract class ForwardingUserDao implements UserDao {
+    protected final UserDao delegate;
+
+    protected ForwardingUserDao(UserDao delegate) {
+        this.delegate = delegate;
+    }
+
+    protected abstract <T> T invoke(String operation, boolean idempotent, Supplier<T> call);
+
+    @Override
+    public Long create(User user) {
+        return invoke("create", false, () -> delegate.create(user));
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        return invoke("findById", true, () -> delegate.findById(id));
+    }
+
+    @Override
+    public Map<Long, User> findAllByIds(Collection<Long> ids) {
+        return invoke("findAllByIds", true, () -> delegate.findAllByIds(ids));
+    }
+
+    @Override
+    public List<User> findAll() {
+        return invoke("findAll", true, delegate::findAll);
+    }
+
+    @Override
+    public void update(User user) {
+        invoke("update", false, () -> {
+            delegate.update(user);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean delete(Long id) {
+        return invoke("delete", false, () -> delegate.delete(id));
+    }
+
+    @Override
+    public Optional<User> updateReturningPrevious(User user) {
+        return invoke("updateReturningPrevious", false, () -> delegate.updateReturningPrevious(user));
+    }
+
+    @Override
+    public Optional<User> deleteReturning(Long id) {
+        return invoke("deleteReturning", false, () -> delegate.deleteReturning(id));
+    }
+
+    @Override
+    public List<User> findChangedSince(Instant since, Long afterId, int limit) {
+        return invoke("findChangedSince", true, () -> delegate.findChangedSince(since, afterId, limit));
+    }
+
+    @Override
+    public List<User> findByCreatedAtBetween(Instant from, Instant to, Long afterId, int limit) {
+        return invoke("findByCreatedAtBetween", true, () -> delegate.findByCreatedAtBetween(from, to, afterId, limit));
+    }
+
+    @Override
+    public List<User> findAfterId(Long afterId, int limit) {
+        return invoke("findAfterId", true, () -> delegate.findAfterId(afterId, limit));
+    }
+
+    @Override
+    public boolean existsByEmail(String email) {
+        return invoke("existsByEmail", true, () -> delegate.existsByEmail(email));
+    }
+
+    @Override
+    public UpsertResult upsertByEmail(User user) {
+        return invoke("upsertByEmail", false, () -> delegate.upsertByEmail(user));
+    }
+
+    @Override
+    public List<UpsertResult> upsertAll(List<User> users) {
+        return invoke("upsertAll", false, () -> delegate.upsertAll(users));
+    }
+
+    @Override
+    public int bulkUpdate(UserFilter filter, UserFieldUpdate update) {
+        return invoke("bulkUpdate", false, () -> delegate.bulkUpdate(filter, update));
+    }
+
+    @Override
+    public boolean compareAndSet(Long id, UserFields expected, UserFields updated) {
+        return invoke("compareAndSet", false, () -> delegate.compareAndSet(id, expected, updated));
+    }
+
+    //work получает исходный DAO: операции внутри единицы работы не проходят обвязку повторно.
+    @Override
+    public <T> T inTransaction(boolean readOnly, Function<UserDao, T> work) {
+        return invoke("inTransaction", false, () -> delegate.inTransaction(readOnly, work));
+    }
+}
@@ -0,0 +1,477 @@
+package org.klimtsov.dao;
+
+import org.klimtsov.userservice.model.User;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+//UserDao в памяти для симуляций и замеров сервиса без БД. Строки хранятся неизменяемыми копиями
+//в ConcurrentSkipListMap по id, уникальность email - через индекс email -> id.
+//Запись берёт блокировку полосы (stripe) по email, поэтому записи с разными email идут параллельно;
+//findAll, bulkUpdate и inTransaction берут все полосы по порядку и видят согласованный снимок.
+//Остальные чтения идут без блокировок, пока нет открытой единицы работы; при открытой - ждут её
+//завершения на полосе, чтобы не увидеть незафиксированные изменения (см. read).
+//Событий outbox и таймаутов нет; inTransaction откатывает изменения по журналу отмены.
+public class InMemoryUserDao implements UserDao {
+    private static final int STRIPES = 64;
+
+    private final AtomicLong ids = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, User> rows = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Long> idsByEmail = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    //Открытая в этом потоке единица работы.
+    private final ThreadLocal<Unit> unit = new ThreadLocal<>();
+    //Нечётное - открыта единица работы (одновременно не больше одной: каждая держит все полосы).
+    private final AtomicLong unitEpoch = new AtomicLong();
+
+    private static final class Unit {
+        final boolean readOnly;
+        final Deque<Runnable> undo = new ArrayDeque<>();
+        boolean rollbackOnly;
+
+        Unit(boolean readOnly) {
+            this.readOnly = readOnly;
+        }
+    }
+
+    public InMemoryUserDao() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public Long create(User user) {
+        checkWritable();
+        ReentrantLock lock = stripe(user.getEmail());
+        lock.lock();
+        try {
+            if (user.getEmail() != null && idsByEmail.containsKey(user.getEmail())) {
+                throw failed(new DaoException("Пользователь с таким email уже существует", null));
+            }
+            user.setId(ids.incrementAndGet());
+            stampCreated(user);
+            put(copy(user));
+            Long id = user.getId();
+            recordUndo(() -> remove(id));
+            return id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        return read(() -> Optional.ofNullable(rows.get(id)).map(InMemoryUserDao::copy));
+    }
+
+    @Override
+    public Map<Long, User> findAllByIds(Collection<Long> ids) {
+        return read(() -> {
+            Map<Long, User> found = new LinkedHashMap<>();
+            for (Long id : ids) {
+                User user = id == null ? null : rows.get(id);
+                if (user != null) {
+                    found.putIfAbsent(id, copy(user));
+                }
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public List<User> findAll() {
+        lockAll();
+        try {
+            return copies(rows.values());
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public List<User> findChangedSince(Instant since, Long afterId, int limit) {
+        long after = afterId == null ? 0L : afterId;
+        return scan(u -> u.getUpdatedAt() != null && (u.getUpdatedAt().isAfter(since)
+                        || u.getUpdatedAt().equals(since) && u.getId() > after),
+                Comparator.comparing(User::getUpdatedAt).thenComparing(User::getId), limit);
+    }
+
+    @Override
+    public List<User> findByCreatedAtBetween(Instant from, Instant to, Long afterId, int limit) {
+        return scan(u -> u.getCreatedAt() != null && u.getCreatedAt().isBefore(to)
+                        && (afterId == null ? !u.getCreatedAt().isBefore(from)
+                        : u.getCreatedAt().isAfter(from) || u.getCreatedAt().equals(from) && u.getId() > afterId),
+                Comparator.comparing(User::getCreatedAt).thenComparing(User::getId), limit);
+    }
+
+    @Override
+    public List<User> findAfterId(Long afterId, int limit) {
+        return read(() -> {
+            List<User> page = new ArrayList<>(Math.min(limit, 1024));
+            for (User user : rows.tailMap(afterId == null ? 0L : afterId, false).values()) {
+                if (page.size() == limit) {
+                    break;
+                }
+                page.add(copy(user));
+            }
+            return page;
+        });
+    }
+
+    @Override
+    public boolean existsByEmail(String email) {
+        return email != null && read(() -> idsByEmail.containsKey(email));
+    }
+
+    @Override
+    public UpsertResult upsertByEmail(User user) {
+        return upsertAll(List.of(user)).get(0);
+    }
+
+    //Каждый email обрабатывается под своей полосой; атомарность всего пакета - через inTransaction.
+    @Override
+    public List<UpsertResult> upsertAll(List<User> users) {
+        checkWritable();
+        Map<String, User> byEmail = new LinkedHashMap<>();
+        for (User user : users) {
+            byEmail.put(user.getEmail(), user);
+        }
+        Map<String, UpsertResult> results = new LinkedHashMap<>();
+        for (User user : byEmail.values()) {
+            results.put(user.getEmail(), upsertOne(user));
+        }
+        List<UpsertResult> ordered = new ArrayList<>(users.size());
+        for (User user : users) {
+            UpsertResult result = results.get(user.getEmail());
+            user.setId(result.id());
+            ordered.add(result);
+        }
+        return ordered;
+    }
+
+    private UpsertResult upsertOne(User user) {
+        ReentrantLock lock = stripe(user.getEmail());
+        lock.lock();
+        try {
+            Long existingId = idsByEmail.get(user.getEmail());
+            Instant now = now();
+            user.setUpdatedAt(now);
+            if (existingId == null) {
+                user.setId(ids.incrementAndGet());
+                if (user.getCreatedAt() == null) {
+                    user.setCreatedAt(now);
+                }
+                put(copy(user));
+                Long id = user.getId();
+                recordUndo(() -> remove(id));
+                return new UpsertResult(id, true);
+            }
+            User old = rows.get(existingId);
+            User updated = copy(old);
+            updated.setName(user.getName());
+            updated.setAge(user.getAge());
+            updated.setUpdatedAt(now);
+            rows.put(existingId, updated);
+            recordUndo(() -> rows.put(existingId, old));
+            return new UpsertResult(existingId, false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int bulkUpdate(UserFilter filter, UserFieldUpdate update) {
+        checkWritable();
+        lockAll();
+        try {
+            Instant now = now();
+            int updated = 0;
+            for (User old : rows.values()) {
+                if (filter.matches(old)) {
+                    User changed = copy(old);
+                    if (update.name() != null) {
+                        changed.setName(update.name());
+                    }
+                    if (update.age() != null) {
+                        changed.setAge(update.age());
+                    }
+                    changed.setUpdatedAt(now);
+                    rows.put(old.getId(), changed);
+                    recordUndo(() -> rows.put(old.getId(), old));
+                    updated++;
+                }
+            }
+            return updated;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    @Override
+    public void update(User user) {
+        updateReturningPrevious(user);
+    }
+
+    @Override
+    public Optional<User> updateReturningPrevious(User user) {
+        checkWritable();
+        while (true) {
+            User old = rows.get(user.getId());
+            if (old == null) {
+                return Optional.empty();
+            }
+            //Полосы старого и нового email берутся по возрастанию номера, чтобы не было взаимоблокировок.
+            int a = stripeIndex(old.getEmail());
+            int b = stripeIndex(user.getEmail());
+            stripes[Math.min(a, b)].lock();
+            stripes[Math.max(a, b)].lock();
+            try {
+                if (rows.get(user.getId()) != old) {
+                    continue;
+                }
+                Long owner = user.getEmail() == null ? null : idsByEmail.get(user.getEmail());
+                if (owner != null && !owner.equals(user.getId())) {
+                    throw failed(new DaoException("Пользователь с таким email уже существует", null));
+                }
+                user.setUpdatedAt(now());
+                User updated = copy(user);
+                replace(old, updated);
+                recordUndo(() -> replace(updated, old));
+                return Optional.of(copy(old));
+            } finally {
+                stripes[Math.max(a, b)].unlock();
+                stripes[Math.min(a, b)].unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean compareAndSet(Long id, UserFields expected, UserFields updated) {
+        checkWritable();
+        while (true) {
+            User old = rows.get(id);
+            if (old == null || !expected.matches(old)) {
+                return false;
+            }
+            int a = stripeIndex(old.getEmail());
+            int b = stripeIndex(updated.email());
+            stripes[Math.min(a, b)].lock();
+            stripes[Math.max(a, b)].lock();
+            try {
+                if (rows.get(id) != old) {
+                    continue;
+                }
+                Long owner = updated.email() == null ? null : idsByEmail.get(updated.email());
+                if (owner != null && !owner.equals(id)) {
+                    throw failed(new DaoException("Пользователь с таким email уже существует", null));
+                }
+                User changed = copy(old);
+                updated.applyTo(changed);
+                changed.setUpdatedAt(now());
+                replace(old, changed);
+                recordUndo(() -> replace(changed, old));
+                return true;
+            } finally {
+                stripes[Math.max(a, b)].unlock();
+                stripes[Math.min(a, b)].unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean delete(Long id) {
+        return deleteReturning(id).isPresent();
+    }
+
+    @Override
+    public Optional<User> deleteReturning(Long id) {
+        checkWritable();
+        while (true) {
+            User old = rows.get(id);
+            if (old == null) {
+                return Optional.empty();
+            }
+            ReentrantLock lock = stripe(old.getEmail());
+            lock.lock();
+            try {
+                if (rows.get(id) != old) {
+                    continue;
+                }
+                remove(id);
+                recordUndo(() -> put(old));
+                return Optional.of(copy(old));
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    //Единица работы держит все полосы, а чтения без блокировок на время единицы ждут её завершения
+    //(unitEpoch): другие потоки её промежуточных и откатанных состояний не видят.
+    @Override
+    public <T> T inTransaction(boolean readOnly, Function<UserDao, T> work) {
+        if (unit.get() != null) {
+            return work.apply(this);
+        }
+        Unit current = new Unit(readOnly);
+        lockAll();
+        unit.set(current);
+        unitEpoch.incrementAndGet();
+        try {
+            T result = work.apply(this);
+            if (current.rollbackOnly) {
+                throw new DaoException("Единица работы откатана: одна из операций завершилась ошибкой", null);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            while (!current.undo.isEmpty()) {
+                current.undo.pop().run();
+            }
+            throw e;
+        } finally {
+            unitEpoch.incrementAndGet();
+            unit.remove();
+            unlockAll();
+        }
+    }
+
+    public int size() {
+        return read(rows::size);
+    }
+
+    private List<User> scan(Predicate<User> filter, Comparator<User> order, int limit) {
+        return read(() -> rows.values().stream().filter(filter).sorted(order).limit(limit)
+                .map(InMemoryUserDao::copy).toList());
+    }
+
+    //Чтение без блокировок, если за время чтения не была открыта единица работы; иначе (как в seqlock)
+    //чтение повторяется под полосой, которую единица держит до commit или отката.
+    private <T> T read(Supplier<T> reader) {
+        if (unit.get() != null) {
+            return reader.get();
+        }
+        long epoch = unitEpoch.get();
+        if ((epoch & 1) == 0) {
+            T result = reader.get();
+            if (unitEpoch.get() == epoch) {
+                return result;
+            }
+        }
+        stripes[0].lock();
+        try {
+            return reader.get();
+        } finally {
+            stripes[0].unlock();
+        }
+    }
+
+    private void put(User user) {
+        rows.put(user.getId(), user);
+        if (user.getEmail() != null) {
+            idsByEmail.put(user.getEmail(), user.getId());
+        }
+    }
+
+    //Строка подменяется целиком, поэтому читатели без блокировок видят либо старую, либо новую версию.
+    private void replace(User old, User updated) {
+        rows.put(updated.getId(), updated);
+        if (old.getEmail() != null && !old.getEmail().equals(updated.getEmail())) {
+            idsByEmail.remove(old.getEmail(), old.getId());
+        }
+        if (updated.getEmail() != null) {
+            idsByEmail.put(updated.getEmail(), updated.getId());
+        }
+    }
+
+    private void remove(Long id) {
+        User removed = rows.remove(id);
+        if (removed != null && removed.getEmail() != null) {
+            idsByEmail.remove(removed.getEmail(), id);
+        }
+    }
+
+    private void checkWritable() {
+        Unit current = unit.get();
+        if (current != null && current.readOnly) {
+            throw failed(new DaoException("Запись в единице работы только для чтения", null));
+        }
+    }
+
+    private void recordUndo(Runnable action) {
+        Unit current = unit.get();
+        if (current != null) {
+            current.undo.push(action);
+        }
+    }
+
+    private DaoException failed(DaoException e) {
+        Unit current = unit.get();
+        if (current != null) {
+            current.rollbackOnly = true;
+        }
+        return e;
+    }
+
+    private int stripeIndex(String email) {
+        int h = email == null ? 0 : email.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    private ReentrantLock stripe(String email) {
+        return stripes[stripeIndex(email)];
+    }
+
+    private void lockAll() {
+        for (ReentrantLock lock : stripes) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    private static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
+
+    //Без явного createdAt - время создания, как в upsert.
+    private static void stampCreated(User user) {
+        Instant now = now();
+        user.setUpdatedAt(now);
+        if (user.getCreatedAt() == null) {
+            user.setCreatedAt(now);
+        }
+    }
+
+    private static User copy(User u) {
+        return new User(u.getId(), u.getName(), u.getEmail(), u.getAge(), u.getCreatedAt(), u.getUpdatedAt());
+    }
+
+    private static List<User> copies(Iterable<User> users) {
+        List<User> list = new ArrayList<>();
+        for (User user : users) {
+            list.add(copy(user));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,518 @@
+package org.klimtsov.dao;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jdbc.ReturningWork;
+import org.klimtsov.HibernateUtil;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserChangeType;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+//UserDao на чистом JDBC: подготовленные запросы, пакетная запись outbox и прямое чтение строк
+//без контекста персистентности Hibernate. Соединения берутся из пула SessionFactory,
+//схема - та, что создаёт Hibernate. Поведение (outbox, таймауты, единица работы) как у UserDaoImpl.
+public class JdbcUserDao implements UserDao {
+    private static final Logger logger = LoggerFactory.getLogger(JdbcUserDao.class);
+
+    private static final String COLUMNS = JdbcWork.USER_COLUMNS;
+    private static final String PREVIOUS_COLUMNS =
+            "prev.id, prev.name, prev.email, prev.age, prev.created_at, prev.updated_at";
+    private static final String INSERT_OUTBOX =
+            "INSERT INTO user_outbox (user_id, event_type, occurred_at, name, email, age) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final ConnectionProvider connections;
+    //Таймаут операции, если вызывающий не задал дедлайн; null - без ограничения.
+    private final Duration defaultTimeout;
+    //Задержка горизонта findChangedSince относительно часов БД; null - без задержки.
+    private final Duration changeLag;
+    private final LongAdder queryTimeouts = new LongAdder();
+    //statement_timeout соединений по умолчанию (см. UserDaoFactory.configureConnections); -1 - ещё не прочитан.
+    private volatile long connectionTimeoutMillis = -1;
+    //Соединение открытой в этом потоке единицы работы (inTransaction).
+    private final ThreadLocal<Unit> unit = new ThreadLocal<>();
+
+    private static final class Unit {
+        final Connection connection;
+        boolean rollbackOnly;
+
+        Unit(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    public JdbcUserDao() {
+        this(HibernateUtil.getSessionFactory(), null);
+    }
+
+    public JdbcUserDao(SessionFactory sessionFactory) {
+        this(sessionFactory, null);
+    }
+
+    public JdbcUserDao(SessionFactory sessionFactory, Duration defaultTimeout) {
+        this(sessionFactory, defaultTimeout, null);
+    }
+
+    public JdbcUserDao(SessionFactory sessionFactory, Duration defaultTimeout, Duration changeLag) {
+        this.connections = sessionFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(ConnectionProvider.class);
+        this.defaultTimeout = defaultTimeout;
+        this.changeLag = changeLag;
+    }
+
+    @Override
+    public Long create(User user) {
+        logger.debug("Создание пользователя: email={}", user.getEmail());
+        return execute("создании пользователя", connection -> {
+            Instant now = UserSql.now();
+            //Без явного createdAt - время создания, как в upsert; в секционированной таблице created_at обязателен.
+            if (user.getCreatedAt() == null) {
+                user.setCreatedAt(now);
+            }
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO users (name, email, age, created_at, updated_at) VALUES (?, ?, ?, ?, ?) RETURNING id")) {
+                ps.setString(1, user.getName());
+                ps.setString(2, user.getEmail());
+                ps.setObject(3, user.getAge(), Types.INTEGER);
+                ps.setObject(4, UserSql.utc(user.getCreatedAt()));
+                ps.setObject(5, UserSql.utc(now));
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    user.setId(rs.getLong(1));
+                }
+            }
+            user.setUpdatedAt(now);
+            insertOutbox(connection, List.of(UserOutboxEvent.of(UserChangeType.CREATED, user)));
+            return user.getId();
+        });
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        logger.debug("Поиск пользователя по id: {}", id);
+        return execute("поиске пользователя по id", connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("SELECT " + COLUMNS + " FROM users WHERE id = ?")) {
+                ps.setLong(1, id);
+                List<User> users = readUsers(ps);
+                return users.isEmpty() ? Optional.empty() : Optional.of(users.get(0));
+            }
+        });
+    }
+
+    //Пачки по ID_BATCH_SIZE id, каждая - один запрос с массивом в параметре (id = ANY(?)).
+    @Override
+    public Map<Long, User> findAllByIds(Collection<Long> ids) {
+        List<Long> distinct = UserSql.distinctIds(ids);
+        logger.debug("Поиск пользователей по списку id: {} шт.", distinct.size());
+        if (distinct.isEmpty()) {
+            return Map.of();
+        }
+        return execute("поиске пользователей по списку id", connection -> {
+            Map<Long, User> found = new HashMap<>();
+            try (PreparedStatement ps = connection.prepareStatement("SELECT " + COLUMNS + " FROM users WHERE id = ANY(?)")) {
+                for (int from = 0; from < distinct.size(); from += UserSql.ID_BATCH_SIZE) {
+                    List<Long> chunk = distinct.subList(from, Math.min(from + UserSql.ID_BATCH_SIZE, distinct.size()));
+                    ps.setArray(1, connection.createArrayOf("bigint", chunk.toArray()));
+                    for (User user : readUsers(ps)) {
+                        found.put(user.getId(), user);
+                    }
+                }
+            }
+            return UserSql.inOrder(distinct, found);
+        });
+    }
+
+    @Override
+    public List<User> findAll() {
+        logger.debug("Запрос всех пользователей");
+        return execute("получении списка пользователей", connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("SELECT " + COLUMNS + " FROM users ORDER BY id")) {
+                return readUsers(ps);
+            }
+        });
+    }
+
+    @Override
+    public List<User> findChangedSince(Instant since, Long afterId, int limit) {
+        logger.debug("Запрос изменений пользователей: since={}, afterId={}, limit={}", since, afterId, limit);
+        return execute("запросе изменений пользователей", connection -> {
+            boolean lagged = UserSql.hasChangeLag(changeLag);
+            try (PreparedStatement ps = connection.prepareStatement("SELECT " + COLUMNS + " FROM users "
+                    + "WHERE (updated_at > ? OR (updated_at = ? AND id > ?))"
+                    + (lagged ? " AND " + UserSql.changeHorizon("?") : "") + " ORDER BY updated_at, id LIMIT ?")) {
+                int p = 1;
+                ps.setObject(p++, UserSql.utc(since));
+                ps.setObject(p++, UserSql.utc(since));
+                ps.setLong(p++, afterId == null ? 0L : afterId);
+                if (lagged) {
+                    ps.setLong(p++, changeLag.toMillis());
+                }
+                ps.setInt(p, limit);
+                return readUsers(ps);
+            }
+        });
+    }
+
+    @Override
+    public List<User> findByCreatedAtBetween(Instant from, Instant to, Long afterId, int limit) {
+        logger.debug("Запрос пользователей по дате создания: from={}, to={}, afterId={}, limit={}", from, to, afterId, limit);
+        return execute("запросе пользователей по дате создания", connection -> {
+            String lowerBound = afterId == null
+                    ? "created_at >= ?"
+                    : "(created_at > ? OR (created_at = ? AND id > ?))";
+            try (PreparedStatement ps = connection.prepareStatement("SELECT " + COLUMNS + " FROM users WHERE "
+                    + lowerBound + " AND created_at < ? ORDER BY created_at, id LIMIT ?")) {
+                int p = 1;
+                ps.setObject(p++, UserSql.utc(from));
+                if (afterId != null) {
+                    ps.setObject(p++, UserSql.utc(from));
+                    ps.setLong(p++, afterId);
+                }
+                ps.setObject(p++, UserSql.utc(to));
+                ps.setInt(p, limit);
+                return readUsers(ps);
+            }
+        });
+    }
+
+    @Override
+    public List<User> findAfterId(Long afterId, int limit) {
+        logger.debug("Запрос страницы пользователей: afterId={}, limit={}", afterId, limit);
+        return execute("запросе страницы пользователей", connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT " + COLUMNS + " FROM users WHERE id > ? ORDER BY id LIMIT ?")) {
+                ps.setLong(1, afterId == null ? 0L : afterId);
+                ps.setInt(2, limit);
+                return readUsers(ps);
+            }
+        });
+    }
+
+    @Override
+    public boolean existsByEmail(String email) {
+        logger.debug("Проверка существования email: {}", email);
+        return execute("проверке email", connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("SELECT 1 FROM users WHERE email = ? LIMIT 1")) {
+                ps.setString(1, email);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        });
+    }
+
+    @Override
+    public UpsertResult upsertByEmail(User user) {
+        return upsertAll(List.of(user)).get(0);
+    }
+
+    @Override
+    public List<UpsertResult> upsertAll(List<User> users) {
+        logger.debug("Upsert пользователей по email: {}", users.size());
+        //Последнее вхождение email в пакете побеждает: ON CONFLICT не может обновить строку дважды.
+        Map<String, User> byEmail = new LinkedHashMap<>();
+        for (User user : users) {
+            byEmail.put(user.getEmail(), user);
+        }
+        List<User> distinct = new ArrayList<>(byEmail.values());
+        Map<String, UpsertResult> results = execute("upsert пользователей", connection -> {
+            Map<String, UpsertResult> upserted = new HashMap<>();
+            for (int from = 0; from < distinct.size(); from += UserSql.UPSERT_BATCH_SIZE) {
+                upserted.putAll(UserSql.upsertChunk(connection,
+                        distinct.subList(from, Math.min(from + UserSql.UPSERT_BATCH_SIZE, distinct.size()))));
+            }
+            List<UserOutboxEvent> events = new ArrayList<>(distinct.size());
+            for (User user : distinct) {
+                UpsertResult result = upserted.get(user.getEmail());
+                user.setId(result.id());
+                events.add(UserOutboxEvent.of(result.inserted() ? UserChangeType.CREATED : UserChangeType.UPDATED, user));
+            }
+            insertOutbox(connection, events);
+            return upserted;
+        });
+        List<UpsertResult> ordered = new ArrayList<>(users.size());
+        for (User user : users) {
+            UpsertResult result = results.get(user.getEmail());
+            user.setId(result.id());
+            ordered.add(result);
+        }
+        return ordered;
+    }
+
+    @Override
+    public int bulkUpdate(UserFilter filter, UserFieldUpdate update) {
+        logger.debug("Массовое обновление пользователей: filter={}, update={}", filter, update);
+        return execute("массовом обновлении пользователей", connection -> UserSql.bulkUpdate(connection, filter, update));
+    }
+
+    @Override
+    public boolean compareAndSet(Long id, UserFields expected, UserFields updated) {
+        logger.debug("Условное обновление пользователя: id={}", id);
+        return execute("условном обновлении пользователя",
+                connection -> UserSql.compareAndSet(connection, id, expected, updated) > 0);
+    }
+
+    @Override
+    public void update(User user) {
+        updateReturningPrevious(user);
+    }
+
+    //Прежнее состояние читает сам UPDATE: подзапрос берёт строку FOR UPDATE, RETURNING отдаёт её значения.
+    @Override
+    public Optional<User> updateReturningPrevious(User user) {
+        logger.debug("Обновление пользователя: id={}, email={}", user.getId(), user.getEmail());
+        return execute("обновлении пользователя", connection -> {
+            Instant now = UserSql.now();
+            List<User> previous;
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "UPDATE users u SET name = ?, email = ?, age = ?, created_at = ?, updated_at = ? "
+                            + "FROM (SELECT " + COLUMNS + " FROM users WHERE id = ? FOR UPDATE) prev "
+                            + "WHERE u.id = prev.id RETURNING " + PREVIOUS_COLUMNS)) {
+                ps.setString(1, user.getName());
+                ps.setString(2, user.getEmail());
+                ps.setObject(3, user.getAge(), Types.INTEGER);
+                ps.setObject(4, UserSql.utc(user.getCreatedAt()));
+                ps.setObject(5, UserSql.utc(now));
+                ps.setLong(6, user.getId());
+                previous = readUsers(ps);
+            }
+            if (previous.isEmpty()) {
+                logger.warn("Попытка обновления несуществующего пользователя: id={}", user.getId());
+                return Optional.empty();
+            }
+            user.setUpdatedAt(now);
+            insertOutbox(connection, List.of(UserOutboxEvent.of(UserChangeType.UPDATED, user)));
+            return Optional.of(previous.get(0));
+        });
+    }
+
+    @Override
+    public boolean delete(Long id) {
+        return deleteReturning(id).isPresent();
+    }
+
+    @Override
+    public Optional<User> deleteReturning(Long id) {
+        logger.debug("Удаление пользователя: id={}", id);
+        return execute("удалении пользователя", connection -> {
+            User deleted = null;
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "DELETE FROM users WHERE id = ? RETURNING " + COLUMNS)) {
+                ps.setLong(1, id);
+                List<User> users = readUsers(ps);
+                if (!users.isEmpty()) {
+                    deleted = users.get(0);
+                }
+            }
+            if (deleted == null) {
+                logger.warn("Попытка удаления несуществующего пользователя: id={}", id);
+                return Optional.empty();
+            }
+            insertOutbox(connection, List.of(UserOutboxEvent.of(UserChangeType.DELETED, deleted)));
+            return Optional.of(deleted);
+        });
+    }
+
+    @Override
+    public <T> T inTransaction(boolean readOnly, Function<UserDao, T> work) {
+        if (unit.get() != null) {
+            return work.apply(this);
+        }
+        logger.debug("Начало единицы работы: readOnly={}", readOnly);
+        long timeoutMillis = timeoutMillis("выполнении единицы работы");
+        Connection connection = null;
+        try {
+            connection = begin(timeoutMillis);
+            if (readOnly) {
+                try (Statement st = connection.createStatement()) {
+                    st.execute("SET TRANSACTION READ ONLY");
+                }
+            }
+            Unit current = new Unit(connection);
+            unit.set(current);
+            T result;
+            try {
+                result = work.apply(this);
+            } finally {
+                unit.remove();
+            }
+            if (current.rollbackOnly) {
+                throw new DaoException("Единица работы откатана: одна из операций завершилась ошибкой", null);
+            }
+            connection.commit();
+            logger.debug("Единица работы завершена");
+            return result;
+        } catch (SQLException e) {
+            rollback(connection);
+            throw translate("выполнении единицы работы", e);
+        } catch (RuntimeException e) {
+            rollback(connection);
+            throw e;
+        } finally {
+            release(connection);
+        }
+    }
+
+    //Число операций, прерванных по таймауту или дедлайну.
+    public long getQueryTimeouts() {
+        return queryTimeouts.sum();
+    }
+
+    //Одна операция: в своей транзакции или внутри открытой единицы работы.
+    private <T> T execute(String action, ReturningWork<T> work) {
+        long timeoutMillis = timeoutMillis(action);
+        Unit current = unit.get();
+        if (current != null) {
+            try {
+                //Предыдущая операция единицы могла оставить более жёсткий таймаут: ставим всегда.
+                UserSql.applyStatementTimeout(current.connection, timeoutMillis, 0);
+                return work.execute(current.connection);
+            } catch (SQLException e) {
+                current.rollbackOnly = true;
+                throw translate(action, e);
+            }
+        }
+        Connection connection = null;
+        try {
+            connection = begin(timeoutMillis);
+            T result = work.execute(connection);
+            connection.commit();
+            return result;
+        } catch (SQLException e) {
+            rollback(connection);
+            throw translate(action, e);
+        } catch (RuntimeException e) {
+            rollback(connection);
+            throw e;
+        } finally {
+            release(connection);
+        }
+    }
+
+    private Connection begin(long timeoutMillis) throws SQLException {
+        Connection connection = connections.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            if (timeoutMillis > 0) {
+                UserSql.applyStatementTimeout(connection, timeoutMillis, connectionTimeoutMillis(connection));
+            }
+            return connection;
+        } catch (SQLException e) {
+            rollback(connection);
+            release(connection);
+            throw e;
+        }
+    }
+
+    //Таймаут по умолчанию соединение получает при открытии, SET LOCAL - только для дедлайна, как в UserDaoImpl.
+    private long connectionTimeoutMillis(Connection connection) throws SQLException {
+        long known = connectionTimeoutMillis;
+        if (known < 0) {
+            known = UserSql.connectionStatementTimeout(connection);
+            connectionTimeoutMillis = known;
+        }
+        return known;
+    }
+
+    private long timeoutMillis(String action) {
+        long millis = Deadline.budgetMillis(defaultTimeout);
+        if (millis < 0) {
+            queryTimeouts.increment();
+            throw new QueryTimeoutDaoException("Дедлайн истёк до обращения к БД при " + action, null);
+        }
+        return millis;
+    }
+
+    private DaoException translate(String action, SQLException e) {
+        String state = e.getSQLState() == null ? "" : e.getSQLState();
+        if (state.equals("23505")) {
+            logger.warn("Нарушение ограничения при {}: {}", action, e.getMessage());
+            return new DaoException("Пользователь с таким email уже существует", e);
+        }
+        if (state.equals("57014")) {
+            queryTimeouts.increment();
+            logger.warn("Превышено время ожидания БД при {}: {}", action, e.getMessage());
+            return new QueryTimeoutDaoException("Превышено время ожидания ответа БД при " + action, e);
+        }
+        if (state.equals(UserSql.NO_CONFLICT_CONSTRAINT)) {
+            logger.warn("Отклонён upsert при {}: {}", action, e.getMessage());
+            return new DaoException(UserSql.UPSERT_UNAVAILABLE, e);
+        }
+        if (state.startsWith("42")) {
+            logger.error("Ошибка SQL при {}: {}", action, e.getMessage(), e);
+            return new DaoException("Внутренняя ошибка запроса к БД", e);
+        }
+        if (state.startsWith("08")) {
+            logger.error("Проблема подключения к БД при {}: {}", action, e.getMessage(), e);
+            return new DaoException("Не удалось подключиться к базе данных при " + action + ".", e);
+        }
+        logger.error("Ошибка БД при {}: {}", action, e.getMessage(), e);
+        return new DaoException("Ошибка БД при " + action, e);
+    }
+
+    private static List<User> readUsers(PreparedStatement ps) throws SQLException {
+        List<User> users = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                users.add(JdbcWork.readUser(rs));
+            }
+        }
+        return users;
+    }
+
+    //Пакетная вставка событий outbox одним executeBatch.
+    private static void insertOutbox(Connection connection, List<UserOutboxEvent> events) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_OUTBOX)) {
+            for (UserOutboxEvent event : events) {
+                ps.setLong(1, event.getUserId());
+                ps.setString(2, event.getType().name());
+                ps.setObject(3, UserSql.utc(event.getOccurredAt()));
+                ps.setString(4, event.getName());
+                ps.setString(5, event.getEmail());
+                ps.setObject(6, event.getAge(), Types.INTEGER);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void rollback(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.rollback();
+            } catch (SQLException ex) {
+                logger.error("Ошибка при откате транзакции: {}", ex.getMessage(), ex);
+            }
+        }
+    }
+
+    private void release(Connection connection) {
+        if (connection != null) {
+            try {
+                connections.closeConnection(connection);
+            } catch (SQLException ex) {
+                logger.error("Ошибка при возврате соединения: {}", ex.getMessage(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.klimtsov.dao;
+
+import jakarta.persistence.PersistenceException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.ReturningWork;
+import org.klimtsov.userservice.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+
+//Общее для служебных задач на JDBC-соединении сессии Hibernate (миграции, резервные копии, счётчики,
+//полные проходы, поиск дублей): одна транзакция с откатом при любой ошибке и чтение строки users.
+public final class JdbcWork {
+    private static final Logger logger = LoggerFactory.getLogger(JdbcWork.class);
+
+    //Столбцы users в порядке, который читает readUser.
+    public static final String USER_COLUMNS = "id, name, email, age, created_at, updated_at";
+
+    private JdbcWork() {
+    }
+
+    //Выполняет work в своей сессии и транзакции; ошибка БД - DaoException "Ошибка БД при <action>".
+    public static <T> T inTransaction(SessionFactory sessionFactory, ReturningWork<T> work, String action) {
+        Transaction transaction = null;
+        try (Session session = sessionFactory.openSession()) {
+            transaction = session.beginTransaction();
+            T result = session.doReturningWork(work);
+            transaction.commit();
+            return result;
+        } catch (PersistenceException e) {
+            safeRollback(transaction);
+            logger.error("Ошибка БД при {}: {}", action, e.getMessage(), e);
+            throw new DaoException("Ошибка БД при " + action, e);
+        } catch (RuntimeException e) {
+            safeRollback(transaction);
+            throw e;
+        }
+    }
+
+    //Пользователь из текущей строки результата со столбцами USER_COLUMNS.
+    public static User readUser(ResultSet rs) throws SQLException {
+        return new User(
+                rs.getLong(1),
+                rs.getString(2),
+                rs.getString(3),
+                rs.getObject(4, Integer.class),
+                toInstant(rs.getObject(5, OffsetDateTime.class)),
+                toInstant(rs.getObject(6, OffsetDateTime.class)));
+    }
+
+    private static Instant toInstant(OffsetDateTime value) {
+        return value == null ? null : value.toInstant();
+    }
+
+    private static void safeRollback(Transaction transaction) {
+        if (transaction != null) {
+            try {
+                transaction.rollback();
+            } catch (Exception ex) {
+                logger.error("Ошибка при откате транзакции: {}", ex.getMessage(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.klimtsov.dao;
+
+import jakarta.transaction.Synchronization;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionDelegatorBaseImpl;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.resource.transaction.spi.TransactionStatus;
+
+//Сессия единицы работы, отдаваемая отдельной операции DAO: close() не закрывает общую сессию,
+//а транзакция участвует во внешней - commit ничего не делает, rollback помечает её к откату.
+//Сырой createNativeQuery(String, Class) наследуется от SessionDelegatorBaseImpl; типизированное переопределение - конфликт стирания.
+@SuppressWarnings("unchecked")
+class JoinedSession extends SessionDelegatorBaseImpl {
+    private final Transaction transaction;
+
+    JoinedSession(Session session) {
+        super(session.unwrap(SessionImplementor.class));
+        this.transaction = new JoinedTransaction(session.getTransaction());
+    }
+
+    @Override
+    public Transaction beginTransaction() {
+        return transaction;
+    }
+
+    @Override
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    @Override
+    public void close() {
+        //Сессию закрывает владелец единицы работы.
+    }
+
+    private static final class JoinedTransaction implements Transaction {
+        private final Transaction outer;
+
+        JoinedTransaction(Transaction outer) {
+            this.outer = outer;
+        }
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public void rollback() {
+            outer.markRollbackOnly();
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            outer.markRollbackOnly();
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return outer.getRollbackOnly();
+        }
+
+        @Override
+        public boolean isActive() {
+            return outer.isActive();
+        }
+
+        @Override
+        public TransactionStatus getStatus() {
+            return outer.getStatus();
+        }
+
+        @Override
+        public void registerSynchronization(Synchronization synchronization) {
+            outer.registerSynchronization(synchronization);
+        }
+
+        @Override
+        public void setTimeout(int seconds) {
+        }
+
+        @Override
+        public int getTimeout() {
+            return outer.getTimeout();
+        }
+    }
+}
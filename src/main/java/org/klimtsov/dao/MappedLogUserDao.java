@@ -0,0 +1,857 @@
+package org.klimtsov.dao;
+
+import org.klimtsov.AppConfig;
+import org.klimtsov.userservice.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+//UserDao на локальном файле для установок без PostgreSQL. Файл - журнал только на дозапись,
+//отображённый в память целиком: заголовок (MAGIC, VERSION, нижняя граница id), затем записи
+//[длина тела][CRC32 тела][тело]. Тело - тип и поля: PUT (строка пользователя целиком), DELETE (id),
+//BEGIN/COMMIT/ABORT вокруг записей одной единицы работы.
+//В памяти только индекс id -> смещение последней записи и email -> id; строки читаются из журнала.
+//Запись идёт под блокировкой записи, чтение - под блокировкой чтения. fsync групповой: поток ждёт
+//долговечности уже после снятия блокировки, и один вызов force() покрывает записи всех ожидающих.
+//При доле мусора (перезаписанные и удалённые строки) выше порога журнал сжимается в новый файл.
+//Восстановление при открытии - один проход по журналу с проверкой CRC; хвост после первой
+//битой записи и незавершённые единицы работы отбрасываются. Событий outbox и таймаутов нет.
+public class MappedLogUserDao implements UserDao, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MappedLogUserDao.class);
+
+    private static final int MAGIC = 0x55534C47;
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    private static final int FRAME = 8;
+    private static final int INITIAL_CAPACITY = 1 << 20;
+    //Файл отображается одним MappedByteBuffer, поэтому журнал ограничен 1 ГБ.
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte BEGIN = 3;
+    private static final byte COMMIT = 4;
+    private static final byte ABORT = 5;
+
+    private static final long NULL_TIME = Long.MIN_VALUE;
+    private static final int NULL_AGE = Integer.MIN_VALUE;
+
+    private final Path file;
+    private final boolean fsync;
+    private final int compactGarbagePercent;
+    private final long compactMinBytes;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+    private int writePosition;
+    private long ids;
+    private long liveBytes;
+    private final TreeMap<Long, Integer> offsets = new TreeMap<>();
+    private final Map<String, Long> idsByEmail = new HashMap<>();
+    //Открытая в этом потоке единица работы.
+    private final ThreadLocal<Unit> unit = new ThreadLocal<>();
+
+    //Групповой fsync: счётчики байт, дописанных в журнал и уже сброшенных на диск.
+    private final Object syncMonitor = new Object();
+    private volatile long appendedBytes;
+    private long durableBytes;
+    private boolean syncing;
+
+    private final LongAdder durableWrites = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    private static final class Unit {
+        final boolean readOnly;
+        final Deque<Runnable> undo = new ArrayDeque<>();
+        boolean begun;
+        boolean rollbackOnly;
+
+        Unit(boolean readOnly) {
+            this.readOnly = readOnly;
+        }
+    }
+
+    public MappedLogUserDao(Path file, boolean fsync, int compactGarbagePercent, long compactMinBytes) {
+        this.file = file;
+        this.fsync = fsync;
+        this.compactGarbagePercent = compactGarbagePercent;
+        this.compactMinBytes = compactMinBytes;
+        try {
+            open();
+        } catch (IOException e) {
+            logger.error("Ошибка открытия журнала пользователей {}: {}", file, e.getMessage(), e);
+            throw new DaoException("Ошибка открытия журнала пользователей", e);
+        }
+    }
+
+    public static MappedLogUserDao from(AppConfig config) {
+        return new MappedLogUserDao(
+                Path.of(config.getString("filedao.path", "data/users.log")),
+                config.getBoolean("filedao.fsync", true),
+                config.getInt("filedao.compactGarbagePercent", 50),
+                config.getLong("filedao.compactMinBytes", 4L << 20));
+    }
+
+    private void open() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        //Остаток прерванного сжатия: исходный журнал при этом не тронут.
+        Files.deleteIfExists(compactFile());
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size == 0) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_CAPACITY);
+            writeHeader(buffer, 0);
+            buffer.force();
+            writePosition = HEADER;
+            logger.info("Создан журнал пользователей {}", file);
+            return;
+        }
+        if (size < HEADER || size > MAX_CAPACITY) {
+            throw new IOException("Файл " + file + " не является журналом пользователей");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Файл " + file + " не является журналом пользователей");
+        }
+        long started = System.nanoTime();
+        int records = replay();
+        logger.info("Журнал пользователей {} восстановлен: записей {}, пользователей {}, за {} мс",
+                file, records, offsets.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    //Проход по журналу: индекс строится по PUT/DELETE, записи единицы работы применяются только по COMMIT.
+    private int replay() {
+        ids = buffer.getLong(8);
+        int position = HEADER;
+        int records = 0;
+        List<int[]> pending = null;
+        scan:
+        while (position + FRAME <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + FRAME + length > buffer.capacity()) {
+                break;
+            }
+            ByteBuffer body = buffer.slice(position + FRAME, length);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                logger.warn("Повреждённая запись журнала на смещении {}, хвост отброшен", position);
+                break;
+            }
+            byte type = body.get(0);
+            switch (type) {
+                case PUT, DELETE -> {
+                    long id = body.getLong(1);
+                    ids = Math.max(ids, id);
+                    int[] op = {type, position};
+                    if (pending != null) {
+                        pending.add(op);
+                    } else {
+                        apply(op);
+                    }
+                }
+                case BEGIN -> pending = new ArrayList<>();
+                case COMMIT -> {
+                    if (pending != null) {
+                        pending.forEach(this::apply);
+                    }
+                    pending = null;
+                }
+                case ABORT -> pending = null;
+                default -> {
+                    logger.warn("Неизвестный тип записи журнала {} на смещении {}, хвост отброшен", type, position);
+                    break scan;
+                }
+            }
+            position += FRAME + length;
+            records++;
+        }
+        writePosition = position;
+        //Хвост после последней целой записи обнуляется, чтобы следующие записи не склеились с мусором.
+        for (int i = writePosition; i < buffer.capacity(); i += Long.BYTES) {
+            if (i + Long.BYTES > buffer.capacity()) {
+                buffer.put(i, new byte[buffer.capacity() - i]);
+            } else if (buffer.getLong(i) != 0) {
+                buffer.putLong(i, 0);
+            }
+        }
+        if (pending != null) {
+            appendMarker(ABORT);
+        }
+        appendedBytes = writePosition;
+        durableBytes = writePosition;
+        return records;
+    }
+
+    private void apply(int[] op) {
+        long id = buffer.getLong(op[1] + FRAME + 1);
+        index(id, op[0] == PUT ? op[1] : null);
+    }
+
+    @Override
+    public Long create(User user) {
+        return write(() -> {
+            checkWritable();
+            if (user.getEmail() != null && idsByEmail.containsKey(user.getEmail())) {
+                throw failed(new DaoException("Пользователь с таким email уже существует", null));
+            }
+            user.setId(++ids);
+            Instant now = now();
+            user.setUpdatedAt(now);
+            //Без явного createdAt - время создания, как в upsert.
+            if (user.getCreatedAt() == null) {
+                user.setCreatedAt(now);
+            }
+            put(user);
+            return user.getId();
+        });
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        return read(() -> Optional.ofNullable(offsets.get(id)).map(this::readUser));
+    }
+
+    @Override
+    public Map<Long, User> findAllByIds(Collection<Long> ids) {
+        return read(() -> {
+            Map<Long, User> found = new LinkedHashMap<>();
+            for (Long id : ids) {
+                Integer offset = id == null ? null : offsets.get(id);
+                if (offset != null && !found.containsKey(id)) {
+                    found.put(id, readUser(offset));
+                }
+            }
+            return found;
+        });
+    }
+
+    @Override
+    public List<User> findAll() {
+        return read(() -> {
+            List<User> users = new ArrayList<>(offsets.size());
+            for (int offset : offsets.values()) {
+                users.add(readUser(offset));
+            }
+            return users;
+        });
+    }
+
+    @Override
+    public List<User> findChangedSince(Instant since, Long afterId, int limit) {
+        long after = afterId == null ? 0L : afterId;
+        return scan(u -> u.getUpdatedAt() != null && (u.getUpdatedAt().isAfter(since)
+                        || u.getUpdatedAt().equals(since) && u.getId() > after),
+                Comparator.comparing(User::getUpdatedAt).thenComparing(User::getId), limit);
+    }
+
+    @Override
+    public List<User> findByCreatedAtBetween(Instant from, Instant to, Long afterId, int limit) {
+        return scan(u -> u.getCreatedAt() != null && u.getCreatedAt().isBefore(to)
+                        && (afterId == null ? !u.getCreatedAt().isBefore(from)
+                        : u.getCreatedAt().isAfter(from) || u.getCreatedAt().equals(from) && u.getId() > afterId),
+                Comparator.comparing(User::getCreatedAt).thenComparing(User::getId), limit);
+    }
+
+    @Override
+    public List<User> findAfterId(Long afterId, int limit) {
+        return read(() -> {
+            List<User> page = new ArrayList<>(Math.min(limit, 1024));
+            for (int offset : offsets.tailMap(afterId == null ? 0L : afterId, false).values()) {
+                if (page.size() == limit) {
+                    break;
+                }
+                page.add(readUser(offset));
+            }
+            return page;
+        });
+    }
+
+    @Override
+    public boolean existsByEmail(String email) {
+        return email != null && read(() -> idsByEmail.containsKey(email));
+    }
+
+    @Override
+    public UpsertResult upsertByEmail(User user) {
+        return upsertAll(List.of(user)).get(0);
+    }
+
+    @Override
+    public List<UpsertResult> upsertAll(List<User> users) {
+        return inTransaction(false, dao -> {
+            checkWritable();
+            Map<String, User> byEmail = new LinkedHashMap<>();
+            for (User user : users) {
+                byEmail.put(user.getEmail(), user);
+            }
+            Map<String, UpsertResult> results = new LinkedHashMap<>();
+            Instant now = now();
+            for (User user : byEmail.values()) {
+                Long existingId = idsByEmail.get(user.getEmail());
+                User stored;
+                if (existingId == null) {
+                    stored = new User(++ids, user.getName(), user.getEmail(), user.getAge(),
+                            user.getCreatedAt() == null ? now : user.getCreatedAt(), now);
+                } else {
+                    stored = readUser(offsets.get(existingId));
+                    stored.setName(user.getName());
+                    stored.setAge(user.getAge());
+                    stored.setUpdatedAt(now);
+                }
+                put(stored);
+                results.put(user.getEmail(), new UpsertResult(stored.getId(), existingId == null));
+            }
+            List<UpsertResult> ordered = new ArrayList<>(users.size());
+            for (User user : users) {
+                UpsertResult result = results.get(user.getEmail());
+                user.setId(result.id());
+                ordered.add(result);
+            }
+            return ordered;
+        });
+    }
+
+    @Override
+    public int bulkUpdate(UserFilter filter, UserFieldUpdate update) {
+        return inTransaction(false, dao -> {
+            checkWritable();
+            Instant now = now();
+            int updated = 0;
+            for (int offset : new ArrayList<>(offsets.values())) {
+                User user = readUser(offset);
+                if (filter.matches(user)) {
+                    if (update.name() != null) {
+                        user.setName(update.name());
+                    }
+                    if (update.age() != null) {
+                        user.setAge(update.age());
+                    }
+                    user.setUpdatedAt(now);
+                    put(user);
+                    updated++;
+                }
+            }
+            return updated;
+        });
+    }
+
+    @Override
+    public void update(User user) {
+        updateReturningPrevious(user);
+    }
+
+    @Override
+    public Optional<User> updateReturningPrevious(User user) {
+        return write(() -> {
+            checkWritable();
+            Integer offset = offsets.get(user.getId());
+            if (offset == null) {
+                return Optional.empty();
+            }
+            Long owner = user.getEmail() == null ? null : idsByEmail.get(user.getEmail());
+            if (owner != null && !owner.equals(user.getId())) {
+                throw failed(new DaoException("Пользователь с таким email уже существует", null));
+            }
+            User previous = readUser(offset);
+            user.setUpdatedAt(now());
+            put(user);
+            return Optional.of(previous);
+        });
+    }
+
+    @Override
+    public boolean compareAndSet(Long id, UserFields expected, UserFields updated) {
+        return write(() -> {
+            checkWritable();
+            Integer offset = offsets.get(id);
+            if (offset == null) {
+                return false;
+            }
+            User current = readUser(offset);
+            if (!expected.matches(current)) {
+                return false;
+            }
+            Long owner = updated.email() == null ? null : idsByEmail.get(updated.email());
+            if (owner != null && !owner.equals(id)) {
+                throw failed(new DaoException("Пользователь с таким email уже существует", null));
+            }
+            updated.applyTo(current);
+            current.setUpdatedAt(now());
+            put(current);
+            return true;
+        });
+    }
+
+    @Override
+    public boolean delete(Long id) {
+        return deleteReturning(id).isPresent();
+    }
+
+    @Override
+    public Optional<User> deleteReturning(Long id) {
+        return write(() -> {
+            checkWritable();
+            Integer offset = offsets.get(id);
+            if (offset == null) {
+                return Optional.empty();
+            }
+            User previous = readUser(offset);
+            begin();
+            append(ByteBuffer.allocate(9).put(DELETE).putLong(id).array());
+            Integer old = index(id, null);
+            recordUndo(() -> index(id, old));
+            return Optional.of(previous);
+        });
+    }
+
+    //Единица работы держит блокировку записи (для чтения - блокировку чтения) до конца;
+    //её записи обрамляются BEGIN/COMMIT, при ошибке индекс откатывается, а в журнал пишется ABORT.
+    @Override
+    public <T> T inTransaction(boolean readOnly, Function<UserDao, T> work) {
+        if (unit.get() != null) {
+            return work.apply(this);
+        }
+        Unit current = new Unit(readOnly);
+        ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
+        ReentrantReadWriteLock.WriteLock writeLock = lock.writeLock();
+        long end;
+        T result;
+        if (readOnly) {
+            readLock.lock();
+        } else {
+            writeLock.lock();
+        }
+        try {
+            unit.set(current);
+            try {
+                result = work.apply(this);
+                if (current.rollbackOnly) {
+                    throw new DaoException("Единица работы откатана: одна из операций завершилась ошибкой", null);
+                }
+                if (current.begun) {
+                    appendMarker(COMMIT);
+                }
+            } catch (RuntimeException e) {
+                rollback(current);
+                throw e;
+            } finally {
+                unit.remove();
+            }
+            if (!readOnly) {
+                maybeCompact();
+            }
+            end = appendedBytes;
+        } finally {
+            if (readOnly) {
+                readLock.unlock();
+            } else {
+                writeLock.unlock();
+            }
+        }
+        if (current.begun) {
+            awaitDurable(end);
+        }
+        return result;
+    }
+
+    private void rollback(Unit current) {
+        while (!current.undo.isEmpty()) {
+            current.undo.pop().run();
+        }
+        if (current.begun) {
+            try {
+                appendMarker(ABORT);
+            } catch (RuntimeException e) {
+                //Без ABORT незавершённая единица всё равно отбрасывается при восстановлении.
+                logger.error("Не удалось записать ABORT в журнал: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    //Сжатие: живые записи копируются в новый файл, который атомарно заменяет журнал.
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            if (unit.get() != null) {
+                throw new IllegalStateException("Compaction is not allowed inside a unit of work");
+            }
+            compactLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void maybeCompact() {
+        long garbage = writePosition - HEADER - liveBytes;
+        if (garbage >= compactMinBytes && garbage * 100 >= (long) (writePosition - HEADER) * compactGarbagePercent) {
+            compactLocked();
+        }
+    }
+
+    private void compactLocked() {
+        int before = writePosition;
+        Path tmp = compactFile();
+        try {
+            TreeMap<Long, Integer> moved = new TreeMap<>();
+            int position = HEADER;
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer target = out.map(FileChannel.MapMode.READ_WRITE, 0, capacityFor(HEADER + liveBytes));
+                writeHeader(target, ids);
+                for (Map.Entry<Long, Integer> entry : offsets.entrySet()) {
+                    int size = recordSize(entry.getValue());
+                    target.put(position, buffer, entry.getValue(), size);
+                    moved.put(entry.getKey(), position);
+                    position += size;
+                }
+                target.force();
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.close();
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            offsets.putAll(moved);
+            writePosition = position;
+            synchronized (syncMonitor) {
+                durableBytes = appendedBytes;
+            }
+            compactions.increment();
+            logger.info("Журнал пользователей сжат: {} -> {} байт", before, position);
+        } catch (IOException e) {
+            logger.error("Ошибка сжатия журнала пользователей: {}", e.getMessage(), e);
+            throw new DaoException("Ошибка сжатия журнала пользователей", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            channel.close();
+            logger.info("Журнал пользователей {} закрыт", file);
+        } catch (IOException e) {
+            logger.error("Ошибка закрытия журнала пользователей: {}", e.getMessage(), e);
+            throw new DaoException("Ошибка закрытия журнала пользователей", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        return read(offsets::size);
+    }
+
+    //Размер журнала в байтах вместе с мусором.
+    public long getLogBytes() {
+        return read(() -> (long) writePosition);
+    }
+
+    public long getDurableWrites() {
+        return durableWrites.sum();
+    }
+
+    public long getSyncs() {
+        return syncs.sum();
+    }
+
+    public long getCompactions() {
+        return compactions.sum();
+    }
+
+    private <T> T read(Supplier<T> work) {
+        lock.readLock().lock();
+        try {
+            return work.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Одиночная операция записи вне единицы работы: одна запись журнала, атомарная сама по себе.
+    private <T> T write(Supplier<T> work) {
+        if (unit.get() != null) {
+            return work.get();
+        }
+        long end;
+        T result;
+        lock.writeLock().lock();
+        try {
+            long before = appendedBytes;
+            result = work.get();
+            if (appendedBytes == before) {
+                return result;
+            }
+            maybeCompact();
+            end = appendedBytes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(end);
+        return result;
+    }
+
+    //Ждёт, пока журнал будет сброшен на диск хотя бы до position. Первый ожидающий выполняет force()
+    //за всех, остальные ждут его результата.
+    private void awaitDurable(long position) {
+        if (!fsync) {
+            return;
+        }
+        durableWrites.increment();
+        while (true) {
+            long target;
+            synchronized (syncMonitor) {
+                while (syncing && durableBytes < position) {
+                    try {
+                        syncMonitor.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new DaoException("Ожидание записи журнала на диск прервано", e);
+                    }
+                }
+                if (durableBytes >= position) {
+                    return;
+                }
+                syncing = true;
+                target = appendedBytes;
+            }
+            boolean synced = false;
+            try {
+                buffer.force();
+                syncs.increment();
+                synced = true;
+            } finally {
+                synchronized (syncMonitor) {
+                    syncing = false;
+                    if (synced) {
+                        durableBytes = Math.max(durableBytes, target);
+                    }
+                    syncMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    private List<User> scan(Predicate<User> filter, Comparator<User> order, int limit) {
+        List<User> users = findAll();
+        return users.stream().filter(filter).sorted(order).limit(limit).toList();
+    }
+
+    private void put(User user) {
+        begin();
+        int offset = append(encode(user));
+        Integer old = index(user.getId(), offset);
+        recordUndo(() -> index(user.getId(), old));
+    }
+
+    //Переключает индекс id на запись по смещению (null - удаление), поддерживая индекс email
+    //и счётчик живых байт. Возвращает прежнее смещение.
+    private Integer index(long id, Integer offset) {
+        Integer old = offset == null ? offsets.remove(id) : offsets.put(id, offset);
+        if (old != null) {
+            String email = readEmail(old);
+            if (email != null) {
+                idsByEmail.remove(email, id);
+            }
+            liveBytes -= recordSize(old);
+        }
+        if (offset != null) {
+            String email = readEmail(offset);
+            if (email != null) {
+                idsByEmail.put(email, id);
+            }
+            liveBytes += recordSize(offset);
+        }
+        return old;
+    }
+
+    private void begin() {
+        Unit current = unit.get();
+        if (current != null && !current.begun) {
+            appendMarker(BEGIN);
+            current.begun = true;
+        }
+    }
+
+    private void appendMarker(byte type) {
+        append(new byte[]{type});
+    }
+
+    private int append(byte[] body) {
+        int size = FRAME + body.length;
+        ensureCapacity((long) writePosition + size);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        int offset = writePosition;
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.put(offset + FRAME, body);
+        buffer.putInt(offset, body.length);
+        writePosition += size;
+        appendedBytes += size;
+        return offset;
+    }
+
+    private void ensureCapacity(long needed) {
+        if (needed <= buffer.capacity()) {
+            return;
+        }
+        if (needed > MAX_CAPACITY) {
+            throw failed(new DaoException("Журнал пользователей превысил предельный размер", null));
+        }
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityFor(needed));
+        } catch (IOException e) {
+            logger.error("Ошибка расширения журнала пользователей: {}", e.getMessage(), e);
+            throw failed(new DaoException("Ошибка расширения журнала пользователей", e));
+        }
+    }
+
+    private static int capacityFor(long needed) {
+        long capacity = INITIAL_CAPACITY;
+        while (capacity < needed * 2 && capacity < MAX_CAPACITY) {
+            capacity <<= 1;
+        }
+        return (int) capacity;
+    }
+
+    private static void writeHeader(ByteBuffer target, long idFloor) {
+        target.putInt(0, MAGIC);
+        target.putInt(4, VERSION);
+        target.putLong(8, idFloor);
+    }
+
+    private Path compactFile() {
+        return file.resolveSibling(file.getFileName() + ".compact");
+    }
+
+    private int recordSize(int offset) {
+        return FRAME + buffer.getInt(offset);
+    }
+
+    private void checkWritable() {
+        Unit current = unit.get();
+        if (current != null && current.readOnly) {
+            throw failed(new DaoException("Запись в единице работы только для чтения", null));
+        }
+    }
+
+    private void recordUndo(Runnable action) {
+        Unit current = unit.get();
+        if (current != null) {
+            current.undo.push(action);
+        }
+    }
+
+    private DaoException failed(DaoException e) {
+        Unit current = unit.get();
+        if (current != null) {
+            current.rollbackOnly = true;
+        }
+        return e;
+    }
+
+    //PUT: тип, id, createdAt и updatedAt в микросекундах, возраст, имя и email как UTF-8 с длиной.
+    private static byte[] encode(User user) {
+        byte[] name = utf8(user.getName());
+        byte[] email = utf8(user.getEmail());
+        ByteBuffer body = ByteBuffer.allocate(1 + 8 + 8 + 8 + 4 + 4 + length(name) + 4 + length(email));
+        body.put(PUT)
+                .putLong(user.getId())
+                .putLong(micros(user.getCreatedAt()))
+                .putLong(micros(user.getUpdatedAt()))
+                .putInt(user.getAge() == null ? NULL_AGE : user.getAge());
+        putString(body, name);
+        putString(body, email);
+        return body.array();
+    }
+
+    private User readUser(int offset) {
+        ByteBuffer body = buffer.slice(offset + FRAME + 1, buffer.getInt(offset) - 1);
+        long id = body.getLong();
+        Instant createdAt = instant(body.getLong());
+        Instant updatedAt = instant(body.getLong());
+        int age = body.getInt();
+        String name = getString(body);
+        String email = getString(body);
+        return new User(id, name, email, age == NULL_AGE ? null : age, createdAt, updatedAt);
+    }
+
+    private String readEmail(int offset) {
+        ByteBuffer body = buffer.slice(offset + FRAME + 1 + 8 + 8 + 8 + 4, buffer.getInt(offset) - 29);
+        int nameLength = body.getInt();
+        body.position(body.position() + Math.max(nameLength, 0));
+        return getString(body);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void putString(ByteBuffer body, byte[] bytes) {
+        if (bytes == null) {
+            body.putInt(-1);
+        } else {
+            body.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer body) {
+        int length = body.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long micros(Instant instant) {
+        return instant == null ? NULL_TIME : ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+
+    private static Instant instant(long micros) {
+        return micros == NULL_TIME ? null : Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+
+    private static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
+}
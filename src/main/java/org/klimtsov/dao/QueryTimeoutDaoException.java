@@ -0,0 +1,8 @@
+package org.klimtsov.dao;
+
+//Запрос к БД прерван по таймауту или истёк дедлайн операции.
+public class QueryTimeoutDaoException extends DaoException {
+    public QueryTimeoutDaoException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
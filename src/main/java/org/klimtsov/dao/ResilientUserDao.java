@@ -0,0 +1,95 @@
+package org.klimtsov.dao;
+
+import org.klimtsov.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+//UserDao с предохранителем и повторами: при недоступной БД вызовы отклоняются сразу,
+//а идемпотентные чтения повторяются при временных ошибках с паузой "full jitter"
+//(случайная от 0 до min(maxDelay, baseDelay * 2^попытка)). Записи не повторяются.
+public class ResilientUserDao extends ForwardingUserDao {
+    private static final Logger logger = LoggerFactory.getLogger(ResilientUserDao.class);
+
+    private final CircuitBreaker breaker;
+    private final int maxAttempts;
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+
+    public ResilientUserDao(UserDao delegate, CircuitBreaker breaker, int maxAttempts,
+                            Duration baseDelay, Duration maxDelay) {
+        super(delegate);
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Max attempts must be positive");
+        }
+        this.breaker = breaker;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+    }
+
+    public static ResilientUserDao from(UserDao delegate, AppConfig config) {
+        return new ResilientUserDao(delegate,
+                new CircuitBreaker(config.getInt("resilience.failureThreshold", 5),
+                        Duration.ofMillis(config.getLong("resilience.openMillis", 5_000))),
+                config.getInt("resilience.retry.maxAttempts", 3),
+                Duration.ofMillis(config.getLong("resilience.retry.baseDelayMillis", 50)),
+                Duration.ofMillis(config.getLong("resilience.retry.maxDelayMillis", 1_000)));
+    }
+
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    @Override
+    protected <T> T invoke(String operation, boolean idempotent, Supplier<T> call) {
+        for (int attempt = 1; ; attempt++) {
+            breaker.acquirePermission();
+            try {
+                T result = call.get();
+                breaker.onSuccess();
+                return result;
+            } catch (CallRejectedException e) {
+                //Вызов не дошёл до БД (например, отказ контроля допуска).
+                breaker.onIgnored();
+                throw e;
+            } catch (DaoException e) {
+                if (TransientFailures.isConnectionFailure(e)) {
+                    breaker.onConnectionFailure();
+                } else {
+                    //БД ответила, пусть и ошибкой: подключение в порядке.
+                    breaker.onSuccess();
+                }
+                if (!idempotent || attempt >= maxAttempts || !TransientFailures.isTransient(e)) {
+                    throw e;
+                }
+                long delay = backoffNanos(attempt);
+                logger.warn("Временная ошибка БД в {} (попытка {} из {}), повтор через {} мс: {}",
+                        operation, attempt, maxAttempts, TimeUnit.NANOSECONDS.toMillis(delay), e.getMessage());
+                sleep(delay, e);
+            } catch (RuntimeException | Error e) {
+                //Ошибка не от БД: иначе в HALF_OPEN пробный вызов остался бы занятым навсегда.
+                breaker.onIgnored();
+                throw e;
+            }
+        }
+    }
+
+    private long backoffNanos(int attempt) {
+        long cap = Math.min(maxDelayNanos, baseDelayNanos << Math.min(attempt - 1, 20));
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private static void sleep(long nanos, DaoException cause) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.klimtsov.dao;
+
+import org.klimtsov.tracing.Tracing;
+
+import java.util.function.Supplier;
+
+//Спан на каждую операцию хранилища: UserDao.<операция>. Вложенные спаны сессии, коммита и SQL
+//(для Hibernate-реализации) становятся его дочерними.
+public class TracingUserDao extends ForwardingUserDao {
+
+    public TracingUserDao(UserDao delegate) {
+        super(delegate);
+    }
+
+    @Override
+    protected <T> T invoke(String operation, boolean idempotent, Supplier<T> call) {
+        return Tracing.trace("UserDao." + operation, call);
+    }
+}
@@ -0,0 +1,55 @@
+package org.klimtsov.dao;
+
+import org.hibernate.JDBCException;
+import org.hibernate.exception.JDBCConnectionException;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+
+//Классификация ошибок БД по цепочке причин и SQLSTATE (коды PostgreSQL).
+final class TransientFailures {
+
+    private TransientFailures() {
+    }
+
+    //БД недоступна: нет подключения, сервер перезапускается или исчерпаны соединения.
+    static boolean isConnectionFailure(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof JDBCConnectionException) {
+                return true;
+            }
+            String state = sqlState(t);
+            if (state != null && (state.startsWith("08") || state.startsWith("57P") || state.equals("53300"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Повтор может пройти: сбой подключения, конфликт сериализации, взаимоблокировка.
+    static boolean isTransient(Throwable error) {
+        if (isConnectionFailure(error)) {
+            return true;
+        }
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof SQLTransientException) {
+                return true;
+            }
+            String state = sqlState(t);
+            if ("40001".equals(state) || "40P01".equals(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String sqlState(Throwable t) {
+        if (t instanceof SQLException sql) {
+            return sql.getSQLState();
+        }
+        if (t instanceof JDBCException jdbc) {
+            return jdbc.getSQLState();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,5 @@
+package org.klimtsov.dao;
+
+//Результат upsert одной строки: id пользователя и была ли строка вставлена (false - обновлена).
+public record UpsertResult(Long id, boolean inserted) {
+}
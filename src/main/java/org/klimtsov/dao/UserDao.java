@@ -2,13 +2,65 @@ package org.klimtsov.dao;
 
 import org.klimtsov.userservice.model.User;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 public interface UserDao {
     Long create(User user);
     Optional<User> findById(Long id);
+
+    //Пользователи по набору id пакетными запросами вместо запроса на каждый id. Ключи - найденные id
+    //в порядке входной коллекции; отсутствующие id и null в результат не попадают.
+    Map<Long, User> findAllByIds(Collection<Long> ids);
+
     List<User> findAll();
     void update(User user);
     boolean delete(Long id);
+
+    //update, возвращающий прежнее состояние строки, прочитанное самим изменением под блокировкой строки,
+    //а не отдельным запросом до него. Пустой результат - пользователя нет, ничего не изменено.
+    Optional<User> updateReturningPrevious(User user);
+
+    //delete, возвращающий удалённую строку. Пустой результат - пользователя нет.
+    Optional<User> deleteReturning(Long id);
+
+    //Изменения после курсора (since, afterId) в порядке (updatedAt, id); для следующей страницы
+    //передаётся updatedAt и id последнего полученного пользователя. Реализации с БД отдают только
+    //строки не моложе now() БД минус dao.changeLagMillis: транзакция, зафиксированная позже этой задержки
+    //после отметки updatedAt, может быть пропущена. Удалённые строки сюда не попадают - их передают
+    //события DELETED outbox.
+    List<User> findChangedSince(Instant since, Long afterId, int limit);
+
+    //Пользователи с createdAt в [from, to) в порядке (createdAt, id). Для следующей страницы
+    //from = createdAt последнего полученного, afterId = его id; afterId = null - первая страница.
+    List<User> findByCreatedAtBetween(Instant from, Instant to, Long afterId, int limit);
+
+    //Страница пользователей с id > afterId по возрастанию id (afterId = null - с начала).
+    List<User> findAfterId(Long afterId, int limit);
+
+    boolean existsByEmail(String email);
+
+    //Вставка или обновление (name, age) по email одним запросом.
+    UpsertResult upsertByEmail(User user);
+
+    //Пакетный upsert; результаты в порядке входного списка. При повторе email внутри пакета
+    //побеждает последнее вхождение, и все вхождения получают один результат.
+    List<UpsertResult> upsertAll(List<User> users);
+
+    //Массовое обновление одним UPDATE; возвращает число изменённых строк.
+    int bulkUpdate(UserFilter filter, UserFieldUpdate update);
+
+    //Условное обновление одним запросом: поля получают значения updated, только если строка id
+    //ещё содержит expected. false - пользователя нет или его данные уже изменены другим вызовом;
+    //для цикла "прочитать - изменить - записать" без блокировок достаточно перечитать и повторить.
+    boolean compareAndSet(Long id, UserFields expected, UserFields updated);
+
+    //Выполняет work в одной сессии и транзакции: вызовы переданного UserDao в том же потоке
+    //используют общую сессию, commit один в конце, при исключении - откат.
+    //readOnly - транзакция только для чтения, без отслеживания изменений сущностей.
+    <T> T inTransaction(boolean readOnly, Function<UserDao, T> work);
 }
\ No newline at end of file
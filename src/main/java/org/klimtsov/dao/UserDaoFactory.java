@@ -0,0 +1,62 @@
+package org.klimtsov.dao;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.klimtsov.AppConfig;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+//Выбор реализации UserDao по настройке user.dao: hibernate (UserDaoImpl), jdbc (JdbcUserDao),
+//memory (InMemoryUserDao, без БД) или file (MappedLogUserDao, локальный журнал).
+//SessionFactory запрашивается только для реализаций с БД.
+public final class UserDaoFactory {
+
+    private UserDaoFactory() {
+    }
+
+    public static UserDao create(AppConfig config, Supplier<SessionFactory> sessionFactory) {
+        return create(config.getString("user.dao", "hibernate"), config, sessionFactory);
+    }
+
+    public static boolean usesDatabase(AppConfig config) {
+        String kind = config.getString("user.dao", "hibernate");
+        return !"memory".equals(kind) && !"file".equals(kind);
+    }
+
+    //Таймаут операции по умолчанию задаётся соединению один раз при открытии (pgjdbc options,
+    //передаётся драйверу как hibernate.connection.options), а не SET LOCAL в каждой транзакции.
+    public static void configureConnections(Configuration configuration, AppConfig config) {
+        long timeoutMillis = queryTimeout(config).toMillis();
+        if (timeoutMillis > 0) {
+            configuration.setProperty("hibernate.connection.options", "-c statement_timeout=" + timeoutMillis);
+        }
+    }
+
+    public static UserDao create(String kind, AppConfig config, Supplier<SessionFactory> sessionFactory) {
+        Duration timeout = queryTimeout(config);
+        Duration changeLag = Duration.ofMillis(config.getLong("dao.changeLagMillis", 5_000));
+        return switch (kind) {
+            case "hibernate" -> new UserDaoImpl(sessionFactory.get(), timeout, changeLag);
+            case "jdbc" -> new JdbcUserDao(sessionFactory.get(), timeout, changeLag);
+            case "memory" -> new InMemoryUserDao();
+            case "file" -> MappedLogUserDao.from(config);
+            default -> throw new IllegalArgumentException("Unknown user.dao implementation: " + kind);
+        };
+    }
+
+    private static Duration queryTimeout(AppConfig config) {
+        return Duration.ofMillis(config.getLong("dao.queryTimeoutMillis", 30_000));
+    }
+
+    //Освобождает ресурсы реализации, если они есть (файл журнала у MappedLogUserDao).
+    public static void close(UserDao dao) {
+        if (dao instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                throw new DaoException("Ошибка закрытия хранилища пользователей", e);
+            }
+        }
+    }
+}
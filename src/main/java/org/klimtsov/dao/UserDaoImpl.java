@@ -1,48 +1,99 @@
 package org.klimtsov.dao;
 
 import jakarta.persistence.PersistenceException;
+import jakarta.persistence.QueryTimeoutException;
+import org.hibernate.FlushMode;
+import org.hibernate.LockMode;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
+import org.hibernate.exception.ConstraintViolationException;
 import org.hibernate.exception.SQLGrammarException;
+import org.hibernate.query.NativeQuery;
 import org.klimtsov.HibernateUtil;
+import org.klimtsov.tracing.Tracing;
 import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserChangeType;
+import org.klimtsov.userservice.model.UserOutboxEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 public class UserDaoImpl implements UserDao {
     private static final Logger logger = LoggerFactory.getLogger(UserDaoImpl.class);
 
     private final SessionFactory sessionFactory;
+    //Таймаут операции, если вызывающий не задал дедлайн; null - без ограничения.
+    private final Duration defaultTimeout;
+    //Задержка горизонта findChangedSince относительно часов БД; null - без задержки.
+    private final Duration changeLag;
+    private final LongAdder queryTimeouts = new LongAdder();
+    //statement_timeout соединений по умолчанию (см. UserDaoFactory.configureConnections); -1 - ещё не прочитан.
+    private volatile long connectionTimeoutMillis = -1;
+    //Сессия открытой в этом потоке единицы работы (inTransaction).
+    private final ThreadLocal<Session> unitSession = new ThreadLocal<>();
 
     //Конструктор по умолчанию для основного приложения.
     public UserDaoImpl() {
-        this.sessionFactory = HibernateUtil.getSessionFactory();
+        this(HibernateUtil.getSessionFactory(), null);
     }
 
     //Конструктор для тестов, принимающий SessionFactory.
     public UserDaoImpl(SessionFactory sessionFactory) {
+        this(sessionFactory, null);
+    }
+
+    public UserDaoImpl(SessionFactory sessionFactory, Duration defaultTimeout) {
+        this(sessionFactory, defaultTimeout, null);
+    }
+
+    public UserDaoImpl(SessionFactory sessionFactory, Duration defaultTimeout, Duration changeLag) {
         this.sessionFactory = sessionFactory;
+        this.defaultTimeout = defaultTimeout;
+        this.changeLag = changeLag;
     }
 
     @Override
     public Long create(User user) {
         logger.info("Создание пользователя: email={}", user.getEmail());
         Transaction transaction = null;
-        try (Session session = sessionFactory.openSession()) {
-            transaction = session.beginTransaction();
+        try (Session session = openSession()) {
+            transaction = beginTransaction(session);
             logger.debug("Начало транзакции для создания пользователя: email={}", user.getEmail());
 
+            //Без явного createdAt - время создания, как в upsert; в секционированной таблице created_at обязателен.
+            if (user.getCreatedAt() == null) {
+                user.setCreatedAt(UserSql.now());
+            }
             session.persist(user);
             session.flush();
-            transaction.commit();
+            session.persist(UserOutboxEvent.of(UserChangeType.CREATED, user));
+            commit(transaction);
 
             logger.info("Пользователь создан успешно: id={}, email={}", user.getId(), user.getEmail());
             logger.debug("Данные созданного пользователя: {}", user);
             return user.getId();
+        } catch (QueryTimeoutException timeout) {
+            safeRollback(transaction);
+            throw queryTimeout("создании пользователя", timeout);
+        } catch (ConstraintViolationException dup) {
+            safeRollback(transaction);
+            logger.warn("Нарушение ограничения при создании пользователя {}: {}", user.getEmail(), dup.getMessage());
+            throw new DaoException("Пользователь с таким email уже существует", dup);
         } catch (SQLGrammarException sqlGr) {
             safeRollback(transaction);
             logger.error("Ошибка SQL при создании пользователя {}: {}", user.getEmail(), sqlGr.getMessage(), sqlGr);
@@ -61,8 +112,11 @@ public class UserDaoImpl implements UserDao {
     @Override
     public Optional<User> findById(Long id) {
         logger.info("Поиск пользователя по id: {}", id);
-        try (Session session = sessionFactory.openSession()) {
+        Transaction transaction = null;
+        try (Session session = openSession()) {
+            transaction = beginTransaction(session);
             User user = session.get(User.class, id);
+            commit(transaction);
             if (user != null) {
                 logger.info("Пользователь найден: id={}, email={}", id, user.getEmail());
                 logger.debug("Данные найденного пользователя: {}", user);
@@ -70,52 +124,402 @@ public class UserDaoImpl implements UserDao {
                 logger.info("Пользователь не найден: id={}", id);
             }
             return Optional.ofNullable(user);
+        } catch (QueryTimeoutException timeout) {
+            safeRollback(transaction);
+            throw queryTimeout("поиске пользователя по id", timeout);
         } catch (SQLGrammarException sqlGr) {
+            safeRollback(transaction);
             logger.error("Ошибка SQL при поиске пользователя по id {}: {}", id, sqlGr.getMessage(), sqlGr);
             throw new DaoException("Внутренняя ошибка запроса к БД", sqlGr);
         } catch (PersistenceException connEx) {
+            safeRollback(transaction);
             logger.error("Проблема подключения к БД при поиске пользователя по id {}: {}", id, connEx.getMessage(), connEx);
             throw new DaoException("Не удалось подключиться к базе данных при попытке найти пользователя.", connEx);
         } catch (Exception e) {
+            safeRollback(transaction);
             logger.error("Неизвестная ошибка при поиске пользователя по id={}: {}", id, e.getMessage(), e);
             throw new DaoException("Ошибка при поиске пользователя", e);
         }
     }
 
+    //Hibernate multi-load: id отправляются пачками по ID_BATCH_SIZE, уже загруженные в сессию
+    //(в единице работы) повторно не читаются.
+    @Override
+    public Map<Long, User> findAllByIds(Collection<Long> ids) {
+        List<Long> distinct = UserSql.distinctIds(ids);
+        logger.debug("Поиск пользователей по списку id: {} шт.", distinct.size());
+        if (distinct.isEmpty()) {
+            return Map.of();
+        }
+        Transaction transaction = null;
+        try (Session session = openSession()) {
+            transaction = beginTransaction(session);
+            List<User> users = session.byMultipleIds(User.class)
+                    .withBatchSize(UserSql.ID_BATCH_SIZE)
+                    .enableSessionCheck(true)
+                    .multiLoad(distinct);
+            commit(transaction);
+            Map<Long, User> found = new HashMap<>();
+            for (User user : users) {
+                if (user != null) {
+                    found.put(user.getId(), user);
+                }
+            }
+            return UserSql.inOrder(distinct, found);
+        } catch (QueryTimeoutException timeout) {
+            safeRollback(transaction);
+            throw queryTimeout("поиске пользователей по списку id", timeout);
+        } catch (SQLGrammarException sqlGr) {
+            safeRollback(transaction);
+            logger.error("Ошибка SQL при поиске пользователей по списку id: {}", sqlGr.getMessage(), sqlGr);
+            throw new DaoException("Внутренняя ошибка запроса к БД", sqlGr);
+        } catch (PersistenceException connEx) {
+            safeRollback(transaction);
+            logger.error("Проблема подключения к БД при поиске пользователей по списку id: {}", connEx.getMessage(), connEx);
+            throw new DaoException("Не удалось подключиться к базе данных при поиске пользователей.", connEx);
+        } catch (Exception e) {
+            safeRollback(transaction);
+            logger.error("Неизвестная ошибка при поиске пользователей по списку id: {}", e.getMessage(), e);
+            throw new DaoException("Ошибка при поиске пользователей", e);
+        }
+    }
+
     @Override
     public List<User> findAll() {
         logger.info("Запрос всех пользователей");
-        try (Session session = sessionFactory.openSession()) {
+        Transaction transaction = null;
+        try (Session session = openSession()) {
+            transaction = beginTransaction(session);
             List<User> list = session.createQuery("from org.klimtsov.userservice.model.User u order by u.id", User.class).list();
+            commit(transaction);
             logger.info("Найдено пользователей: {}", list.size());
             logger.debug("Список всех пользователей: {}", list);
             return list;
+        } catch (QueryTimeoutException timeout) {
+            safeRollback(transaction);
+            throw queryTimeout("получении списка пользователей", timeout);
         } catch (SQLGrammarException sqlGr) {
+            safeRollback(transaction);
             logger.error("Ошибка SQL при получении списка пользователей: {}", sqlGr.getMessage(), sqlGr);
             throw new DaoException("Внутренняя ошибка запроса к БД", sqlGr);
         } catch (PersistenceException connEx) {
+            safeRollback(transaction);
             logger.error("Проблема подключения к БД при получении списка пользователей: {}", connEx.getMessage(), connEx);
             throw new DaoException("Не удалось подключиться к базе данных при попытке получить список пользователей.", connEx);
         } catch (Exception e) {
+            safeRollback(transaction);
             logger.error("Неизвестная ошибка при получении списка пользователей: {}", e.getMessage(), e);
             throw new DaoException("Ошибка при получении списка пользователей", e);
         }
     }
 
+    @Override
+    public List<User> findChangedSince(Instant since, Long afterId, int limit) {
+        logger.info("Запрос изменений пользователей: since={}, afterId={}, limit={}", since, afterId, limit);
+        Transaction transaction = null;
+        try (Session session = openSession()) {
+            transaction = beginTransaction(session);
+            boolean lagged = UserSql.hasChangeLag(changeLag);
+            //Горизонт считается по часам БД, поэтому запрос написан на SQL.
+            NativeQuery<User> query = session.createNativeQuery("select * from users"
+                            + " where (updated_at > ?1 or (updated_at = ?1 and id > ?2))"
+                            + (lagged ? " and " + UserSql.changeHorizon("?3") : "")
+                            + " order by updated_at, id", User.class)
+                    .setParameter(1, since)
+                    .setParameter(2, afterId == null ? 0L : afterId)
+                    .setMaxResults(limit);
+            if (lagged) {
+                query.setParameter(3, changeLag.toMillis());
+            }
+            List<User> list = query.list();
+            commit(transaction);
+            logger.info("Найдено измененных пользователей: {}", list.size());
+            return list;
+        } catch (QueryTimeoutException timeout) {
+            safeRollback(transaction);
+            throw queryTimeout("запросе изменений пользователей", timeout);
+        } catch (SQLGrammarException sqlGr) {
+            safeRollback(transaction);
+            logger.error("Ошибка SQL при запросе изменений пользователей: {}", sqlGr.getMessage(), sqlGr);
+            throw new DaoException("Внутренняя ошибка запроса к БД", sqlGr);
+        } catch (PersistenceException connEx) {
+            safeRollback(transaction);
+            logger.error("Проблема подключения к БД при запросе изменений пользователей: {}", connEx.getMessage(), connEx);
+            throw new DaoException("Не удалось подключиться к базе данных при запросе изменений пользователей.", connEx);
+        } catch (Exception e) {
+            safeRollback(transaction);
+            logger.error("Неизвестная ошибка при запросе изменений пользователей: {}", e.getMessage(), e);
+            throw new DaoException("Ошибка при запросе изменений пользователей", e);
+        }
+    }
+
+    @Override
+    public List<User> findByCreatedAtBetween(Instant from, Instant to, Long afterId, int limit) {
+        logger.info("Запрос пользователей по дате создания: from={}, to={}, afterId={}, limit={}", from, to, afterId, limit);
+        Transaction transaction = null;
+        try (Session session = openSession()) {
+            transaction = beginTransaction(session);
+            String lowerBound = afterId == null
+                    ? "u.createdAt >= :from"
+                    : "(u.createdAt > :from or (u.createdAt = :from and u.id > :afterId))";
+            var query = session.createQuery(
+                            "from User u where " + lowerBound + " and u.createdAt < :to order by u.createdAt, u.id",
+                            User.class)
+                    .setParameter("from", from)
+                    .setParameter("to", to)
+                    .setMaxResults(limit);
+            if (afterId != null) {
+                query.setParameter("afterId", afterId);
+            }
+            List<User> list = query.list();
+            commit(transaction);
+            logger.info("Найдено пользователей в диапазоне дат: {}", list.size());
+            return list;
+        } catch (QueryTimeoutException timeout) {
+            safeRollback(transaction);
+            throw queryTimeout("запросе пользователей по дате создания", timeout);
+        } catch (SQLGrammarException sqlGr) {
+            safeRollback(transaction);
+            logger.error("Ошибка SQL при запросе пользователей по дате создания: {}", sqlGr.getMessage(), sqlGr);
+            throw new DaoException("Внутренняя ошибка запроса к БД", sqlGr);
+        } catch (PersistenceException connEx) {
+            safeRollback(transaction);
+            logger.error("Проблема подключения к БД при запросе пользователей по дате создания: {}", connEx.getMessage(), connEx);
+            throw new DaoException("Не удалось подключиться к базе данных при запросе пользователей по дате создания.", connEx);
+        } catch (Exception e) {
+            safeRollback(transaction);
+            logger.error("Неизвестная ошибка при запросе пользователей по дате создания: {}", e.getMessage(), e);
+            throw new DaoException("Ошибка при запросе пользователей по дате создания", e);
+        }
+    }
+
+    @Override
+    public List<User> findAfterId(Long afterId, int limit) {
+        logger.debug("Запрос страницы пользователей: afterId={}, limit={}", afterId, limit);
+        Transaction transaction = null;
+        try (Session session = openSession()) {
+            transaction = beginTransaction(session);
+            List<User> list = session.createQuery("from User u where u.id > :afterId order by u.id", User.class)
+                    .setParameter("afterId", afterId == null ? 0L : afterId)
+                    .setMaxResults(limit)
+                    .list();
+            commit(transaction);
+            return list;
+        } catch (QueryTimeoutException timeout) {
+            safeRollback(transaction);
+            throw queryTimeout("запросе страницы пользователей", timeout);
+        } catch (SQLGrammarException sqlGr) {
+            safeRollback(transaction);
+            logger.error("Ошибка SQL при запросе страницы пользователей: {}", sqlGr.getMessage(), sqlGr);
+            throw new DaoException("Внутренняя ошибка запроса к БД", sqlGr);
+        } catch (PersistenceException connEx) {
+            safeRollback(transaction);
+            logger.error("Проблема подключения к БД при запросе страницы пользователей: {}", connEx.getMessage(), connEx);
+            throw new DaoException("Не удалось подключиться к базе данных при запросе страницы пользователей.", connEx);
+        } catch (Exception e) {
+            safeRollback(transaction);
+            logger.error("Неизвестная ошибка при запросе страницы пользователей: {}", e.getMessage(), e);
+            throw new DaoException("Ошибка при запросе страницы пользователей", e);
+        }
+    }
+
+    @Override
+    public boolean existsByEmail(String email) {
+        logger.debug("Проверка существования email: {}", email);
+        Transaction transaction = null;
+        try (Session session = openSession()) {
+            transaction = beginTransaction(session);
+            boolean exists = !session.createQuery("select 1 from User u where u.email = :email", Integer.class)
+                    .setParameter("email", email)
+                    .setMaxResults(1)
+                    .list()
+                    .isEmpty();
+            commit(transaction);
+            return exists;
+        } catch (QueryTimeoutException timeout) {
+            safeRollback(transaction);
+            throw queryTimeout("проверке email", timeout);
+        } catch (SQLGrammarException sqlGr) {
+            safeRollback(transaction);
+            logger.error("Ошибка SQL при проверке email {}: {}", email, sqlGr.getMessage(), sqlGr);
+            throw new DaoException("Внутренняя ошибка запроса к БД", sqlGr);
+        } catch (PersistenceException connEx) {
+            safeRollback(transaction);
+            logger.error("Проблема подключения к БД при проверке email {}: {}", email, connEx.getMessage(), connEx);
+            throw new DaoException("Не удалось подключиться к базе данных при проверке email.", connEx);
+        } catch (Exception e) {
+            safeRollback(transaction);
+            logger.error("Неизвестная ошибка при проверке email {}: {}", email, e.getMessage(), e);
+            throw new DaoException("Ошибка при проверке email", e);
+        }
+    }
+
+    @Override
+    public UpsertResult upsertByEmail(User user) {
+        return upsertAll(List.of(user)).get(0);
+    }
+
+    @Override
+    public List<UpsertResult> upsertAll(List<User> users) {
+        logger.info("Upsert пользователей по email: {}", users.size());
+        //Последнее вхождение email в пакете побеждает: ON CONFLICT не может обновить строку дважды.
+        Map<String, User> byEmail = new LinkedHashMap<>();
+        for (User user : users) {
+            byEmail.put(user.getEmail(), user);
+        }
+        List<User> distinct = new ArrayList<>(byEmail.values());
+        Transaction transaction = null;
+        try (Session session = openSession()) {
+            transaction = beginTransaction(session);
+            Map<String, UpsertResult> results = new HashMap<>();
+            for (int from = 0; from < distinct.size(); from += UserSql.UPSERT_BATCH_SIZE) {
+                List<User> chunk = distinct.subList(from, Math.min(from + UserSql.UPSERT_BATCH_SIZE, distinct.size()));
+                results.putAll(session.doReturningWork(connection -> UserSql.upsertChunk(connection, chunk)));
+            }
+            for (User user : distinct) {
+                UpsertResult result = results.get(user.getEmail());
+                user.setId(result.id());
+                session.persist(UserOutboxEvent.of(result.inserted() ? UserChangeType.CREATED : UserChangeType.UPDATED, user));
+            }
+            commit(transaction);
+
+            List<UpsertResult> ordered = new ArrayList<>(users.size());
+            for (User user : users) {
+                UpsertResult result = results.get(user.getEmail());
+                user.setId(result.id());
+                ordered.add(result);
+            }
+            logger.info("Upsert завершён: строк {}", distinct.size());
+            return ordered;
+        } catch (QueryTimeoutException | org.hibernate.QueryTimeoutException timeout) {
+            //JDBC-запрос из doReturningWork приходит без преобразования в исключение JPA.
+            safeRollback(transaction);
+            throw queryTimeout("upsert пользователей", timeout);
+        } catch (SQLGrammarException sqlGr) {
+            safeRollback(transaction);
+            if (UserSql.NO_CONFLICT_CONSTRAINT.equals(sqlGr.getSQLState())) {
+                logger.warn("Отклонён upsert пользователей: {}", sqlGr.getMessage());
+                throw new DaoException(UserSql.UPSERT_UNAVAILABLE, sqlGr);
+            }
+            logger.error("Ошибка SQL при upsert пользователей: {}", sqlGr.getMessage(), sqlGr);
+            throw new DaoException("Внутренняя ошибка запроса к БД", sqlGr);
+        } catch (PersistenceException connEx) {
+            safeRollback(transaction);
+            logger.error("Проблема подключения к БД при upsert пользователей: {}", connEx.getMessage(), connEx);
+            throw new DaoException("Не удалось подключиться к базе данных при upsert пользователей.", connEx);
+        } catch (Exception e) {
+            safeRollback(transaction);
+            logger.error("Неизвестная ошибка при upsert пользователей: {}", e.getMessage(), e);
+            throw new DaoException("Ошибка при upsert пользователей", e);
+        }
+    }
+
+    @Override
+    public int bulkUpdate(UserFilter filter, UserFieldUpdate update) {
+        logger.info("Массовое обновление пользователей: filter={}, update={}", filter, update);
+        Transaction transaction = null;
+        try (Session session = openSession()) {
+            transaction = beginTransaction(session);
+            session.flush();
+            int updated = session.doReturningWork(connection -> UserSql.bulkUpdate(connection, filter, update));
+            commit(transaction);
+
+            logger.info("Массово обновлено пользователей: {}", updated);
+            return updated;
+        } catch (QueryTimeoutException | org.hibernate.QueryTimeoutException timeout) {
+            safeRollback(transaction);
+            throw queryTimeout("массовом обновлении пользователей", timeout);
+        } catch (SQLGrammarException sqlGr) {
+            safeRollback(transaction);
+            logger.error("Ошибка SQL при массовом обновлении пользователей: {}", sqlGr.getMessage(), sqlGr);
+            throw new DaoException("Внутренняя ошибка запроса к БД", sqlGr);
+        } catch (PersistenceException connEx) {
+            safeRollback(transaction);
+            logger.error("Проблема подключения к БД при массовом обновлении пользователей: {}", connEx.getMessage(), connEx);
+            throw new DaoException("Не удалось подключиться к базе данных при массовом обновлении пользователей.", connEx);
+        } catch (Exception e) {
+            safeRollback(transaction);
+            logger.error("Неизвестная ошибка при массовом обновлении пользователей: {}", e.getMessage(), e);
+            throw new DaoException("Ошибка при массовом обновлении пользователей", e);
+        }
+    }
+
+    //Один запрос без чтения сущности; изменения, накопленные в общей сессии единицы работы,
+    //сбрасываются до него, а загруженная в неё копия пользователя после него отсоединяется.
+    @Override
+    public boolean compareAndSet(Long id, UserFields expected, UserFields updated) {
+        logger.info("Условное обновление пользователя: id={}", id);
+        Transaction transaction = null;
+        try (Session session = openSession()) {
+            transaction = beginTransaction(session);
+            session.flush();
+            boolean applied = session.doReturningWork(
+                    connection -> UserSql.compareAndSet(connection, id, expected, updated)) > 0;
+            session.detach(session.getReference(User.class, id));
+            commit(transaction);
+
+            logger.info("Условное обновление пользователя id={}: {}", id, applied ? "применено" : "данные изменились");
+            return applied;
+        } catch (QueryTimeoutException | org.hibernate.QueryTimeoutException timeout) {
+            safeRollback(transaction);
+            throw queryTimeout("условном обновлении пользователя", timeout);
+        } catch (ConstraintViolationException dup) {
+            safeRollback(transaction);
+            logger.warn("Нарушение ограничения при условном обновлении пользователя {}: {}", id, dup.getMessage());
+            throw new DaoException("Пользователь с таким email уже существует", dup);
+        } catch (SQLGrammarException sqlGr) {
+            safeRollback(transaction);
+            logger.error("Ошибка SQL при условном обновлении пользователя {}: {}", id, sqlGr.getMessage(), sqlGr);
+            throw new DaoException("Внутренняя ошибка запроса к БД", sqlGr);
+        } catch (PersistenceException connEx) {
+            safeRollback(transaction);
+            logger.error("Проблема подключения к БД при условном обновлении пользователя {}: {}", id, connEx.getMessage(), connEx);
+            throw new DaoException("Не удалось подключиться к базе данных при условном обновлении пользователя.", connEx);
+        } catch (Exception e) {
+            safeRollback(transaction);
+            logger.error("Неизвестная ошибка при условном обновлении пользователя {}: {}", id, e.getMessage(), e);
+            throw new DaoException("Ошибка при условном обновлении пользователя", e);
+        }
+    }
+
     @Override
     public void update(User user) {
+        updateReturningPrevious(user);
+    }
+
+    //Строка читается с блокировкой (FOR UPDATE) в транзакции изменения: merge затем обновляет её же,
+    //и прежнее состояние не может измениться между чтением и записью.
+    @Override
+    public Optional<User> updateReturningPrevious(User user) {
         logger.info("Обновление пользователя: id={}, email={}", user.getId(), user.getEmail());
         logger.debug("Новые данные для обновления: {}", user);
         Transaction transaction = null;
-        try (Session session = sessionFactory.openSession()) {
-            transaction = session.beginTransaction();
+        try (Session session = openSession()) {
+            transaction = beginTransaction(session);
             logger.debug("Начало транзакции для обновления пользователя: id={}", user.getId());
 
-            session.merge(user);
-            transaction.commit();
+            User current = session.get(User.class, user.getId(), LockMode.PESSIMISTIC_WRITE);
+            if (current == null) {
+                logger.warn("Попытка обновления несуществующего пользователя: id={}", user.getId());
+                commit(transaction);
+                return Optional.empty();
+            }
+            //Копия до merge: merge переносит новые значения в ту же управляемую сущность.
+            User previous = copy(current);
+            User merged = session.merge(user);
+            session.persist(UserOutboxEvent.of(UserChangeType.UPDATED, merged));
+            commit(transaction);
 
             logger.info("Пользователь обновлен успешно: id={}", user.getId());
             logger.debug("Обновленные данные пользователя: {}", user);
+            return Optional.of(previous);
+        } catch (QueryTimeoutException | org.hibernate.QueryTimeoutException timeout) {
+            safeRollback(transaction);
+            throw queryTimeout("обновлении пользователя", timeout);
+        } catch (ConstraintViolationException dup) {
+            safeRollback(transaction);
+            logger.warn("Нарушение ограничения при обновлении пользователя {}: {}", user.getId(), dup.getMessage());
+            throw new DaoException("Пользователь с таким email уже существует", dup);
         } catch (SQLGrammarException sqlGr) {
             safeRollback(transaction);
             logger.error("Ошибка SQL при обновлении пользователя {}: {}", user.getId(), sqlGr.getMessage(), sqlGr);
@@ -133,24 +537,34 @@ public class UserDaoImpl implements UserDao {
 
     @Override
     public boolean delete(Long id) {
+        return deleteReturning(id).isPresent();
+    }
+
+    @Override
+    public Optional<User> deleteReturning(Long id) {
         logger.info("Удаление пользователя: id={}", id);
         Transaction transaction = null;
-        try (Session session = sessionFactory.openSession()) {
-            transaction = session.beginTransaction();
+        try (Session session = openSession()) {
+            transaction = beginTransaction(session);
             logger.debug("Начало транзакции для удаления пользователя: id={}", id);
 
-            User u = session.get(User.class, id);
+            User u = session.get(User.class, id, LockMode.PESSIMISTIC_WRITE);
             if (u != null) {
+                User deleted = copy(u);
                 session.remove(u);
-                transaction.commit();
+                session.persist(UserOutboxEvent.of(UserChangeType.DELETED, u));
+                commit(transaction);
                 logger.info("Пользователь удален успешно: id={}, email={}", id, u.getEmail());
                 logger.debug("Данные удаленного пользователя: {}", u);
-                return true;
+                return Optional.of(deleted);
             } else {
                 logger.warn("Попытка удаления несуществующего пользователя: id={}", id);
-                transaction.commit();
-                return false;
+                commit(transaction);
+                return Optional.empty();
             }
+        } catch (QueryTimeoutException | org.hibernate.QueryTimeoutException timeout) {
+            safeRollback(transaction);
+            throw queryTimeout("удалении пользователя", timeout);
         } catch (SQLGrammarException sqlGr) {
             safeRollback(transaction);
             logger.error("Ошибка SQL при удалении пользователя {}: {}", id, sqlGr.getMessage(), sqlGr);
@@ -166,6 +580,127 @@ public class UserDaoImpl implements UserDao {
         }
     }
 
+    @Override
+    public <T> T inTransaction(boolean readOnly, Function<UserDao, T> work) {
+        if (unitSession.get() != null) {
+            return work.apply(this);
+        }
+        logger.debug("Начало единицы работы: readOnly={}", readOnly);
+        Transaction transaction = null;
+        try (Session session = Tracing.trace("hibernate.session.open", sessionFactory::openSession)) {
+            transaction = beginTransaction(session);
+            if (readOnly) {
+                session.setDefaultReadOnly(true);
+                session.setHibernateFlushMode(FlushMode.MANUAL);
+                session.doWork(connection -> {
+                    try (Statement st = connection.createStatement()) {
+                        st.execute("SET TRANSACTION READ ONLY");
+                    }
+                });
+            }
+            unitSession.set(session);
+            T result;
+            try {
+                result = work.apply(this);
+                if (transaction.getRollbackOnly()) {
+                    throw new DaoException("Единица работы откатана: одна из операций завершилась ошибкой", null);
+                }
+            } catch (RuntimeException e) {
+                //Откат до закрытия сессии, иначе соединение вернётся в пул с открытой транзакцией.
+                safeRollback(transaction);
+                transaction = null;
+                throw e;
+            } finally {
+                unitSession.remove();
+            }
+            commit(transaction);
+            logger.debug("Единица работы завершена");
+            return result;
+        } catch (DaoException dao) {
+            safeRollback(transaction);
+            throw dao;
+        } catch (QueryTimeoutException timeout) {
+            safeRollback(transaction);
+            throw queryTimeout("выполнении единицы работы", timeout);
+        } catch (SQLGrammarException sqlGr) {
+            safeRollback(transaction);
+            logger.error("Ошибка SQL в единице работы: {}", sqlGr.getMessage(), sqlGr);
+            throw new DaoException("Внутренняя ошибка запроса к БД", sqlGr);
+        } catch (PersistenceException connEx) {
+            safeRollback(transaction);
+            logger.error("Проблема подключения к БД в единице работы: {}", connEx.getMessage(), connEx);
+            throw new DaoException("Не удалось подключиться к базе данных при выполнении единицы работы.", connEx);
+        } catch (RuntimeException e) {
+            //Ошибки самого work (валидация и т.п.) пробрасываются как есть.
+            safeRollback(transaction);
+            throw e;
+        }
+    }
+
+    //Сессия для одной операции: внутри единицы работы - общая, иначе новая.
+    private Session openSession() {
+        Session bound = unitSession.get();
+        if (bound != null) {
+            return new JoinedSession(bound);
+        }
+        return Tracing.trace("hibernate.session.open", sessionFactory::openSession);
+    }
+
+    private static void commit(Transaction transaction) {
+        Tracing.run("transaction.commit", transaction::commit);
+    }
+
+    //Начинает транзакцию с таймаутом операции. Таймаут по умолчанию соединение получает один раз
+    //при открытии (параметр options), поэтому SET LOCAL statement_timeout выполняется, только когда
+    //бюджет отличается от него (дедлайн вызывающего). SET LOCAL действует на все запросы транзакции,
+    //включая get/persist/flush и JDBC-запросы upsert, с точностью до миллисекунды и сбрасывается
+    //при commit/rollback. В единице работы таймаут ставится каждой операции: предыдущая могла
+    //оставить в транзакции более жёсткий.
+    private Transaction beginTransaction(Session session) {
+        long timeoutMillis = timeoutMillis();
+        boolean inUnit = unitSession.get() != null;
+        Transaction transaction = session.beginTransaction();
+        if (timeoutMillis > 0) {
+            session.doWork(connection -> UserSql.applyStatementTimeout(connection, timeoutMillis,
+                    inUnit ? 0 : connectionTimeoutMillis(connection)));
+        }
+        return transaction;
+    }
+
+    private long connectionTimeoutMillis(Connection connection) throws SQLException {
+        long known = connectionTimeoutMillis;
+        if (known < 0) {
+            known = UserSql.connectionStatementTimeout(connection);
+            connectionTimeoutMillis = known;
+        }
+        return known;
+    }
+
+    //Миллисекунды на операцию: меньшее из остатка дедлайна вызывающего и таймаута по умолчанию;
+    //0 - без ограничения.
+    private long timeoutMillis() {
+        long millis = Deadline.budgetMillis(defaultTimeout);
+        if (millis < 0) {
+            throw new QueryTimeoutException("Дедлайн операции истёк до обращения к БД");
+        }
+        return millis;
+    }
+
+    private DaoException queryTimeout(String action, PersistenceException timeout) {
+        queryTimeouts.increment();
+        logger.warn("Превышено время ожидания БД при {}: {}", action, timeout.getMessage());
+        return new QueryTimeoutDaoException("Превышено время ожидания ответа БД при " + action, timeout);
+    }
+
+    //Число операций, прерванных по таймауту или дедлайну.
+    public long getQueryTimeouts() {
+        return queryTimeouts.sum();
+    }
+
+    private static User copy(User u) {
+        return new User(u.getId(), u.getName(), u.getEmail(), u.getAge(), u.getCreatedAt(), u.getUpdatedAt());
+    }
+
     //Безопасная попытка отката.
     private void safeRollback(Transaction transaction) {
         if (transaction != null) {
@@ -0,0 +1,92 @@
+package org.klimtsov.dao;
+
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+//Уникальность email (uk_users_email) как явная миграция. hbm2ddl=update не создаёт ограничение,
+//если в таблице уже есть повторяющиеся email, и только пишет предупреждение в лог; без ограничения
+//upsert по email и защита от дублей при create не работают. Поэтому при запуске ограничение
+//проверяется, а при его отсутствии создаётся после проверки дублей; найденные дубли останавливают запуск.
+//Секционированная таблица пропускается (уникальность email в ней не поддерживается, см. UserPartitioning),
+//недоступная БД - тоже: тогда не выполнился и hbm2ddl, проверка пройдёт при следующем запуске.
+public class UserEmailConstraint {
+    private static final Logger logger = LoggerFactory.getLogger(UserEmailConstraint.class);
+
+    static final String NAME = "uk_users_email";
+    //Сколько повторяющихся email показать в сообщении об ошибке.
+    private static final int REPORTED_DUPLICATES = 10;
+
+    private final SessionFactory sessionFactory;
+
+    public UserEmailConstraint(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public boolean exists() {
+        return JdbcWork.inTransaction(sessionFactory, UserEmailConstraint::exists, "проверке ограничения " + NAME);
+    }
+
+    //Создаёт ограничение, если его нет. Таблица блокируется до проверки дублей,
+    //чтобы новый дубль не появился между проверкой и созданием.
+    public void ensure() {
+        boolean created;
+        try {
+            created = JdbcWork.inTransaction(sessionFactory, UserEmailConstraint::ensure, "создании ограничения " + NAME);
+        } catch (DaoException e) {
+            if (!TransientFailures.isConnectionFailure(e)) {
+                throw e;
+            }
+            logger.warn("Проверка ограничения {} пропущена: БД недоступна", NAME);
+            return;
+        }
+        if (created) {
+            logger.info("Создано ограничение {}", NAME);
+        }
+    }
+
+    private static boolean ensure(Connection connection) throws SQLException {
+        if (exists(connection)) {
+            return false;
+        }
+        try (Statement st = connection.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT relkind = 'p' FROM pg_class WHERE oid = 'users'::regclass")) {
+                if (rs.next() && rs.getBoolean(1)) {
+                    logger.info("Таблица users секционирована, ограничение {} не создаётся", NAME);
+                    return false;
+                }
+            }
+            st.execute("LOCK TABLE users IN ACCESS EXCLUSIVE MODE");
+            List<String> duplicates = new ArrayList<>();
+            try (ResultSet rs = st.executeQuery("SELECT email, count(*) FROM users WHERE email IS NOT NULL "
+                    + "GROUP BY email HAVING count(*) > 1 ORDER BY count(*) DESC, email LIMIT " + REPORTED_DUPLICATES)) {
+                while (rs.next()) {
+                    duplicates.add(rs.getString(1) + " (" + rs.getLong(2) + ")");
+                }
+            }
+            if (!duplicates.isEmpty()) {
+                logger.error("Ограничение {} не создано: в users есть повторяющиеся email: {}", NAME, duplicates);
+                throw new DaoException("Нельзя создать ограничение " + NAME
+                        + ": в users есть повторяющиеся email, например " + duplicates, null);
+            }
+            st.execute("ALTER TABLE users ADD CONSTRAINT " + NAME + " UNIQUE (email)");
+        }
+        return true;
+    }
+
+    private static boolean exists(Connection connection) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT count(*) FROM pg_constraint "
+                     + "WHERE conrelid = 'users'::regclass AND conname = '" + NAME + "' AND contype = 'u'")) {
+            rs.next();
+            return rs.getLong(1) > 0;
+        }
+    }
+}
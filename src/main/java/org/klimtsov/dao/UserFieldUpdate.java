@@ -0,0 +1,10 @@
+package org.klimtsov.dao;
+
+//Присваивания для массового обновления; null - поле не меняется.
+//email не входит: он уникален, и одно значение нельзя присвоить нескольким строкам.
+public record UserFieldUpdate(String name, Integer age) {
+
+    public boolean isEmpty() {
+        return name == null && age == null;
+    }
+}
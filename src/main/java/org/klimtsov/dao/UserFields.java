@@ -0,0 +1,25 @@
+package org.klimtsov.dao;
+
+import org.klimtsov.userservice.model.User;
+
+import java.util.Objects;
+
+//Значения изменяемых полей пользователя для compareAndSet: ожидаемые (null совпадает только с null)
+//или новые (присваиваются все три поля, null - записать null).
+public record UserFields(String name, String email, Integer age) {
+
+    public static UserFields of(User user) {
+        return new UserFields(user.getName(), user.getEmail(), user.getAge());
+    }
+
+    public boolean matches(User user) {
+        return Objects.equals(name, user.getName()) && Objects.equals(email, user.getEmail())
+                && Objects.equals(age, user.getAge());
+    }
+
+    public void applyTo(User user) {
+        user.setName(name);
+        user.setEmail(email);
+        user.setAge(age);
+    }
+}
@@ -0,0 +1,42 @@
+package org.klimtsov.dao;
+
+import org.klimtsov.userservice.model.User;
+
+import java.time.Instant;
+
+//Типизированный фильтр для массовых операций. null - граница не задана.
+//id и возраст - включительно, createdAt - полуинтервал [createdFrom, createdTo).
+public record UserFilter(Long idFrom, Long idTo, Instant createdFrom, Instant createdTo,
+                         Integer ageFrom, Integer ageTo) {
+
+    public static UserFilter any() {
+        return new UserFilter(null, null, null, null, null, null);
+    }
+
+    public UserFilter withIdRange(Long from, Long to) {
+        return new UserFilter(from, to, createdFrom, createdTo, ageFrom, ageTo);
+    }
+
+    public UserFilter withCreatedBetween(Instant from, Instant to) {
+        return new UserFilter(idFrom, idTo, from, to, ageFrom, ageTo);
+    }
+
+    public UserFilter withAgeRange(Integer from, Integer to) {
+        return new UserFilter(idFrom, idTo, createdFrom, createdTo, from, to);
+    }
+
+    public boolean isUnrestricted() {
+        return idFrom == null && idTo == null && createdFrom == null && createdTo == null
+                && ageFrom == null && ageTo == null;
+    }
+
+    //Проверка строки в памяти - для реализаций DAO без SQL.
+    public boolean matches(User u) {
+        return (idFrom == null || u.getId() >= idFrom)
+                && (idTo == null || u.getId() <= idTo)
+                && (createdFrom == null || u.getCreatedAt() != null && !u.getCreatedAt().isBefore(createdFrom))
+                && (createdTo == null || u.getCreatedAt() != null && u.getCreatedAt().isBefore(createdTo))
+                && (ageFrom == null || u.getAge() != null && u.getAge() >= ageFrom)
+                && (ageTo == null || u.getAge() != null && u.getAge() <= ageTo);
+    }
+}
@@ -0,0 +1,180 @@
+package org.klimtsov.dao;
+
+import org.hibernate.SessionFactory;
+import org.klimtsov.AppConfig;
+import org.klimtsov.userservice.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+//Полный проход по users в несколько потоков для ночных задач вместо одного findAll().
+//Диапазон [min(id), max(id)] делится на parallelism * partitionsPerThread равных по ширине
+//частей; потоки пула берут части по очереди, так что часть с пропусками id или плотная часть
+//не задерживает остальные потоки. Каждая часть читается своей сессией и транзакцией только
+//для чтения, курсором с fetchSize строк. Строки, добавленные после определения max(id),
+//в проход не попадают; согласованного снимка всей таблицы нет - части читаются в разное время.
+public class UserParallelScan {
+    private static final Logger logger = LoggerFactory.getLogger(UserParallelScan.class);
+
+    //Ход чтения одной части: rows - прочитано строк, lastId - последний переданный id
+    //(null - ещё ни одного), done - часть прочитана целиком.
+    public record Progress(int partition, int partitions, long fromId, long toId, long rows, Long lastId,
+                           boolean done) {
+    }
+
+    record Range(long fromId, long toId) {
+    }
+
+    private final SessionFactory sessionFactory;
+    private final int parallelism;
+    private final int partitionsPerThread;
+    private final int fetchSize;
+    private final long progressEveryRows;
+
+    public UserParallelScan(SessionFactory sessionFactory, int parallelism, int partitionsPerThread, int fetchSize,
+                            long progressEveryRows) {
+        if (parallelism <= 0 || partitionsPerThread <= 0 || fetchSize <= 0 || progressEveryRows <= 0) {
+            throw new IllegalArgumentException("Scan settings must be positive");
+        }
+        this.sessionFactory = sessionFactory;
+        this.parallelism = parallelism;
+        this.partitionsPerThread = partitionsPerThread;
+        this.fetchSize = fetchSize;
+        this.progressEveryRows = progressEveryRows;
+    }
+
+    public static UserParallelScan from(SessionFactory sessionFactory, AppConfig config) {
+        return new UserParallelScan(sessionFactory,
+                config.getInt("scan.parallelism", 4),
+                config.getInt("scan.partitionsPerThread", 4),
+                config.getInt("scan.fetchSize", 5000),
+                config.getLong("scan.progressEveryRows", 100_000));
+    }
+
+    //Делит [min, max] на не более чем count непустых частей с разницей ширины не больше 1.
+    static List<Range> split(long min, long max, int count) {
+        long width = max - min + 1;
+        int parts = (int) Math.min(count, width);
+        long step = width / parts;
+        long remainder = width % parts;
+        List<Range> ranges = new ArrayList<>(parts);
+        long from = min;
+        for (int i = 0; i < parts; i++) {
+            long to = from + step - 1 + (i < remainder ? 1 : 0);
+            ranges.add(new Range(from, to));
+            from = to + 1;
+        }
+        return ranges;
+    }
+
+    //Передаёт каждого пользователя в consumer и возвращает их число. consumer и progress
+    //вызываются одновременно из разных потоков. После первой ошибки остальные части
+    //прекращают чтение, ошибка пробрасывается вызывающему.
+    public long scan(Consumer<User> consumer, Consumer<Progress> progress) {
+        long started = System.nanoTime();
+        long[] bounds = JdbcWork.inTransaction(sessionFactory, connection -> {
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT min(id), max(id) FROM users")) {
+                rs.next();
+                long min = rs.getLong(1);
+                return rs.wasNull() ? null : new long[]{min, rs.getLong(2)};
+            }
+        }, "определении диапазона id пользователей");
+        if (bounds == null) {
+            return 0;
+        }
+        List<Range> ranges = split(bounds[0], bounds[1], parallelism * partitionsPerThread);
+        logger.info("Параллельное чтение пользователей: id {}..{}, частей {}, потоков {}",
+                bounds[0], bounds[1], ranges.size(), parallelism);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, task -> {
+            Thread thread = new Thread(task, "user-scan-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        List<Future<Long>> parts = new ArrayList<>(ranges.size());
+        try {
+            for (int i = 0; i < ranges.size(); i++) {
+                int partition = i;
+                parts.add(pool.submit(() -> {
+                    try {
+                        return scanRange(partition, ranges, consumer, progress, failure);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                        throw e;
+                    }
+                }));
+            }
+            long rows = 0;
+            for (Future<Long> part : parts) {
+                rows += part.get();
+            }
+            logger.info("Параллельное чтение пользователей завершено: {} строк за {} мс",
+                    rows, (System.nanoTime() - started) / 1_000_000);
+            return rows;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DaoException("Параллельное чтение пользователей прервано", e);
+        } catch (ExecutionException e) {
+            //Первая ошибка, а не ошибка первой по порядку части.
+            RuntimeException first = failure.get();
+            if (first != null) {
+                throw first;
+            }
+            throw new DaoException("Ошибка при параллельном чтении пользователей", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private long scanRange(int partition, List<Range> ranges, Consumer<User> consumer, Consumer<Progress> progress,
+                           AtomicReference<RuntimeException> failure) {
+        Range range = ranges.get(partition);
+        if (failure.get() != null) {
+            return 0;
+        }
+        return JdbcWork.inTransaction(sessionFactory, connection -> {
+            try (Statement st = connection.createStatement()) {
+                st.execute("SET TRANSACTION READ ONLY");
+            }
+            long rows = 0;
+            Long lastId = null;
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT " + JdbcWork.USER_COLUMNS + " FROM users WHERE id BETWEEN ? AND ? ORDER BY id")) {
+                ps.setLong(1, range.fromId());
+                ps.setLong(2, range.toId());
+                ps.setFetchSize(fetchSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next() && failure.get() == null) {
+                        User user = JdbcWork.readUser(rs);
+                        lastId = user.getId();
+                        consumer.accept(user);
+                        rows++;
+                        if (rows % progressEveryRows == 0) {
+                            progress.accept(new Progress(partition, ranges.size(), range.fromId(), range.toId(),
+                                    rows, lastId, false));
+                        }
+                    }
+                }
+            }
+            if (failure.get() == null) {
+                progress.accept(new Progress(partition, ranges.size(), range.fromId(), range.toId(), rows, lastId, true));
+            }
+            return rows;
+        }, "параллельном чтении пользователей");
+    }
+}
@@ -0,0 +1,253 @@
+package org.klimtsov.dao;
+
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Секционирование таблицы users по месяцам created_at (PostgreSQL, RANGE).
+//Старые месяцы отсоединяются целиком вместо построчного удаления,
+//а запросы по диапазону дат читают только нужные секции.
+//Первичный ключ секционированной таблицы - (id, created_at): уникальные индексы секционированной
+//таблицы PostgreSQL должны включать ключ секционирования. По той же причине уникальность email
+//(uk_users_email) не переносится, а upsert по email отклоняется, поэтому перевод выполняется,
+//только если вызывающий явно согласился на повторяющиеся email.
+public class UserPartitioning {
+    private static final Logger logger = LoggerFactory.getLogger(UserPartitioning.class);
+
+    static final String DEFAULT_PARTITION = "users_pdefault";
+    private static final Pattern PARTITION_NAME = Pattern.compile("users_p(\\d{4})_(\\d{2})");
+
+    private final SessionFactory sessionFactory;
+
+    public UserPartitioning(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    static String partitionName(YearMonth month) {
+        return String.format("users_p%04d_%02d", month.getYear(), month.getMonthValue());
+    }
+
+    public boolean isPartitioned() {
+        return JdbcWork.inTransaction(sessionFactory, connection -> {
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT count(*) FROM pg_partitioned_table pt "
+                         + "JOIN pg_class c ON c.oid = pt.partrelid "
+                         + "WHERE c.relname = 'users' AND c.relnamespace = current_schema()::regnamespace")) {
+                rs.next();
+                return rs.getLong(1) > 0;
+            }
+        }, "проверке секционирования");
+    }
+
+    //Переводит users в секционированный вид (если ещё не переведена) и создаёт секции
+    //от самой ранней даты создания до текущего месяца + monthsAhead.
+    public void enable(int monthsAhead, boolean allowDuplicateEmails) {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        if (!isPartitioned()) {
+            if (!allowDuplicateEmails) {
+                throw new IllegalStateException("Partitioning users drops email uniqueness and disables upsert by email; "
+                        + "set users.partitioned.allowDuplicateEmails=true to accept it");
+            }
+            migrate(current.plusMonths(monthsAhead));
+        }
+        ensurePartitions(current, current.plusMonths(monthsAhead));
+    }
+
+    private void migrate(YearMonth lastMonth) {
+        logger.info("Перевод таблицы users в секционированный вид");
+        JdbcWork.inTransaction(sessionFactory, connection -> {
+            try (Statement st = connection.createStatement()) {
+                st.execute("LOCK TABLE users IN ACCESS EXCLUSIVE MODE");
+                YearMonth first = lastMonth;
+                long maxId = 0;
+                try (ResultSet rs = st.executeQuery("SELECT min(created_at), max(id), count(*) FILTER (WHERE created_at IS NULL) FROM users")) {
+                    rs.next();
+                    //created_at входит в первичный ключ и не может быть пустым.
+                    if (rs.getLong(3) > 0) {
+                        throw new DaoException("Перевод отменён: в users есть строки без created_at (" + rs.getLong(3) + ")", null);
+                    }
+                    Timestamp minCreated = rs.getTimestamp(1);
+                    if (minCreated != null) {
+                        first = YearMonth.from(minCreated.toInstant().atZone(ZoneOffset.UTC));
+                    }
+                    maxId = rs.getLong(2);
+                }
+                //id может быть identity или serial (bigserial создаёт Hibernate): identity копируется
+                //вместе с новой последовательностью, а последовательность serial переходит к новой таблице.
+                String sequence;
+                boolean identity;
+                try (ResultSet rs = st.executeQuery("SELECT pg_get_serial_sequence('users', 'id'), "
+                        + "(SELECT attidentity <> '' FROM pg_attribute WHERE attrelid = 'users'::regclass AND attname = 'id')")) {
+                    rs.next();
+                    sequence = rs.getString(1);
+                    identity = rs.getBoolean(2);
+                }
+                st.execute("CREATE TABLE users_partitioned (LIKE users INCLUDING DEFAULTS INCLUDING IDENTITY, "
+                        + "PRIMARY KEY (id, created_at)) PARTITION BY RANGE (created_at)");
+                st.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF users_partitioned DEFAULT");
+                for (YearMonth month = first; !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+                    st.execute(createPartitionSql("users_partitioned", month));
+                }
+                st.execute("INSERT INTO users_partitioned OVERRIDING SYSTEM VALUE SELECT * FROM users");
+                if (!identity && sequence != null) {
+                    st.execute("ALTER SEQUENCE " + sequence + " OWNED BY NONE");
+                }
+                st.execute("DROP TABLE users");
+                st.execute("ALTER TABLE users_partitioned RENAME TO users");
+                if (identity) {
+                    st.execute("ALTER TABLE users ALTER COLUMN id RESTART WITH " + (maxId + 1));
+                } else if (sequence != null) {
+                    st.execute("ALTER SEQUENCE " + sequence + " OWNED BY users.id");
+                }
+                st.execute("CREATE INDEX idx_users_created_at ON users (created_at, id)");
+                st.execute("CREATE INDEX idx_users_updated_at ON users (updated_at, id)");
+                st.execute("CREATE INDEX idx_users_email ON users (email)");
+            }
+            return null;
+        }, "переводе таблицы в секционированный вид");
+        logger.info("Таблица users секционирована по месяцам");
+    }
+
+    //Создаёт недостающие месячные секции в диапазоне [from, to]. Строки месяца, для которого секции
+    //не было, лежат в секции DEFAULT, и PostgreSQL не создаст секцию поверх них: такая секция создаётся
+    //отдельной таблицей, строки переносятся в неё из DEFAULT, и только потом она присоединяется.
+    public void ensurePartitions(YearMonth from, YearMonth to) {
+        JdbcWork.inTransaction(sessionFactory, connection -> {
+            try (Statement st = connection.createStatement()) {
+                boolean hasDefault = exists(st, DEFAULT_PARTITION);
+                for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+                    if (exists(st, partitionName(month))) {
+                        continue;
+                    }
+                    if (hasDefault && defaultHasRows(st, month)) {
+                        moveOutOfDefault(st, month);
+                    } else {
+                        st.execute(createPartitionSql("users", month));
+                    }
+                }
+            }
+            return null;
+        }, "создании секций");
+        logger.info("Секции users обеспечены с {} по {}", from, to);
+    }
+
+    //Вставки в DEFAULT блокируются до присоединения, иначе новая строка месяца не даст его присоединить.
+    private static void moveOutOfDefault(Statement st, YearMonth month) throws SQLException {
+        String name = partitionName(month);
+        st.execute("LOCK TABLE " + DEFAULT_PARTITION + " IN ACCESS EXCLUSIVE MODE");
+        st.execute("CREATE TABLE " + name + " (LIKE users INCLUDING DEFAULTS)");
+        int moved = st.executeUpdate("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION + " WHERE " + rangeCondition(month)
+                + " RETURNING *) INSERT INTO " + name + " SELECT * FROM moved");
+        st.execute("ALTER TABLE users ATTACH PARTITION " + name + " " + rangeBounds(month));
+        logger.info("Секция {} создана, из {} перенесено строк: {}", name, DEFAULT_PARTITION, moved);
+    }
+
+    private static boolean defaultHasRows(Statement st, YearMonth month) throws SQLException {
+        try (ResultSet rs = st.executeQuery("SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION
+                + " WHERE " + rangeCondition(month) + ")")) {
+            rs.next();
+            return rs.getBoolean(1);
+        }
+    }
+
+    private static boolean exists(Statement st, String table) throws SQLException {
+        try (ResultSet rs = st.executeQuery("SELECT to_regclass('" + table + "') IS NOT NULL")) {
+            rs.next();
+            return rs.getBoolean(1);
+        }
+    }
+
+    //Отсоединяет секции месяцев раньше cutoff; при drop = true удаляет их.
+    //Возвращает имена обработанных секций.
+    public List<String> detachPartitionsBefore(YearMonth cutoff, boolean drop) {
+        List<String> detached = JdbcWork.inTransaction(sessionFactory, connection -> {
+            List<String> names = new ArrayList<>();
+            try (Statement st = connection.createStatement()) {
+                for (String name : listPartitions(st)) {
+                    Matcher m = PARTITION_NAME.matcher(name);
+                    if (m.matches() && YearMonth.of(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))).isBefore(cutoff)) {
+                        names.add(name);
+                    }
+                }
+                for (String name : names) {
+                    st.execute("ALTER TABLE users DETACH PARTITION " + name);
+                    if (drop) {
+                        st.execute("DROP TABLE " + name);
+                    }
+                }
+            }
+            return names;
+        }, "отсоединении секций");
+        logger.info("Отсоединено секций до {}: {} (удалены: {})", cutoff, detached, drop);
+        return detached;
+    }
+
+    public List<String> listPartitions() {
+        return JdbcWork.inTransaction(sessionFactory, connection -> {
+            try (Statement st = connection.createStatement()) {
+                return listPartitions(st);
+            }
+        }, "получении списка секций");
+    }
+
+    //План запроса по окну created_at: по нему видно, какие секции отсекаются.
+    public String explainCreatedAtRange(Instant from, Instant to) {
+        return JdbcWork.inTransaction(sessionFactory, connection -> {
+            StringBuilder plan = new StringBuilder();
+            try (var ps = connection.prepareStatement(
+                    "EXPLAIN SELECT * FROM users WHERE created_at >= ? AND created_at < ?")) {
+                ps.setTimestamp(1, Timestamp.from(from));
+                ps.setTimestamp(2, Timestamp.from(to));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append(rs.getString(1)).append('\n');
+                    }
+                }
+            }
+            return plan.toString();
+        }, "построении плана запроса");
+    }
+
+    private List<String> listPartitions(Statement st) throws SQLException {
+        List<String> names = new ArrayList<>();
+        try (ResultSet rs = st.executeQuery("SELECT c.relname FROM pg_inherits i "
+                + "JOIN pg_class c ON c.oid = i.inhrelid "
+                + "JOIN pg_class p ON p.oid = i.inhparent "
+                + "WHERE p.relname = 'users' AND p.relnamespace = current_schema()::regnamespace "
+                + "ORDER BY c.relname")) {
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        }
+        return names;
+    }
+
+    private static String createPartitionSql(String table, YearMonth month) {
+        return "CREATE TABLE " + partitionName(month) + " PARTITION OF " + table + " " + rangeBounds(month);
+    }
+
+    private static String rangeBounds(YearMonth month) {
+        return "FOR VALUES FROM ('" + monthStart(month) + "') TO ('" + monthStart(month.plusMonths(1)) + "')";
+    }
+
+    private static String rangeCondition(YearMonth month) {
+        return "created_at >= '" + monthStart(month) + "' AND created_at < '" + monthStart(month.plusMonths(1)) + "'";
+    }
+
+    private static String monthStart(YearMonth month) {
+        return month.atDay(1) + " 00:00:00+00";
+    }
+}
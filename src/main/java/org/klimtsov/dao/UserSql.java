@@ -0,0 +1,211 @@
+package org.klimtsov.dao;
+
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserChangeType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//SQL, общий для UserDaoImpl и JdbcUserDao.
+final class UserSql {
+    //Строк в одном INSERT ... ON CONFLICT (по 5 параметров, лимит PostgreSQL - 32767 параметров).
+    static final int UPSERT_BATCH_SIZE = 1000;
+
+    //id в одном запросе по списку (IN / = ANY).
+    static final int ID_BATCH_SIZE = 1000;
+
+    private UserSql() {
+    }
+
+    //Различные id без null в порядке первого появления.
+    static List<Long> distinctIds(Collection<Long> ids) {
+        Set<Long> distinct = new LinkedHashSet<>(ids);
+        distinct.remove(null);
+        return new ArrayList<>(distinct);
+    }
+
+    //Найденные пользователи в порядке запрошенных id.
+    static Map<Long, User> inOrder(List<Long> ids, Map<Long, User> found) {
+        Map<Long, User> ordered = new LinkedHashMap<>();
+        for (Long id : ids) {
+            User user = found.get(id);
+            if (user != null) {
+                ordered.put(id, user);
+            }
+        }
+        return ordered;
+    }
+
+    static OffsetDateTime utc(Instant instant) {
+        return instant == null ? null : OffsetDateTime.ofInstant(instant, ZoneOffset.UTC);
+    }
+
+    static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
+
+    //Горизонт findChangedSince по часам БД: строки с updated_at позже now() - задержка ещё не отдаются,
+    //чтобы курсор не обогнал транзакцию, отметившую updated_at раньше, но зафиксированную позже.
+    static String changeHorizon(String lagMillisParameter) {
+        return "updated_at <= now() - " + lagMillisParameter + " * interval '1 millisecond'";
+    }
+
+    static boolean hasChangeLag(Duration changeLag) {
+        return changeLag != null && !changeLag.isZero() && !changeLag.isNegative();
+    }
+
+    //statement_timeout, с которым открыто соединение (reset_val: параметр options подключения,
+    //настройки роли или БД), в миллисекундах; 0 - без ограничения.
+    static long connectionStatementTimeout(Connection connection) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT reset_val FROM pg_settings WHERE name = 'statement_timeout'")) {
+            return rs.next() ? Long.parseLong(rs.getString(1)) : 0;
+        }
+    }
+
+    //SET LOCAL statement_timeout (до конца транзакции), только если бюджет операции отличается
+    //от таймаута соединения по умолчанию: без дедлайна вызывающего лишнего запроса нет.
+    static void applyStatementTimeout(Connection connection, long timeoutMillis, long connectionDefault)
+            throws SQLException {
+        if (timeoutMillis > 0 && timeoutMillis != connectionDefault) {
+            try (Statement st = connection.createStatement()) {
+                st.execute("SET LOCAL statement_timeout = " + timeoutMillis);
+            }
+        }
+    }
+
+    //UPDATE с условием на прежние значения и событие outbox одним запросом: INSERT берёт строку
+    //из RETURNING, поэтому событие появляется только при применённом изменении. Возвращает 0 или 1.
+    static int compareAndSet(Connection connection, Long id, UserFields expected, UserFields updated)
+            throws SQLException {
+        OffsetDateTime now = utc(now());
+        try (PreparedStatement ps = connection.prepareStatement(
+                "WITH changed AS (UPDATE users SET name = ?, email = ?, age = ?, updated_at = ? "
+                        + "WHERE id = ? AND name IS NOT DISTINCT FROM ? AND email IS NOT DISTINCT FROM ? "
+                        + "AND age IS NOT DISTINCT FROM ? RETURNING id, name, email, age) "
+                        + "INSERT INTO user_outbox (user_id, event_type, occurred_at, name, email, age) "
+                        + "SELECT id, ?, ?, name, email, age FROM changed")) {
+            ps.setString(1, updated.name());
+            ps.setString(2, updated.email());
+            ps.setObject(3, updated.age(), Types.INTEGER);
+            ps.setObject(4, now);
+            ps.setLong(5, id);
+            ps.setString(6, expected.name());
+            ps.setString(7, expected.email());
+            ps.setObject(8, expected.age(), Types.INTEGER);
+            ps.setString(9, UserChangeType.UPDATED.name());
+            ps.setObject(10, now);
+            return ps.executeUpdate();
+        }
+    }
+
+    //UPDATE по фильтру и события outbox одним запросом: INSERT берёт строки из RETURNING, поэтому
+    //события получают ровно обновлённые строки в их новом состоянии, и отдельного чтения по фильтру
+    //(которое могло бы разойтись с UPDATE при параллельных изменениях) нет. Возвращает число строк.
+    static int bulkUpdate(Connection connection, UserFilter filter, UserFieldUpdate update) throws SQLException {
+        OffsetDateTime now = utc(now());
+        List<Object> values = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("WITH changed AS (UPDATE users SET updated_at = ?");
+        values.add(now);
+        if (update.name() != null) {
+            sql.append(", name = ?");
+            values.add(update.name());
+        }
+        if (update.age() != null) {
+            sql.append(", age = ?");
+            values.add(update.age());
+        }
+        sql.append(bulkWhere(filter, values)).append(" RETURNING id, name, email, age) ")
+                .append("INSERT INTO user_outbox (user_id, event_type, occurred_at, name, email, age) ")
+                .append("SELECT id, ?, ?, name, email, age FROM changed");
+        values.add(UserChangeType.UPDATED.name());
+        values.add(now);
+        try (PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < values.size(); i++) {
+                ps.setObject(i + 1, values.get(i));
+            }
+            return ps.executeUpdate();
+        }
+    }
+
+    private static String bulkWhere(UserFilter filter, List<Object> values) {
+        List<String> conditions = new ArrayList<>();
+        if (filter.idFrom() != null) {
+            conditions.add("id >= ?");
+            values.add(filter.idFrom());
+        }
+        if (filter.idTo() != null) {
+            conditions.add("id <= ?");
+            values.add(filter.idTo());
+        }
+        if (filter.createdFrom() != null) {
+            conditions.add("created_at >= ?");
+            values.add(utc(filter.createdFrom()));
+        }
+        if (filter.createdTo() != null) {
+            conditions.add("created_at < ?");
+            values.add(utc(filter.createdTo()));
+        }
+        if (filter.ageFrom() != null) {
+            conditions.add("age >= ?");
+            values.add(filter.ageFrom());
+        }
+        if (filter.ageTo() != null) {
+            conditions.add("age <= ?");
+            values.add(filter.ageTo());
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    //SQLSTATE ON CONFLICT без подходящего уникального ограничения: так upsert отвечает
+    //на секционированной таблице, где уникальности email нет.
+    static final String NO_CONFLICT_CONSTRAINT = "42P10";
+    static final String UPSERT_UNAVAILABLE =
+            "Upsert по email недоступен: у секционированной таблицы users нет уникальности email";
+
+    //Один INSERT ... ON CONFLICT на пачку; xmax = 0 у вставленных строк и != 0 у обновлённых.
+    static Map<String, UpsertResult> upsertChunk(Connection connection, List<User> chunk) throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT INTO users (name, email, age, created_at, updated_at) VALUES ");
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+        }
+        sql.append(" ON CONFLICT (email) DO UPDATE SET name = EXCLUDED.name, age = EXCLUDED.age, ")
+                .append("updated_at = EXCLUDED.updated_at RETURNING id, email, (xmax = 0) AS inserted");
+        OffsetDateTime now = utc(now());
+        Map<String, UpsertResult> results = new HashMap<>();
+        try (PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+            int p = 1;
+            for (User user : chunk) {
+                ps.setString(p++, user.getName());
+                ps.setString(p++, user.getEmail());
+                ps.setObject(p++, user.getAge(), Types.INTEGER);
+                ps.setObject(p++, user.getCreatedAt() == null ? now : utc(user.getCreatedAt()));
+                ps.setObject(p++, now);
+                user.setUpdatedAt(now.toInstant());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    results.put(rs.getString(2), new UpsertResult(rs.getLong(1), rs.getBoolean(3)));
+                }
+            }
+        }
+        return results;
+    }
+}
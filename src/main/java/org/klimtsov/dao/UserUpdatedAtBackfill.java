@@ -0,0 +1,64 @@
+package org.klimtsov.dao;
+
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+//Заполнение updated_at как явная миграция. hbm2ddl=update добавляет столбец пустым во всех
+//существующих строках, а findChangedSince выбирает по updated_at > ? и такие строки не отдаёт никогда:
+//реплика, синхронизирующаяся с начала, пропустила бы всю прежнюю таблицу. Поэтому при запуске пустые
+//значения заполняются временем создания (или текущим), после чего столбец объявляется NOT NULL;
+//дальше проверка сводится к чтению признака NOT NULL. Недоступная БД пропускается, как в UserEmailConstraint.
+public class UserUpdatedAtBackfill {
+    private static final Logger logger = LoggerFactory.getLogger(UserUpdatedAtBackfill.class);
+
+    private final SessionFactory sessionFactory;
+
+    public UserUpdatedAtBackfill(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    //Возвращает число заполненных строк.
+    public long ensure() {
+        long filled;
+        try {
+            filled = JdbcWork.inTransaction(sessionFactory, UserUpdatedAtBackfill::ensure, "заполнении updated_at");
+        } catch (DaoException e) {
+            if (!TransientFailures.isConnectionFailure(e)) {
+                throw e;
+            }
+            logger.warn("Заполнение updated_at пропущено: БД недоступна");
+            return 0;
+        }
+        if (filled > 0) {
+            logger.info("Заполнен updated_at у {} пользователей", filled);
+        }
+        return filled;
+    }
+
+    //Таблица блокируется до заполнения, чтобы пустое значение не появилось между UPDATE и SET NOT NULL.
+    private static long ensure(Connection connection) throws SQLException {
+        if (!nullable(connection)) {
+            return 0;
+        }
+        try (Statement st = connection.createStatement()) {
+            st.execute("LOCK TABLE users IN ACCESS EXCLUSIVE MODE");
+            long filled = st.executeUpdate("UPDATE users SET updated_at = coalesce(created_at, now()) WHERE updated_at IS NULL");
+            st.execute("ALTER TABLE users ALTER COLUMN updated_at SET NOT NULL");
+            return filled;
+        }
+    }
+
+    private static boolean nullable(Connection connection) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT NOT attnotnull FROM pg_attribute "
+                     + "WHERE attrelid = 'users'::regclass AND attname = 'updated_at'")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+}
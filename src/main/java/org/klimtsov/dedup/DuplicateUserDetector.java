@@ -0,0 +1,242 @@
+package org.klimtsov.dedup;
+
+import org.hibernate.SessionFactory;
+import org.klimtsov.AppConfig;
+import org.klimtsov.Json;
+import org.klimtsov.dao.JdbcWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+//Поиск дублей пользователей без findAll() и сравнения всех со всеми. Один проход курсором по users
+//в порядке нормализованного email (сортирует PostgreSQL): соседние строки с одинаковым ключом -
+//точные дубли, в памяти только текущая группа. В том же проходе для каждого имени в ExternalSorter
+//попадают записи с ключами блоков NameKeys; после сортировки по ключу попарно сравниваются только
+//имена одного блока. Пара, общая для блоков обоих видов, сообщается один раз - из блока PREFIX.
+//Блоки больше maxBlockSize не сравниваются (слишком общий ключ), в отчёт попадает их размер;
+//пары из такого блока PREFIX сравниваются в общем блоке SUFFIX, если он не слишком велик.
+//Отчёт - JSON-строки, файл заменяется атомарно после завершения.
+public class DuplicateUserDetector {
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateUserDetector.class);
+
+    //Нормализация email в SQL, чтобы сортировка и группировка шли по одному ключу.
+    static final String EMAIL_KEY = "lower(btrim(email, E' \\t\\r\\n'))";
+
+    public record Summary(long users, long emailGroups, long emailDuplicates, long nameCandidates,
+                          long skippedBlocks, int sortRuns) {
+    }
+
+    private record EmailRow(long id, String email) {
+    }
+
+    private final SessionFactory sessionFactory;
+    private final Path tempDir;
+    private final int sortRunSize;
+    private final int maxNameDistance;
+    private final int maxBlockSize;
+    private final int fetchSize;
+
+    public DuplicateUserDetector(SessionFactory sessionFactory, Path tempDir, int sortRunSize, int maxNameDistance,
+                                 int maxBlockSize, int fetchSize) {
+        if (sortRunSize <= 0 || maxNameDistance < 0 || maxBlockSize < 2 || fetchSize <= 0) {
+            throw new IllegalArgumentException("Invalid duplicate detection settings");
+        }
+        this.sessionFactory = sessionFactory;
+        this.tempDir = tempDir;
+        this.sortRunSize = sortRunSize;
+        this.maxNameDistance = maxNameDistance;
+        this.maxBlockSize = maxBlockSize;
+        this.fetchSize = fetchSize;
+    }
+
+    public static DuplicateUserDetector from(SessionFactory sessionFactory, AppConfig config) {
+        return new DuplicateUserDetector(sessionFactory,
+                Path.of(config.getString("dedup.tempDir", System.getProperty("java.io.tmpdir"))),
+                config.getInt("dedup.sortRunSize", 100_000),
+                config.getInt("dedup.maxNameDistance", 2),
+                config.getInt("dedup.maxBlockSize", 1000),
+                config.getInt("dedup.fetchSize", 5000));
+    }
+
+    public Summary detect(Path reportFile) throws IOException {
+        long started = System.nanoTime();
+        Path tmp = reportFile.resolveSibling(reportFile.getFileName() + ".tmp");
+        Counts counts = new Counts();
+        try (ExternalSorter sorter = new ExternalSorter(tempDir, sortRunSize);
+             BufferedWriter report = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            counts.users = scanByEmail(report, sorter, counts);
+            counts.sortRuns = sorter.getRuns();
+            compareNameBlocks(report, sorter, counts);
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(tmp);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, reportFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Summary summary = new Summary(counts.users, counts.emailGroups, counts.emailDuplicates, counts.nameCandidates,
+                counts.skippedBlocks, counts.sortRuns);
+        logger.info("Поиск дублей завершён за {} мс: {}", (System.nanoTime() - started) / 1_000_000, summary);
+        return summary;
+    }
+
+    private long scanByEmail(BufferedWriter report, ExternalSorter sorter, Counts counts) {
+        return JdbcWork.inTransaction(sessionFactory, connection -> {
+            try (Statement st = connection.createStatement()) {
+                st.execute("SET TRANSACTION READ ONLY");
+            }
+            try (PreparedStatement ps = connection.prepareStatement("SELECT id, name, email, " + EMAIL_KEY
+                    + " AS email_key FROM users ORDER BY email_key, id")) {
+                ps.setFetchSize(fetchSize);
+                long users = 0;
+                String groupKey = null;
+                List<EmailRow> group = new ArrayList<>();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        users++;
+                        long id = rs.getLong(1);
+                        String name = rs.getString(2);
+                        String key = rs.getString(4);
+                        if (key == null || !key.equals(groupKey)) {
+                            writeEmailGroup(report, groupKey, group, counts);
+                            group.clear();
+                            groupKey = key;
+                        }
+                        if (key != null) {
+                            group.add(new EmailRow(id, rs.getString(3)));
+                        }
+                        String normalized = NameKeys.normalize(name);
+                        if (!normalized.isEmpty()) {
+                            sorter.add(new NameEntry(NameKeys.prefixKey(normalized), id, name, normalized));
+                            sorter.add(new NameEntry(NameKeys.suffixKey(normalized), id, name, normalized));
+                        }
+                    }
+                }
+                writeEmailGroup(report, groupKey, group, counts);
+                return users;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, "поиске дублей пользователей");
+    }
+
+    private void writeEmailGroup(BufferedWriter report, String key, List<EmailRow> group, Counts counts)
+            throws IOException {
+        if (group.size() < 2) {
+            return;
+        }
+        counts.emailGroups++;
+        counts.emailDuplicates += group.size() - 1;
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"type\":\"email\",\"key\":");
+        Json.appendString(sb, key);
+        sb.append(",\"users\":[");
+        for (int i = 0; i < group.size(); i++) {
+            EmailRow row = group.get(i);
+            sb.append(i == 0 ? "" : ",").append("{\"id\":").append(row.id()).append(",\"email\":");
+            Json.appendString(sb, row.email());
+            sb.append('}');
+        }
+        report.write(sb.append("]}").toString());
+        report.newLine();
+    }
+
+    private void compareNameBlocks(BufferedWriter report, ExternalSorter sorter, Counts counts) throws IOException {
+        List<NameEntry> block = new ArrayList<>();
+        //Ключи PREFIX, блоки которых не сравнивались. Все блоки PREFIX идут раньше SUFFIX (NameKeys),
+        //поэтому к первому блоку SUFFIX набор уже полон.
+        Set<String> oversizedPrefixes = new HashSet<>();
+        String blockKey = null;
+        long blockSize = 0;
+        NameEntry entry;
+        while ((entry = sorter.next()) != null) {
+            if (!entry.key().equals(blockKey)) {
+                compareBlock(report, blockKey, block, blockSize, oversizedPrefixes, counts);
+                block.clear();
+                blockKey = entry.key();
+                blockSize = 0;
+            }
+            blockSize++;
+            if (blockSize <= maxBlockSize) {
+                block.add(entry);
+            }
+        }
+        compareBlock(report, blockKey, block, blockSize, oversizedPrefixes, counts);
+    }
+
+    private void compareBlock(BufferedWriter report, String key, List<NameEntry> block, long size,
+                              Set<String> oversizedPrefixes, Counts counts) throws IOException {
+        if (size < 2) {
+            return;
+        }
+        if (size > maxBlockSize) {
+            if (key.startsWith(NameKeys.PREFIX)) {
+                oversizedPrefixes.add(key);
+            }
+            counts.skippedBlocks++;
+            StringBuilder sb = new StringBuilder(64).append("{\"type\":\"skippedBlock\",\"block\":");
+            Json.appendString(sb, key);
+            report.write(sb.append(",\"users\":").append(size).append('}').toString());
+            report.newLine();
+            return;
+        }
+        boolean suffixBlock = key.startsWith(NameKeys.SUFFIX);
+        for (int i = 0; i < block.size(); i++) {
+            NameEntry a = block.get(i);
+            for (int j = i + 1; j < block.size(); j++) {
+                NameEntry b = block.get(j);
+                if (suffixBlock && comparedInPrefixBlock(a, b, oversizedPrefixes)) {
+                    continue;
+                }
+                int distance = NameKeys.distance(a.normalized(), b.normalized(), maxNameDistance);
+                if (distance <= maxNameDistance) {
+                    counts.nameCandidates++;
+                    writeNamePair(report, key, a, b, distance);
+                }
+            }
+        }
+    }
+
+    //Пара с общим ключом PREFIX уже сравнивалась в его блоке, если тот не был пропущен.
+    private static boolean comparedInPrefixBlock(NameEntry a, NameEntry b, Set<String> oversizedPrefixes) {
+        String prefixKey = NameKeys.prefixKey(a.normalized());
+        return prefixKey.equals(NameKeys.prefixKey(b.normalized())) && !oversizedPrefixes.contains(prefixKey);
+    }
+
+    private static void writeNamePair(BufferedWriter report, String key, NameEntry a, NameEntry b, int distance)
+            throws IOException {
+        StringBuilder sb = new StringBuilder(160).append("{\"type\":\"name\",\"block\":");
+        Json.appendString(sb, key);
+        sb.append(",\"a\":{\"id\":").append(a.id()).append(",\"name\":");
+        Json.appendString(sb, a.name());
+        sb.append("},\"b\":{\"id\":").append(b.id()).append(",\"name\":");
+        Json.appendString(sb, b.name());
+        sb.append("},\"distance\":").append(distance).append('}');
+        report.write(sb.toString());
+        report.newLine();
+    }
+
+    private static final class Counts {
+        private long users;
+        private long emailGroups;
+        private long emailDuplicates;
+        private long nameCandidates;
+        private long skippedBlocks;
+        private int sortRuns;
+    }
+}
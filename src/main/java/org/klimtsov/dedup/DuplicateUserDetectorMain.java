@@ -0,0 +1,45 @@
+package org.klimtsov.dedup;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.klimtsov.AppConfig;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+
+//Поиск дублей пользователей из командной строки: аргумент - файл отчёта (JSON-строки).
+//Настройки - dedup.* в application.properties.
+public class DuplicateUserDetectorMain {
+    private static final Logger logger = LoggerFactory.getLogger(DuplicateUserDetectorMain.class);
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Использование: <файл отчёта>");
+            return;
+        }
+        AppConfig config = AppConfig.load();
+        Path report = Path.of(args[0]);
+        SessionFactory sessionFactory = new Configuration()
+                .configure("hibernate.cfg.xml")
+                .setProperty("hibernate.show_sql", "false")
+                .setProperty("hibernate.format_sql", "false")
+                .setProperty("hibernate.use_sql_comments", "false")
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(UserOutboxEvent.class)
+                .buildSessionFactory();
+        try {
+            DuplicateUserDetector.Summary summary = DuplicateUserDetector.from(sessionFactory, config).detect(report);
+            System.out.printf("Пользователей: %d, групп с одинаковым email: %d (лишних записей %d), "
+                            + "пар похожих имён: %d, пропущено слишком больших блоков: %d%n",
+                    summary.users(), summary.emailGroups(), summary.emailDuplicates(), summary.nameCandidates(),
+                    summary.skippedBlocks());
+        } catch (Exception e) {
+            logger.error("Поиск дублей с отчётом в {} завершился ошибкой: {}", report, e.getMessage(), e);
+        } finally {
+            sessionFactory.close();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.klimtsov.dedup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+//Внешняя сортировка NameEntry: в памяти не больше runSize записей, каждая заполненная порция
+//сортируется и сбрасывается во временный файл, затем файлы сливаются через очередь с приоритетом
+//(по одной текущей записи на файл). Если все записи поместились в память, файлов нет.
+final class ExternalSorter implements AutoCloseable {
+    private static final int BUFFER_BYTES = 64 << 10;
+
+    private final Path dir;
+    private final int runSize;
+    private final List<NameEntry> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private final List<Run> open = new ArrayList<>();
+    private PriorityQueue<Run> merge;
+    private int next;
+
+    ExternalSorter(Path dir, int runSize) {
+        if (runSize <= 0) {
+            throw new IllegalArgumentException("Sort run size must be positive");
+        }
+        this.dir = dir;
+        this.runSize = runSize;
+    }
+
+    void add(NameEntry entry) throws IOException {
+        if (merge != null) {
+            throw new IllegalStateException("Sorter is already merging");
+        }
+        buffer.add(entry);
+        if (buffer.size() >= runSize) {
+            spill();
+        }
+    }
+
+    int getRuns() {
+        return runs.size();
+    }
+
+    //Следующая запись в порядке (key, id) или null, если записи кончились. Первый вызов
+    //завершает приём записей.
+    NameEntry next() throws IOException {
+        if (merge == null) {
+            startMerge();
+        }
+        if (runs.isEmpty()) {
+            return next < buffer.size() ? buffer.get(next++) : null;
+        }
+        Run run = merge.poll();
+        if (run == null) {
+            return null;
+        }
+        NameEntry entry = run.current;
+        if (run.advance()) {
+            merge.add(run);
+        }
+        return entry;
+    }
+
+    private void startMerge() throws IOException {
+        merge = new PriorityQueue<>((a, b) -> a.current.compareTo(b.current));
+        if (runs.isEmpty()) {
+            Collections.sort(buffer);
+            return;
+        }
+        if (!buffer.isEmpty()) {
+            spill();
+        }
+        for (Path file : runs) {
+            Run run = new Run(new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_BYTES)));
+            open.add(run);
+            if (run.advance()) {
+                merge.add(run);
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        Collections.sort(buffer);
+        Path file = Files.createTempFile(dir, "dedup-run-", ".bin");
+        runs.add(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_BYTES))) {
+            for (NameEntry entry : buffer) {
+                out.writeUTF(entry.key());
+                out.writeLong(entry.id());
+                out.writeUTF(entry.name());
+                out.writeUTF(entry.normalized());
+            }
+        }
+        buffer.clear();
+    }
+
+    //Удаляет временные файлы.
+    @Override
+    public void close() throws IOException {
+        for (Run run : open) {
+            run.in.close();
+        }
+        for (Path file : runs) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static final class Run {
+        private final DataInputStream in;
+        private NameEntry current;
+
+        private Run(DataInputStream in) {
+            this.in = in;
+        }
+
+        private boolean advance() throws IOException {
+            String key;
+            try {
+                key = in.readUTF();
+            } catch (EOFException end) {
+                current = null;
+                return false;
+            }
+            current = new NameEntry(key, in.readLong(), in.readUTF(), in.readUTF());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.klimtsov.dedup;
+
+//Запись для сортировки по ключу блока: ключ, id, имя как в БД и нормализованное имя.
+record NameEntry(String key, long id, String name, String normalized) implements Comparable<NameEntry> {
+
+    @Override
+    public int compareTo(NameEntry other) {
+        int byKey = key.compareTo(other.key);
+        return byKey != 0 ? byKey : Long.compare(id, other.id);
+    }
+}
@@ -0,0 +1,100 @@
+package org.klimtsov.dedup;
+
+import java.util.Arrays;
+
+//Нормализация имени и ключи блоков для поиска похожих имён. Имя приводится к нижнему регистру,
+//ё - к е, всё кроме букв и цифр считается разделителем, слова сортируются: "Петров  Иван"
+//и "иван петров" дают одну строку. Сравниваются только имена с общим ключом блока:
+//PREFIX - первые KEY_CHARS символа каждого слова (ловит опечатки в конце слов),
+//SUFFIX - последние KEY_CHARS (ловит опечатки в начале).
+final class NameKeys {
+    //PREFIX сортируется раньше SUFFIX: DuplicateUserDetector проходит все блоки PREFIX до первого SUFFIX.
+    static final String PREFIX = "p:";
+    static final String SUFFIX = "s:";
+    static final int KEY_CHARS = 3;
+    //Ограничение длины для временных файлов сортировки (writeUTF) и стоимости сравнения.
+    static final int MAX_NAME_CHARS = 200;
+
+    private NameKeys() {
+    }
+
+    //Пустая строка - в имени нет ни одной буквы или цифры.
+    static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length() && sb.length() < MAX_NAME_CHARS; i++) {
+            char c = Character.toLowerCase(name.charAt(i));
+            if (c == 'ё') {
+                c = 'е';
+            }
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+            } else if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+                sb.append(' ');
+            }
+        }
+        String[] words = sb.toString().trim().split(" ");
+        Arrays.sort(words);
+        return String.join(" ", words);
+    }
+
+    static String prefixKey(String normalized) {
+        return key(PREFIX, normalized, true);
+    }
+
+    static String suffixKey(String normalized) {
+        return key(SUFFIX, normalized, false);
+    }
+
+    private static String key(String kind, String normalized, boolean prefix) {
+        String[] words = normalized.split(" ");
+        for (int i = 0; i < words.length; i++) {
+            String word = words[i];
+            int n = Math.min(KEY_CHARS, word.length());
+            words[i] = prefix ? word.substring(0, n) : word.substring(word.length() - n);
+        }
+        Arrays.sort(words);
+        return kind + String.join(" ", words);
+    }
+
+    //Расстояние Левенштейна, если оно не больше max, иначе max + 1. Считается только полоса
+    //шириной 2 * max + 1 вокруг диагонали.
+    static int distance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        int outside = max + 1;
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j <= max ? j : outside;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int from = Math.max(1, i - max);
+            int to = Math.min(b.length(), i + max);
+            current[0] = i <= max ? i : outside;
+            if (from > 1) {
+                current[from - 1] = outside;
+            }
+            int rowMin = current[0];
+            for (int j = from; j <= to; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                current[j] = Math.min(value, outside);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (to < b.length()) {
+                current[to + 1] = outside;
+            }
+            if (rowMin > max) {
+                return outside;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
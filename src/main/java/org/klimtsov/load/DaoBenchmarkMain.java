@@ -0,0 +1,74 @@
+package org.klimtsov.load;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.klimtsov.AppConfig;
+import org.klimtsov.dao.UserDao;
+import org.klimtsov.dao.UserDaoFactory;
+import org.klimtsov.service.UserService;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+//Сравнение реализаций UserDao на одинаковой нагрузке: для каждой из bench.daos
+//прогрев bench.warmupSeconds, затем замер с параметрами load.* и итоговая таблица.
+//SQL в консоль не выводится (show_sql выключен), чтобы не искажать результат.
+public class DaoBenchmarkMain {
+    private static final Logger logger = LoggerFactory.getLogger(DaoBenchmarkMain.class);
+
+    public static void main(String[] args) {
+        AppConfig config = AppConfig.load();
+        WorkloadConfig workload = WorkloadConfig.from(config);
+        WorkloadConfig warmup = new WorkloadConfig(workload.createWeight(), workload.readWeight(),
+                workload.updateWeight(), workload.deleteWeight(), workload.threads(), workload.virtualThreads(),
+                workload.targetRatePerSecond(), Duration.ofSeconds(config.getLong("bench.warmupSeconds", 10)),
+                workload.reportInterval());
+        //SessionFactory создаётся только если в списке есть реализация с БД.
+        AtomicReference<SessionFactory> sessionFactory = new AtomicReference<>();
+        Supplier<SessionFactory> lazySessionFactory = () -> sessionFactory.updateAndGet(sf -> sf != null ? sf
+                : buildSessionFactory(config));
+        Map<String, IntervalReport> results = new LinkedHashMap<>();
+        try {
+            for (String kind : config.getString("bench.daos", "hibernate,jdbc").split(",")) {
+                UserDao dao = UserDaoFactory.create(kind.trim(), config, lazySessionFactory);
+                try {
+                    UserService userService = new UserService(dao);
+                    logger.info("Прогрев {}", kind);
+                    new LoadGenerator(userService, warmup).run();
+                    logger.info("Замер {}", kind);
+                    results.put(kind.trim(), new LoadGenerator(userService, workload).run().total());
+                } finally {
+                    UserDaoFactory.close(dao);
+                }
+            }
+            results.forEach((kind, total) -> System.out.printf("%-10s %s%n", kind, total));
+        } catch (Exception e) {
+            logger.error("Сравнение реализаций DAO завершилось ошибкой: {}", e.getMessage(), e);
+        } finally {
+            if (sessionFactory.get() != null) {
+                sessionFactory.get().close();
+            }
+        }
+    }
+
+    //Соединения настраиваются как в HibernateUtil (statement_timeout на соединение), иначе каждая
+    //транзакция платит лишний SET LOCAL и сравнение не отражает рабочий режим.
+    private static SessionFactory buildSessionFactory(AppConfig config) {
+        Configuration configuration = new Configuration()
+                .configure("hibernate.cfg.xml")
+                .setProperty("hibernate.show_sql", "false")
+                .setProperty("hibernate.format_sql", "false")
+                .setProperty("hibernate.use_sql_comments", "false")
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(UserOutboxEvent.class);
+        UserDaoFactory.configureConnections(configuration, config);
+        return configuration.buildSessionFactory();
+    }
+}
@@ -0,0 +1,18 @@
+package org.klimtsov.load;
+
+import java.time.Instant;
+
+//Статистика за один интервал отчёта (или за весь прогон).
+public record IntervalReport(Instant end, long operations, long errors, double throughputPerSecond,
+                             long p50Micros, long p95Micros, long p99Micros) {
+
+    public double errorRate() {
+        return operations == 0 ? 0 : (double) errors / operations;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s ops=%d errors=%d (%.2f%%) throughput=%.1f/s p50=%dus p95=%dus p99=%dus",
+                end, operations, errors, errorRate() * 100, throughputPerSecond, p50Micros, p95Micros, p99Micros);
+    }
+}
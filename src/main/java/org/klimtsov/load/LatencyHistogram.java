@@ -0,0 +1,54 @@
+package org.klimtsov.load;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Потокобезопасная гистограмма задержек с логарифмическими корзинами (~2% точности),
+//от 1 мкс до ~60 с. Запись без блокировок и без аллокаций.
+public class LatencyHistogram {
+    private static final double GROWTH = 1.02;
+    private static final double LOG_GROWTH = Math.log(GROWTH);
+    private static final long MAX_MICROS = 60_000_000L;
+    private static final int BUCKETS = bucketOf(MAX_MICROS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private static int bucketOf(long micros) {
+        if (micros <= 1) {
+            return 0;
+        }
+        return (int) Math.ceil(Math.log(Math.min(micros, MAX_MICROS)) / LOG_GROWTH);
+    }
+
+    private static long upperBoundMicros(int bucket) {
+        return (long) Math.ceil(Math.pow(GROWTH, bucket));
+    }
+
+    public void recordNanos(long nanos) {
+        counts.incrementAndGet(bucketOf(nanos / 1000));
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    //Верхняя граница корзины, в которую попадает перцентиль p (0..100), в микросекундах.
+    public long percentileMicros(double p) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return upperBoundMicros(i);
+            }
+        }
+        return MAX_MICROS;
+    }
+}
@@ -0,0 +1,242 @@
+package org.klimtsov.load;
+
+import org.klimtsov.service.UserService;
+import org.klimtsov.userservice.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+//Генератор нагрузки на UserService: смесь create/read/update/delete из нескольких потоков
+//с целевым темпом. Работает с любой реализацией UserDao за UserService.
+//При заданном темпе задержка считается от запланированного момента запуска операции,
+//чтобы отставание генератора не скрывало медленные ответы (coordinated omission).
+public class LoadGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+    private static final int ID_POOL_SIZE = 1 << 16;
+
+    private final UserService userService;
+    private final WorkloadConfig config;
+    private final Consumer<IntervalReport> intervalListener;
+
+    //Кольцевой буфер id созданных пользователей для операций чтения/обновления/удаления.
+    private final AtomicLongArray knownIds = new AtomicLongArray(ID_POOL_SIZE);
+    private final AtomicLong knownIdsCursor = new AtomicLong();
+    private final AtomicLong emailSequence = new AtomicLong();
+    private final String runId = UUID.randomUUID().toString().substring(0, 8);
+
+    private final AtomicReference<Interval> currentInterval = new AtomicReference<>();
+    private volatile Interval total;
+
+    public LoadGenerator(UserService userService, WorkloadConfig config) {
+        this(userService, config, report -> { });
+    }
+
+    public LoadGenerator(UserService userService, WorkloadConfig config, Consumer<IntervalReport> intervalListener) {
+        this.userService = userService;
+        this.config = config;
+        this.intervalListener = intervalListener;
+    }
+
+    private static final class Interval {
+        final long startNanos = System.nanoTime();
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final LongAdder operations = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        void record(long latencyNanos, boolean failed) {
+            histogram.recordNanos(latencyNanos);
+            operations.increment();
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        IntervalReport report() {
+            double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+            long ops = operations.sum();
+            return new IntervalReport(Instant.now(), ops, errors.sum(), ops / seconds,
+                    histogram.percentileMicros(50), histogram.percentileMicros(95), histogram.percentileMicros(99));
+        }
+    }
+
+    public LoadReport run() {
+        logger.info("Запуск нагрузки: {}", config);
+        List<IntervalReport> intervals = new ArrayList<>();
+        currentInterval.set(new Interval());
+        total = new Interval();
+
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + config.duration().toNanos();
+        long slotNanos = config.targetRatePerSecond() > 0 ? (long) (1e9 / config.targetRatePerSecond()) : 0;
+        AtomicLong nextSlot = new AtomicLong(startNanos);
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(daemonFactory("load-reporter"));
+        long reportMillis = config.reportInterval().toMillis();
+        reporter.scheduleAtFixedRate(() -> {
+            IntervalReport report = currentInterval.getAndSet(new Interval()).report();
+            synchronized (intervals) {
+                intervals.add(report);
+            }
+            logger.info("Нагрузка: {}", report);
+            intervalListener.accept(report);
+        }, reportMillis, reportMillis, TimeUnit.MILLISECONDS);
+
+        ExecutorService workers = newWorkerExecutor();
+        for (int i = 0; i < config.threads(); i++) {
+            workers.execute(() -> workerLoop(deadline, slotNanos, nextSlot));
+        }
+        workers.shutdown();
+        try {
+            long waitNanos = deadline - System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            if (!workers.awaitTermination(Math.max(0, waitNanos), TimeUnit.NANOSECONDS)) {
+                logger.warn("Рабочие потоки нагрузки не завершились вовремя");
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+        reporter.shutdownNow();
+
+        IntervalReport last = currentInterval.getAndSet(new Interval()).report();
+        synchronized (intervals) {
+            if (last.operations() > 0) {
+                intervals.add(last);
+            }
+        }
+        IntervalReport summary = total.report();
+        logger.info("Нагрузка завершена: {}", summary);
+        synchronized (intervals) {
+            return new LoadReport(List.copyOf(intervals), summary);
+        }
+    }
+
+    private void workerLoop(long deadline, long slotNanos, AtomicLong nextSlot) {
+        while (!Thread.currentThread().isInterrupted()) {
+            long scheduled = System.nanoTime();
+            if (slotNanos > 0) {
+                scheduled = nextSlot.getAndAdd(slotNanos);
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            if (scheduled >= deadline || System.nanoTime() >= deadline) {
+                return;
+            }
+            boolean failed = false;
+            try {
+                executeRandomOperation();
+            } catch (RuntimeException e) {
+                failed = true;
+                logger.debug("Ошибка операции под нагрузкой: {}", e.getMessage());
+            }
+            long latency = System.nanoTime() - scheduled;
+            currentInterval.get().record(latency, failed);
+            total.record(latency, failed);
+        }
+    }
+
+    private void executeRandomOperation() {
+        int roll = ThreadLocalRandom.current().nextInt(config.totalWeight());
+        if ((roll -= config.createWeight()) < 0) {
+            create();
+        } else if ((roll -= config.readWeight()) < 0) {
+            read();
+        } else if (roll - config.updateWeight() < 0) {
+            update();
+        } else {
+            delete();
+        }
+    }
+
+    private void create() {
+        long n = emailSequence.incrementAndGet();
+        User user = new User(null, "Load User " + n, "load-" + runId + "-" + n + "@example.com",
+                ThreadLocalRandom.current().nextInt(0, 121), Instant.now());
+        Long id = userService.createUser(user);
+        if (id != null) {
+            knownIds.set((int) (knownIdsCursor.getAndIncrement() & (ID_POOL_SIZE - 1)), id);
+        }
+    }
+
+    private void read() {
+        long id = randomKnownId();
+        if (id == 0) {
+            create();
+            return;
+        }
+        userService.getUserById(id);
+    }
+
+    private void update() {
+        long id = randomKnownId();
+        if (id == 0) {
+            create();
+            return;
+        }
+        Optional<User> user = userService.getUserById(id);
+        if (user.isPresent()) {
+            User u = user.get();
+            u.setAge(ThreadLocalRandom.current().nextInt(0, 121));
+            userService.updateUser(u);
+        }
+    }
+
+    private void delete() {
+        int size = (int) Math.min(knownIdsCursor.get(), ID_POOL_SIZE);
+        if (size == 0) {
+            create();
+            return;
+        }
+        int index = ThreadLocalRandom.current().nextInt(size);
+        long id = knownIds.getAndSet(index, 0);
+        if (id != 0) {
+            userService.deleteUser(id);
+        }
+    }
+
+    private long randomKnownId() {
+        int size = (int) Math.min(knownIdsCursor.get(), ID_POOL_SIZE);
+        return size == 0 ? 0 : knownIds.get(ThreadLocalRandom.current().nextInt(size));
+    }
+
+    private ExecutorService newWorkerExecutor() {
+        if (config.virtualThreads()) {
+            try {
+                //Через рефлексию, так как проект собирается под Java 17.
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Виртуальные потоки недоступны в этой JVM, используются обычные потоки");
+            }
+        }
+        return Executors.newFixedThreadPool(config.threads(), daemonFactory("load-worker"));
+    }
+
+    private static ThreadFactory daemonFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
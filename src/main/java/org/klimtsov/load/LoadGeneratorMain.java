@@ -0,0 +1,43 @@
+package org.klimtsov.load;
+
+import org.klimtsov.AppConfig;
+import org.klimtsov.UserDaoStack;
+import org.klimtsov.analytics.UserCounters;
+import org.klimtsov.service.AdmissionController;
+import org.klimtsov.service.UserService;
+import org.klimtsov.tracing.Tracing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+//Запуск нагрузочного прогона против БД из hibernate.cfg.xml. Параметры - настройки load.* .
+public class LoadGeneratorMain {
+    private static final Logger logger = LoggerFactory.getLogger(LoadGeneratorMain.class);
+
+    public static void main(String[] args) {
+        AppConfig config = AppConfig.load();
+        WorkloadConfig workload = WorkloadConfig.from(config);
+        Tracing.configure(config);
+        UserDaoStack stack = UserDaoStack.build(config);
+        AdmissionController admission = stack.getAdmission();
+        UserCounters counters = stack.getCounters();
+        UserService userService = new UserService(stack.getDao());
+        try {
+            LoadReport report = new LoadGenerator(userService, workload).run();
+            report.intervals().forEach(System.out::println);
+            System.out.println("ИТОГО: " + report.total());
+            if (admission != null) {
+                System.out.printf("Допуск: лимит %d, пропущено %d, отклонено %d, лимит вверх/вниз %d/%d%n",
+                        admission.getLimit(), admission.getAdmitted(), admission.getRejected(),
+                        admission.getLimitIncreases(), admission.getLimitDecreases());
+            }
+            if (counters != null) {
+                System.out.println("Пользователей: " + counters.getTotal() + ", по возрасту: " + counters.getAgeBrackets());
+            }
+        } catch (Exception e) {
+            logger.error("Нагрузочный прогон завершился ошибкой: {}", e.getMessage(), e);
+        } finally {
+            stack.close();
+            Tracing.shutdown();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package org.klimtsov.load;
+
+import java.util.List;
+
+//Итог прогона: отчёты по интервалам и общая статистика.
+public record LoadReport(List<IntervalReport> intervals, IntervalReport total) {
+}
@@ -0,0 +1,106 @@
+package org.klimtsov.load;
+
+import org.klimtsov.AppConfig;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.validation.UserValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+//Сравнение проверки пользователя через UserValidator с прежним путём (regex для email,
+//trim().isEmpty() для имени): время и выделенная память на одну проверку.
+//Прогрев bench.validation.warmupRounds проходов, затем bench.validation.rounds замеров по набору
+//из bench.validation.users пользователей (примерно каждый пятый с ошибкой).
+public class ValidationBenchmarkMain {
+    private static final Logger logger = LoggerFactory.getLogger(ValidationBenchmarkMain.class);
+
+    private static final Pattern EMAIL_PATTERN =
+            Pattern.compile("^[A-Za-z0-9._%+\\-]+@[A-Za-z0-9.\\-]+\\.[A-Za-z]{2,}$");
+
+    //Результат проверок, чтобы JIT не выбросил их как неиспользуемые.
+    private static volatile int sink;
+
+    private interface Check {
+        int validate(User user);
+    }
+
+    public static void main(String[] args) {
+        AppConfig config = AppConfig.load();
+        List<User> users = dataset(config.getInt("bench.validation.users", 10_000));
+        int warmupRounds = config.getInt("bench.validation.warmupRounds", 200);
+        int rounds = config.getInt("bench.validation.rounds", 500);
+
+        for (User user : users) {
+            if ((regexValidate(user) == 0) != (UserValidator.validate(user) == 0)) {
+                logger.error("Проверки расходятся для {}", user);
+                return;
+            }
+        }
+        System.out.printf("%-10s %12s %12s%n", "path", "ns/op", "bytes/op");
+        run("regex", ValidationBenchmarkMain::regexValidate, users, warmupRounds, rounds);
+        run("validator", UserValidator::validate, users, warmupRounds, rounds);
+    }
+
+    private static void run(String name, Check check, List<User> users, int warmupRounds, int rounds) {
+        for (int r = 0; r < warmupRounds; r++) {
+            pass(check, users);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long started = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            pass(check, users);
+        }
+        long elapsed = System.nanoTime() - started;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        double ops = (double) rounds * users.size();
+        System.out.printf("%-10s %12.1f %12.1f%n", name, elapsed / ops, allocated / ops);
+    }
+
+    private static void pass(Check check, List<User> users) {
+        int acc = 0;
+        for (int i = 0, n = users.size(); i < n; i++) {
+            acc += check.validate(users.get(i));
+        }
+        sink += acc;
+    }
+
+    //Прежняя проверка: ConsoleHelper.EMAIL_PATTERN и UserService.validateUser.
+    private static int regexValidate(User user) {
+        int errors = 0;
+        if (user.getName() == null || user.getName().trim().isEmpty()) {
+            errors |= 1;
+        }
+        if (user.getEmail() == null || user.getEmail().trim().isEmpty()) {
+            errors |= 2;
+        } else if (!EMAIL_PATTERN.matcher(user.getEmail()).matches()) {
+            errors |= 4;
+        }
+        if (user.getAge() != null && (user.getAge() < 0 || user.getAge() > 120)) {
+            errors |= 8;
+        }
+        return errors;
+    }
+
+    private static List<User> dataset(int size) {
+        Random random = new Random(42);
+        String[] badEmails = {"no-at.example.com", "a@b", "a@.com", "a@b.c", "a b@example.com", "@example.com", "a@b.c0m"};
+        List<User> users = new ArrayList<>(size);
+        Instant now = Instant.now();
+        for (int i = 0; i < size; i++) {
+            boolean bad = random.nextInt(5) == 0;
+            String name = bad && random.nextBoolean() ? "   " : " User Name " + i + " ";
+            String email = bad ? badEmails[random.nextInt(badEmails.length)] : "user." + i + "@mail-" + (i % 97) + ".example.com";
+            Integer age = bad && random.nextBoolean() ? 121 + random.nextInt(10) : random.nextInt(121);
+            users.add(new User((long) i, name, email, age, now));
+        }
+        return users;
+    }
+}
@@ -0,0 +1,45 @@
+package org.klimtsov.load;
+
+import org.klimtsov.AppConfig;
+
+import java.time.Duration;
+
+//Параметры нагрузки: доли операций (веса), число потоков, целевой темп (0 - без ограничения),
+//длительность и интервал отчёта. virtualThreads работает только на JDK 21+, иначе обычные потоки.
+public record WorkloadConfig(int createWeight, int readWeight, int updateWeight, int deleteWeight,
+                             int threads, boolean virtualThreads, double targetRatePerSecond,
+                             Duration duration, Duration reportInterval) {
+
+    public WorkloadConfig {
+        if (createWeight < 0 || readWeight < 0 || updateWeight < 0 || deleteWeight < 0
+                || createWeight + readWeight + updateWeight + deleteWeight == 0) {
+            throw new IllegalArgumentException("Operation weights must be non-negative and not all zero");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Threads must be positive");
+        }
+        if (targetRatePerSecond < 0) {
+            throw new IllegalArgumentException("Target rate must not be negative");
+        }
+        if (duration.isNegative() || duration.isZero() || reportInterval.isNegative() || reportInterval.isZero()) {
+            throw new IllegalArgumentException("Duration and report interval must be positive");
+        }
+    }
+
+    public static WorkloadConfig from(AppConfig config) {
+        return new WorkloadConfig(
+                config.getInt("load.mix.create", 10),
+                config.getInt("load.mix.read", 70),
+                config.getInt("load.mix.update", 15),
+                config.getInt("load.mix.delete", 5),
+                config.getInt("load.threads", 16),
+                config.getBoolean("load.virtualThreads", false),
+                config.getInt("load.ratePerSecond", 0),
+                Duration.ofSeconds(config.getLong("load.durationSeconds", 60)),
+                Duration.ofSeconds(config.getLong("load.reportIntervalSeconds", 5)));
+    }
+
+    int totalWeight() {
+        return createWeight + readWeight + updateWeight + deleteWeight;
+    }
+}
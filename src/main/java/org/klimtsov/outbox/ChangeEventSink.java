@@ -0,0 +1,10 @@
+package org.klimtsov.outbox;
+
+import org.klimtsov.userservice.model.UserOutboxEvent;
+
+import java.util.List;
+
+//Получатель событий об изменениях пользователей. События приходят в порядке записи в outbox.
+public interface ChangeEventSink {
+    void publish(List<UserOutboxEvent> events);
+}
@@ -0,0 +1,55 @@
+package org.klimtsov.outbox;
+
+import org.klimtsov.Json;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+//Запись событий в файл: одна JSON-строка на событие, файл только дописывается.
+public class FileChangeEventSink implements ChangeEventSink {
+    private static final Logger logger = LoggerFactory.getLogger(FileChangeEventSink.class);
+
+    private final Path file;
+
+    public FileChangeEventSink(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized void publish(List<UserOutboxEvent> events) {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (UserOutboxEvent event : events) {
+                writer.write(toJson(event));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            logger.error("Ошибка записи событий в файл {}: {}", file, e.getMessage(), e);
+            throw new UncheckedIOException("Не удалось записать события в файл " + file, e);
+        }
+        logger.debug("Записано {} событий в файл {}", events.size(), file);
+    }
+
+    static String toJson(UserOutboxEvent event) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"id\":").append(event.getId())
+                .append(",\"userId\":").append(event.getUserId())
+                .append(",\"type\":\"").append(event.getType()).append('"')
+                .append(",\"occurredAt\":\"").append(event.getOccurredAt()).append('"')
+                .append(",\"name\":");
+        Json.appendString(sb, event.getName());
+        sb.append(",\"email\":");
+        Json.appendString(sb, event.getEmail());
+        sb.append(",\"age\":").append(event.getAge()).append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,34 @@
+package org.klimtsov.outbox;
+
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+//Доставка событий подписчикам внутри процесса (кэши, индексы).
+public class ListenerChangeEventSink implements ChangeEventSink {
+    private static final Logger logger = LoggerFactory.getLogger(ListenerChangeEventSink.class);
+
+    private final List<Consumer<UserOutboxEvent>> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(Consumer<UserOutboxEvent> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<UserOutboxEvent> listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void publish(List<UserOutboxEvent> events) {
+        logger.debug("Доставка {} событий {} подписчикам", events.size(), listeners.size());
+        for (UserOutboxEvent event : events) {
+            for (Consumer<UserOutboxEvent> listener : listeners) {
+                listener.accept(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.klimtsov.outbox;
+
+import jakarta.persistence.PersistenceException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.klimtsov.dao.DaoException;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//Читает outbox пачками и публикует события в sinks. Доставка "хотя бы один раз":
+//записи удаляются только после успешной публикации во все sinks.
+//Рассчитан на один экземпляр ретранслятора на базу.
+public class OutboxRelay implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final SessionFactory sessionFactory;
+    private final List<ChangeEventSink> sinks;
+    private final int batchSize;
+    private ScheduledExecutorService scheduler;
+
+    public OutboxRelay(SessionFactory sessionFactory, List<ChangeEventSink> sinks, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.sessionFactory = sessionFactory;
+        this.sinks = List.copyOf(sinks);
+        this.batchSize = batchSize;
+    }
+
+    //Публикует одну пачку событий; возвращает количество опубликованных.
+    public int relayBatch() {
+        Transaction transaction = null;
+        try (Session session = sessionFactory.openSession()) {
+            transaction = session.beginTransaction();
+            //Без "водяного знака" по id: identity-значения могут фиксироваться не по порядку,
+            //поэтому каждый раз берём самые старые из оставшихся записей.
+            List<UserOutboxEvent> events = session.createQuery(
+                            "from UserOutboxEvent e order by e.id", UserOutboxEvent.class)
+                    .setMaxResults(batchSize)
+                    .list();
+            if (events.isEmpty()) {
+                transaction.commit();
+                return 0;
+            }
+            for (ChangeEventSink sink : sinks) {
+                sink.publish(events);
+            }
+            List<Long> ids = events.stream().map(UserOutboxEvent::getId).toList();
+            session.createMutationQuery("delete from UserOutboxEvent e where e.id in (:ids)")
+                    .setParameterList("ids", ids)
+                    .executeUpdate();
+            transaction.commit();
+            logger.debug("Опубликовано событий outbox: {}", events.size());
+            return events.size();
+        } catch (PersistenceException connEx) {
+            safeRollback(transaction);
+            logger.error("Ошибка БД при чтении outbox: {}", connEx.getMessage(), connEx);
+            throw new DaoException("Не удалось прочитать outbox", connEx);
+        } catch (RuntimeException e) {
+            safeRollback(transaction);
+            logger.error("Ошибка публикации событий outbox: {}", e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    //Публикует все накопившиеся события; возвращает их количество.
+    public int drain() {
+        int total = 0;
+        int published;
+        do {
+            published = relayBatch();
+            total += published;
+        } while (published == batchSize);
+        return total;
+    }
+
+    public synchronized void start(long intervalMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "outbox-relay");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                drain();
+            } catch (Exception e) {
+                logger.warn("Цикл ретрансляции outbox завершился ошибкой, повтор через {} мс", intervalMillis);
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.info("Ретранслятор outbox запущен: интервал {} мс, пачка {}", intervalMillis, batchSize);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+            logger.info("Ретранслятор outbox остановлен");
+        }
+    }
+
+    private void safeRollback(Transaction transaction) {
+        if (transaction != null) {
+            try {
+                transaction.rollback();
+            } catch (Exception ex) {
+                logger.error("Ошибка при откате транзакции: {}", ex.getMessage(), ex);
+            }
+        }
+    }
+}
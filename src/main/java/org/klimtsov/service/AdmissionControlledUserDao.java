@@ -0,0 +1,22 @@
+package org.klimtsov.service;
+
+import org.klimtsov.dao.ForwardingUserDao;
+import org.klimtsov.dao.UserDao;
+
+import java.util.function.Supplier;
+
+//UserDao, каждый вызов которого проходит через AdmissionController.
+//Валидация UserService выполняется до DAO и места в лимите не занимает.
+public class AdmissionControlledUserDao extends ForwardingUserDao {
+    private final AdmissionController controller;
+
+    public AdmissionControlledUserDao(UserDao delegate, AdmissionController controller) {
+        super(delegate);
+        this.controller = controller;
+    }
+
+    @Override
+    protected <T> T invoke(String operation, boolean idempotent, Supplier<T> call) {
+        return controller.execute(call);
+    }
+}
@@ -0,0 +1,199 @@
+package org.klimtsov.service;
+
+import org.klimtsov.AppConfig;
+import org.klimtsov.dao.DaoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+//Контроль допуска к БД: не больше limit одновременных операций, остальные ждут в ограниченной очереди
+//не дольше maxWait, при полной очереди отказ сразу. Лимит подстраивается по AIMD: успешная быстрая
+//операция увеличивает его на 1/limit (примерно +1 за "окно"), ошибка БД или задержка выше
+//latencyThreshold уменьшает в backoffRatio раз - не чаще раза за "окно": завершения операций, начатых
+//до последнего уменьшения, его не повторяют (они отражают ту же перегрузку).
+public class AdmissionController {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private long lastDecreaseNanos = System.nanoTime();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder limitIncreases = new LongAdder();
+    private final LongAdder limitDecreases = new LongAdder();
+
+    public AdmissionController(int initialLimit, int minLimit, int maxLimit, int maxQueue,
+                               Duration maxWait, Duration latencyThreshold, double backoffRatio) {
+        if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 0 < min <= initial <= max");
+        }
+        if (maxQueue < 0) {
+            throw new IllegalArgumentException("Queue size must not be negative");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.backoffRatio = backoffRatio;
+    }
+
+    public static AdmissionController from(AppConfig config) {
+        return new AdmissionController(
+                config.getInt("admission.initialLimit", 20),
+                config.getInt("admission.minLimit", 2),
+                config.getInt("admission.maxLimit", 100),
+                config.getInt("admission.queueSize", 50),
+                Duration.ofMillis(config.getLong("admission.maxWaitMillis", 500)),
+                Duration.ofMillis(config.getLong("admission.latencyThresholdMillis", 200)),
+                0.9);
+    }
+
+    public <T> T execute(Supplier<T> call) {
+        acquire();
+        long start = System.nanoTime();
+        boolean overloaded = true;
+        try {
+            T result = call.get();
+            overloaded = System.nanoTime() - start > latencyThresholdNanos;
+            return result;
+        } catch (DaoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            //Ошибки не от БД (валидация и т.п.) о перегрузке не говорят.
+            overloaded = false;
+            throw e;
+        } finally {
+            release(start, overloaded);
+        }
+    }
+
+    private void acquire() {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                admitted.increment();
+                return;
+            }
+            if (waiting >= maxQueue) {
+                rejected.increment();
+                throw new AdmissionRejectedException("Слишком много запросов к БД: очередь ожидания заполнена");
+            }
+            waiting++;
+            try {
+                long remaining = maxWaitNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        rejected.increment();
+                        throw new AdmissionRejectedException("Слишком много запросов к БД: истекло время ожидания");
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                //Сигнал мог достаться этому потоку: передаём его следующему.
+                if (inFlight < (int) limit) {
+                    available.signal();
+                }
+                rejected.increment();
+                throw new AdmissionRejectedException("Ожидание допуска к БД прервано");
+            } finally {
+                waiting--;
+            }
+            inFlight++;
+            admitted.increment();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long start, boolean overloaded) {
+        lock.lock();
+        try {
+            inFlight--;
+            int before = (int) limit;
+            if (!overloaded) {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            } else if (start - lastDecreaseNanos >= 0) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecreaseNanos = System.nanoTime();
+            }
+            int after = (int) limit;
+            if (after != before) {
+                (after > before ? limitIncreases : limitDecreases).increment();
+                logger.debug("Лимит одновременных запросов к БД: {} -> {}", before, after);
+            }
+            //Будим не больше ожидающих, чем свободных мест: остальные всё равно снова уснут.
+            for (int free = Math.min(after - inFlight, waiting); free > 0; free--) {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getLimitIncreases() {
+        return limitIncreases.sum();
+    }
+
+    public long getLimitDecreases() {
+        return limitDecreases.sum();
+    }
+}
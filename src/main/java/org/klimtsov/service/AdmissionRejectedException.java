@@ -0,0 +1,11 @@
+package org.klimtsov.service;
+
+import org.klimtsov.dao.CallRejectedException;
+
+//Запрос отклонён контролем допуска: очередь заполнена или ожидание истекло.
+//Наследует DaoException (через CallRejectedException), чтобы существующие обработчики ошибок БД ловили и его.
+public class AdmissionRejectedException extends CallRejectedException {
+    public AdmissionRejectedException(String message) {
+        super(message);
+    }
+}
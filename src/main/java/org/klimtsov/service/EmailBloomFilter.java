@@ -0,0 +1,121 @@
+package org.klimtsov.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Фильтр Блума по email: ответ "точно нет" без обращения к БД, "возможно есть" - нужна проверка.
+//Хэширование по символам строки без аллокаций; добавление потокобезопасно без блокировок.
+public class EmailBloomFilter {
+    private static final int MAGIC = 0x424C4F4D; // "BLOM"
+    private static final int VERSION = 1;
+
+    private final int numHashes;
+    private final long numBits;
+    private final AtomicLongArray words;
+
+    private EmailBloomFilter(long numBits, int numHashes, AtomicLongArray words) {
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.words = words;
+    }
+
+    //Размер подбирается под ожидаемое число email и желаемую долю ложных срабатываний.
+    public static EmailBloomFilter create(long expectedInsertions, double falsePositiveProbability) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Expected insertions must be positive");
+        }
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("False positive probability must be between 0 and 1");
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        bits = Math.max(64, (bits + 63) / 64 * 64);
+        int hashes = Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+        return new EmailBloomFilter(bits, hashes, new AtomicLongArray((int) (bits / 64)));
+    }
+
+    public void put(String email) {
+        long h1 = hash(email, 0x9E3779B97F4A7C15L);
+        long h2 = hash(email, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, numBits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    public boolean mightContain(String email) {
+        long h1 = hash(email, 0x9E3779B97F4A7C15L);
+        long h2 = hash(email, 0xC2B2AE3D27D4EB4FL) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, numBits);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Ожидаемая доля ложных срабатываний при текущей заполненности.
+    public double expectedFalsePositiveRate() {
+        long set = 0;
+        for (int i = 0; i < words.length(); i++) {
+            set += Long.bitCount(words.get(i));
+        }
+        return Math.pow((double) set / numBits, numHashes);
+    }
+
+    public long bitSize() {
+        return numBits;
+    }
+
+    public int hashCount() {
+        return numHashes;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(numBits);
+        out.writeInt(numHashes);
+        for (int i = 0; i < words.length(); i++) {
+            out.writeLong(words.get(i));
+        }
+    }
+
+    public static EmailBloomFilter readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Неизвестный формат файла фильтра Блума");
+        }
+        long bits = in.readLong();
+        int hashes = in.readInt();
+        if (bits <= 0 || bits % 64 != 0 || hashes <= 0) {
+            throw new IOException("Повреждённый файл фильтра Блума");
+        }
+        AtomicLongArray words = new AtomicLongArray((int) (bits / 64));
+        for (int i = 0; i < words.length(); i++) {
+            words.set(i, in.readLong());
+        }
+        return new EmailBloomFilter(bits, hashes, words);
+    }
+
+    //64-битный хэш по символам (умножение + перемешивание в духе murmur3 fmix64).
+    private static long hash(String s, long seed) {
+        long h = seed ^ s.length();
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001B3L;
+            h = Long.rotateLeft(h, 23);
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
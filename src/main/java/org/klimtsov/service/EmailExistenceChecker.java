@@ -0,0 +1,193 @@
+package org.klimtsov.service;
+
+import org.klimtsov.dao.UserDao;
+import org.klimtsov.outbox.ChangeEventSink;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserChangeType;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+//Проверка занятости email: сначала фильтр Блума, в БД идём только при "возможно есть".
+//Удалённые и сменённые email остаются в фильтре - это лишь увеличивает долю ложных срабатываний.
+//Email, записанные другими процессами, фильтр узнаёт из событий outbox (подключается к OutboxRelay
+//как ChangeEventSink); до их доставки ответ "нет" может быть неверным. Поэтому ответ лишь подсказка,
+//а защитой от дублей остаётся уникальное ограничение uk_users_email при записи.
+public class EmailExistenceChecker implements ChangeEventSink {
+    private static final Logger logger = LoggerFactory.getLogger(EmailExistenceChecker.class);
+    private static final int SCAN_PAGE_SIZE = 5_000;
+    //Запас на расхождение часов и долгие транзакции при дочитывании изменений после загрузки файла.
+    private static final Duration CATCH_UP_MARGIN = Duration.ofMinutes(5);
+
+    private final UserDao userDao;
+    private final long expectedInsertions;
+    private final double falsePositiveProbability;
+    private volatile EmailBloomFilter filter;
+    //Фильтр, который строится прямо сейчас: новые email пишутся и в него, чтобы не потеряться при замене.
+    private volatile EmailBloomFilter building;
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder definitelyAbsent = new LongAdder();
+    private final LongAdder possibleHits = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public EmailExistenceChecker(UserDao userDao, long expectedInsertions, double falsePositiveProbability) {
+        this.userDao = userDao;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.filter = EmailBloomFilter.create(expectedInsertions, falsePositiveProbability);
+    }
+
+    public boolean exists(String email) {
+        checks.increment();
+        if (!filter.mightContain(email)) {
+            definitelyAbsent.increment();
+            return false;
+        }
+        possibleHits.increment();
+        boolean exists = userDao.existsByEmail(email);
+        if (!exists) {
+            falsePositives.increment();
+        }
+        return exists;
+    }
+
+    public void recordEmail(String email) {
+        if (email != null) {
+            filter.put(email);
+            EmailBloomFilter next = building;
+            if (next != null) {
+                next.put(email);
+            }
+        }
+    }
+
+    //Email созданных и изменённых пользователей из outbox, в том числе записанных другими процессами.
+    @Override
+    public void publish(List<UserOutboxEvent> events) {
+        for (UserOutboxEvent event : events) {
+            if (event.getType() != UserChangeType.DELETED) {
+                recordEmail(event.getEmail());
+            }
+        }
+    }
+
+    //Полная перестройка потоковым обходом таблицы страницами по id.
+    public synchronized void rebuild() {
+        EmailBloomFilter fresh = EmailBloomFilter.create(expectedInsertions, falsePositiveProbability);
+        building = fresh;
+        long count = 0;
+        Long afterId = null;
+        List<User> page;
+        do {
+            page = userDao.findAfterId(afterId, SCAN_PAGE_SIZE);
+            for (User user : page) {
+                if (user.getEmail() != null) {
+                    fresh.put(user.getEmail());
+                }
+            }
+            count += page.size();
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == SCAN_PAGE_SIZE);
+        filter = fresh;
+        building = null;
+        logger.info("Фильтр Блума по email перестроен: пользователей {}, бит {}, хэшей {}",
+                count, fresh.bitSize(), fresh.hashCount());
+    }
+
+    //Сохраняет фильтр вместе с моментом сохранения; запись через временный файл.
+    public void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeLong(Instant.now().toEpochMilli());
+            filter.writeTo(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Фильтр Блума сохранён в {}", file);
+    }
+
+    //Загружает сохранённый фильтр и дочитывает email, изменённые после сохранения;
+    //если файла нет или он повреждён - перестраивает фильтр из БД.
+    public synchronized void loadOrRebuild(Path file) {
+        if (Files.isRegularFile(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                Instant savedAt = Instant.ofEpochMilli(in.readLong());
+                EmailBloomFilter loaded = EmailBloomFilter.readFrom(in);
+                building = loaded;
+                long caughtUp = catchUp(loaded, savedAt.minus(CATCH_UP_MARGIN));
+                filter = loaded;
+                building = null;
+                logger.info("Фильтр Блума загружен из {}, дочитано изменений: {}", file, caughtUp);
+                return;
+            } catch (IOException e) {
+                building = null;
+                logger.warn("Не удалось загрузить фильтр Блума из {}: {}, выполняется перестройка", file, e.getMessage());
+            }
+        }
+        rebuild();
+    }
+
+    private long catchUp(EmailBloomFilter target, Instant since) {
+        long count = 0;
+        Instant cursor = since;
+        Long afterId = null;
+        List<User> page;
+        do {
+            page = userDao.findChangedSince(cursor, afterId, SCAN_PAGE_SIZE);
+            for (User user : page) {
+                if (user.getEmail() != null) {
+                    target.put(user.getEmail());
+                }
+            }
+            count += page.size();
+            if (!page.isEmpty()) {
+                User last = page.get(page.size() - 1);
+                cursor = last.getUpdatedAt();
+                afterId = last.getId();
+            }
+        } while (page.size() == SCAN_PAGE_SIZE);
+        return count;
+    }
+
+    public long getChecks() {
+        return checks.sum();
+    }
+
+    public long getDefinitelyAbsent() {
+        return definitelyAbsent.sum();
+    }
+
+    public long getPossibleHits() {
+        return possibleHits.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    //Наблюдаемая доля ложных срабатываний среди email, которых нет в БД.
+    public double getFalsePositiveRate() {
+        long fp = falsePositives.sum();
+        long negatives = fp + definitelyAbsent.sum();
+        return negatives == 0 ? 0 : (double) fp / negatives;
+    }
+
+    public double getExpectedFalsePositiveRate() {
+        return filter.expectedFalsePositiveRate();
+    }
+}
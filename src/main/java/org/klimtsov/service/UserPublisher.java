@@ -0,0 +1,179 @@
+package org.klimtsov.service;
+
+import org.klimtsov.userservice.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Холодный Flow.Publisher пользователей поверх keyset-выборки: каждая подписка читает с начала.
+//Очередная порция (не больше window строк) запрашивается, только когда буфер пуст и подписчик
+//ещё ждёт элементы, поэтому в памяти никогда не больше window пользователей.
+//Порция - отдельный короткий запрос, сессия между порциями не удерживается; после cancel
+//новых запросов нет. Сигналы подписчику идут последовательно из задачи на executor.
+public class UserPublisher implements Flow.Publisher<User> {
+    private static final Logger logger = LoggerFactory.getLogger(UserPublisher.class);
+
+    //Чтение из БД блокирующее, поэтому по умолчанию - свой пул, а не ForkJoinPool.commonPool().
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "user-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //Следующая страница после last (null - первая страница).
+    @FunctionalInterface
+    public interface PageSource {
+        List<User> fetch(User last, int limit);
+    }
+
+    private final PageSource source;
+    private final int window;
+    private final Executor executor;
+
+    public UserPublisher(PageSource source, int window) {
+        this(source, window, DEFAULT_EXECUTOR);
+    }
+
+    public UserPublisher(PageSource source, int window, Executor executor) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Window must be positive");
+        }
+        this.source = source;
+        this.window = window;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super User> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        UserSubscription subscription = new UserSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private final class UserSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super User> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable badRequest;
+
+        //Состояние ниже меняется только внутри run(), который не выполняется параллельно сам с собой.
+        private final Deque<User> buffer = new ArrayDeque<>();
+        private User last;
+        private boolean exhausted;
+        private boolean done;
+
+        UserSubscription(Flow.Subscriber<? super User> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Request must be positive: " + n);
+            } else {
+                requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (!done) {
+                    drain();
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            long emitted = 0;
+            long demand = requested.get();
+            while (true) {
+                if (cancelled) {
+                    finish();
+                    return;
+                }
+                if (badRequest != null) {
+                    finish();
+                    subscriber.onError(badRequest);
+                    return;
+                }
+                if (buffer.isEmpty() && exhausted) {
+                    finish();
+                    subscriber.onComplete();
+                    return;
+                }
+                if (emitted == demand) {
+                    demand = requested.addAndGet(-emitted);
+                    emitted = 0;
+                    if (demand == 0) {
+                        return;
+                    }
+                }
+                if (buffer.isEmpty() && !fetch()) {
+                    return;
+                }
+                if (!buffer.isEmpty()) {
+                    User user = buffer.poll();
+                    try {
+                        subscriber.onNext(user);
+                    } catch (RuntimeException e) {
+                        logger.error("Подписчик выбросил исключение в onNext, подписка отменена: {}", e.getMessage(), e);
+                        cancelled = true;
+                    }
+                    emitted++;
+                }
+            }
+        }
+
+        //Читает очередную порцию; при ошибке завершает подписку через onError и возвращает false.
+        private boolean fetch() {
+            List<User> chunk;
+            try {
+                chunk = source.fetch(last, window);
+            } catch (RuntimeException e) {
+                logger.error("Ошибка при чтении порции пользователей: {}", e.getMessage(), e);
+                finish();
+                subscriber.onError(e);
+                return false;
+            }
+            buffer.addAll(chunk);
+            if (!chunk.isEmpty()) {
+                last = chunk.get(chunk.size() - 1);
+            }
+            exhausted = chunk.size() < window;
+            return true;
+        }
+
+        private void finish() {
+            done = true;
+            cancelled = true;
+            buffer.clear();
+        }
+    }
+}
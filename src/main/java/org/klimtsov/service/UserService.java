@@ -1,58 +1,363 @@
 package org.klimtsov.service;
 
+import org.klimtsov.dao.Deadline;
+import org.klimtsov.dao.UpsertResult;
 import org.klimtsov.dao.UserDao;
+import org.klimtsov.dao.UserFieldUpdate;
+import org.klimtsov.dao.UserFields;
+import org.klimtsov.dao.UserFilter;
+import org.klimtsov.tracing.Tracing;
 import org.klimtsov.userservice.model.User;
+import org.klimtsov.validation.UserValidator;
+import org.klimtsov.validation.ValidationError;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 public class UserService {
+    static final int MAX_PAGE_SIZE = 10_000;
+    //Попыток modifyUser при одновременных изменениях того же пользователя.
+    static final int MAX_MODIFY_ATTEMPTS = 10;
+
     private final UserDao userDao;
+    private final EmailExistenceChecker emailChecker;
+    //email, записанные в открытой единице работы; попадают в emailChecker после commit. null - вне единицы.
+    private final List<String> unitEmails;
 
     public UserService(UserDao userDao) {
+        this(userDao, null);
+    }
+
+    //emailChecker может быть null - тогда занятость email проверяется запросом к БД.
+    public UserService(UserDao userDao, EmailExistenceChecker emailChecker) {
+        this(userDao, emailChecker, null);
+    }
+
+    private UserService(UserDao userDao, EmailExistenceChecker emailChecker, List<String> unitEmails) {
         this.userDao = userDao;
+        this.emailChecker = emailChecker;
+        this.unitEmails = unitEmails;
     }
 
     public Long createUser(User user) {
-        validateUser(user);
-        return userDao.create(user);
+        return Tracing.trace("UserService.createUser", () -> {
+            validateUser(user);
+            Long id = userDao.create(user);
+            recordEmail(user.getEmail());
+            return id;
+        });
+    }
+
+    //Подсказка для ввода, а не гарантия: фильтр может ещё не знать email, записанный другим процессом,
+    //а email может быть занят сразу после проверки. Дубль отклоняет create по нарушению uk_users_email
+    //(DaoException "Пользователь с таким email уже существует").
+    public boolean isEmailRegistered(String email) {
+        return Tracing.trace("UserService.isEmailRegistered", () -> {
+            if (UserValidator.isBlank(email)) {
+                throw new IllegalArgumentException(ValidationError.EMAIL_EMPTY.message());
+            }
+            return emailChecker != null ? emailChecker.exists(email) : userDao.existsByEmail(email);
+        });
+    }
+
+    public UpsertResult upsertUserByEmail(User user) {
+        return Tracing.trace("UserService.upsertUserByEmail", () -> {
+            validateUser(user);
+            UpsertResult result = userDao.upsertByEmail(user);
+            recordEmail(user.getEmail());
+            return result;
+        });
+    }
+
+    public List<UpsertResult> upsertUsers(List<User> users) {
+        return Tracing.trace("UserService.upsertUsers", () -> {
+            if (users == null) {
+                throw new IllegalArgumentException("Users must not be null");
+            }
+            if (users.isEmpty()) {
+                return List.of();
+            }
+            validateAll(users);
+            List<UpsertResult> results = userDao.upsertAll(users);
+            users.forEach(u -> recordEmail(u.getEmail()));
+            return results;
+        });
     }
 
     public List<User> getAllUsers() {
-        return userDao.findAll();
+        return Tracing.trace("UserService.getAllUsers", () -> {
+            return userDao.findAll();
+        });
     }
 
     public Optional<User> getUserById(Long id) {
-        if (id == null || id <= 0) {
-            throw new IllegalArgumentException("ID must be positive");
+        return Tracing.trace("UserService.getUserById", () -> {
+            if (id == null || id <= 0) {
+                throw new IllegalArgumentException("ID must be positive");
+            }
+            return userDao.findById(id);
+        });
+    }
+
+    //Пакетная выборка вместо getUserById в цикле: найденные пользователи по id в порядке запроса.
+    public Map<Long, User> getUsersByIds(Collection<Long> ids) {
+        return Tracing.trace("UserService.getUsersByIds", () -> {
+            if (ids == null) {
+                throw new IllegalArgumentException("Ids must not be null");
+            }
+            for (Long id : ids) {
+                if (id == null || id <= 0) {
+                    throw new IllegalArgumentException("ID must be positive");
+                }
+            }
+            return ids.isEmpty() ? Map.of() : userDao.findAllByIds(ids);
+        });
+    }
+
+    //Постраничная выборка изменений для синхронизации реплик и кэшей.
+    public List<User> getUsersChangedSince(Instant since, Long afterId, int limit) {
+        return Tracing.trace("UserService.getUsersChangedSince", () -> {
+            if (since == null) {
+                throw new IllegalArgumentException("Since must not be null");
+            }
+            validateLimit(limit);
+            return userDao.findChangedSince(since, afterId, limit);
+        });
+    }
+
+    public List<User> getUsersCreatedBetween(Instant from, Instant to, Long afterId, int limit) {
+        return Tracing.trace("UserService.getUsersCreatedBetween", () -> {
+            validateRange(from, to);
+            validateLimit(limit);
+            return userDao.findByCreatedAtBetween(from, to, afterId, limit);
+        });
+    }
+
+    //Потоковый обход окна [from, to) страницами по batchSize без загрузки всего окна в память.
+    //Возвращает количество обработанных пользователей.
+    public long forEachUserCreatedBetween(Instant from, Instant to, int batchSize, Consumer<User> consumer) {
+        return Tracing.trace("UserService.forEachUserCreatedBetween", () -> {
+            validateRange(from, to);
+            validateLimit(batchSize);
+            long processed = 0;
+            Instant cursor = from;
+            Long afterId = null;
+            List<User> page;
+            do {
+                page = userDao.findByCreatedAtBetween(cursor, to, afterId, batchSize);
+                for (User user : page) {
+                    consumer.accept(user);
+                }
+                processed += page.size();
+                if (!page.isEmpty()) {
+                    User last = page.get(page.size() - 1);
+                    cursor = last.getCreatedAt();
+                    afterId = last.getId();
+                }
+            } while (page.size() == batchSize);
+            return processed;
+        });
+    }
+
+    //Реактивный вариант getAllUsers: пользователи по возрастанию id порциями не больше window
+    //по мере запроса подписчика (request(n)).
+    public Flow.Publisher<User> publishAllUsers(int window) {
+        validateLimit(window);
+        return new UserPublisher((last, limit) -> userDao.findAfterId(last == null ? null : last.getId(), limit), window);
+    }
+
+    //Реактивный вариант поиска по окну создания [from, to) с тем же keyset-курсором, что и getUsersCreatedBetween.
+    public Flow.Publisher<User> publishUsersCreatedBetween(Instant from, Instant to, int window) {
+        validateRange(from, to);
+        validateLimit(window);
+        return new UserPublisher((last, limit) -> last == null
+                ? userDao.findByCreatedAtBetween(from, to, null, limit)
+                : userDao.findByCreatedAtBetween(last.getCreatedAt(), to, last.getId(), limit), window);
+    }
+
+    public Flow.Publisher<User> publishUsersChangedSince(Instant since, int window) {
+        if (since == null) {
+            throw new IllegalArgumentException("Since must not be null");
         }
-        return userDao.findById(id);
+        validateLimit(window);
+        return new UserPublisher((last, limit) -> last == null
+                ? userDao.findChangedSince(since, null, limit)
+                : userDao.findChangedSince(last.getUpdatedAt(), last.getId(), limit), window);
     }
 
     public void updateUser(User user) {
-        if (user.getId() == null || user.getId() <= 0) {
-            throw new IllegalArgumentException("User ID must be positive for update");
+        Tracing.run("UserService.updateUser", () -> {
+            if (user.getId() == null || user.getId() <= 0) {
+                throw new IllegalArgumentException("User ID must be positive for update");
+            }
+            validateUser(user);
+            userDao.update(user);
+            recordEmail(user.getEmail());
+        });
+    }
+
+    //Условное обновление одним запросом: применяется, только если данные пользователя всё ещё равны
+    //expected (например, прочитанным перед редактированием). false - пользователя нет или его изменили.
+    public boolean compareAndSetUser(Long id, UserFields expected, UserFields updated) {
+        return Tracing.trace("UserService.compareAndSetUser", () -> {
+            if (id == null || id <= 0) {
+                throw new IllegalArgumentException("User ID must be positive for update");
+            }
+            if (expected == null || updated == null) {
+                throw new IllegalArgumentException("Expected and new fields must be provided");
+            }
+            int errors = UserValidator.validate(updated.name(), updated.email(), updated.age());
+            if (errors != 0) {
+                throw new IllegalArgumentException(ValidationError.first(errors).message());
+            }
+            boolean applied = userDao.compareAndSet(id, expected, updated);
+            if (applied) {
+                recordEmail(updated.email());
+            }
+            return applied;
+        });
+    }
+
+    //Цикл "прочитать - изменить - записать" без блокировок: change получает текущие поля и возвращает
+    //новые; если между чтением и записью пользователя изменили, попытка повторяется с новыми данными.
+    //Пустой результат - пользователя нет; после MAX_MODIFY_ATTEMPTS неудачных попыток -
+    //IllegalStateException.
+    public Optional<UserFields> modifyUser(Long id, UnaryOperator<UserFields> change) {
+        return Tracing.trace("UserService.modifyUser", () -> {
+            for (int attempt = 1; attempt <= MAX_MODIFY_ATTEMPTS; attempt++) {
+                Optional<User> current = getUserById(id);
+                if (current.isEmpty()) {
+                    return Optional.empty();
+                }
+                UserFields expected = UserFields.of(current.get());
+                UserFields updated = change.apply(expected);
+                if (compareAndSetUser(id, expected, updated)) {
+                    return Optional.of(updated);
+                }
+            }
+            throw new IllegalStateException("User " + id + " keeps changing concurrently, giving up after "
+                    + MAX_MODIFY_ATTEMPTS + " attempts");
+        });
+    }
+
+    //Массовое обновление по фильтру одним запросом; пустой фильтр запрещён,
+    //чтобы случайно не изменить всю таблицу.
+    public int bulkUpdateUsers(UserFilter filter, UserFieldUpdate update) {
+        return Tracing.trace("UserService.bulkUpdateUsers", () -> {
+            if (filter == null || filter.isUnrestricted()) {
+                throw new IllegalArgumentException("Filter must restrict at least one field");
+            }
+            if (update == null || update.isEmpty()) {
+                throw new IllegalArgumentException("Update must assign at least one field");
+            }
+            if (update.name() != null && UserValidator.isBlank(update.name())) {
+                throw new IllegalArgumentException(ValidationError.NAME_EMPTY.message());
+            }
+            if (update.age() != null && !UserValidator.isValidAge(update.age())) {
+                throw new IllegalArgumentException(ValidationError.AGE_RANGE.message());
+            }
+            return userDao.bulkUpdate(filter, update);
+        });
+    }
+
+    //Несколько операций сервиса в одной сессии и транзакции с одним commit. work получает UserService
+    //единицы работы, а не DAO: проверки данных те же, что и вне транзакции, а email попадают
+    //в emailChecker только после commit.
+    public <T> T inTransaction(Function<UserService, T> work) {
+        return Tracing.trace("UserService.inTransaction", () -> {
+            if (unitEmails != null) {
+                return userDao.inTransaction(false, dao -> work.apply(new UserService(dao, emailChecker, unitEmails)));
+            }
+            List<String> emails = new ArrayList<>();
+            T result = userDao.inTransaction(false, dao -> work.apply(new UserService(dao, emailChecker, emails)));
+            if (emailChecker != null) {
+                emails.forEach(emailChecker::recordEmail);
+            }
+            return result;
+        });
+    }
+
+    //То же только для чтения: без dirty checking и с READ ONLY транзакцией в БД.
+    public <T> T inReadOnlyTransaction(Function<UserService, T> work) {
+        return Tracing.trace("UserService.inReadOnlyTransaction",
+                () -> userDao.inTransaction(true, dao -> work.apply(new UserService(dao, emailChecker, unitEmails))));
+    }
+
+    //Выполняет вызовы сервиса с крайним сроком: все запросы к БД внутри call
+    //получают оставшееся время как таймаут, по истечении - QueryTimeoutDaoException.
+    public <T> T withDeadline(Duration budget, Supplier<T> call) {
+        if (budget == null || budget.isNegative() || budget.isZero()) {
+            throw new IllegalArgumentException("Deadline budget must be positive");
         }
-        validateUser(user);
-        userDao.update(user);
+        return Deadline.after(budget).call(call);
     }
 
     public boolean deleteUser(Long id) {
-        if (id == null || id <= 0) {
-            throw new IllegalArgumentException("ID must be positive");
+        return Tracing.trace("UserService.deleteUser", () -> {
+            if (id == null || id <= 0) {
+                throw new IllegalArgumentException("ID must be positive");
+            }
+            return userDao.delete(id);
+        });
+    }
+
+    //Во время единицы работы email откладывается до её commit.
+    private void recordEmail(String email) {
+        if (unitEmails != null) {
+            unitEmails.add(email);
+        } else if (emailChecker != null) {
+            emailChecker.recordEmail(email);
         }
-        return userDao.delete(id);
     }
 
-    private void validateUser(User user) {
-        if (user.getName() == null || user.getName().trim().isEmpty()) {
-            throw new IllegalArgumentException("User name cannot be empty");
+    //Проверяет весь пакет и сообщает все ошибки всех строк сразу, а не первую найденную.
+    private void validateAll(List<User> users) {
+        int[] errors = UserValidator.validateAll(users);
+        StringBuilder message = null;
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] != 0) {
+                message = message == null ? new StringBuilder("Invalid users: ") : message.append("; ");
+                message.append("row ").append(i).append(": ");
+                List<ValidationError> rowErrors = ValidationError.of(errors[i]);
+                for (int j = 0; j < rowErrors.size(); j++) {
+                    message.append(j == 0 ? "" : ", ").append(rowErrors.get(j).message());
+                }
+            }
+        }
+        if (message != null) {
+            throw new IllegalArgumentException(message.toString());
+        }
+    }
+
+    private void validateRange(Instant from, Instant to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Range bounds must not be null");
         }
-        if (user.getEmail() == null || user.getEmail().trim().isEmpty()) {
-            throw new IllegalArgumentException("User email cannot be empty");
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Range start must be before range end");
         }
-        if (user.getAge() != null && (user.getAge() < 0 || user.getAge() > 120)) {
-            throw new IllegalArgumentException("Age must be between 0 and 120");
+    }
+
+    private void validateLimit(int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+    }
+
+    private void validateUser(User user) {
+        int errors = UserValidator.validate(user);
+        if (errors != 0) {
+            throw new IllegalArgumentException(ValidationError.first(errors).message());
         }
     }
 }
\ No newline at end of file
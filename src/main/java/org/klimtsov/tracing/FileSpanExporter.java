@@ -0,0 +1,169 @@
+package org.klimtsov.tracing;
+
+import org.klimtsov.Json;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//Экспорт спанов в файл в JSON-кодировке OTLP (как у файлового экспортёра OpenTelemetry Collector):
+//одна строка - один ExportTraceServiceRequest с пачкой спанов. Закрывшие спан потоки только кладут
+//его в ограниченную очередь; при переполнении спан отбрасывается, а не задерживает запрос.
+//Запись в файл - в отдельном фоновом потоке.
+public class FileSpanExporter implements SpanExporter {
+    private static final Logger logger = LoggerFactory.getLogger(FileSpanExporter.class);
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int MAX_BATCH = 512;
+
+    private final Path file;
+    private final String serviceName;
+    private final BlockingQueue<Span> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final LongAdder exported = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public FileSpanExporter(Path file, String serviceName) {
+        this.file = file;
+        this.serviceName = serviceName;
+        this.writer = new Thread(this::writeLoop, "span-exporter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void export(Span span) {
+        if (!queue.offer(span)) {
+            dropped.increment();
+        }
+    }
+
+    private void writeLoop() {
+        List<Span> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                Span first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Span> batch) {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(toJson(serviceName, batch));
+            out.newLine();
+            exported.add(batch.size());
+        } catch (IOException e) {
+            dropped.add(batch.size());
+            logger.error("Ошибка записи спанов в файл {}: {}", file, e.getMessage(), e);
+        }
+    }
+
+    //Останавливает фоновый поток, дописав всё, что уже в очереди.
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Экспорт спанов остановлен: записано {}, отброшено {}", exported.sum(), dropped.sum());
+    }
+
+    public long getExported() {
+        return exported.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    static String toJson(String serviceName, List<Span> spans) {
+        StringBuilder sb = new StringBuilder(256 * spans.size());
+        sb.append("{\"resourceSpans\":[{\"resource\":{\"attributes\":[");
+        appendAttribute(sb, "service.name", serviceName);
+        sb.append("]},\"scopeSpans\":[{\"scope\":{\"name\":\"org.klimtsov.tracing\"},\"spans\":[");
+        for (int i = 0; i < spans.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendSpan(sb, spans.get(i));
+        }
+        sb.append("]}]}]}");
+        return sb.toString();
+    }
+
+    private static void appendSpan(StringBuilder sb, Span span) {
+        sb.append("{\"traceId\":\"").append(span.traceId)
+                .append("\",\"spanId\":\"").append(span.spanId).append('"');
+        if (span.getParentSpanId() != null) {
+            sb.append(",\"parentSpanId\":\"").append(span.getParentSpanId()).append('"');
+        }
+        sb.append(",\"name\":");
+        Json.appendString(sb, span.name);
+        sb.append(",\"kind\":").append(span.kind)
+                .append(",\"startTimeUnixNano\":\"").append(span.startEpochNanos)
+                .append("\",\"endTimeUnixNano\":\"").append(span.endEpochNanos)
+                .append("\",\"attributes\":[");
+        boolean first = true;
+        for (Map.Entry<String, Object> attribute : span.getAttributes().entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            appendAttribute(sb, attribute.getKey(), attribute.getValue());
+            first = false;
+        }
+        sb.append("],\"status\":");
+        if (span.errorMessage == null) {
+            sb.append("{\"code\":1}");
+        } else {
+            sb.append("{\"code\":2,\"message\":");
+            Json.appendString(sb, span.errorMessage);
+            sb.append('}');
+        }
+        sb.append('}');
+    }
+
+    //Значения по типам OTLP: целые - строкой (int64), остальное - как есть или строкой.
+    private static void appendAttribute(StringBuilder sb, String key, Object value) {
+        sb.append("{\"key\":");
+        Json.appendString(sb, key);
+        sb.append(",\"value\":{");
+        if (value instanceof Long || value instanceof Integer) {
+            sb.append("\"intValue\":\"").append(value).append('"');
+        } else if (value instanceof Double || value instanceof Float) {
+            sb.append("\"doubleValue\":").append(value);
+        } else if (value instanceof Boolean) {
+            sb.append("\"boolValue\":").append(value);
+        } else {
+            sb.append("\"stringValue\":");
+            Json.appendString(sb, String.valueOf(value));
+        }
+        sb.append("}}");
+    }
+}
@@ -0,0 +1,105 @@
+package org.klimtsov.tracing;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+//Отрезок трассы. Открывается Tracing.start(), закрывается close() в том же потоке, строго вложенно.
+//У невыбранных трасс атрибуты и ошибки не сохраняются и ничего не экспортируется.
+public final class Span implements AutoCloseable {
+    public static final int KIND_INTERNAL = 1;
+    public static final int KIND_SERVER = 2;
+    public static final int KIND_CLIENT = 3;
+
+    static final Span NOOP = new Span(null, null, null, null, false, KIND_INTERNAL);
+
+    final String name;
+    final String traceId;
+    final String spanId;
+    final Span parent;
+    final boolean sampled;
+    final int kind;
+    final long startEpochNanos;
+    private final long startNanoTime;
+    long endEpochNanos;
+    Map<String, Object> attributes;
+    String errorMessage;
+    private boolean ended;
+
+    Span(String name, String traceId, String spanId, Span parent, boolean sampled, int kind) {
+        this.name = name;
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parent = parent;
+        this.sampled = sampled;
+        this.kind = kind;
+        if (sampled) {
+            Instant now = Instant.now();
+            this.startNanoTime = System.nanoTime();
+            this.startEpochNanos = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+        } else {
+            this.startNanoTime = 0;
+            this.startEpochNanos = 0;
+        }
+    }
+
+    public Span setAttribute(String key, Object value) {
+        if (sampled && value != null) {
+            if (attributes == null) {
+                attributes = new LinkedHashMap<>();
+            }
+            attributes.put(key, value);
+        }
+        return this;
+    }
+
+    public void recordError(Throwable error) {
+        if (sampled) {
+            errorMessage = error.getClass().getSimpleName() + ": " + error.getMessage();
+        }
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getParentSpanId() {
+        return parent == null ? null : parent.spanId;
+    }
+
+    public long getDurationNanos() {
+        return endEpochNanos - startEpochNanos;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public Map<String, Object> getAttributes() {
+        return attributes == null ? Map.of() : attributes;
+    }
+
+    @Override
+    public void close() {
+        if (this == NOOP || ended) {
+            return;
+        }
+        ended = true;
+        if (sampled) {
+            endEpochNanos = startEpochNanos + (System.nanoTime() - startNanoTime);
+        }
+        Tracing.end(this);
+    }
+}
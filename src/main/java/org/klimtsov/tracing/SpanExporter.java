@@ -0,0 +1,10 @@
+package org.klimtsov.tracing;
+
+//Получатель завершённых выбранных спанов. export вызывается в потоке, закрывшем спан,
+//поэтому не должен блокироваться.
+public interface SpanExporter extends AutoCloseable {
+    void export(Span span);
+
+    @Override
+    void close();
+}
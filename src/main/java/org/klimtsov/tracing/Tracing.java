@@ -0,0 +1,144 @@
+package org.klimtsov.tracing;
+
+import org.klimtsov.AppConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+//Лёгкая трассировка: текущий спан хранится в ThreadLocal, идентификаторы трассы и спана - в MDC
+//(traceId, spanId), чтобы их можно было вывести в логах. Решение о записи принимается один раз
+//для корневого спана с вероятностью sampleRate; у невыбранной трассы дочерние спаны - пустышки.
+//Пока трассировка не настроена, start() возвращает пустышку без обращения к ThreadLocal.
+public final class Tracing {
+    private static final Logger logger = LoggerFactory.getLogger(Tracing.class);
+
+    public static final String MDC_TRACE_ID = "traceId";
+    public static final String MDC_SPAN_ID = "spanId";
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static volatile SpanExporter exporter;
+    private static volatile double sampleRate;
+
+    private Tracing() {
+    }
+
+    public static void configure(double rate, SpanExporter spanExporter) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1");
+        }
+        SpanExporter previous = exporter;
+        sampleRate = rate;
+        exporter = spanExporter;
+        if (previous != null && previous != spanExporter) {
+            previous.close();
+        }
+    }
+
+    public static void configure(AppConfig config) {
+        if (!config.getBoolean("tracing.enabled", false)) {
+            return;
+        }
+        double rate = config.getDouble("tracing.sampleRate", 0.01);
+        Path file = Path.of(config.getString("tracing.file", "traces.jsonl"));
+        configure(rate, new FileSpanExporter(file, config.getString("tracing.serviceName", "user-service")));
+        logger.info("Трассировка включена: доля записываемых трасс {}, файл {}", rate, file);
+    }
+
+    //Отключает трассировку и дописывает накопленные спаны.
+    public static void shutdown() {
+        SpanExporter previous = exporter;
+        exporter = null;
+        sampleRate = 0;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return exporter != null && sampleRate > 0;
+    }
+
+    public static Span current() {
+        Span span = CURRENT.get();
+        return span == null ? Span.NOOP : span;
+    }
+
+    public static Span start(String name) {
+        return start(name, Span.KIND_INTERNAL);
+    }
+
+    public static Span start(String name, int kind) {
+        if (!isEnabled()) {
+            return Span.NOOP;
+        }
+        Span parent = CURRENT.get();
+        Span span;
+        if (parent == null) {
+            boolean sampled = sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+            span = sampled ? new Span(name, randomHex(2), randomHex(1), null, true, kind)
+                    : new Span(name, null, null, null, false, kind);
+        } else if (!parent.sampled) {
+            return Span.NOOP;
+        } else {
+            span = new Span(name, parent.traceId, randomHex(1), parent, true, kind);
+        }
+        CURRENT.set(span);
+        if (span.sampled) {
+            MDC.put(MDC_TRACE_ID, span.traceId);
+            MDC.put(MDC_SPAN_ID, span.spanId);
+        }
+        return span;
+    }
+
+    //Выполняет call в спане name; исключение отмечается в спане и пробрасывается дальше.
+    public static <T> T trace(String name, Supplier<T> call) {
+        Span span = start(name);
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            span.recordError(e);
+            throw e;
+        } finally {
+            span.close();
+        }
+    }
+
+    public static void run(String name, Runnable action) {
+        trace(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    static void end(Span span) {
+        Span parent = span.parent;
+        if (parent == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(parent);
+        }
+        if (parent != null && parent.sampled) {
+            MDC.put(MDC_SPAN_ID, parent.spanId);
+        } else if (span.sampled) {
+            MDC.remove(MDC_TRACE_ID);
+            MDC.remove(MDC_SPAN_ID);
+        }
+        SpanExporter target = exporter;
+        if (span.sampled && target != null) {
+            target.export(span);
+        }
+    }
+
+    private static String randomHex(int longs) {
+        StringBuilder sb = new StringBuilder(longs * 16);
+        for (int i = 0; i < longs; i++) {
+            String hex = Long.toHexString(ThreadLocalRandom.current().nextLong());
+            sb.append("0".repeat(16 - hex.length())).append(hex);
+        }
+        return sb.toString();
+    }
+}
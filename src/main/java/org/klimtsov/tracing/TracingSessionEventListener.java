@@ -0,0 +1,63 @@
+package org.klimtsov.tracing;
+
+import org.hibernate.BaseSessionEventListener;
+
+//Спаны JDBC-уровня для сессий Hibernate: получение соединения и выполнение каждого запроса.
+//Экземпляр создаётся на каждую сессию, а сессия используется одним потоком, поэтому
+//синхронизация не нужна.
+public class TracingSessionEventListener extends BaseSessionEventListener {
+    private static final String DB_SYSTEM = "postgresql";
+
+    private transient Span acquireSpan;
+    private transient Span statementSpan;
+
+    @Override
+    public void jdbcConnectionAcquisitionStart() {
+        acquireSpan = Tracing.start("jdbc.connection.acquire", Span.KIND_CLIENT);
+    }
+
+    @Override
+    public void jdbcConnectionAcquisitionEnd() {
+        acquireSpan = close(acquireSpan);
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        statementSpan = startStatement("sql.execute");
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        statementSpan = close(statementSpan);
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        statementSpan = startStatement("sql.batch");
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        statementSpan = close(statementSpan);
+    }
+
+    //Конец сессии: спаны, не закрытые из-за исключения JDBC, закрываются здесь.
+    @Override
+    public void end() {
+        statementSpan = close(statementSpan);
+        acquireSpan = close(acquireSpan);
+    }
+
+    private static Span startStatement(String name) {
+        return Tracing.start(name, Span.KIND_CLIENT)
+                .setAttribute("db.system", DB_SYSTEM)
+                .setAttribute("db.statement", TracingStatementInspector.lastStatement());
+    }
+
+    private static Span close(Span span) {
+        if (span != null) {
+            span.close();
+        }
+        return null;
+    }
+}
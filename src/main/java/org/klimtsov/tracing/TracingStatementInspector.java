@@ -0,0 +1,23 @@
+package org.klimtsov.tracing;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+//Запоминает текст последнего подготовленного Hibernate запроса, чтобы TracingSessionEventListener
+//мог подписать им спан выполнения. Сам запрос не меняется.
+public class TracingStatementInspector implements StatementInspector {
+    private static final ThreadLocal<String> LAST_SQL = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        if (Tracing.isEnabled()) {
+            LAST_SQL.set(sql);
+        }
+        return sql;
+    }
+
+    static String lastStatement() {
+        String sql = LAST_SQL.get();
+        LAST_SQL.remove();
+        return sql;
+    }
+}
@@ -4,9 +4,15 @@ import lombok.*;
 
 import jakarta.persistence.*;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_updated_at", columnList = "updated_at, id"),
+        @Index(name = "idx_users_created_at", columnList = "created_at, id")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_users_email", columnNames = "email")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -28,4 +34,19 @@ public class User {
 
     @Column(name = "created_at")
     private Instant createdAt;
+
+    //Время последнего изменения; поддерживается автоматически, индекс нужен для выборки изменений.
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+
+    public User(Long id, String name, String email, Integer age, Instant createdAt) {
+        this(id, name, email, age, createdAt, null);
+    }
+
+    //Точность микросекунд, как у timestamp в PostgreSQL, чтобы курсор совпадал со значением в БД.
+    @PrePersist
+    @PreUpdate
+    void touchUpdatedAt() {
+        updatedAt = Instant.now().truncatedTo(ChronoUnit.MICROS);
+    }
 }
\ No newline at end of file
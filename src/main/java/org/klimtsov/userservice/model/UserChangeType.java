@@ -0,0 +1,8 @@
+package org.klimtsov.userservice.model;
+
+//Тип изменения пользователя, записываемого в outbox.
+public enum UserChangeType {
+    CREATED,
+    UPDATED,
+    DELETED
+}
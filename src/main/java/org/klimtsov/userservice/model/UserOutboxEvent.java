@@ -0,0 +1,45 @@
+package org.klimtsov.userservice.model;
+
+import lombok.*;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+//Запись outbox: пишется в той же транзакции, что и изменение пользователя.
+@Entity
+@Table(name = "user_outbox")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserOutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 16)
+    private UserChangeType type;
+
+    @Column(name = "occurred_at", nullable = false)
+    private Instant occurredAt;
+
+    //Состояние пользователя после изменения (для DELETED - последнее известное).
+    @Column(name = "name")
+    private String name;
+
+    @Column(name = "email")
+    private String email;
+
+    @Column(name = "age")
+    private Integer age;
+
+    public static UserOutboxEvent of(UserChangeType type, User user) {
+        return new UserOutboxEvent(null, user.getId(), type, Instant.now(),
+                user.getName(), user.getEmail(), user.getAge());
+    }
+}
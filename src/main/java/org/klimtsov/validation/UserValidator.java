@@ -0,0 +1,117 @@
+package org.klimtsov.validation;
+
+import org.klimtsov.userservice.model.User;
+
+import java.util.List;
+
+//Единые проверки полей пользователя для консоли, сервиса и пакетного импорта. Разбор написан
+//вручную: без регулярных выражений, trim() и других выделений памяти на проверяемую строку.
+//Результат - битовая маска ValidationError.bit(), 0 - ошибок нет.
+public final class UserValidator {
+    public static final int MIN_AGE = 0;
+    public static final int MAX_AGE = 120;
+
+    private UserValidator() {
+    }
+
+    public static int validate(User user) {
+        return validate(user.getName(), user.getEmail(), user.getAge());
+    }
+
+    //Все ошибки набора полей; age == null допустим (возраст не указан).
+    public static int validate(String name, String email, Integer age) {
+        int errors = 0;
+        if (isBlank(name)) {
+            errors |= ValidationError.NAME_EMPTY.bit();
+        }
+        if (isBlank(email)) {
+            errors |= ValidationError.EMAIL_EMPTY.bit();
+        } else if (!isValidEmail(email)) {
+            errors |= ValidationError.EMAIL_FORMAT.bit();
+        }
+        if (age != null && !isValidAge(age)) {
+            errors |= ValidationError.AGE_RANGE.bit();
+        }
+        return errors;
+    }
+
+    //Маска ошибок для каждой строки пакета в порядке списка.
+    public static int[] validateAll(List<User> users) {
+        int[] errors = new int[users.size()];
+        for (int i = 0; i < errors.length; i++) {
+            errors[i] = validate(users.get(i));
+        }
+        return errors;
+    }
+
+    //null, пустая строка или только пробельные символы - то же, что trim().isEmpty().
+    public static boolean isBlank(CharSequence value) {
+        if (value == null) {
+            return true;
+        }
+        for (int i = 0, n = value.length(); i < n; i++) {
+            if (value.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isValidAge(int age) {
+        return age >= MIN_AGE && age <= MAX_AGE;
+    }
+
+    //То же, что прежний шаблон ^[A-Za-z0-9._%+\-]+@[A-Za-z0-9.\-]+\.[A-Za-z]{2,}$:
+    //непустая локальная часть, один @, домен из букв, цифр, точек и дефисов, и после последней
+    //точки домена (не первого его символа) - не меньше двух латинских букв.
+    public static boolean isValidEmail(CharSequence email) {
+        if (email == null) {
+            return false;
+        }
+        int n = email.length();
+        int at = -1;
+        for (int i = 0; i < n; i++) {
+            char c = email.charAt(i);
+            if (c == '@') {
+                at = i;
+                break;
+            }
+            if (!isLocalChar(c)) {
+                return false;
+            }
+        }
+        if (at <= 0) {
+            return false;
+        }
+        int lastDot = -1;
+        for (int i = at + 1; i < n; i++) {
+            char c = email.charAt(i);
+            if (c == '.') {
+                lastDot = i;
+            } else if (!isLetterOrDigit(c) && c != '-') {
+                return false;
+            }
+        }
+        if (lastDot <= at + 1 || n - lastDot - 1 < 2) {
+            return false;
+        }
+        for (int i = lastDot + 1; i < n; i++) {
+            if (!isLetter(email.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLocalChar(char c) {
+        return isLetterOrDigit(c) || c == '.' || c == '_' || c == '%' || c == '+' || c == '-';
+    }
+
+    private static boolean isLetterOrDigit(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -0,0 +1,44 @@
+package org.klimtsov.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Ошибки проверки пользователя. UserValidator возвращает их битовой маской (bit()), чтобы проверка
+//не создавала объектов; порядок констант - порядок, в котором ошибки сообщаются.
+public enum ValidationError {
+    NAME_EMPTY("User name cannot be empty"),
+    EMAIL_EMPTY("User email cannot be empty"),
+    EMAIL_FORMAT("User email has invalid format"),
+    AGE_RANGE("Age must be between " + UserValidator.MIN_AGE + " and " + UserValidator.MAX_AGE);
+
+    private static final ValidationError[] VALUES = values();
+
+    private final String message;
+
+    ValidationError(String message) {
+        this.message = message;
+    }
+
+    public String message() {
+        return message;
+    }
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    //Первая по порядку ошибка маски или null для пустой маски.
+    public static ValidationError first(int errors) {
+        return errors == 0 ? null : VALUES[Integer.numberOfTrailingZeros(errors)];
+    }
+
+    public static List<ValidationError> of(int errors) {
+        List<ValidationError> list = new ArrayList<>(Integer.bitCount(errors));
+        for (ValidationError error : VALUES) {
+            if ((errors & error.bit()) != 0) {
+                list.add(error);
+            }
+        }
+        return list;
+    }
+}
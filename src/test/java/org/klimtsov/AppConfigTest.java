@@ -0,0 +1,38 @@
+package org.klimtsov;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AppConfigTest {
+
+    @Test
+    public void getters_ReturnValuesOrDefaults() {
+        Properties properties = new Properties();
+        properties.setProperty("int.value", "42");
+        properties.setProperty("bool.value", "true");
+        properties.setProperty("bad.value", "abc");
+        properties.setProperty("blank.value", "  ");
+        AppConfig config = new AppConfig(properties);
+
+        assertEquals(42, config.getInt("int.value", 0));
+        assertEquals(42L, config.getLong("int.value", 0L));
+        assertTrue(config.getBoolean("bool.value", false));
+        assertEquals(7, config.getInt("bad.value", 7));
+        assertEquals("def", config.getString("blank.value", "def"));
+        assertEquals("def", config.getString("missing", "def"));
+    }
+
+    @Test
+    public void load_SystemPropertyOverridesFile() {
+        System.setProperty("users.partitions.ahead", "9");
+        try {
+            assertEquals(9, AppConfig.load().getInt("users.partitions.ahead", 0));
+        } finally {
+            System.clearProperty("users.partitions.ahead");
+        }
+        assertFalse(AppConfig.load().getBoolean("users.partitioned", true));
+    }
+}
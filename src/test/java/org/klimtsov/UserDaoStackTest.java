@@ -0,0 +1,40 @@
+package org.klimtsov;
+
+import org.junit.jupiter.api.Test;
+import org.klimtsov.service.AdmissionControlledUserDao;
+import org.klimtsov.userservice.model.User;
+
+import java.time.Instant;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserDaoStackTest {
+
+    @Test
+    public void build_WrapsStorageInConfiguredDecorators() {
+        Properties properties = new Properties();
+        properties.setProperty("user.dao", "memory");
+        properties.setProperty("counters.enabled", "true");
+        properties.setProperty("admission.enabled", "true");
+
+        try (UserDaoStack stack = UserDaoStack.build(new AppConfig(properties))) {
+            assertInstanceOf(AdmissionControlledUserDao.class, stack.getDao());
+            stack.getDao().create(new User(null, "Ann", "ann@example.com", 30, Instant.now()));
+
+            assertEquals(1, stack.getCounters().getTotal());
+            assertEquals(1, stack.getAdmission().getAdmitted());
+        }
+    }
+
+    @Test
+    public void build_WithoutOptionalDecorators_ExposesNoHandles() {
+        Properties properties = new Properties();
+        properties.setProperty("user.dao", "memory");
+
+        try (UserDaoStack stack = UserDaoStack.build(new AppConfig(properties))) {
+            assertNull(stack.getCounters());
+            assertNull(stack.getAdmission());
+        }
+    }
+}
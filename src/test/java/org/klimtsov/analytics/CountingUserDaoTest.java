@@ -0,0 +1,129 @@
+package org.klimtsov.analytics;
+
+import org.junit.jupiter.api.Test;
+import org.klimtsov.dao.InMemoryUserDao;
+import org.klimtsov.dao.UserFieldUpdate;
+import org.klimtsov.dao.UserFields;
+import org.klimtsov.dao.UserFilter;
+import org.klimtsov.userservice.model.User;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountingUserDaoTest {
+
+    private final InMemoryUserDao storage = new InMemoryUserDao();
+    private final UserCounters counters = new UserCounters();
+    private final CountingUserDao dao = new CountingUserDao(storage, counters);
+
+    private static User user(String email, Integer age) {
+        return new User(null, "Name", email, age, Instant.now());
+    }
+
+    private void assertMatchesStorage() {
+        assertEquals(UserCounters.countAll(storage.findAll()), counters.snapshot());
+    }
+
+    @Test
+    void bucketOf_UsesLowerBounds() {
+        assertEquals("0-17", UserCounters.bucketName(UserCounters.bucketOf(17)));
+        assertEquals("18-24", UserCounters.bucketName(UserCounters.bucketOf(18)));
+        assertEquals("65+", UserCounters.bucketName(UserCounters.bucketOf(120)));
+        assertEquals("unknown", UserCounters.bucketName(UserCounters.bucketOf(null)));
+    }
+
+    @Test
+    void createUpdateDelete_KeepCountersExact() {
+        Long young = dao.create(user("a@example.com", 17));
+        dao.create(user("b@example.com", 30));
+        dao.create(user("c@example.com", null));
+
+        User moved = storage.findById(young).orElseThrow();
+        moved.setAge(70);
+        dao.update(moved);
+        assertTrue(dao.delete(young));
+        assertFalse(dao.delete(young));
+
+        assertEquals(2, counters.getTotal());
+        assertEquals(1L, counters.getAgeBrackets().get("25-34"));
+        assertEquals(0L, counters.getAgeBrackets().get("65+"));
+        assertMatchesStorage();
+        assertFalse(counters.isStale());
+    }
+
+    @Test
+    void compareAndSet_MovesBucketOnlyWhenApplied() {
+        Long id = dao.create(user("a@example.com", 17));
+        UserFields read = new UserFields("Name", "a@example.com", 17);
+
+        assertTrue(dao.compareAndSet(id, read, new UserFields("Name", "a@example.com", 40)));
+        assertFalse(dao.compareAndSet(id, read, new UserFields("Name", "a@example.com", 70)));
+
+        assertEquals(1L, counters.getAgeBrackets().get("35-44"));
+        assertEquals(0L, counters.getAgeBrackets().get("65+"));
+        assertMatchesStorage();
+        assertFalse(counters.isStale());
+    }
+
+    @Test
+    void update_OfMissingUser_DoesNotChangeCounters() {
+        dao.update(new User(42L, "X", "x@example.com", 30, Instant.now()));
+
+        assertEquals(0, counters.getTotal());
+    }
+
+    @Test
+    void upsertAll_CountsEachInsertedRowOnce() {
+        dao.create(user("existing@example.com", 40));
+
+        dao.upsertAll(List.of(user("new@example.com", 20), user("new@example.com", 50), user("other@example.com", 10)));
+
+        assertEquals(3, counters.getTotal());
+        assertEquals(1L, counters.getAgeBrackets().get("45-54"));
+        assertFalse(counters.isStale());
+
+        dao.upsertByEmail(user("existing@example.com", 60));
+        assertTrue(counters.isStale());
+    }
+
+    @Test
+    void bulkUpdateOfAge_MarksCountersStale() {
+        dao.create(user("a@example.com", 20));
+
+        dao.bulkUpdate(UserFilter.any().withAgeRange(0, 30), new UserFieldUpdate(null, 60));
+
+        assertTrue(counters.isStale());
+        counters.reconcile(counters.snapshot(), UserCounters.countAll(storage.findAll()));
+        assertMatchesStorage();
+    }
+
+    @Test
+    void inTransaction_AppliesChangesOnlyAfterCommit() {
+        assertThrows(IllegalStateException.class, () -> dao.inTransaction(false, unit -> {
+            unit.create(user("a@example.com", 20));
+            throw new IllegalStateException("rollback");
+        }));
+        assertEquals(0, counters.getTotal());
+
+        dao.inTransaction(false, unit -> {
+            unit.create(user("a@example.com", 20));
+            return unit.create(user("b@example.com", 21));
+        });
+        assertEquals(2, counters.getTotal());
+        assertMatchesStorage();
+    }
+
+    @Test
+    void reconcile_KeepsChangesMadeDuringRecount() {
+        Map<String, Long> before = counters.snapshot();
+        dao.create(user("during@example.com", 30));
+
+        counters.reconcile(before, Map.of(UserCounters.TOTAL, 10L));
+
+        assertEquals(11, counters.getTotal());
+        assertEquals(1L, counters.getAgeBrackets().get("25-34"));
+    }
+}
@@ -0,0 +1,90 @@
+package org.klimtsov.analytics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.klimtsov.dao.UserDao;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserChangeType;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserColumnarSnapshotTest {
+
+    @Mock
+    private UserDao userDao;
+
+    private UserColumnarSnapshot snapshot;
+
+    private final Instant t0 = Instant.parse("2024-01-01T00:00:00Z");
+
+    private User user(long id, String name, Integer age, Instant createdAt, Instant updatedAt) {
+        return new User(id, name, "user" + id + "@example.com", age, createdAt, updatedAt);
+    }
+
+    @BeforeEach
+    void setUp() {
+        snapshot = new UserColumnarSnapshot(userDao, 2);
+    }
+
+    @Test
+    void refresh_LoadsAllPagesAndAggregates() {
+        User u1 = user(1, "Ann", 20, t0, t0);
+        User u2 = user(2, "Bob", 30, t0.plusSeconds(60), t0.plusSeconds(1));
+        User u3 = user(3, "Ann", null, t0.plusSeconds(120), t0.plusSeconds(2));
+        when(userDao.findChangedSince(Instant.EPOCH, null, 2)).thenReturn(List.of(u1, u2));
+        when(userDao.findChangedSince(t0.plusSeconds(1), 2L, 2)).thenReturn(List.of(u3));
+
+        assertEquals(3, snapshot.refresh());
+
+        assertEquals(3, snapshot.size());
+        assertEquals(25.0, snapshot.averageAge());
+        assertEquals(1, snapshot.countByAge(age -> age >= 25));
+        assertEquals(2, snapshot.countCreatedBetween(t0.plusSeconds(30), t0.plusSeconds(180)));
+        assertEquals(1, snapshot.count(0, 120, t0.plusSeconds(30), null));
+        assertEquals(2, snapshot.countByName("Ann"));
+        assertArrayEquals(new long[]{1, 2}, snapshot.idsByAge(age -> true));
+        assertEquals("user3@example.com", snapshot.get(3).getEmail());
+        assertNull(snapshot.get(3).getAge());
+    }
+
+    @Test
+    void refresh_AppliesUpdatesInPlaceAndKeepsIdOrder() {
+        when(userDao.findChangedSince(Instant.EPOCH, null, 2))
+                .thenReturn(List.of(user(5, "Eve", 40, t0, t0)));
+        snapshot.refresh();
+        when(userDao.findChangedSince(t0, 5L, 2))
+                .thenReturn(List.of(user(5, "Eve", 41, t0, t0.plusSeconds(5)), user(4, "Dan", 50, t0, t0.plusSeconds(6))));
+        when(userDao.findChangedSince(t0.plusSeconds(6), 4L, 2)).thenReturn(List.of());
+
+        assertEquals(2, snapshot.refresh());
+
+        assertEquals(2, snapshot.size());
+        assertEquals(41, snapshot.get(5).getAge());
+        assertArrayEquals(new long[]{4, 5}, snapshot.idsByAge(age -> true));
+        long[] histogram = snapshot.ageHistogram(10);
+        assertEquals(1, histogram[4]);
+        assertEquals(1, histogram[5]);
+    }
+
+    @Test
+    void publish_RemovesDeletedUsers() {
+        when(userDao.findChangedSince(Instant.EPOCH, null, 2))
+                .thenReturn(List.of(user(1, "Ann", 20, t0, t0)));
+        snapshot.refresh();
+
+        snapshot.publish(List.of(new UserOutboxEvent(10L, 1L, UserChangeType.DELETED, t0, "Ann", null, 20)));
+
+        assertEquals(0, snapshot.size());
+        assertNull(snapshot.get(1));
+        assertTrue(Double.isNaN(snapshot.averageAge()));
+    }
+}
@@ -0,0 +1,102 @@
+package org.klimtsov.analytics;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import org.klimtsov.dao.UserDao;
+import org.klimtsov.dao.UserDaoImpl;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class UserCounterStoreIT {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("testuser")
+            .withPassword("testpass")
+            .withReuse(true);
+
+    private SessionFactory sessionFactory;
+    private UserDao userDao;
+    private UserCounterStore store;
+
+    @BeforeAll
+    void setup() {
+        Configuration configuration = new Configuration();
+        configuration.setProperty("hibernate.connection.driver_class", "org.postgresql.Driver");
+        configuration.setProperty("hibernate.connection.url", postgres.getJdbcUrl());
+        configuration.setProperty("hibernate.connection.username", postgres.getUsername());
+        configuration.setProperty("hibernate.connection.password", postgres.getPassword());
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+        configuration.addAnnotatedClass(User.class);
+        configuration.addAnnotatedClass(UserOutboxEvent.class);
+        sessionFactory = configuration.buildSessionFactory();
+        userDao = new UserDaoImpl(sessionFactory);
+        store = new UserCounterStore(sessionFactory);
+        store.createTableIfMissing();
+    }
+
+    @AfterAll
+    void tearDown() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    @BeforeEach
+    void cleanDatabase() {
+        sessionFactory.inTransaction(session -> {
+            session.createMutationQuery("DELETE FROM UserOutboxEvent").executeUpdate();
+            session.createMutationQuery("DELETE FROM User").executeUpdate();
+            session.createNativeMutationQuery("DELETE FROM user_counters").executeUpdate();
+        });
+    }
+
+    @Test
+    void recount_MatchesInProcessBuckets() {
+        int[] ages = {5, 17, 18, 24, 25, 64, 65, 99};
+        for (int i = 0; i < ages.length; i++) {
+            userDao.create(new User(null, "U" + i, "u" + i + "@example.com", ages[i], Instant.now()));
+        }
+        userDao.create(new User(null, "NoAge", "noage@example.com", null, Instant.now()));
+
+        assertEquals(UserCounters.countAll(userDao.findAll()), store.recount());
+    }
+
+    @Test
+    void saveAndLoad_RoundTrip() {
+        Map<String, Long> values = Map.of(UserCounters.TOTAL, 5L, "age.18-24", 5L);
+        store.save(values);
+        store.save(Map.of(UserCounters.TOTAL, 6L));
+
+        assertEquals(Map.of(UserCounters.TOTAL, 6L, "age.18-24", 5L), store.load());
+    }
+
+    @Test
+    void persister_StartsFromSavedValuesAndReconcilesWithTable() {
+        userDao.create(new User(null, "A", "a@example.com", 30, Instant.now()));
+        store.save(Map.of(UserCounters.TOTAL, 100L));
+        UserCounters counters = new UserCounters();
+        UserCounterPersister persister = new UserCounterPersister(counters, store, Duration.ofHours(1));
+
+        persister.start();
+        persister.close();
+
+        assertEquals(1, counters.getTotal());
+        assertEquals(1L, counters.getAgeBrackets().get("25-34"));
+        assertEquals(1L, store.load().get(UserCounters.TOTAL));
+    }
+}
@@ -0,0 +1,142 @@
+package org.klimtsov.audit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.klimtsov.userservice.model.User;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditLogTest {
+
+    @TempDir
+    Path dir;
+
+    private static AuditEvent event(long id) {
+        return new AuditEvent(Instant.parse("2026-01-01T00:00:00Z"), "tester", "update", id,
+                new User(id, "Old \"name\"", "a@example.com", 30, null),
+                new User(id, "New\nname", "a@example.com", 31, null), null);
+    }
+
+    @Test
+    void flush_WritesJsonLinesWithFewerSyncsThanEvents() throws Exception {
+        Path file = dir.resolve("audit.log");
+        try (AuditLog log = new AuditLog(file, 1000, AuditLog.Overflow.BLOCK, 1000, 512, 1 << 20, 3, true)) {
+            for (int i = 0; i < 200; i++) {
+                assertTrue(log.record(event(i)));
+            }
+            assertTrue(log.flush(10, TimeUnit.SECONDS));
+
+            List<String> lines = Files.readAllLines(file);
+            assertEquals(200, lines.size());
+            assertEquals("{\"at\":\"2026-01-01T00:00:00Z\",\"actor\":\"tester\",\"op\":\"update\",\"userId\":0,"
+                    + "\"before\":{\"id\":0,\"name\":\"Old \\\"name\\\"\",\"email\":\"a@example.com\",\"age\":30},"
+                    + "\"after\":{\"id\":0,\"name\":\"New\\nname\",\"email\":\"a@example.com\",\"age\":31}}", lines.get(0));
+            assertEquals(200, log.getWritten());
+            assertTrue(log.getSyncs() >= 1 && log.getSyncs() <= 200);
+        }
+    }
+
+    @Test
+    void write_RotatesAndKeepsMaxFiles() throws Exception {
+        Path file = dir.resolve("audit.log");
+        try (AuditLog log = new AuditLog(file, 1000, AuditLog.Overflow.BLOCK, 1000, 1, 1000, 2, false)) {
+            for (int i = 0; i < 100; i++) {
+                log.record(event(i));
+            }
+            assertTrue(log.flush(10, TimeUnit.SECONDS));
+            assertTrue(log.getRotations() > 2);
+        }
+        List<Path> rotated;
+        try (Stream<Path> files = Files.list(dir)) {
+            rotated = files.filter(p -> p.getFileName().toString().startsWith("audit.log.")).toList();
+        }
+        assertEquals(2, rotated.size());
+        for (Path path : rotated) {
+            assertTrue(Files.size(path) <= 1000);
+        }
+        assertTrue(Files.size(file) <= 1000);
+    }
+
+    @Test
+    void record_DropPolicy_NeverExceedsCapacity() throws Exception {
+        try (AuditLog log = new AuditLog(dir.resolve("audit.log"), 1, AuditLog.Overflow.DROP, 0, 16, 1 << 20, 1, false)) {
+            int accepted = 0;
+            for (int i = 0; i < 5000; i++) {
+                if (log.record(event(i))) {
+                    accepted++;
+                }
+                assertTrue(log.getQueued() <= 1);
+            }
+            assertTrue(log.flush(10, TimeUnit.SECONDS));
+            assertEquals(accepted, log.getWritten());
+            assertEquals(5000 - accepted, log.getDropped());
+        }
+    }
+
+    @Test
+    void record_BlockPolicy_WaitsForSpaceInsteadOfDropping() throws Exception {
+        try (AuditLog log = new AuditLog(dir.resolve("audit.log"), 1, AuditLog.Overflow.BLOCK, 10_000, 16, 1 << 20, 1, false)) {
+            for (int i = 0; i < 2000; i++) {
+                assertTrue(log.record(event(i)));
+            }
+            assertTrue(log.flush(10, TimeUnit.SECONDS));
+            assertEquals(2000, log.getWritten());
+            assertEquals(0, log.getDropped());
+        }
+    }
+
+    @Test
+    void record_AfterClose_IsDropped() {
+        AuditLog log = new AuditLog(dir.resolve("audit.log"), 10, AuditLog.Overflow.BLOCK, 1000, 16, 1 << 20, 1, false);
+        log.close();
+
+        assertFalse(log.record(event(1)));
+        assertEquals(1, log.getDropped());
+    }
+
+    @Test
+    void close_WhileRecording_EveryEventWrittenOrDropped() throws Exception {
+        AuditLog log = new AuditLog(dir.resolve("audit.log"), 100_000, AuditLog.Overflow.DROP, 0, 64, 1 << 30, 1, false);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<long[]>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                writers.add(executor.submit(() -> {
+                    long accepted = 0;
+                    long attempts = 0;
+                    do {
+                        attempts++;
+                        if (log.record(event(attempts))) {
+                            accepted++;
+                        }
+                    } while (accepted == attempts);
+                    return new long[]{accepted, attempts};
+                }));
+            }
+            Thread.sleep(20);
+            log.close();
+            long accepted = 0;
+            long attempts = 0;
+            for (Future<long[]> writer : writers) {
+                long[] counts = writer.get(10, TimeUnit.SECONDS);
+                accepted += counts[0];
+                attempts += counts[1];
+            }
+            assertEquals(accepted, log.getWritten());
+            assertEquals(attempts - accepted, log.getDropped());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
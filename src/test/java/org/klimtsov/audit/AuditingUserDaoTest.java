@@ -0,0 +1,124 @@
+package org.klimtsov.audit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.klimtsov.dao.InMemoryUserDao;
+import org.klimtsov.dao.UserFieldUpdate;
+import org.klimtsov.dao.UserFilter;
+import org.klimtsov.userservice.model.User;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+class AuditingUserDaoTest {
+
+    @TempDir
+    Path dir;
+
+    private AuditLog log;
+    private AuditingUserDao dao;
+
+    private AuditingUserDao dao() {
+        log = new AuditLog(dir.resolve("audit.log"), 100, AuditLog.Overflow.BLOCK, 1000, 16, 1 << 20, 1, false);
+        return new AuditingUserDao(new InMemoryUserDao(), log);
+    }
+
+    @AfterEach
+    void tearDown() {
+        log.close();
+    }
+
+    private List<String> lines() throws Exception {
+        assertTrue(log.flush(10, TimeUnit.SECONDS));
+        return Files.readAllLines(dir.resolve("audit.log"));
+    }
+
+    private static User user(Long id, String name, Integer age) {
+        return new User(id, name, "a@example.com", age, Instant.now());
+    }
+
+    @Test
+    void mutations_AreRecordedWithActorAndBeforeAfter() throws Exception {
+        dao = dao();
+        Long id = AuditActor.as("alice", () -> dao.create(user(null, "Ann", 30)));
+        dao.update(user(id, "Anna", 31));
+        assertTrue(dao.delete(id));
+        assertFalse(dao.delete(id));
+
+        List<String> lines = lines();
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"actor\":\"alice\",\"op\":\"create\",\"userId\":" + id + ",\"before\":null"));
+        assertTrue(lines.get(1).contains("\"op\":\"update\""));
+        assertTrue(lines.get(1).contains("\"before\":{\"id\":" + id + ",\"name\":\"Ann\""));
+        assertTrue(lines.get(1).contains("\"after\":{\"id\":" + id + ",\"name\":\"Anna\""));
+        assertTrue(lines.get(2).contains("\"op\":\"delete\""));
+        assertTrue(lines.get(2).contains("\"after\":null"));
+        assertFalse(lines.get(2).contains("alice"));
+    }
+
+    @Test
+    void upsertAndBulkUpdate_AreRecorded() throws Exception {
+        dao = dao();
+        dao.upsertByEmail(user(null, "Ann", 30));
+        dao.upsertByEmail(user(null, "Anna", 31));
+        dao.bulkUpdate(UserFilter.any(), new UserFieldUpdate(null, 40));
+
+        List<String> lines = lines();
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"op\":\"upsert.insert\""));
+        assertTrue(lines.get(1).contains("\"op\":\"upsert.update\""));
+        assertTrue(lines.get(2).contains("\"op\":\"bulkUpdate\""));
+        assertTrue(lines.get(2).contains("rows=1"));
+    }
+
+    @Test
+    void upsertAll_RepeatedEmail_RecordsOnlyWrittenState() throws Exception {
+        dao = dao();
+        dao.upsertAll(List.of(user(null, "Ann", 30), user(null, "Anna", 31)));
+
+        List<String> lines = lines();
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\"after\":{\"id\":1,\"name\":\"Anna\""), lines.get(0));
+    }
+
+    @Test
+    void inTransaction_RecordsOnlyAfterCommit() throws Exception {
+        dao = dao();
+        assertThrows(IllegalStateException.class, () -> dao.inTransaction(false, unit -> {
+            unit.create(user(null, "Ann", 30));
+            throw new IllegalStateException("rollback");
+        }));
+        assertTrue(lines().isEmpty());
+
+        dao.inTransaction(false, unit -> unit.inTransaction(false, inner -> inner.create(user(null, "Bob", 20))));
+        List<String> lines = lines();
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("\"name\":\"Bob\""));
+    }
+
+    @Test
+    void updateAndDelete_TakeBeforeStateFromWriteWithoutUnitOfWork() throws Exception {
+        InMemoryUserDao storage = spy(new InMemoryUserDao());
+        log = new AuditLog(dir.resolve("audit.log"), 100, AuditLog.Overflow.BLOCK, 1000, 16, 1 << 20, 1, false);
+        dao = new AuditingUserDao(storage, log);
+        Long id = dao.create(user(null, "Ann", 30));
+
+        dao.update(user(id, "Anna", 31));
+        assertTrue(dao.delete(id));
+
+        verify(storage, never()).inTransaction(anyBoolean(), any());
+        verify(storage, never()).findById(any());
+        List<String> lines = lines();
+        assertTrue(lines.get(1).contains("\"before\":{\"id\":" + id + ",\"name\":\"Ann\""));
+        assertTrue(lines.get(2).contains("\"before\":{\"id\":" + id + ",\"name\":\"Anna\""));
+    }
+}
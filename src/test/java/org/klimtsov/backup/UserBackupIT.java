@@ -0,0 +1,102 @@
+package org.klimtsov.backup;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.klimtsov.dao.DaoException;
+import org.klimtsov.dao.UserDao;
+import org.klimtsov.dao.UserDaoImpl;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class UserBackupIT {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("testuser")
+            .withPassword("testpass")
+            .withReuse(true);
+
+    private SessionFactory sessionFactory;
+    private UserDao userDao;
+    private UserBackup backup;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    void setup() {
+        Configuration configuration = new Configuration();
+        configuration.setProperty("hibernate.connection.driver_class", "org.postgresql.Driver");
+        configuration.setProperty("hibernate.connection.url", postgres.getJdbcUrl());
+        configuration.setProperty("hibernate.connection.username", postgres.getUsername());
+        configuration.setProperty("hibernate.connection.password", postgres.getPassword());
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+        configuration.addAnnotatedClass(User.class);
+        configuration.addAnnotatedClass(UserOutboxEvent.class);
+        sessionFactory = configuration.buildSessionFactory();
+        userDao = new UserDaoImpl(sessionFactory);
+        backup = new UserBackup(sessionFactory, 7);
+    }
+
+    @AfterAll
+    void tearDown() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    @BeforeEach
+    void cleanDatabase() {
+        sessionFactory.inTransaction(session -> {
+            session.createMutationQuery("DELETE FROM UserOutboxEvent").executeUpdate();
+            session.createMutationQuery("DELETE FROM User").executeUpdate();
+        });
+    }
+
+    @Test
+    void snapshotAndRestore_ReproduceTableAndContinueIds() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            users.add(new User(null, "Имя " + i, "user" + i + "@example.com", i % 3 == 0 ? null : 20 + i,
+                    Instant.parse("2024-03-01T10:15:30.123456Z").plusSeconds(i * 3600L)));
+        }
+        users.forEach(userDao::create);
+        List<User> before = userDao.findAll();
+        Path file = dir.resolve("users.snap");
+
+        assertEquals(50, backup.snapshot(file));
+        cleanDatabase();
+        assertEquals(50, backup.restore(file, 3));
+
+        assertEquals(before, userDao.findAll());
+        long maxId = before.stream().mapToLong(User::getId).max().orElseThrow();
+        Long next = userDao.create(new User(null, "New", "new@example.com", 30, Instant.now()));
+        assertTrue(next > maxId);
+    }
+
+    @Test
+    void restore_IntoNonEmptyTable_IsRejected() throws Exception {
+        userDao.create(new User(null, "A", "a@example.com", 30, Instant.now()));
+        Path file = dir.resolve("users.snap");
+        backup.snapshot(file);
+
+        assertThrows(DaoException.class, () -> backup.restore(file, 2));
+        assertEquals(1, userDao.findAll().size());
+    }
+}
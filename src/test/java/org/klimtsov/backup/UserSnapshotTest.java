@@ -0,0 +1,134 @@
+package org.klimtsov.backup;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.klimtsov.userservice.model.User;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private final Instant takenAt = Instant.parse("2024-05-01T12:00:00.123456Z");
+
+    private List<User> sampleUsers() {
+        List<User> users = new ArrayList<>();
+        Instant base = Instant.parse("2024-01-01T00:00:00.000001Z");
+        for (long id = 1; id <= 25; id++) {
+            users.add(new User(id * 3, "Пользователь " + id, "user" + id + "@example.com", (int) (id % 90),
+                    base.plusSeconds(id * 37), base.plusSeconds(id * 41)));
+        }
+        users.add(new User(2L, null, null, null, null, null));
+        users.add(new User(Long.MAX_VALUE, "\u0000\"ё😀", "", 0, Instant.EPOCH.minusSeconds(5), takenAt));
+        return users;
+    }
+
+    private Path writeSnapshot(List<User> users, int chunkUsers) throws IOException {
+        Path file = dir.resolve("users.snap");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             UserSnapshotWriter writer = new UserSnapshotWriter(channel, takenAt, chunkUsers)) {
+            for (User user : users) {
+                writer.write(user);
+            }
+        }
+        return file;
+    }
+
+    private static List<List<User>> readSnapshot(Path file) throws IOException {
+        List<List<User>> chunks = new ArrayList<>();
+        try (UserSnapshotReader reader = new UserSnapshotReader(FileChannel.open(file, StandardOpenOption.READ))) {
+            List<User> chunk;
+            while ((chunk = reader.readChunk()) != null) {
+                chunks.add(chunk);
+            }
+        }
+        return chunks;
+    }
+
+    @Test
+    void roundTrip_PreservesAllFieldsAcrossChunks() throws IOException {
+        List<User> users = sampleUsers();
+        Path file = writeSnapshot(users, 10);
+
+        List<List<User>> chunks = readSnapshot(file);
+
+        assertEquals(3, chunks.size());
+        assertEquals(users, chunks.stream().flatMap(List::stream).toList());
+        try (UserSnapshotReader reader = new UserSnapshotReader(FileChannel.open(file, StandardOpenOption.READ))) {
+            assertEquals(takenAt, reader.getTakenAt());
+        }
+    }
+
+    @Test
+    void roundTrip_EmptySnapshot() throws IOException {
+        Path file = writeSnapshot(List.of(), 10);
+
+        assertTrue(readSnapshot(file).isEmpty());
+    }
+
+    @Test
+    void encoding_IsCompact() throws IOException {
+        List<User> users = new ArrayList<>();
+        Instant created = Instant.parse("2024-01-01T00:00:00Z");
+        for (long id = 1; id <= 1000; id++) {
+            users.add(new User(id, "Name" + id, "name" + id + "@example.com", 30, created.plusMillis(id), created.plusMillis(id)));
+        }
+
+        Path file = writeSnapshot(users, UserSnapshotWriter.DEFAULT_CHUNK_USERS);
+
+        //Строки ~28 байт, остальные поля - несколько байт вместо 8 на каждое число.
+        assertTrue(Files.size(file) < 1000 * 40, "size " + Files.size(file));
+    }
+
+    @Test
+    void corruptedChunk_FailsChecksum() throws IOException {
+        Path file = writeSnapshot(sampleUsers(), 10);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[UserSnapshotFormat.FILE_HEADER_BYTES + UserSnapshotFormat.CHUNK_HEADER_BYTES + 5] ^= 0x40;
+        Files.write(file, bytes);
+
+        assertThrows(StreamCorruptedException.class, () -> readSnapshot(file));
+    }
+
+    @Test
+    void truncatedSnapshot_IsRejected() throws IOException {
+        Path file = writeSnapshot(sampleUsers(), 10);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - UserSnapshotFormat.TRAILER_BYTES));
+
+        assertThrows(EOFException.class, () -> readSnapshot(file));
+    }
+
+    @Test
+    void foreignFile_IsRejected() throws IOException {
+        Path file = dir.resolve("other.bin");
+        Files.write(file, new byte[64]);
+
+        assertThrows(StreamCorruptedException.class, () -> readSnapshot(file));
+    }
+
+    @Test
+    void pgBinaryCopy_EncodesHeaderTuplesAndTrailer() {
+        byte[] data = PgBinaryCopy.encode(List.of(new User(1L, "A", null, 20, Instant.parse("2000-01-01T00:00:01Z"), null)));
+
+        assertEquals("PGCOPY\n", new String(data, 0, 7));
+        //Подпись 11 + флаги 4 + расширение 4 + кортеж (2 + 12 + 5 + 4 + 8 + 12 + 4) + завершение 2.
+        assertEquals(19 + 47 + 2, data.length);
+        assertEquals(-1, data[data.length - 1]);
+        assertEquals(-1, data[data.length - 2]);
+    }
+}
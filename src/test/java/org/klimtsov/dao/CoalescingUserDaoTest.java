@@ -0,0 +1,107 @@
+package org.klimtsov.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.klimtsov.userservice.model.User;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CoalescingUserDaoTest {
+
+    private final UserDao delegate = mock(UserDao.class);
+    private final ExecutorService pool = Executors.newFixedThreadPool(10);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private static Map<Long, User> usersFor(Collection<Long> ids) {
+        Map<Long, User> found = new LinkedHashMap<>();
+        for (Long id : ids) {
+            if (id <= 100) {
+                found.put(id, new User(id, "U" + id, "u" + id + "@example.com", 20, Instant.now()));
+            }
+        }
+        return found;
+    }
+
+    private List<Future<Optional<User>>> findConcurrently(UserDao dao, List<Long> ids) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Optional<User>>> futures = new ArrayList<>();
+        for (Long id : ids) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return dao.findById(id);
+            }));
+        }
+        start.countDown();
+        return futures;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void findById_ConcurrentCalls_AreServedByOneBatch() throws Exception {
+        when(delegate.findAllByIds(any())).thenAnswer(inv -> usersFor(inv.getArgument(0, Collection.class)));
+        CoalescingUserDao dao = new CoalescingUserDao(delegate, Duration.ofMillis(200), 10);
+
+        List<Future<Optional<User>>> futures = findConcurrently(dao, List.of(1L, 2L, 3L, 3L, 4L, 5L, 6L, 7L, 8L, 101L));
+
+        List<Optional<User>> results = new ArrayList<>();
+        for (Future<Optional<User>> future : futures) {
+            results.add(future.get());
+        }
+        assertEquals(1, dao.getBatches());
+        assertEquals(9, dao.getCoalescedCalls());
+        assertEquals(3L, results.get(2).orElseThrow().getId());
+        assertNotSame(results.get(2).orElseThrow(), results.get(3).orElseThrow());
+        assertTrue(results.get(9).isEmpty());
+        verify(delegate, never()).findById(any());
+    }
+
+    @Test
+    void findById_FullBatch_DoesNotWaitForWindow() {
+        when(delegate.findAllByIds(any())).thenReturn(Map.of());
+        CoalescingUserDao dao = new CoalescingUserDao(delegate, Duration.ofSeconds(30), 1);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertTrue(dao.findById(1L).isEmpty()));
+    }
+
+    @Test
+    void findById_BatchFailure_IsRethrownToEveryCaller() throws Exception {
+        when(delegate.findAllByIds(any())).thenThrow(new DaoException("Ошибка БД", null));
+        CoalescingUserDao dao = new CoalescingUserDao(delegate, Duration.ofMillis(200), 10);
+
+        List<Future<Optional<User>>> futures = findConcurrently(dao, List.of(1L, 2L, 3L));
+
+        for (Future<Optional<User>> future : futures) {
+            Exception e = assertThrows(Exception.class, future::get);
+            assertInstanceOf(DaoException.class, e.getCause());
+        }
+    }
+
+    @Test
+    void findById_WithDeadline_BypassesBatching() {
+        User user = new User(1L, "U1", "u1@example.com", 20, Instant.now());
+        when(delegate.findById(1L)).thenReturn(Optional.of(user));
+        CoalescingUserDao dao = new CoalescingUserDao(delegate, Duration.ofMillis(200), 10);
+
+        assertEquals(Optional.of(user), Deadline.after(Duration.ofSeconds(5)).call(() -> dao.findById(1L)));
+        verify(delegate, never()).findAllByIds(any());
+    }
+}
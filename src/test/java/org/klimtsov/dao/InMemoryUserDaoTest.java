@@ -0,0 +1,155 @@
+package org.klimtsov.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.klimtsov.userservice.model.User;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryUserDaoTest extends UserDaoContract {
+
+    private final InMemoryUserDao dao = new InMemoryUserDao();
+
+    @BeforeEach
+    void setUp() {
+        userDao = dao;
+    }
+
+    private static User user(String name, String email, int age) {
+        return new User(null, name, email, age, Instant.now());
+    }
+
+    @Test
+    void update_EmailChangeMovesIndex() {
+        Long id = dao.create(user("A", "a@example.com", 20));
+        User changed = dao.findById(id).orElseThrow();
+        changed.setEmail("b@example.com");
+
+        dao.update(changed);
+
+        assertFalse(dao.existsByEmail("a@example.com"));
+        assertTrue(dao.existsByEmail("b@example.com"));
+        dao.create(user("C", "a@example.com", 40));
+        assertEquals(2, dao.size());
+    }
+
+    @Test
+    void update_EmailTakenByOtherUserFails() {
+        dao.create(user("A", "a@example.com", 20));
+        Long id = dao.create(user("B", "b@example.com", 30));
+        User changed = dao.findById(id).orElseThrow();
+        changed.setEmail("a@example.com");
+
+        assertThrows(DaoException.class, () -> dao.update(changed));
+        assertEquals("b@example.com", dao.findById(id).orElseThrow().getEmail());
+    }
+
+    @Test
+    void findById_ReturnsCopy() {
+        Long id = dao.create(user("A", "a@example.com", 20));
+
+        dao.findById(id).orElseThrow().setName("Changed");
+
+        assertEquals("A", dao.findById(id).orElseThrow().getName());
+    }
+
+    @Test
+    void delete_RemovesRowAndEmail() {
+        Long id = dao.create(user("A", "a@example.com", 20));
+
+        assertTrue(dao.delete(id));
+        assertFalse(dao.delete(id));
+        assertFalse(dao.existsByEmail("a@example.com"));
+    }
+
+    @Test
+    void inTransaction_FailureUndoesAllChanges() {
+        Long id = dao.create(user("A", "a@example.com", 20));
+
+        assertThrows(IllegalStateException.class, () -> dao.inTransaction(false, d -> {
+            d.create(user("B", "b@example.com", 30));
+            d.delete(id);
+            throw new IllegalStateException("boom");
+        }));
+
+        assertEquals(1, dao.size());
+        assertTrue(dao.existsByEmail("a@example.com"));
+        assertFalse(dao.existsByEmail("b@example.com"));
+    }
+
+    @Test
+    void inTransaction_ConcurrentReadDoesNotSeeWritesThatRollBack() throws Exception {
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch rollback = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> writer = executor.submit(() -> dao.inTransaction(false, unit -> {
+                unit.create(user("Dirty", "dirty@example.com", 30));
+                written.countDown();
+                await(rollback);
+                throw new IllegalStateException("rollback");
+            }));
+            written.await();
+
+            Future<Boolean> reader = executor.submit(() -> dao.existsByEmail("dirty@example.com")
+                    || !dao.findAfterId(null, 10).isEmpty());
+            assertThrows(TimeoutException.class, () -> reader.get(100, TimeUnit.MILLISECONDS));
+
+            rollback.countDown();
+            assertThrows(ExecutionException.class, () -> writer.get(5, TimeUnit.SECONDS));
+            assertFalse(reader.get(5, TimeUnit.SECONDS));
+            assertEquals(0, dao.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void create_ConcurrentWritersKeepEmailsUnique() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                String email = "u" + (i % 500) + "@example.com";
+                futures.add(pool.submit(() -> {
+                    try {
+                        dao.create(user("U", email, 20));
+                        return true;
+                    } catch (DaoException e) {
+                        return false;
+                    }
+                }));
+            }
+            long created = 0;
+            for (Future<Boolean> future : futures) {
+                if (future.get()) {
+                    created++;
+                }
+            }
+            assertEquals(500, created);
+            assertEquals(500, dao.size());
+            assertEquals(500, dao.findAll().stream().map(User::getEmail).distinct().count());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.klimtsov.dao;
+
+import org.hibernate.SessionFactory;
+
+import java.time.Duration;
+
+//Тот же набор тестов, что и для UserDaoImpl, на реализации JdbcUserDao.
+public class JdbcUserDaoIT extends UserDaoImplIT {
+
+    @Override
+    protected UserDao createDao(SessionFactory sessionFactory, Duration defaultTimeout, Duration changeLag) {
+        return new JdbcUserDao(sessionFactory, defaultTimeout, changeLag);
+    }
+
+    @Override
+    protected long queryTimeouts() {
+        return ((JdbcUserDao) userDao).getQueryTimeouts();
+    }
+}
@@ -0,0 +1,163 @@
+package org.klimtsov.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.klimtsov.userservice.model.User;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedLogUserDaoTest extends UserDaoContract {
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private MappedLogUserDao dao;
+
+    @BeforeEach
+    void setUp() {
+        file = dir.resolve("users.log");
+        dao = open(true, Long.MAX_VALUE);
+        userDao = dao;
+    }
+
+    @AfterEach
+    void tearDown() {
+        dao.close();
+    }
+
+    private MappedLogUserDao open(boolean fsync, long compactMinBytes) {
+        return new MappedLogUserDao(file, fsync, 50, compactMinBytes);
+    }
+
+    private MappedLogUserDao reopen() {
+        dao.close();
+        dao = open(true, Long.MAX_VALUE);
+        return dao;
+    }
+
+    private static User user(String name, String email, int age) {
+        return new User(null, name, email, age, Instant.parse("2024-01-01T10:00:00.123456Z"));
+    }
+
+    @Test
+    void reopen_ReplaysCreatesUpdatesAndDeletes() {
+        Long kept = dao.create(user("Kept", "kept@example.com", 20));
+        Long removed = dao.create(user("Removed", "removed@example.com", 30));
+        User changed = dao.findById(kept).orElseThrow();
+        changed.setName("Renamed");
+        changed.setEmail("renamed@example.com");
+        dao.update(changed);
+        dao.delete(removed);
+
+        MappedLogUserDao restored = reopen();
+
+        assertEquals(1, restored.size());
+        User stored = restored.findById(kept).orElseThrow();
+        assertEquals("Renamed", stored.getName());
+        assertEquals(Instant.parse("2024-01-01T10:00:00.123456Z"), stored.getCreatedAt());
+        assertEquals(changed.getUpdatedAt(), stored.getUpdatedAt());
+        assertTrue(restored.existsByEmail("renamed@example.com"));
+        assertFalse(restored.existsByEmail("kept@example.com"));
+        assertTrue(restored.create(user("New", "new@example.com", 40)) > removed);
+    }
+
+    @Test
+    void reopen_DiscardsTornTail() throws Exception {
+        Long id = dao.create(user("A", "a@example.com", 20));
+        dao.create(user("B", "b@example.com", 30));
+        long tornAt = dao.getLogBytes() - 5;
+        dao.close();
+        try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+            raw.seek(tornAt);
+            raw.write(new byte[]{1, 2, 3});
+        }
+
+        dao = open(true, Long.MAX_VALUE);
+
+        assertEquals(List.of(id), dao.findAll().stream().map(User::getId).toList());
+        dao.create(user("C", "c@example.com", 40));
+        assertEquals(2, reopen().size());
+    }
+
+    @Test
+    void reopen_IgnoresRolledBackUnit() {
+        dao.create(user("A", "a@example.com", 20));
+        assertThrows(IllegalStateException.class, () -> dao.inTransaction(false, d -> {
+            d.create(user("B", "b@example.com", 30));
+            throw new IllegalStateException("abort");
+        }));
+        dao.create(user("C", "c@example.com", 40));
+
+        assertEquals(List.of("A", "C"), reopen().findAll().stream().map(User::getName).toList());
+    }
+
+    @Test
+    void compact_ReclaimsSpaceAndKeepsData() {
+        Long id = dao.create(user("A", "a@example.com", 20));
+        User changed = dao.findById(id).orElseThrow();
+        for (int i = 0; i < 100; i++) {
+            changed.setAge(i);
+            dao.update(changed);
+        }
+        Long deleted = dao.create(user("B", "b@example.com", 30));
+        dao.delete(deleted);
+        long before = dao.getLogBytes();
+
+        dao.compact();
+
+        assertTrue(dao.getLogBytes() < before / 10);
+        assertEquals(99, dao.findById(id).orElseThrow().getAge());
+        MappedLogUserDao restored = reopen();
+        assertEquals(1, restored.size());
+        assertTrue(restored.create(user("C", "c@example.com", 40)) > deleted);
+    }
+
+    @Test
+    void update_GarbageBeyondThreshold_CompactsAutomatically() {
+        dao.close();
+        dao = open(false, 4_096);
+        Long id = dao.create(user("A", "a@example.com", 20));
+        User changed = dao.findById(id).orElseThrow();
+        for (int i = 0; i < 500; i++) {
+            changed.setAge(i % 100);
+            dao.update(changed);
+        }
+
+        assertTrue(dao.getCompactions() > 0);
+        assertTrue(dao.getLogBytes() < 8_192);
+        assertEquals(99, reopen().findById(id).orElseThrow().getAge());
+    }
+
+    @Test
+    void create_ConcurrentWriters_ShareFsync() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                String email = "u" + i + "@example.com";
+                futures.add(pool.submit(() -> dao.create(user("U", email, 20))));
+            }
+            for (Future<Long> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(400, dao.getDurableWrites());
+        assertTrue(dao.getSyncs() > 0 && dao.getSyncs() <= dao.getDurableWrites());
+        assertEquals(400, reopen().size());
+    }
+}
@@ -0,0 +1,124 @@
+package org.klimtsov.dao;
+
+import org.hibernate.exception.JDBCConnectionException;
+import org.junit.jupiter.api.Test;
+import org.klimtsov.userservice.model.User;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ResilientUserDaoTest {
+
+    private static DaoException connectionFailure() {
+        return new DaoException("Не удалось подключиться к базе данных",
+                new JDBCConnectionException("connection refused", new SQLException("refused", "08001")));
+    }
+
+    private static DaoException serializationFailure() {
+        return new DaoException("Ошибка", new SQLException("could not serialize", "40001"));
+    }
+
+    private final UserDao delegate = mock(UserDao.class);
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(2, Duration.ofSeconds(10), now::get);
+    private final ResilientUserDao dao = new ResilientUserDao(delegate, breaker, 3, Duration.ZERO, Duration.ZERO);
+
+    @Test
+    void findById_TransientFailure_IsRetried() {
+        User user = new User(1L, "A", "a@example.com", 20, Instant.now());
+        when(delegate.findById(1L)).thenThrow(serializationFailure()).thenReturn(Optional.of(user));
+
+        assertEquals(Optional.of(user), dao.findById(1L));
+        verify(delegate, times(2)).findById(1L);
+    }
+
+    @Test
+    void create_TransientFailure_IsNotRetried() {
+        when(delegate.create(any())).thenThrow(serializationFailure());
+
+        assertThrows(DaoException.class, () -> dao.create(new User()));
+        verify(delegate, times(1)).create(any());
+    }
+
+    @Test
+    void findById_NonTransientFailure_IsNotRetried() {
+        when(delegate.findById(1L)).thenThrow(new DaoException("Внутренняя ошибка запроса к БД",
+                new SQLException("syntax", "42601")));
+
+        assertThrows(DaoException.class, () -> dao.findById(1L));
+        verify(delegate, times(1)).findById(1L);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void connectionFailures_OpenCircuitAndFailFast() {
+        when(delegate.findAll()).thenThrow(connectionFailure());
+
+        assertThrows(DaoException.class, dao::findAll);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        verify(delegate, times(2)).findAll();
+
+        assertThrows(CircuitOpenException.class, () -> dao.delete(5L));
+        verify(delegate, never()).delete(any());
+    }
+
+    @Test
+    void openCircuit_AfterTimeout_ClosesOnSuccessfulTrial() {
+        when(delegate.delete(1L)).thenThrow(connectionFailure()).thenThrow(connectionFailure()).thenReturn(true);
+        assertThrows(DaoException.class, () -> dao.delete(1L));
+        assertThrows(DaoException.class, () -> dao.delete(1L));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        now.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        assertTrue(dao.delete(1L));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void halfOpen_FailedTrial_ReopensCircuit() {
+        breaker.onConnectionFailure();
+        breaker.onConnectionFailure();
+        now.addAndGet(Duration.ofSeconds(11).toNanos());
+        breaker.acquirePermission();
+
+        assertThrows(CircuitOpenException.class, breaker::acquirePermission);
+        breaker.onConnectionFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void halfOpen_TrialFailsWithNonDatabaseError_ReleasesTrial() {
+        breaker.onConnectionFailure();
+        breaker.onConnectionFailure();
+        now.addAndGet(Duration.ofSeconds(11).toNanos());
+        when(delegate.findById(1L)).thenThrow(new IllegalStateException("bug")).thenReturn(Optional.empty());
+
+        assertThrows(IllegalStateException.class, () -> dao.findById(1L));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        assertEquals(Optional.empty(), dao.findById(1L));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void halfOpen_TrialRejectedBeforeDatabase_IsNeitherSuccessNorFailure() {
+        breaker.onConnectionFailure();
+        breaker.onConnectionFailure();
+        now.addAndGet(Duration.ofSeconds(11).toNanos());
+        when(delegate.findById(1L)).thenThrow(new CallRejectedException("Очередь заполнена"));
+
+        assertThrows(CallRejectedException.class, () -> dao.findById(1L));
+        verify(delegate, times(1)).findById(1L);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.acquirePermission();
+    }
+}
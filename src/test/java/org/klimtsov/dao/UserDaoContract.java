@@ -0,0 +1,395 @@
+package org.klimtsov.dao;
+
+import org.junit.jupiter.api.Test;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserChangeType;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Общий контракт UserDao: наследники готовят пустое хранилище в userDao перед каждым тестом.
+//Проверки событий outbox выполняются только для реализаций, которые их пишут.
+public abstract class UserDaoContract {
+    private static final Logger logger = LoggerFactory.getLogger(UserDaoContract.class);
+
+    protected UserDao userDao;
+
+    protected boolean hasOutbox() {
+        return false;
+    }
+
+    protected List<UserOutboxEvent> readOutbox() {
+        throw new UnsupportedOperationException("Outbox is not supported");
+    }
+
+    @Test
+    void createUser_ShouldReturnGeneratedId() {
+        User user = new User(null, "Test User", "test@example.com", 25, Instant.now());
+
+        Long id = userDao.create(user);
+
+        assertNotNull(id);
+        assertTrue(id > 0);
+        logger.info("Created user with ID: {}", id);
+    }
+
+    @Test
+    void findById_WithExistingUser_ShouldReturnUser() {
+        User user = new User(null, "Test User", "test@example.com", 25, Instant.now());
+        Long id = userDao.create(user);
+
+        Optional<User> found = userDao.findById(id);
+
+        assertTrue(found.isPresent());
+        assertEquals("Test User", found.get().getName());
+        assertEquals("test@example.com", found.get().getEmail());
+        assertEquals(25, found.get().getAge());
+    }
+
+    @Test
+    void findById_WithNonExistingUser_ShouldReturnEmpty() {
+        Optional<User> found = userDao.findById(999L);
+
+        assertFalse(found.isPresent());
+    }
+
+    @Test
+    void findAllByIds_ShouldReturnFoundUsersInRequestOrder() {
+        Long id1 = userDao.create(new User(null, "M1", "m1@example.com", 20, Instant.now()));
+        userDao.create(new User(null, "M2", "m2@example.com", 21, Instant.now()));
+        Long id3 = userDao.create(new User(null, "M3", "m3@example.com", 22, Instant.now()));
+
+        Map<Long, User> found = userDao.findAllByIds(Arrays.asList(id3, 999_999L, id1, null, id3));
+
+        assertEquals(List.of(id3, id1), List.copyOf(found.keySet()));
+        assertEquals("M1", found.get(id1).getName());
+        assertTrue(userDao.findAllByIds(List.of()).isEmpty());
+    }
+
+    @Test
+    void findAll_WithUsers_ShouldReturnAllUsers() {
+        userDao.create(new User(null, "User1", "user1@example.com", 25, Instant.now()));
+        userDao.create(new User(null, "User2", "user2@example.com", 30, Instant.now()));
+
+        List<User> users = userDao.findAll();
+
+        assertEquals(2, users.size());
+        logger.info("Found {} users", users.size());
+    }
+
+    @Test
+    void findAll_WithNoUsers_ShouldReturnEmptyList() {
+        List<User> users = userDao.findAll();
+
+        assertTrue(users.isEmpty());
+    }
+
+    @Test
+    void update_WithExistingUser_ShouldUpdateUser() {
+        User user = new User(null, "Original", "original@example.com", 25, Instant.now());
+        Long id = userDao.create(user);
+
+        user.setId(id);
+        user.setName("Updated");
+        user.setEmail("updated@example.com");
+        user.setAge(30);
+
+        userDao.update(user);
+
+        Optional<User> updated = userDao.findById(id);
+        assertTrue(updated.isPresent());
+        assertEquals("Updated", updated.get().getName());
+        assertEquals("updated@example.com", updated.get().getEmail());
+        assertEquals(30, updated.get().getAge());
+    }
+
+    @Test
+    void delete_WithExistingUser_ShouldReturnTrue() {
+        User user = new User(null, "To Delete", "delete@example.com", 25, Instant.now());
+        Long id = userDao.create(user);
+
+        boolean deleted = userDao.delete(id);
+
+        assertTrue(deleted);
+        assertFalse(userDao.findById(id).isPresent());
+    }
+
+    @Test
+    void delete_WithNonExistingUser_ShouldReturnFalse() {
+        boolean deleted = userDao.delete(999L);
+
+        assertFalse(deleted);
+    }
+
+    @Test
+    void updateReturningPrevious_ShouldReturnStateBeforeUpdate() {
+        Long id = userDao.create(new User(null, "Before", "before@example.com", 25, Instant.now()));
+        User changed = userDao.findById(id).orElseThrow();
+        changed.setName("After");
+        changed.setAge(26);
+
+        User previous = userDao.updateReturningPrevious(changed).orElseThrow();
+
+        assertEquals("Before", previous.getName());
+        assertEquals(25, previous.getAge());
+        assertEquals("After", userDao.findById(id).orElseThrow().getName());
+        assertTrue(userDao.updateReturningPrevious(new User(999_999L, "None", "none@example.com", 1, Instant.now()))
+                .isEmpty());
+    }
+
+    @Test
+    void deleteReturning_ShouldReturnDeletedRow() {
+        Long id = userDao.create(new User(null, "Gone", "gone@example.com", 40, Instant.now()));
+
+        User deleted = userDao.deleteReturning(id).orElseThrow();
+
+        assertEquals("gone@example.com", deleted.getEmail());
+        assertEquals(40, deleted.getAge());
+        assertTrue(userDao.deleteReturning(id).isEmpty());
+    }
+
+    @Test
+    void create_ShouldSetUpdatedAt() {
+        User user = new User(null, "Stamp", "stamp@example.com", 25, Instant.now());
+        Long id = userDao.create(user);
+
+        assertNotNull(userDao.findById(id).orElseThrow().getUpdatedAt());
+    }
+
+    @Test
+    void create_WithoutCreatedAt_ShouldSetCreationTime() {
+        Instant before = Instant.now().minusSeconds(1);
+        Long id = userDao.create(new User(null, "NoDate", "nodate@example.com", 25, null));
+
+        Instant createdAt = userDao.findById(id).orElseThrow().getCreatedAt();
+        assertNotNull(createdAt);
+        assertTrue(createdAt.isAfter(before), createdAt.toString());
+    }
+
+    @Test
+    void findChangedSince_ShouldPageThroughChangesByKeyset() {
+        Instant start = Instant.now().minusSeconds(1);
+        Long id1 = userDao.create(new User(null, "C1", "c1@example.com", 20, Instant.now()));
+        Long id2 = userDao.create(new User(null, "C2", "c2@example.com", 21, Instant.now()));
+        User third = new User(null, "C3", "c3@example.com", 22, Instant.now());
+        Long id3 = userDao.create(third);
+        User first = userDao.findById(id1).orElseThrow();
+        first.setAge(30);
+        userDao.update(first);
+
+        List<User> page1 = userDao.findChangedSince(start, null, 2);
+        User last = page1.get(page1.size() - 1);
+        List<User> page2 = userDao.findChangedSince(last.getUpdatedAt(), last.getId(), 2);
+
+        assertEquals(List.of(id2, id3), page1.stream().map(User::getId).toList());
+        assertEquals(List.of(id1), page2.stream().map(User::getId).toList());
+        assertEquals(30, page2.get(0).getAge());
+        assertTrue(userDao.findChangedSince(page2.get(0).getUpdatedAt(), id1, 2).isEmpty());
+    }
+
+    @Test
+    void findByCreatedAtBetween_ShouldReturnWindowInKeysetPages() {
+        Instant base = Instant.parse("2024-03-01T00:00:00Z");
+        Long before = userDao.create(new User(null, "Before", "before@example.com", 20, base.minusSeconds(1)));
+        Long a = userDao.create(new User(null, "A", "a@example.com", 20, base));
+        Long b = userDao.create(new User(null, "B", "b@example.com", 20, base));
+        Long c = userDao.create(new User(null, "C", "c@example.com", 20, base.plusSeconds(60)));
+        Long after = userDao.create(new User(null, "After", "after@example.com", 20, base.plusSeconds(3600)));
+        Instant to = base.plusSeconds(3600);
+
+        List<User> page1 = userDao.findByCreatedAtBetween(base, to, null, 2);
+        User last = page1.get(1);
+        List<User> page2 = userDao.findByCreatedAtBetween(last.getCreatedAt(), to, last.getId(), 2);
+
+        assertEquals(List.of(a, b), page1.stream().map(User::getId).toList());
+        assertEquals(List.of(c), page2.stream().map(User::getId).toList());
+        assertFalse(page2.stream().anyMatch(u -> u.getId().equals(before) || u.getId().equals(after)));
+    }
+
+    @Test
+    void existsByEmail_ShouldReflectStoredEmails() {
+        userDao.create(new User(null, "Exists", "exists@example.com", 25, Instant.now()));
+
+        assertTrue(userDao.existsByEmail("exists@example.com"));
+        assertFalse(userDao.existsByEmail("missing@example.com"));
+    }
+
+    @Test
+    void findAfterId_ShouldPageById() {
+        Long id1 = userDao.create(new User(null, "P1", "p1@example.com", 20, Instant.now()));
+        Long id2 = userDao.create(new User(null, "P2", "p2@example.com", 20, Instant.now()));
+        Long id3 = userDao.create(new User(null, "P3", "p3@example.com", 20, Instant.now()));
+
+        assertEquals(List.of(id1, id2), userDao.findAfterId(null, 2).stream().map(User::getId).toList());
+        assertEquals(List.of(id3), userDao.findAfterId(id2, 2).stream().map(User::getId).toList());
+    }
+
+    @Test
+    void create_WithDuplicateEmail_ShouldThrowDaoException() {
+        userDao.create(new User(null, "First", "dup@example.com", 25, Instant.now()));
+
+        DaoException e = assertThrows(DaoException.class,
+                () -> userDao.create(new User(null, "Second", "dup@example.com", 26, Instant.now())));
+        assertEquals("Пользователь с таким email уже существует", e.getMessage());
+    }
+
+    @Test
+    void upsertByEmail_ShouldInsertThenUpdate() {
+        UpsertResult inserted = userDao.upsertByEmail(new User(null, "Up", "up@example.com", 20, Instant.now()));
+        UpsertResult updated = userDao.upsertByEmail(new User(null, "Up 2", "up@example.com", 21, Instant.now()));
+
+        assertTrue(inserted.inserted());
+        assertFalse(updated.inserted());
+        assertEquals(inserted.id(), updated.id());
+        User stored = userDao.findById(inserted.id()).orElseThrow();
+        assertEquals("Up 2", stored.getName());
+        assertEquals(21, stored.getAge());
+    }
+
+    @Test
+    void upsertAll_ShouldReturnResultsInInputOrderAndWriteOutbox() {
+        Long existing = userDao.create(new User(null, "Old", "old@example.com", 30, Instant.now()));
+        List<User> batch = List.of(
+                new User(null, "New", "new@example.com", 20, Instant.now()),
+                new User(null, "Old 2", "old@example.com", 31, Instant.now()),
+                new User(null, "New 2", "new@example.com", 22, Instant.now()));
+
+        List<UpsertResult> results = userDao.upsertAll(batch);
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).inserted());
+        assertEquals(new UpsertResult(existing, false), results.get(1));
+        assertEquals(results.get(0), results.get(2));
+        assertEquals(22, userDao.findById(results.get(0).id()).orElseThrow().getAge());
+        assertEquals(2, userDao.findAll().size());
+        //Первое событие - исходное создание, затем по одному на каждый различный email пакета.
+        if (hasOutbox()) {
+            assertEquals(List.of(UserChangeType.CREATED, UserChangeType.CREATED, UserChangeType.UPDATED),
+                    readOutbox().stream().map(UserOutboxEvent::getType).toList());
+        }
+    }
+
+    @Test
+    void bulkUpdate_ShouldUpdateMatchingRowsInOneStatement() {
+        Instant day = Instant.parse("2024-05-01T00:00:00Z");
+        Long a = userDao.create(new User(null, "A", "bulk-a@example.com", 20, day.plusSeconds(10)));
+        Long b = userDao.create(new User(null, "B", "bulk-b@example.com", 25, day.plusSeconds(20)));
+        Long c = userDao.create(new User(null, "C", "bulk-c@example.com", 25, day.plusSeconds(86400)));
+
+        int updated = userDao.bulkUpdate(
+                UserFilter.any().withCreatedBetween(day, day.plusSeconds(86400)).withAgeRange(21, 30),
+                new UserFieldUpdate("Fixed", 26));
+
+        assertEquals(1, updated);
+        assertEquals("A", userDao.findById(a).orElseThrow().getName());
+        User fixed = userDao.findById(b).orElseThrow();
+        assertEquals("Fixed", fixed.getName());
+        assertEquals(26, fixed.getAge());
+        assertEquals(25, userDao.findById(c).orElseThrow().getAge());
+        if (hasOutbox()) {
+            assertEquals(4, readOutbox().size());
+            UserOutboxEvent event = readOutbox().get(3);
+            assertEquals(UserChangeType.UPDATED, event.getType());
+            assertEquals(b, event.getUserId());
+            assertEquals(26, event.getAge());
+        }
+    }
+
+    @Test
+    void compareAndSet_AppliesOnlyWhenExpectedFieldsMatch() {
+        Long id = userDao.create(new User(null, "Cas", "cas@example.com", null, Instant.now()));
+        UserFields read = new UserFields("Cas", "cas@example.com", null);
+
+        assertTrue(userDao.compareAndSet(id, read, new UserFields("Cas 2", "cas2@example.com", 30)));
+        assertFalse(userDao.compareAndSet(id, read, new UserFields("Lost", "lost@example.com", 40)));
+        assertFalse(userDao.compareAndSet(999_999L, read, new UserFields("None", "none@example.com", 1)));
+
+        User stored = userDao.findById(id).orElseThrow();
+        assertEquals("Cas 2", stored.getName());
+        assertEquals("cas2@example.com", stored.getEmail());
+        assertEquals(30, stored.getAge());
+        assertNotNull(stored.getUpdatedAt());
+        if (hasOutbox()) {
+            List<UserOutboxEvent> events = readOutbox();
+            assertEquals(2, events.size());
+            assertEquals(UserChangeType.UPDATED, events.get(1).getType());
+            assertEquals("cas2@example.com", events.get(1).getEmail());
+            assertEquals(30, events.get(1).getAge());
+        }
+    }
+
+    @Test
+    void compareAndSet_ToTakenEmail_ShouldThrow() {
+        userDao.create(new User(null, "Taken", "cas-taken@example.com", 20, Instant.now()));
+        Long id = userDao.create(new User(null, "Mine", "cas-mine@example.com", 20, Instant.now()));
+
+        assertThrows(DaoException.class, () -> userDao.compareAndSet(id,
+                new UserFields("Mine", "cas-mine@example.com", 20), new UserFields("Mine", "cas-taken@example.com", 20)));
+        assertEquals("cas-mine@example.com", userDao.findById(id).orElseThrow().getEmail());
+    }
+
+    @Test
+    void compareAndSet_InsideUnitOfWork_SeesEarlierChanges() {
+        Long id = userDao.create(new User(null, "Unit", "cas-unit@example.com", 20, Instant.now()));
+
+        boolean applied = userDao.inTransaction(false, dao -> {
+            User user = dao.findById(id).orElseThrow();
+            user.setAge(21);
+            dao.update(user);
+            return dao.compareAndSet(id, new UserFields("Unit", "cas-unit@example.com", 21),
+                    new UserFields("Unit", "cas-unit@example.com", 22));
+        });
+
+        assertTrue(applied);
+        assertEquals(22, userDao.findById(id).orElseThrow().getAge());
+    }
+
+    @Test
+    void inTransaction_FailureRollsBackAllOperations() {
+        assertThrows(IllegalStateException.class, () -> userDao.inTransaction(false, dao -> {
+            dao.create(new User(null, "Gone", "unit-gone@example.com", 20, Instant.now()));
+            throw new IllegalStateException("abort");
+        }));
+
+        assertTrue(userDao.findAll().isEmpty());
+        if (hasOutbox()) {
+            assertTrue(readOutbox().isEmpty());
+        }
+    }
+
+    @Test
+    void inTransaction_CaughtDaoFailure_StillRollsBack() {
+        userDao.create(new User(null, "Taken", "unit-taken@example.com", 20, Instant.now()));
+
+        assertThrows(DaoException.class, () -> userDao.inTransaction(false, dao -> {
+            dao.create(new User(null, "New", "unit-new@example.com", 20, Instant.now()));
+            try {
+                dao.create(new User(null, "Dup", "unit-taken@example.com", 20, Instant.now()));
+            } catch (DaoException ignored) {
+                //Ошибка проглочена, но транзакция уже помечена к откату.
+            }
+            return null;
+        }));
+
+        assertEquals(1, userDao.findAll().size());
+    }
+
+    @Test
+    void inTransaction_ReadOnly_RejectsWrites() {
+        Long id = userDao.create(new User(null, "Reader", "unit-ro@example.com", 20, Instant.now()));
+
+        int size = userDao.inTransaction(true, dao -> dao.findAll().size());
+        assertEquals(1, size);
+
+        assertThrows(DaoException.class, () -> userDao.inTransaction(true, dao -> dao.delete(id)));
+        assertTrue(userDao.findById(id).isPresent());
+    }
+}
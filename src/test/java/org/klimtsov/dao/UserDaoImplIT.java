@@ -1,7 +1,10 @@
 package org.klimtsov.dao;
 
 import org.junit.jupiter.api.*;
+import org.klimtsov.AppConfig;
 import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserChangeType;
+import org.klimtsov.userservice.model.UserOutboxEvent;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
@@ -10,15 +13,21 @@ import org.hibernate.cfg.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
-import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @Testcontainers
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
-public class UserDaoImplIT {
+public class UserDaoImplIT extends UserDaoContract {
     private static final Logger logger = LoggerFactory.getLogger(UserDaoImplIT.class);
 
     @Container
@@ -28,9 +37,21 @@ public class UserDaoImplIT {
             .withPassword("testpass")
             .withReuse(true);
 
-    private UserDao userDao;
     private SessionFactory sessionFactory;
 
+    //Реализация под тестом; наследники проверяют другие реализации UserDao тем же набором тестов.
+    protected UserDao createDao(SessionFactory sessionFactory) {
+        return createDao(sessionFactory, null, null);
+    }
+
+    protected UserDao createDao(SessionFactory sessionFactory, Duration defaultTimeout, Duration changeLag) {
+        return new UserDaoImpl(sessionFactory, defaultTimeout, changeLag);
+    }
+
+    protected long queryTimeouts() {
+        return ((UserDaoImpl) userDao).getQueryTimeouts();
+    }
+
     @BeforeAll
     void setup() {
         logger.info("Starting PostgreSQL container...");
@@ -46,28 +67,34 @@ public class UserDaoImplIT {
         }
 
         // Настройка.
+        Configuration configuration = configuration();
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+
+        try {
+            sessionFactory = configuration.buildSessionFactory();
+            userDao = createDao(sessionFactory);
+            logger.info("SessionFactory created successfully");
+        } catch (Exception e) {
+            logger.error("Failed to create SessionFactory", e);
+            throw new RuntimeException("Failed to initialize test database", e);
+        }
+    }
+
+    private static Configuration configuration() {
         Configuration configuration = new Configuration();
         configuration.setProperty("hibernate.connection.driver_class", "org.postgresql.Driver");
         configuration.setProperty("hibernate.connection.url", postgres.getJdbcUrl());
         configuration.setProperty("hibernate.connection.username", postgres.getUsername());
         configuration.setProperty("hibernate.connection.password", postgres.getPassword());
         configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
-        configuration.setProperty("hibernate.hbm2ddl.auto", "create-drop");
         configuration.setProperty("hibernate.show_sql", "true");
         configuration.setProperty("hibernate.format_sql", "true");
         configuration.setProperty("hibernate.connection.pool_size", "10");
         configuration.setProperty("hibernate.hikari.maximumPoolSize", "10");
 
         configuration.addAnnotatedClass(User.class);
-
-        try {
-            sessionFactory = configuration.buildSessionFactory();
-            userDao = new UserDaoImpl(sessionFactory);
-            logger.info("SessionFactory created successfully");
-        } catch (Exception e) {
-            logger.error("Failed to create SessionFactory", e);
-            throw new RuntimeException("Failed to initialize test database", e);
-        }
+        configuration.addAnnotatedClass(UserOutboxEvent.class);
+        return configuration;
     }
 
     @BeforeEach
@@ -77,6 +104,7 @@ public class UserDaoImplIT {
             var transaction = session.beginTransaction();
             try {
                 session.createMutationQuery("DELETE FROM User").executeUpdate();
+                session.createMutationQuery("DELETE FROM UserOutboxEvent").executeUpdate();
                 transaction.commit();
                 logger.debug("Database cleaned successfully");
             } catch (Exception e) {
@@ -101,88 +129,157 @@ public class UserDaoImplIT {
     }
 
     @Test
-    void createUser_ShouldReturnGeneratedId() {
-        User user = new User(null, "Test User", "test@example.com", 25, Instant.now());
-
+    void mutations_ShouldWriteOutboxEventsInOrder() {
+        User user = new User(null, "Outbox", "outbox@example.com", 25, Instant.now());
         Long id = userDao.create(user);
+        user.setAge(26);
+        userDao.update(user);
+        userDao.delete(id);
 
-        assertNotNull(id);
-        assertTrue(id > 0);
-        logger.info("Created user with ID: {}", id);
+        List<UserOutboxEvent> events = readOutbox();
+
+        assertEquals(List.of(UserChangeType.CREATED, UserChangeType.UPDATED, UserChangeType.DELETED),
+                events.stream().map(UserOutboxEvent::getType).toList());
+        assertTrue(events.stream().allMatch(e -> id.equals(e.getUserId())));
+        assertEquals(26, events.get(1).getAge());
     }
 
     @Test
-    void findById_WithExistingUser_ShouldReturnUser() {
-        User user = new User(null, "Test User", "test@example.com", 25, Instant.now());
-        Long id = userDao.create(user);
-
-        Optional<User> found = userDao.findById(id);
+    void delete_WithNonExistingUser_ShouldNotWriteOutboxEvent() {
+        userDao.delete(999L);
 
-        assertTrue(found.isPresent());
-        assertEquals("Test User", found.get().getName());
-        assertEquals("test@example.com", found.get().getEmail());
-        assertEquals(25, found.get().getAge());
+        assertTrue(readOutbox().isEmpty());
     }
 
     @Test
-    void findById_WithNonExistingUser_ShouldReturnEmpty() {
-        Optional<User> found = userDao.findById(999L);
+    void update_LockWaitBeyondDeadline_ThrowsQueryTimeout() {
+        Long id = userDao.create(new User(null, "Locked", "locked@example.com", 30, Instant.now()));
+        User changed = userDao.findById(id).orElseThrow();
+        changed.setAge(31);
+        long timeoutsBefore = queryTimeouts();
+
+        try (var locker = sessionFactory.openSession()) {
+            var lock = locker.beginTransaction();
+            locker.createNativeQuery("select id from users where id = :id for update", Long.class)
+                    .setParameter("id", id)
+                    .list();
+
+            long start = System.nanoTime();
+            assertThrows(QueryTimeoutDaoException.class, () -> Deadline.after(Duration.ofMillis(300)).call(() -> {
+                userDao.update(changed);
+                return null;
+            }));
+            assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+            lock.rollback();
+        }
 
-        assertFalse(found.isPresent());
+        assertEquals(timeoutsBefore + 1, queryTimeouts());
+        assertEquals(30, userDao.findById(id).orElseThrow().getAge());
     }
 
     @Test
-    void findAll_WithUsers_ShouldReturnAllUsers() {
-        userDao.create(new User(null, "User1", "user1@example.com", 25, Instant.now()));
-        userDao.create(new User(null, "User2", "user2@example.com", 30, Instant.now()));
-
-        List<User> users = userDao.findAll();
+    void update_LockWaitBeyondConnectionTimeout_ThrowsQueryTimeoutWithoutDeadline() {
+        Long id = userDao.create(new User(null, "Locked", "locked@example.com", 30, Instant.now()));
+        User changed = userDao.findById(id).orElseThrow();
+        changed.setAge(31);
+        Properties properties = new Properties();
+        properties.setProperty("dao.queryTimeoutMillis", "300");
+        Configuration configuration = configuration();
+        UserDaoFactory.configureConnections(configuration, new AppConfig(properties));
+
+        try (SessionFactory limited = configuration.buildSessionFactory();
+             var locker = sessionFactory.openSession()) {
+            try (var session = limited.openSession()) {
+                assertEquals("300ms", session.createNativeQuery("show statement_timeout", String.class).getSingleResult());
+            }
+            UserDao dao = createDao(limited, Duration.ofMillis(300), null);
+            var lock = locker.beginTransaction();
+            locker.createNativeQuery("select id from users where id = :id for update", Long.class)
+                    .setParameter("id", id)
+                    .list();
+
+            long start = System.nanoTime();
+            assertThrows(QueryTimeoutDaoException.class, () -> dao.update(changed));
+            assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+            lock.rollback();
+        }
 
-        assertEquals(2, users.size());
-        logger.info("Found {} users", users.size());
+        assertEquals(30, userDao.findById(id).orElseThrow().getAge());
     }
 
     @Test
-    void findAll_WithNoUsers_ShouldReturnEmptyList() {
-        List<User> users = userDao.findAll();
+    void findAll_ExpiredDeadline_FailsWithoutQuery() {
+        Deadline deadline = Deadline.after(Duration.ZERO);
 
-        assertTrue(users.isEmpty());
+        assertThrows(QueryTimeoutDaoException.class, () -> deadline.call(userDao::findAll));
     }
 
     @Test
-    void update_WithExistingUser_ShouldUpdateUser() {
-        User user = new User(null, "Original", "original@example.com", 25, Instant.now());
-        Long id = userDao.create(user);
-
-        user.setId(id);
-        user.setName("Updated");
-        user.setEmail("updated@example.com");
-        user.setAge(30);
-
-        userDao.update(user);
-
-        Optional<User> updated = userDao.findById(id);
-        assertTrue(updated.isPresent());
-        assertEquals("Updated", updated.get().getName());
-        assertEquals("updated@example.com", updated.get().getEmail());
-        assertEquals(30, updated.get().getAge());
+    void inTransaction_SharesSessionAndCommitsOnce() {
+        List<Long> ids = userDao.inTransaction(false, dao -> {
+            Long first = dao.create(new User(null, "First", "unit-1@example.com", 20, Instant.now()));
+            Long second = dao.create(new User(null, "Second", "unit-2@example.com", 21, Instant.now()));
+            User loaded = dao.findById(first).orElseThrow();
+            //Другой экземпляр DAO работает в своей транзакции и незакоммиченных строк не видит.
+            assertTrue(createDao(sessionFactory).findById(first).isEmpty());
+            loaded.setAge(22);
+            dao.update(loaded);
+            return List.of(first, second);
+        });
+
+        assertEquals(22, userDao.findById(ids.get(0)).orElseThrow().getAge());
+        assertTrue(userDao.findById(ids.get(1)).isPresent());
+        assertEquals(List.of(UserChangeType.CREATED, UserChangeType.CREATED, UserChangeType.UPDATED),
+                readOutbox().stream().map(UserOutboxEvent::getType).toList());
     }
 
     @Test
-    void delete_WithExistingUser_ShouldReturnTrue() {
-        User user = new User(null, "To Delete", "delete@example.com", 25, Instant.now());
-        Long id = userDao.create(user);
-
-        boolean deleted = userDao.delete(id);
-
-        assertTrue(deleted);
-        assertFalse(userDao.findById(id).isPresent());
+    void findChangedSince_TransactionsCommittedOutOfOrder_ShouldNotSkipEarlierStamp() throws Exception {
+        UserDao reader = createDao(sessionFactory, null, Duration.ofMillis(1500));
+        Instant start = Instant.now().minusSeconds(5);
+        CountDownLatch created = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            //Первая транзакция отмечает updatedAt раньше второй, а фиксируется после неё.
+            Future<Long> early = writer.submit(() -> userDao.inTransaction(false, dao -> {
+                Long id = dao.create(new User(null, "Early", "early@example.com", 20, Instant.now()));
+                created.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return id;
+            }));
+            assertTrue(created.await(10, TimeUnit.SECONDS));
+            Long late = userDao.create(new User(null, "Late", "late@example.com", 21, Instant.now()));
+
+            List<User> firstPoll = reader.findChangedSince(start, null, 10);
+            release.countDown();
+            Long earlyId = early.get(10, TimeUnit.SECONDS);
+            Thread.sleep(1600);
+            Instant cursor = firstPoll.isEmpty() ? start : firstPoll.get(firstPoll.size() - 1).getUpdatedAt();
+            Long cursorId = firstPoll.isEmpty() ? null : firstPoll.get(firstPoll.size() - 1).getId();
+            List<User> secondPoll = reader.findChangedSince(cursor, cursorId, 10);
+
+            assertTrue(firstPoll.isEmpty());
+            assertEquals(List.of(earlyId, late), secondPoll.stream().map(User::getId).toList());
+        } finally {
+            release.countDown();
+            writer.shutdownNow();
+        }
     }
 
-    @Test
-    void delete_WithNonExistingUser_ShouldReturnFalse() {
-        boolean deleted = userDao.delete(999L);
+    @Override
+    protected boolean hasOutbox() {
+        return true;
+    }
 
-        assertFalse(deleted);
+    @Override
+    protected List<UserOutboxEvent> readOutbox() {
+        try (var session = sessionFactory.openSession()) {
+            return session.createQuery("from UserOutboxEvent e order by e.id", UserOutboxEvent.class).list();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package org.klimtsov.dao;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class UserEmailConstraintIT {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("testuser")
+            .withPassword("testpass")
+            .withReuse(true);
+
+    private SessionFactory sessionFactory;
+    private UserEmailConstraint constraint;
+
+    @BeforeAll
+    void setup() {
+        Configuration configuration = new Configuration();
+        configuration.setProperty("hibernate.connection.driver_class", "org.postgresql.Driver");
+        configuration.setProperty("hibernate.connection.url", postgres.getJdbcUrl());
+        configuration.setProperty("hibernate.connection.username", postgres.getUsername());
+        configuration.setProperty("hibernate.connection.password", postgres.getPassword());
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+        configuration.addAnnotatedClass(User.class);
+        configuration.addAnnotatedClass(UserOutboxEvent.class);
+        sessionFactory = configuration.buildSessionFactory();
+        constraint = new UserEmailConstraint(sessionFactory);
+    }
+
+    @AfterAll
+    void tearDown() {
+        if (sessionFactory != null) {
+            execute("DELETE FROM users");
+            sessionFactory.close();
+        }
+    }
+
+    @BeforeEach
+    void dropConstraint() {
+        execute("DELETE FROM users");
+        execute("ALTER TABLE users DROP CONSTRAINT IF EXISTS " + UserEmailConstraint.NAME);
+    }
+
+    @Test
+    void ensure_WithoutDuplicates_ShouldCreateConstraint() {
+        execute("INSERT INTO users (name, email, age) VALUES ('A', 'a@example.com', 20), ('B', 'b@example.com', 21)");
+
+        constraint.ensure();
+        constraint.ensure();
+
+        assertTrue(constraint.exists());
+        assertThrows(Exception.class,
+                () -> execute("INSERT INTO users (name, email, age) VALUES ('A2', 'a@example.com', 22)"));
+    }
+
+    @Test
+    void ensure_WithDuplicates_ShouldFailAndNameThem() {
+        execute("INSERT INTO users (name, email, age) VALUES "
+                + "('A', 'dup@example.com', 20), ('B', 'dup@example.com', 21), ('C', 'c@example.com', 22)");
+
+        DaoException e = assertThrows(DaoException.class, constraint::ensure);
+
+        assertTrue(e.getMessage().contains("dup@example.com (2)"), e.getMessage());
+        assertFalse(e.getMessage().contains("c@example.com"), e.getMessage());
+        assertFalse(constraint.exists());
+    }
+
+    private void execute(String sql) {
+        try (var session = sessionFactory.openSession()) {
+            var transaction = session.beginTransaction();
+            session.createNativeMutationQuery(sql).executeUpdate();
+            transaction.commit();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.klimtsov.dao;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class UserParallelScanIT {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("testuser")
+            .withPassword("testpass")
+            .withReuse(true);
+
+    private SessionFactory sessionFactory;
+    private UserDao userDao;
+
+    @BeforeAll
+    void setup() {
+        Configuration configuration = new Configuration();
+        configuration.setProperty("hibernate.connection.driver_class", "org.postgresql.Driver");
+        configuration.setProperty("hibernate.connection.url", postgres.getJdbcUrl());
+        configuration.setProperty("hibernate.connection.username", postgres.getUsername());
+        configuration.setProperty("hibernate.connection.password", postgres.getPassword());
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+        configuration.addAnnotatedClass(User.class);
+        configuration.addAnnotatedClass(UserOutboxEvent.class);
+        sessionFactory = configuration.buildSessionFactory();
+        userDao = new UserDaoImpl(sessionFactory);
+    }
+
+    @AfterAll
+    void tearDown() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    @BeforeEach
+    void cleanDatabase() {
+        sessionFactory.inTransaction(session -> {
+            session.createMutationQuery("DELETE FROM UserOutboxEvent").executeUpdate();
+            session.createMutationQuery("DELETE FROM User").executeUpdate();
+        });
+    }
+
+    private List<Long> createUsers(int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            users.add(new User(null, "Имя " + i, "user" + i + "@example.com", i % 5 == 0 ? null : 20 + i % 50,
+                    Instant.parse("2024-03-01T10:15:30.123456Z")));
+        }
+        return userDao.upsertAll(users).stream().map(UpsertResult::id).toList();
+    }
+
+    @Test
+    void scan_DeliversEveryUserOnceAndReportsProgress() {
+        List<Long> ids = createUsers(1000);
+        //Пропуски в id: части диапазона с разной плотностью и пустые части.
+        ids.stream().filter(id -> id % 7 == 0 || (id > ids.get(100) && id < ids.get(400))).forEach(userDao::delete);
+        Map<Long, User> expected = userDao.findAll().stream().collect(Collectors.toMap(User::getId, u -> u));
+
+        Map<Long, User> seen = new ConcurrentHashMap<>();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        List<UserParallelScan.Progress> progress = new CopyOnWriteArrayList<>();
+        long rows = new UserParallelScan(sessionFactory, 3, 4, 50, 40).scan(user -> {
+            assertNull(seen.put(user.getId(), user));
+            threads.add(Thread.currentThread().getName());
+        }, progress::add);
+
+        assertEquals(expected.size(), rows);
+        assertEquals(expected.keySet(), seen.keySet());
+        User sample = expected.values().iterator().next();
+        assertEquals(sample.getEmail(), seen.get(sample.getId()).getEmail());
+        assertEquals(sample.getAge(), seen.get(sample.getId()).getAge());
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("user-scan-")));
+
+        List<UserParallelScan.Progress> done = progress.stream().filter(UserParallelScan.Progress::done).toList();
+        assertEquals(12, done.size());
+        assertEquals(rows, done.stream().mapToLong(UserParallelScan.Progress::rows).sum());
+        assertTrue(progress.stream().anyMatch(p -> !p.done() && p.rows() == 40));
+    }
+
+    @Test
+    void scan_EmptyTable_ReturnsZero() {
+        assertEquals(0, new UserParallelScan(sessionFactory, 2, 2, 10, 10).scan(user -> fail(), p -> fail()));
+    }
+
+    @Test
+    void scan_ConsumerFailure_StopsScanAndPropagates() {
+        createUsers(500);
+        AtomicInteger delivered = new AtomicInteger();
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> new UserParallelScan(sessionFactory, 2, 2, 10, 1000).scan(user -> {
+                    if (delivered.incrementAndGet() == 20) {
+                        throw new IllegalStateException("consumer failed");
+                    }
+                }, p -> {
+                }));
+
+        assertEquals("consumer failed", error.getMessage());
+        assertTrue(delivered.get() < 500);
+    }
+}
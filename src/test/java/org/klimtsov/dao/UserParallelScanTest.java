@@ -0,0 +1,39 @@
+package org.klimtsov.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserParallelScanTest {
+
+    @Test
+    void split_CoversRangeWithoutGapsOrOverlaps() {
+        List<UserParallelScan.Range> ranges = UserParallelScan.split(5, 104, 7);
+
+        assertEquals(7, ranges.size());
+        assertEquals(5, ranges.get(0).fromId());
+        assertEquals(104, ranges.get(6).toId());
+        for (int i = 1; i < ranges.size(); i++) {
+            assertEquals(ranges.get(i - 1).toId() + 1, ranges.get(i).fromId());
+        }
+        for (UserParallelScan.Range range : ranges) {
+            long width = range.toId() - range.fromId() + 1;
+            assertTrue(width == 14 || width == 15);
+        }
+    }
+
+    @Test
+    void split_NarrowRange_GivesOneIdPerPartition() {
+        List<UserParallelScan.Range> ranges = UserParallelScan.split(10, 12, 16);
+
+        assertEquals(List.of(new UserParallelScan.Range(10, 10), new UserParallelScan.Range(11, 11),
+                new UserParallelScan.Range(12, 12)), ranges);
+    }
+
+    @Test
+    void constructor_RejectsNonPositiveSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new UserParallelScan(null, 0, 4, 100, 10));
+    }
+}
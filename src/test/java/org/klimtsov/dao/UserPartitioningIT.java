@@ -0,0 +1,167 @@
+package org.klimtsov.dao;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class UserPartitioningIT {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("testuser")
+            .withPassword("testpass")
+            .withReuse(true);
+
+    private SessionFactory sessionFactory;
+    private UserDao userDao;
+    private UserPartitioning partitioning;
+
+    private final Instant january = Instant.parse("2024-01-15T10:00:00Z");
+    private final Instant february = Instant.parse("2024-02-15T10:00:00Z");
+
+    @BeforeAll
+    void setup() {
+        Configuration configuration = new Configuration();
+        configuration.setProperty("hibernate.connection.driver_class", "org.postgresql.Driver");
+        configuration.setProperty("hibernate.connection.url", postgres.getJdbcUrl());
+        configuration.setProperty("hibernate.connection.username", postgres.getUsername());
+        configuration.setProperty("hibernate.connection.password", postgres.getPassword());
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+        configuration.addAnnotatedClass(User.class);
+        configuration.addAnnotatedClass(UserOutboxEvent.class);
+        sessionFactory = configuration.buildSessionFactory();
+        userDao = new UserDaoImpl(sessionFactory);
+        partitioning = new UserPartitioning(sessionFactory);
+    }
+
+    @AfterAll
+    void tearDown() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    @Test
+    @Order(1)
+    void enable_WithEmailUniquenessRequired_ShouldRefuseToMigrate() {
+        assertThrows(IllegalStateException.class, () -> partitioning.enable(1, false));
+
+        assertFalse(partitioning.isPartitioned());
+    }
+
+    @Test
+    @Order(2)
+    void enable_ShouldMigrateExistingRowsIntoMonthlyPartitions() {
+        Long id = userDao.create(new User(null, "Jan", "jan@example.com", 30, january));
+        userDao.create(new User(null, "Feb", "feb@example.com", 31, february));
+
+        partitioning.enable(1, true);
+
+        assertTrue(partitioning.isPartitioned());
+        assertEquals("PRIMARY KEY (id, created_at)", constraintDefinition('p'));
+        List<String> partitions = partitioning.listPartitions();
+        assertTrue(partitions.contains("users_p2024_01"));
+        assertTrue(partitions.contains("users_p2024_02"));
+        assertTrue(partitions.contains(UserPartitioning.partitionName(YearMonth.now(ZoneOffset.UTC).plusMonths(1))));
+        assertEquals("Jan", userDao.findById(id).orElseThrow().getName());
+        assertEquals(2, userDao.findAll().size());
+    }
+
+    @Test
+    @Order(3)
+    void create_AfterMigration_ShouldContinueIdSequence() {
+        Long id = userDao.create(new User(null, "New", "new@example.com", 20, Instant.now()));
+
+        assertTrue(id > 2);
+    }
+
+    @Test
+    @Order(4)
+    void upsert_AfterMigration_ShouldBeRejected() {
+        User user = new User(null, "Jan", "jan@example.com", 40, january);
+
+        DaoException hibernate = assertThrows(DaoException.class, () -> userDao.upsertByEmail(user));
+        DaoException jdbc = assertThrows(DaoException.class, () -> new JdbcUserDao(sessionFactory).upsertByEmail(user));
+
+        assertEquals(UserSql.UPSERT_UNAVAILABLE, hibernate.getMessage());
+        assertEquals(UserSql.UPSERT_UNAVAILABLE, jdbc.getMessage());
+        new UserEmailConstraint(sessionFactory).ensure();
+        assertNull(constraintDefinition('u'));
+        assertEquals(30, userDao.findAll().stream().filter(u -> u.getName().equals("Jan")).findFirst().orElseThrow().getAge());
+    }
+
+    @Test
+    @Order(5)
+    void explainCreatedAtRange_ShouldPruneToSinglePartition() {
+        String plan = partitioning.explainCreatedAtRange(
+                Instant.parse("2024-01-01T00:00:00Z"), Instant.parse("2024-02-01T00:00:00Z"));
+
+        assertTrue(plan.contains("users_p2024_01"), plan);
+        assertFalse(plan.contains("users_p2024_02"), plan);
+        assertEquals(1, userDao.findByCreatedAtBetween(january.minusSeconds(60), january.plusSeconds(60), null, 10).size());
+    }
+
+    @Test
+    @Order(6)
+    void detachPartitionsBefore_ShouldRemoveOldMonthsWithoutRowDeletes() {
+        List<String> detached = partitioning.detachPartitionsBefore(YearMonth.of(2024, 2), true);
+
+        assertEquals(List.of("users_p2024_01"), detached);
+        assertFalse(partitioning.listPartitions().contains("users_p2024_01"));
+        assertEquals(List.of("Feb", "New"), userDao.findAll().stream().map(User::getName).toList());
+    }
+
+    @Test
+    @Order(7)
+    void ensurePartitions_WithRowsInDefaultPartition_ShouldMoveThemIntoNewMonth() {
+        YearMonth later = YearMonth.now(ZoneOffset.UTC).plusMonths(6);
+        Instant createdAt = later.atDay(10).atStartOfDay(ZoneOffset.UTC).toInstant();
+        Long id = userDao.create(new User(null, "Later", "later@example.com", 20, createdAt));
+        Long undated = new JdbcUserDao(sessionFactory).create(new User(null, "Undated", "undated@example.com", 21, null));
+
+        partitioning.ensurePartitions(later, later);
+
+        assertTrue(partitioning.listPartitions().contains(UserPartitioning.partitionName(later)));
+        String plan = partitioning.explainCreatedAtRange(createdAt, createdAt.plusSeconds(1));
+        assertTrue(plan.contains(UserPartitioning.partitionName(later)), plan);
+        assertFalse(plan.contains(UserPartitioning.DEFAULT_PARTITION), plan);
+        assertEquals("Later", userDao.findById(id).orElseThrow().getName());
+        assertNotNull(userDao.findById(undated).orElseThrow().getCreatedAt());
+        assertEquals(0, countIn(UserPartitioning.DEFAULT_PARTITION));
+        assertEquals(1, countIn(UserPartitioning.partitionName(later)));
+    }
+
+    private long countIn(String table) {
+        try (var session = sessionFactory.openSession()) {
+            return session.createNativeQuery("select count(*) from " + table, Long.class).getSingleResult();
+        }
+    }
+
+    //Определение ограничения users заданного типа (p - первичный ключ, u - уникальность) или null.
+    private String constraintDefinition(char type) {
+        try (var session = sessionFactory.openSession()) {
+            return session.createNativeQuery("select pg_get_constraintdef(oid) from pg_constraint "
+                            + "where conrelid = cast('users' as regclass) and contype = :type", String.class)
+                    .setParameter("type", String.valueOf(type))
+                    .uniqueResultOptional()
+                    .orElse(null);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.klimtsov.dao;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class UserUpdatedAtBackfillIT {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("testuser")
+            .withPassword("testpass")
+            .withReuse(true);
+
+    private SessionFactory sessionFactory;
+    private UserUpdatedAtBackfill backfill;
+
+    @BeforeAll
+    void setup() {
+        Configuration configuration = new Configuration();
+        configuration.setProperty("hibernate.connection.driver_class", "org.postgresql.Driver");
+        configuration.setProperty("hibernate.connection.url", postgres.getJdbcUrl());
+        configuration.setProperty("hibernate.connection.username", postgres.getUsername());
+        configuration.setProperty("hibernate.connection.password", postgres.getPassword());
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+        configuration.addAnnotatedClass(User.class);
+        configuration.addAnnotatedClass(UserOutboxEvent.class);
+        sessionFactory = configuration.buildSessionFactory();
+        backfill = new UserUpdatedAtBackfill(sessionFactory);
+    }
+
+    @AfterAll
+    void tearDown() {
+        if (sessionFactory != null) {
+            execute("DELETE FROM users");
+            execute("ALTER TABLE users ALTER COLUMN updated_at DROP NOT NULL");
+            sessionFactory.close();
+        }
+    }
+
+    @BeforeEach
+    void dropNotNull() {
+        execute("DELETE FROM users");
+        execute("ALTER TABLE users ALTER COLUMN updated_at DROP NOT NULL");
+    }
+
+    @Test
+    void ensure_FillsRowsWithoutUpdatedAtAndMakesThemVisibleToChangeFeed() {
+        execute("INSERT INTO users (name, email, age, created_at) VALUES "
+                + "('A', 'a@example.com', 20, '2020-01-01 00:00:00+00'), ('B', 'b@example.com', 21, NULL)");
+        UserDao dao = new JdbcUserDao(sessionFactory);
+        assertTrue(dao.findChangedSince(Instant.EPOCH, 0L, 10).isEmpty());
+
+        assertEquals(2, backfill.ensure());
+        assertEquals(0, backfill.ensure());
+
+        List<User> changed = dao.findChangedSince(Instant.EPOCH, 0L, 10);
+        assertEquals(2, changed.size());
+        assertEquals(Instant.parse("2020-01-01T00:00:00Z"), changed.get(0).getUpdatedAt());
+        assertNotNull(changed.get(1).getUpdatedAt());
+        assertThrows(Exception.class,
+                () -> execute("INSERT INTO users (name, email, age) VALUES ('C', 'c@example.com', 22)"));
+    }
+
+    private void execute(String sql) {
+        try (var session = sessionFactory.openSession()) {
+            var transaction = session.beginTransaction();
+            session.createNativeMutationQuery(sql).executeUpdate();
+            transaction.commit();
+        }
+    }
+}
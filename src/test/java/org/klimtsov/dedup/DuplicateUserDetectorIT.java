@@ -0,0 +1,118 @@
+package org.klimtsov.dedup;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.klimtsov.dao.UserDao;
+import org.klimtsov.dao.UserDaoImpl;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DuplicateUserDetectorIT {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("testuser")
+            .withPassword("testpass")
+            .withReuse(true);
+
+    private SessionFactory sessionFactory;
+    private UserDao userDao;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    void setup() {
+        Configuration configuration = new Configuration();
+        configuration.setProperty("hibernate.connection.driver_class", "org.postgresql.Driver");
+        configuration.setProperty("hibernate.connection.url", postgres.getJdbcUrl());
+        configuration.setProperty("hibernate.connection.username", postgres.getUsername());
+        configuration.setProperty("hibernate.connection.password", postgres.getPassword());
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+        configuration.addAnnotatedClass(User.class);
+        configuration.addAnnotatedClass(UserOutboxEvent.class);
+        sessionFactory = configuration.buildSessionFactory();
+        userDao = new UserDaoImpl(sessionFactory);
+    }
+
+    @AfterAll
+    void tearDown() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    @BeforeEach
+    void cleanDatabase() {
+        sessionFactory.inTransaction(session -> {
+            session.createMutationQuery("DELETE FROM UserOutboxEvent").executeUpdate();
+            session.createMutationQuery("DELETE FROM User").executeUpdate();
+        });
+    }
+
+    private Long create(String name, String email) {
+        return userDao.create(new User(null, name, email, 30, Instant.now()));
+    }
+
+    @Test
+    void detect_ReportsEmailGroupsAndSimilarNames() throws Exception {
+        Long ann = create("Ann Smith", "ann@example.com");
+        Long annUpper = create("ANN SMITH", " Ann@Example.com");
+        Long annTab = create("Smith, Ann", "ann@example.com\t");
+        Long anne = create("Anne Smith", "anne.smith@example.com");
+        Long bob = create("Bob Jones", "bob@example.com");
+        Long rob = create("Bob Jonez", "rob@example.com");
+        create("Charlie Brown", "charlie@example.com");
+        create(null, null);
+        create("Dana White", null);
+        for (int i = 0; i < 6; i++) {
+            create("Common Name" + i, "common" + i + "@example.com");
+        }
+        //Общий блок PREFIX слишком велик, пару находит блок SUFFIX.
+        Long namex = create("Common Namex", "namex@example.com");
+        Long nammex = create("Common Nammex", "nammex@example.com");
+
+        Path report = dir.resolve("duplicates.jsonl");
+        DuplicateUserDetector.Summary summary = new DuplicateUserDetector(sessionFactory, dir, 5, 2, 5, 3)
+                .detect(report);
+
+        assertEquals(17, summary.users());
+        assertEquals(1, summary.emailGroups());
+        assertEquals(2, summary.emailDuplicates());
+        assertTrue(summary.sortRuns() > 1);
+        List<String> lines = Files.readAllLines(report);
+        String email = lines.stream().filter(l -> l.contains("\"type\":\"email\"")).findFirst().orElseThrow();
+        assertTrue(email.startsWith("{\"type\":\"email\",\"key\":\"ann@example.com\",\"users\":[{\"id\":" + ann + ","));
+        assertTrue(email.contains("\"id\":" + annUpper) && email.contains("\"id\":" + annTab));
+
+        List<String> names = lines.stream().filter(l -> l.contains("\"type\":\"name\"")).toList();
+        assertEquals(summary.nameCandidates(), names.size());
+        assertTrue(names.stream().anyMatch(l -> l.contains("\"id\":" + ann + ",") && l.contains("\"id\":" + anne + ",")));
+        assertTrue(names.stream().anyMatch(l -> l.contains("\"id\":" + bob + ",") && l.contains("\"id\":" + rob + ",")));
+        assertTrue(names.stream().noneMatch(l -> l.contains("Charlie")));
+        //Пара из блоков обоих видов сообщается один раз.
+        assertEquals(1, names.stream().filter(l -> l.contains("\"id\":" + bob + ",") && l.contains("\"id\":" + rob + ",")).count());
+        assertTrue(lines.stream().anyMatch(l -> l.startsWith("{\"type\":\"skippedBlock\",\"block\":\"p:com nam\",\"users\":8}")));
+        assertEquals(1, names.stream().filter(l -> l.startsWith("{\"type\":\"name\",\"block\":\"s:mex mon\"")
+                && l.contains("\"id\":" + namex + ",") && l.contains("\"id\":" + nammex + ",")).count());
+        try (var files = Files.list(dir)) {
+            assertEquals(List.of(report), files.toList());
+        }
+    }
+}
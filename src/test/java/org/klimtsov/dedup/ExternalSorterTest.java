@@ -0,0 +1,72 @@
+package org.klimtsov.dedup;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExternalSorterTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<NameEntry> entries(int count) {
+        Random random = new Random(11);
+        List<NameEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String key = "p:" + (char) ('a' + random.nextInt(20));
+            entries.add(new NameEntry(key, i, "Имя " + i, "имя " + i));
+        }
+        return entries;
+    }
+
+    private static List<NameEntry> drain(ExternalSorter sorter) throws Exception {
+        List<NameEntry> sorted = new ArrayList<>();
+        NameEntry entry;
+        while ((entry = sorter.next()) != null) {
+            sorted.add(entry);
+        }
+        return sorted;
+    }
+
+    @Test
+    void next_MergesSpilledRunsInKeyAndIdOrder() throws Exception {
+        List<NameEntry> entries = entries(1000);
+        List<NameEntry> sorted;
+        try (ExternalSorter sorter = new ExternalSorter(dir, 64)) {
+            for (NameEntry entry : entries) {
+                sorter.add(entry);
+            }
+            sorted = drain(sorter);
+            assertEquals(16, sorter.getRuns());
+        }
+
+        List<NameEntry> expected = new ArrayList<>(entries);
+        Collections.sort(expected);
+        assertEquals(expected, sorted);
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void next_WithoutSpill_SortsInMemory() throws Exception {
+        List<NameEntry> entries = entries(50);
+        try (ExternalSorter sorter = new ExternalSorter(dir, 64)) {
+            for (NameEntry entry : entries) {
+                sorter.add(entry);
+            }
+            List<NameEntry> expected = new ArrayList<>(entries);
+            Collections.sort(expected);
+            assertEquals(expected, drain(sorter));
+            assertEquals(0, sorter.getRuns());
+        }
+    }
+}
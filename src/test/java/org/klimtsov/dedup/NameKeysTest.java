@@ -0,0 +1,71 @@
+package org.klimtsov.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NameKeysTest {
+
+    @Test
+    void normalize_IgnoresCaseOrderPunctuationAndYo() {
+        assertEquals("алёна петрова".replace('ё', 'е'), NameKeys.normalize("  Петрова,   АЛЁНА "));
+        assertEquals(NameKeys.normalize("Ivan Petrov"), NameKeys.normalize("petrov-IVAN"));
+        assertEquals("", NameKeys.normalize(" - "));
+        assertEquals("", NameKeys.normalize(null));
+    }
+
+    @Test
+    void keys_UseWordPrefixesAndSuffixes() {
+        String name = NameKeys.normalize("Ivan Petrov");
+
+        assertEquals("p:iva pet", NameKeys.prefixKey(name));
+        assertEquals("s:rov van", NameKeys.suffixKey(name));
+        assertEquals(NameKeys.prefixKey(name), NameKeys.prefixKey(NameKeys.normalize("Ivann Petrova")));
+        assertEquals(NameKeys.suffixKey(name), NameKeys.suffixKey(NameKeys.normalize("Yvan Betrov")));
+    }
+
+    @Test
+    void keys_PrefixBlocksSortBeforeSuffixBlocks() {
+        assertTrue(NameKeys.prefixKey("zzz zzz").compareTo(NameKeys.suffixKey("a")) < 0);
+    }
+
+    @Test
+    void distance_MatchesFullLevenshteinWithinBound() {
+        Random random = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            String a = randomWord(random);
+            String b = randomWord(random);
+            int max = random.nextInt(4);
+            int exact = levenshtein(a, b);
+            assertEquals(Math.min(exact, max + 1), NameKeys.distance(a, b, max), a + " / " + b + " max " + max);
+        }
+    }
+
+    private static String randomWord(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(9);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+}
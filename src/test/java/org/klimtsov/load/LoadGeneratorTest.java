@@ -0,0 +1,93 @@
+package org.klimtsov.load;
+
+import org.junit.jupiter.api.Test;
+import org.klimtsov.dao.DaoException;
+import org.klimtsov.dao.UserDao;
+import org.klimtsov.service.UserService;
+import org.klimtsov.userservice.model.User;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class LoadGeneratorTest {
+
+    private UserDao stubDao() {
+        UserDao dao = mock(UserDao.class, withSettings().stubOnly());
+        AtomicLong ids = new AtomicLong();
+        when(dao.create(any(User.class))).thenAnswer(inv -> ids.incrementAndGet());
+        when(dao.findById(anyLong())).thenAnswer(inv ->
+                Optional.of(new User(inv.getArgument(0), "U", "u@example.com", 30, Instant.now())));
+        when(dao.delete(anyLong())).thenReturn(true);
+        return dao;
+    }
+
+    @Test
+    public void run_ReportsIntervalsThroughputAndPercentiles() {
+        WorkloadConfig config = new WorkloadConfig(25, 25, 25, 25, 4, false, 0,
+                Duration.ofMillis(600), Duration.ofMillis(200));
+        List<IntervalReport> streamed = new CopyOnWriteArrayList<>();
+
+        LoadReport report = new LoadGenerator(new UserService(stubDao()), config, streamed::add).run();
+
+        assertTrue(report.total().operations() > 0);
+        assertEquals(0, report.total().errors());
+        assertTrue(report.total().throughputPerSecond() > 0);
+        assertTrue(report.total().p99Micros() >= report.total().p50Micros());
+        assertFalse(report.intervals().isEmpty());
+        assertFalse(streamed.isEmpty());
+    }
+
+    @Test
+    public void run_WithTargetRate_LimitsThroughput() {
+        WorkloadConfig config = new WorkloadConfig(0, 100, 0, 0, 4, false, 100,
+                Duration.ofMillis(500), Duration.ofMillis(250));
+
+        LoadReport report = new LoadGenerator(new UserService(stubDao()), config).run();
+
+        long ops = report.total().operations();
+        assertTrue(ops >= 30 && ops <= 60, "ops=" + ops);
+    }
+
+    @Test
+    public void run_CountsFailedOperationsAsErrors() {
+        UserDao dao = mock(UserDao.class, withSettings().stubOnly());
+        when(dao.create(any(User.class))).thenThrow(new DaoException("down", null));
+        WorkloadConfig config = new WorkloadConfig(1, 0, 0, 0, 2, false, 0,
+                Duration.ofMillis(200), Duration.ofMillis(100));
+
+        LoadReport report = new LoadGenerator(new UserService(dao), config).run();
+
+        assertTrue(report.total().operations() > 0);
+        assertEquals(report.total().operations(), report.total().errors());
+        assertEquals(1.0, report.total().errorRate());
+    }
+
+    @Test
+    public void workloadConfig_RejectsInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> new WorkloadConfig(0, 0, 0, 0, 1, false, 0,
+                Duration.ofSeconds(1), Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> new WorkloadConfig(1, 0, 0, 0, 0, false, 0,
+                Duration.ofSeconds(1), Duration.ofSeconds(1)));
+    }
+
+    @Test
+    public void latencyHistogram_PercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordNanos(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.count());
+        assertEquals(500, histogram.percentileMicros(50), 500 * 0.03);
+        assertEquals(990, histogram.percentileMicros(99), 990 * 0.03);
+    }
+}
@@ -0,0 +1,47 @@
+package org.klimtsov.outbox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.klimtsov.userservice.model.UserChangeType;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileChangeEventSinkTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void publish_AppendsOneLinePerEvent() throws Exception {
+        Path file = tempDir.resolve("events.jsonl");
+        FileChangeEventSink sink = new FileChangeEventSink(file);
+        Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        sink.publish(List.of(new UserOutboxEvent(1L, 10L, UserChangeType.CREATED, now, "Ann", "ann@example.com", 20)));
+        sink.publish(List.of(new UserOutboxEvent(2L, 10L, UserChangeType.DELETED, now, "Ann", "ann@example.com", 20)));
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        assertEquals("{\"id\":1,\"userId\":10,\"type\":\"CREATED\",\"occurredAt\":\"2024-01-01T00:00:00Z\","
+                + "\"name\":\"Ann\",\"email\":\"ann@example.com\",\"age\":20}", lines.get(0));
+        assertTrue(lines.get(1).contains("\"type\":\"DELETED\""));
+    }
+
+    @Test
+    public void toJson_EscapesSpecialCharactersAndNulls() {
+        UserOutboxEvent event = new UserOutboxEvent(3L, 5L, UserChangeType.UPDATED, Instant.EPOCH,
+                "Quote \" and \\ slash\n", null, null);
+
+        String json = FileChangeEventSink.toJson(event);
+
+        assertTrue(json.contains("\"name\":\"Quote \\\" and \\\\ slash\\n\""));
+        assertTrue(json.contains("\"email\":null"));
+        assertTrue(json.contains("\"age\":null"));
+    }
+}
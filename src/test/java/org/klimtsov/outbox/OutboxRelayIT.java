@@ -0,0 +1,104 @@
+package org.klimtsov.outbox;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import org.klimtsov.dao.UserDao;
+import org.klimtsov.dao.UserDaoImpl;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserChangeType;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class OutboxRelayIT {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("testuser")
+            .withPassword("testpass")
+            .withReuse(true);
+
+    private SessionFactory sessionFactory;
+    private UserDao userDao;
+
+    @BeforeAll
+    void setup() {
+        Configuration configuration = new Configuration();
+        configuration.setProperty("hibernate.connection.driver_class", "org.postgresql.Driver");
+        configuration.setProperty("hibernate.connection.url", postgres.getJdbcUrl());
+        configuration.setProperty("hibernate.connection.username", postgres.getUsername());
+        configuration.setProperty("hibernate.connection.password", postgres.getPassword());
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        configuration.addAnnotatedClass(User.class);
+        configuration.addAnnotatedClass(UserOutboxEvent.class);
+        sessionFactory = configuration.buildSessionFactory();
+        userDao = new UserDaoImpl(sessionFactory);
+    }
+
+    @BeforeEach
+    void cleanDatabase() {
+        try (var session = sessionFactory.openSession()) {
+            var transaction = session.beginTransaction();
+            session.createMutationQuery("DELETE FROM User").executeUpdate();
+            session.createMutationQuery("DELETE FROM UserOutboxEvent").executeUpdate();
+            transaction.commit();
+        }
+    }
+
+    @AfterAll
+    void tearDown() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    @Test
+    void drain_ShouldPublishEventsInOrderAndClearOutbox() {
+        User user = new User(null, "Relay", "relay@example.com", 30, Instant.now());
+        Long id = userDao.create(user);
+        user.setName("Relay 2");
+        userDao.update(user);
+        userDao.create(new User(null, "Other", "other@example.com", 40, Instant.now()));
+
+        List<UserOutboxEvent> received = new ArrayList<>();
+        ListenerChangeEventSink sink = new ListenerChangeEventSink();
+        sink.addListener(received::add);
+
+        try (OutboxRelay relay = new OutboxRelay(sessionFactory, List.of(sink), 2)) {
+            assertEquals(3, relay.drain());
+            assertEquals(0, relay.drain());
+        }
+
+        assertEquals(List.of(UserChangeType.CREATED, UserChangeType.UPDATED, UserChangeType.CREATED),
+                received.stream().map(UserOutboxEvent::getType).toList());
+        assertEquals(id, received.get(1).getUserId());
+        assertEquals("Relay 2", received.get(1).getName());
+    }
+
+    @Test
+    void relayBatch_WhenSinkFails_ShouldKeepEventsInOutbox() {
+        userDao.create(new User(null, "Fail", "fail@example.com", 30, Instant.now()));
+        ChangeEventSink failing = events -> {
+            throw new IllegalStateException("sink down");
+        };
+
+        OutboxRelay relay = new OutboxRelay(sessionFactory, List.of(failing), 10);
+        assertThrows(IllegalStateException.class, relay::relayBatch);
+
+        List<UserOutboxEvent> received = new ArrayList<>();
+        new OutboxRelay(sessionFactory, List.of(received::addAll), 10).drain();
+        assertEquals(1, received.size());
+    }
+}
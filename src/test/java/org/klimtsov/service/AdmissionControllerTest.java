@@ -0,0 +1,186 @@
+package org.klimtsov.service;
+
+import org.junit.jupiter.api.Test;
+import org.klimtsov.dao.DaoException;
+import org.klimtsov.dao.UserDao;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AdmissionControllerTest {
+
+    private static AdmissionController controller(int limit, int queue, long waitMillis) {
+        return new AdmissionController(limit, 1, 10, queue, Duration.ofMillis(waitMillis), Duration.ofSeconds(1), 0.5);
+    }
+
+    @Test
+    void execute_QueueFull_RejectsImmediately() throws Exception {
+        AdmissionController controller = controller(1, 0, 1_000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> holder = executor.submit(() -> controller.execute(() -> {
+                started.countDown();
+                await(finish);
+                return null;
+            }));
+            started.await();
+
+            assertThrows(AdmissionRejectedException.class, () -> controller.execute(() -> 1));
+            assertEquals(1, controller.getRejected());
+            assertEquals(1, controller.getInFlight());
+
+            finish.countDown();
+            holder.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_WaitTimesOut_RejectsAndLeavesQueue() throws Exception {
+        AdmissionController controller = controller(1, 5, 50);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> holder = executor.submit(() -> controller.execute(() -> {
+                started.countDown();
+                await(finish);
+                return null;
+            }));
+            started.await();
+
+            assertThrows(AdmissionRejectedException.class, () -> controller.execute(() -> 1));
+            assertEquals(0, controller.getQueueDepth());
+
+            finish.countDown();
+            holder.get(5, TimeUnit.SECONDS);
+            assertEquals(1, controller.execute(() -> 1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_AdjustsLimitAdditivelyUpAndMultiplicativelyDown() {
+        AdmissionController controller = controller(2, 0, 0);
+
+        for (int i = 0; i < 10; i++) {
+            controller.execute(() -> 1);
+        }
+        assertTrue(controller.getLimit() > 2);
+        int raised = controller.getLimit();
+
+        assertThrows(DaoException.class, () -> controller.execute(() -> {
+            throw new DaoException("db down", null);
+        }));
+        assertEquals(Math.max(1, raised / 2), controller.getLimit());
+        assertTrue(controller.getLimitIncreases() > 0);
+        assertEquals(1, controller.getLimitDecreases());
+    }
+
+    @Test
+    void execute_FailuresStartedBeforeDecrease_LowerLimitOnce() throws Exception {
+        AdmissionController controller = new AdmissionController(8, 1, 10, 0, Duration.ZERO, Duration.ofSeconds(1), 0.5);
+        CountDownLatch started = new CountDownLatch(3);
+        CountDownLatch fail = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<?>> calls = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                calls.add(executor.submit(() -> controller.execute(() -> {
+                    started.countDown();
+                    await(fail);
+                    throw new DaoException("db down", null);
+                })));
+            }
+            started.await();
+            fail.countDown();
+            for (Future<?> call : calls) {
+                assertThrows(ExecutionException.class, () -> call.get(5, TimeUnit.SECONDS));
+            }
+
+            assertEquals(4, controller.getLimit());
+            assertEquals(1, controller.getLimitDecreases());
+
+            assertThrows(DaoException.class, () -> controller.execute(() -> {
+                throw new DaoException("db down", null);
+            }));
+            assertEquals(2, controller.getLimit());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_PermitReleased_AdmitsWaiter() throws Exception {
+        AdmissionController controller = controller(1, 5, 5_000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> holder = executor.submit(() -> controller.execute(() -> {
+                started.countDown();
+                await(finish);
+                return null;
+            }));
+            started.await();
+            Future<Integer> waiter = executor.submit(() -> controller.execute(() -> 2));
+            while (controller.getQueueDepth() == 0) {
+                Thread.sleep(5);
+            }
+
+            finish.countDown();
+            holder.get(5, TimeUnit.SECONDS);
+            assertEquals(2, waiter.get(5, TimeUnit.SECONDS));
+            assertEquals(0, controller.getRejected());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void execute_NonDatabaseError_DoesNotLowerLimit() {
+        AdmissionController controller = controller(4, 0, 0);
+
+        assertThrows(IllegalStateException.class, () -> controller.execute(() -> {
+            throw new IllegalStateException("bug");
+        }));
+
+        assertEquals(4, controller.getLimit());
+        assertEquals(0, controller.getInFlight());
+    }
+
+    @Test
+    void admissionControlledUserDao_RoutesCallsThroughController() {
+        UserDao delegate = mock(UserDao.class);
+        when(delegate.findById(1L)).thenReturn(Optional.empty());
+        AdmissionController controller = controller(2, 0, 0);
+
+        new AdmissionControlledUserDao(delegate, controller).findById(1L);
+
+        verify(delegate).findById(1L);
+        assertEquals(1, controller.getAdmitted());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.klimtsov.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmailBloomFilterTest {
+
+    @Test
+    void mightContain_NeverMissesInsertedEmails() {
+        EmailBloomFilter filter = EmailBloomFilter.create(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i + "@example.com");
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("user" + i + "@example.com"));
+        }
+    }
+
+    @Test
+    void mightContain_FalsePositiveRateCloseToConfigured() {
+        EmailBloomFilter filter = EmailBloomFilter.create(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i + "@example.com");
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("other" + i + "@example.org")) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+        assertEquals(0.01, filter.expectedFalsePositiveRate(), 0.01);
+    }
+
+    @Test
+    void writeTo_ReadFrom_RoundTrip() throws Exception {
+        EmailBloomFilter filter = EmailBloomFilter.create(100, 0.01);
+        filter.put("a@example.com");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.writeTo(new DataOutputStream(bytes));
+
+        EmailBloomFilter restored = EmailBloomFilter.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertTrue(restored.mightContain("a@example.com"));
+        assertEquals(filter.bitSize(), restored.bitSize());
+        assertEquals(filter.hashCount(), restored.hashCount());
+    }
+}
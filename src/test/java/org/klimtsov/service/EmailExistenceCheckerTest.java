@@ -0,0 +1,99 @@
+package org.klimtsov.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.klimtsov.dao.UserDao;
+import org.klimtsov.userservice.model.User;
+import org.klimtsov.userservice.model.UserChangeType;
+import org.klimtsov.userservice.model.UserOutboxEvent;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EmailExistenceCheckerTest {
+
+    @Mock
+    private UserDao userDao;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void exists_UnknownEmail_DoesNotQueryDatabase() {
+        EmailExistenceChecker checker = new EmailExistenceChecker(userDao, 1_000, 0.01);
+
+        assertFalse(checker.exists("new@example.com"));
+
+        verify(userDao, never()).existsByEmail(anyString());
+        assertEquals(1, checker.getDefinitelyAbsent());
+    }
+
+    @Test
+    void exists_PossibleHit_FallsBackToDatabaseAndCountsFalsePositives() {
+        EmailExistenceChecker checker = new EmailExistenceChecker(userDao, 1_000, 0.01);
+        checker.recordEmail("taken@example.com");
+        checker.recordEmail("deleted@example.com");
+        when(userDao.existsByEmail("taken@example.com")).thenReturn(true);
+        when(userDao.existsByEmail("deleted@example.com")).thenReturn(false);
+
+        assertTrue(checker.exists("taken@example.com"));
+        assertFalse(checker.exists("deleted@example.com"));
+
+        assertEquals(2, checker.getPossibleHits());
+        assertEquals(1, checker.getFalsePositives());
+        assertEquals(1.0, checker.getFalsePositiveRate());
+    }
+
+    @Test
+    void publish_OutboxEventsFromOtherProcesses_MakeEmailsVisible() {
+        EmailExistenceChecker checker = new EmailExistenceChecker(userDao, 1_000, 0.01);
+        when(userDao.existsByEmail("remote@example.com")).thenReturn(true);
+
+        checker.publish(List.of(
+                UserOutboxEvent.of(UserChangeType.CREATED, new User(7L, "Remote", "remote@example.com", 30, Instant.now())),
+                UserOutboxEvent.of(UserChangeType.DELETED, new User(8L, "Gone", "gone@example.com", 30, Instant.now()))));
+
+        assertTrue(checker.exists("remote@example.com"));
+        assertFalse(checker.exists("gone@example.com"));
+        verify(userDao, never()).existsByEmail("gone@example.com");
+    }
+
+    @Test
+    void rebuild_ScansAllPages() {
+        EmailExistenceChecker checker = new EmailExistenceChecker(userDao, 1_000, 0.01);
+        when(userDao.findAfterId(isNull(), anyInt()))
+                .thenReturn(List.of(new User(1L, "A", "a@example.com", 20, Instant.now())));
+
+        checker.rebuild();
+
+        when(userDao.existsByEmail("a@example.com")).thenReturn(true);
+        assertTrue(checker.exists("a@example.com"));
+    }
+
+    @Test
+    void loadOrRebuild_RestoresSavedFilterAndCatchesUpChanges() throws Exception {
+        Path file = tempDir.resolve("emails.bloom");
+        EmailExistenceChecker original = new EmailExistenceChecker(userDao, 1_000, 0.01);
+        original.recordEmail("saved@example.com");
+        original.save(file);
+        when(userDao.findChangedSince(any(Instant.class), isNull(), anyInt()))
+                .thenReturn(List.of(new User(2L, "B", "late@example.com", 20, Instant.now())));
+
+        EmailExistenceChecker restored = new EmailExistenceChecker(userDao, 1_000, 0.01);
+        restored.loadOrRebuild(file);
+
+        when(userDao.existsByEmail(anyString())).thenReturn(true);
+        assertTrue(restored.exists("saved@example.com"));
+        assertTrue(restored.exists("late@example.com"));
+        verify(userDao, never()).findAfterId(any(), anyInt());
+    }
+}
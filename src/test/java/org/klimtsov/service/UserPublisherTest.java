@@ -0,0 +1,153 @@
+package org.klimtsov.service;
+
+import org.junit.jupiter.api.Test;
+import org.klimtsov.dao.DaoException;
+import org.klimtsov.userservice.model.User;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserPublisherTest {
+
+    private final List<User> table = LongStream.rangeClosed(1, 5)
+            .mapToObj(id -> new User(id, "U" + id, "u" + id + "@example.com", 20, Instant.now()))
+            .toList();
+    private final AtomicInteger fetches = new AtomicInteger();
+    private final List<Integer> fetchSizes = new ArrayList<>();
+
+    private final UserPublisher.PageSource source = (last, limit) -> {
+        fetches.incrementAndGet();
+        fetchSizes.add(limit);
+        long after = last == null ? 0 : last.getId();
+        return table.stream().filter(u -> u.getId() > after).limit(limit).toList();
+    };
+
+    private static class Recorder implements Flow.Subscriber<User> {
+        Flow.Subscription subscription;
+        final List<Long> ids = new ArrayList<>();
+        Throwable error;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(User item) {
+            ids.add(item.getId());
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private Recorder subscribe(int window) {
+        Recorder recorder = new Recorder();
+        new UserPublisher(source, window, Runnable::run).subscribe(recorder);
+        return recorder;
+    }
+
+    @Test
+    void request_EmitsOnlyRequestedAndFetchesOnDemand() {
+        Recorder recorder = subscribe(2);
+        assertEquals(0, fetches.get());
+
+        recorder.subscription.request(3);
+
+        assertEquals(List.of(1L, 2L, 3L), recorder.ids);
+        assertFalse(recorder.completed);
+        assertEquals(2, fetches.get());
+        assertTrue(fetchSizes.stream().allMatch(size -> size == 2));
+
+        recorder.subscription.request(10);
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), recorder.ids);
+        assertTrue(recorder.completed);
+    }
+
+    @Test
+    void cancel_StopsEmissionAndFetching() {
+        Recorder recorder = subscribe(2);
+        recorder.subscription.request(1);
+        recorder.subscription.cancel();
+        int fetchesAtCancel = fetches.get();
+
+        recorder.subscription.request(10);
+
+        assertEquals(List.of(1L), recorder.ids);
+        assertEquals(fetchesAtCancel, fetches.get());
+        assertFalse(recorder.completed);
+    }
+
+    @Test
+    void request_NonPositive_SignalsError() {
+        Recorder recorder = subscribe(2);
+
+        recorder.subscription.request(0);
+
+        assertInstanceOf(IllegalArgumentException.class, recorder.error);
+    }
+
+    @Test
+    void fetchFailure_SignalsError() {
+        Recorder recorder = new Recorder();
+        new UserPublisher((last, limit) -> {
+            throw new DaoException("Ошибка БД", null);
+        }, 2, Runnable::run).subscribe(recorder);
+
+        recorder.subscription.request(1);
+
+        assertInstanceOf(DaoException.class, recorder.error);
+    }
+
+    @Test
+    void subscribe_OnExecutor_DeliversAllInOrder() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        List<Long> ids = new ArrayList<>();
+        new UserPublisher(source, 2).subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(User item) {
+                ids.add(item.getId());
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), ids);
+        assertEquals(3, fetches.get());
+    }
+}
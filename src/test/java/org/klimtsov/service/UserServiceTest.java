@@ -2,19 +2,32 @@ package org.klimtsov.service;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.klimtsov.dao.Deadline;
+import org.klimtsov.dao.UpsertResult;
 import org.klimtsov.dao.UserDao;
+import org.klimtsov.dao.UserFieldUpdate;
+import org.klimtsov.dao.UserFields;
+import org.klimtsov.dao.UserFilter;
+import org.klimtsov.tracing.Span;
+import org.klimtsov.tracing.SpanExporter;
+import org.klimtsov.tracing.Tracing;
 import org.klimtsov.userservice.model.User;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -162,4 +175,302 @@ class UserServiceTest {
         assertEquals("ID must be positive", exception.getMessage());
         verify(userDao, never()).delete(any(Long.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getUsersChangedSince_ShouldDelegateToDao() {
+        Instant since = Instant.parse("2024-01-01T00:00:00Z");
+        List<User> changed = List.of(new User(3L, "User3", "user3@example.com", 40, since));
+        when(userDao.findChangedSince(since, 2L, 100)).thenReturn(changed);
+
+        List<User> result = userService.getUsersChangedSince(since, 2L, 100);
+
+        assertEquals(changed, result);
+    }
+
+    @Test
+    void getUsersChangedSince_WithInvalidLimit_ShouldThrowException() {
+        IllegalArgumentException exception = assertThrows(
+                IllegalArgumentException.class,
+                () -> userService.getUsersChangedSince(Instant.now(), null, 0)
+        );
+
+        assertEquals("Limit must be between 1 and 10000", exception.getMessage());
+        verify(userDao, never()).findChangedSince(any(), any(), anyInt());
+    }
+
+    @Test
+    void forEachUserCreatedBetween_ShouldFollowKeysetCursor() {
+        Instant from = Instant.parse("2024-01-01T00:00:00Z");
+        Instant to = Instant.parse("2024-02-01T00:00:00Z");
+        Instant t1 = from.plusSeconds(10);
+        Instant t2 = from.plusSeconds(20);
+        User u1 = new User(1L, "User1", "user1@example.com", 25, t1);
+        User u2 = new User(2L, "User2", "user2@example.com", 26, t1);
+        User u3 = new User(3L, "User3", "user3@example.com", 27, t2);
+        when(userDao.findByCreatedAtBetween(from, to, null, 2)).thenReturn(List.of(u1, u2));
+        when(userDao.findByCreatedAtBetween(t1, to, 2L, 2)).thenReturn(List.of(u3));
+
+        List<User> seen = new java.util.ArrayList<>();
+        long processed = userService.forEachUserCreatedBetween(from, to, 2, seen::add);
+
+        assertEquals(3, processed);
+        assertEquals(List.of(u1, u2, u3), seen);
+    }
+
+    @Test
+    void publishAllUsers_WithInvalidWindow_ShouldThrowException() {
+        IllegalArgumentException exception = assertThrows(
+                IllegalArgumentException.class,
+                () -> userService.publishAllUsers(0)
+        );
+
+        assertEquals("Limit must be between 1 and 10000", exception.getMessage());
+        verify(userDao, never()).findAfterId(any(), anyInt());
+    }
+
+    @Test
+    void getUsersByIds_ShouldUseSingleBatchedCall() {
+        User user = new User(1L, "User1", "user1@example.com", 25, Instant.now());
+        when(userDao.findAllByIds(List.of(1L, 2L))).thenReturn(Map.of(1L, user));
+
+        Map<Long, User> found = userService.getUsersByIds(List.of(1L, 2L));
+
+        assertEquals(Map.of(1L, user), found);
+        verify(userDao, never()).findById(any());
+    }
+
+    @Test
+    void getUsersByIds_WithInvalidId_ShouldThrowException() {
+        IllegalArgumentException exception = assertThrows(
+                IllegalArgumentException.class,
+                () -> userService.getUsersByIds(List.of(1L, 0L))
+        );
+
+        assertEquals("ID must be positive", exception.getMessage());
+        verify(userDao, never()).findAllByIds(any());
+    }
+
+    @Test
+    void getUsersCreatedBetween_WithInvertedRange_ShouldThrowException() {
+        Instant now = Instant.now();
+
+        IllegalArgumentException exception = assertThrows(
+                IllegalArgumentException.class,
+                () -> userService.getUsersCreatedBetween(now, now.minusSeconds(1), null, 10)
+        );
+
+        assertEquals("Range start must be before range end", exception.getMessage());
+    }
+
+    @Test
+    void isEmailRegistered_WithoutChecker_ShouldQueryDao() {
+        when(userDao.existsByEmail("user@example.com")).thenReturn(true);
+
+        assertTrue(userService.isEmailRegistered("user@example.com"));
+    }
+
+    @Test
+    void createUser_WithChecker_ShouldRecordEmail() {
+        EmailExistenceChecker checker = new EmailExistenceChecker(userDao, 100, 0.01);
+        UserService service = new UserService(userDao, checker);
+        when(userDao.create(any(User.class))).thenReturn(1L);
+        when(userDao.existsByEmail("new@example.com")).thenReturn(true);
+
+        assertFalse(service.isEmailRegistered("new@example.com"));
+        service.createUser(new User(null, "New", "new@example.com", 20, Instant.now()));
+
+        assertTrue(service.isEmailRegistered("new@example.com"));
+    }
+
+    @Test
+    void upsertUsers_ShouldValidateAllBeforeCallingDao() {
+        List<User> users = List.of(
+                new User(null, "Ok", "ok@example.com", 20, Instant.now()),
+                new User(null, "", "bad@example.com", 20, Instant.now()));
+
+        assertThrows(IllegalArgumentException.class, () -> userService.upsertUsers(users));
+
+        verify(userDao, never()).upsertAll(any());
+    }
+
+    @Test
+    void upsertUsers_ShouldReportErrorsOfAllRows() {
+        List<User> users = List.of(
+                new User(null, "", "bad", 20, Instant.now()),
+                new User(null, "Ok", "ok@example.com", 20, Instant.now()),
+                new User(null, "Ok", "ok2@example.com", 130, Instant.now()));
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> userService.upsertUsers(users));
+
+        assertEquals("Invalid users: row 0: User name cannot be empty, User email has invalid format; "
+                + "row 2: Age must be between 0 and 120", exception.getMessage());
+    }
+
+    @Test
+    void createUser_WithMalformedEmail_ShouldThrow() {
+        User user = new User(null, "Test User", "not-an-email", 25, Instant.now());
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> userService.createUser(user));
+
+        assertEquals("User email has invalid format", exception.getMessage());
+        verify(userDao, never()).create(any());
+    }
+
+    @Test
+    void upsertUserByEmail_ShouldReturnDaoResult() {
+        User user = new User(null, "Up", "up@example.com", 20, Instant.now());
+        when(userDao.upsertByEmail(user)).thenReturn(new UpsertResult(7L, false));
+
+        UpsertResult result = userService.upsertUserByEmail(user);
+
+        assertEquals(7L, result.id());
+        assertFalse(result.inserted());
+    }
+
+    @Test
+    void bulkUpdateUsers_WithValidRequest_ShouldReturnAffectedRows() {
+        UserFilter filter = UserFilter.any().withAgeRange(20, 30);
+        UserFieldUpdate update = new UserFieldUpdate(null, 31);
+        when(userDao.bulkUpdate(filter, update)).thenReturn(5);
+
+        assertEquals(5, userService.bulkUpdateUsers(filter, update));
+    }
+
+    @Test
+    void bulkUpdateUsers_WithUnrestrictedFilter_ShouldThrowException() {
+        IllegalArgumentException exception = assertThrows(
+                IllegalArgumentException.class,
+                () -> userService.bulkUpdateUsers(UserFilter.any(), new UserFieldUpdate("Name", null))
+        );
+
+        assertEquals("Filter must restrict at least one field", exception.getMessage());
+        verify(userDao, never()).bulkUpdate(any(), any());
+    }
+
+    @Test
+    void bulkUpdateUsers_WithInvalidAge_ShouldThrowException() {
+        IllegalArgumentException exception = assertThrows(
+                IllegalArgumentException.class,
+                () -> userService.bulkUpdateUsers(UserFilter.any().withIdRange(1L, 10L), new UserFieldUpdate(null, 150))
+        );
+
+        assertEquals("Age must be between 0 and 120", exception.getMessage());
+    }
+
+    @Test
+    void compareAndSetUser_WithInvalidEmail_ShouldThrowException() {
+        UserFields expected = new UserFields("Name", "name@example.com", 30);
+
+        IllegalArgumentException exception = assertThrows(
+                IllegalArgumentException.class,
+                () -> userService.compareAndSetUser(1L, expected, new UserFields("Name", "not-an-email", 30))
+        );
+
+        assertEquals("User email has invalid format", exception.getMessage());
+        verify(userDao, never()).compareAndSet(any(), any(), any());
+    }
+
+    @Test
+    void modifyUser_RetriesWithFreshDataAfterConflict() {
+        User first = new User(1L, "Name", "name@example.com", 30, Instant.now());
+        User second = new User(1L, "Name", "name@example.com", 31, Instant.now());
+        when(userDao.findById(1L)).thenReturn(Optional.of(first), Optional.of(second));
+        when(userDao.compareAndSet(eq(1L), eq(UserFields.of(first)), any())).thenReturn(false);
+        when(userDao.compareAndSet(1L, UserFields.of(second), new UserFields("Name", "name@example.com", 32)))
+                .thenReturn(true);
+
+        Optional<UserFields> result = userService.modifyUser(1L,
+                fields -> new UserFields(fields.name(), fields.email(), fields.age() + 1));
+
+        assertEquals(Optional.of(new UserFields("Name", "name@example.com", 32)), result);
+        verify(userDao, times(2)).compareAndSet(eq(1L), any(), any());
+    }
+
+    @Test
+    void modifyUser_WhenUserMissing_ShouldReturnEmpty() {
+        when(userDao.findById(5L)).thenReturn(Optional.empty());
+
+        assertTrue(userService.modifyUser(5L, fields -> fields).isEmpty());
+        verify(userDao, never()).compareAndSet(any(), any(), any());
+    }
+
+    @Test
+    void withDeadline_BindsDeadlineForNestedCalls() {
+        when(userDao.findAll()).thenAnswer(inv -> {
+            assertNotNull(Deadline.current());
+            return List.of();
+        });
+
+        assertEquals(List.of(), userService.withDeadline(Duration.ofSeconds(1), userService::getAllUsers));
+        assertNull(Deadline.current());
+    }
+
+    @Test
+    void withDeadline_WithNonPositiveBudget_ShouldThrowException() {
+        assertThrows(IllegalArgumentException.class,
+                () -> userService.withDeadline(Duration.ZERO, userService::getAllUsers));
+    }
+
+    @Test
+    void inReadOnlyTransaction_DelegatesWithReadOnlyFlag() {
+        when(userDao.inTransaction(eq(true), any())).thenReturn(3);
+
+        assertEquals(3, userService.<Integer>inReadOnlyTransaction(service -> service.getAllUsers().size()));
+        verify(userDao).inTransaction(eq(true), any());
+    }
+
+    @Test
+    void inTransaction_ValidatesAndRecordsEmailsAfterCommit() {
+        EmailExistenceChecker checker = new EmailExistenceChecker(userDao, 100, 0.01);
+        UserService service = new UserService(userDao, checker);
+        when(userDao.inTransaction(eq(false), any())).thenAnswer(inv -> inv.<Function<UserDao, ?>>getArgument(1).apply(userDao));
+        when(userDao.create(any(User.class))).thenReturn(1L);
+        when(userDao.existsByEmail("unit@example.com")).thenReturn(true);
+
+        service.inTransaction(unit -> {
+            unit.createUser(new User(null, "Unit", "unit@example.com", 20, Instant.now()));
+            assertFalse(service.isEmailRegistered("unit@example.com"));
+            return null;
+        });
+
+        assertTrue(service.isEmailRegistered("unit@example.com"));
+    }
+
+    @Test
+    void inTransaction_InvalidUser_ShouldThrowBeforeDao() {
+        when(userDao.inTransaction(eq(false), any())).thenAnswer(inv -> inv.<Function<UserDao, ?>>getArgument(1).apply(userDao));
+
+        assertThrows(IllegalArgumentException.class, () -> userService.inTransaction(
+                unit -> unit.createUser(new User(null, "", "bad@example.com", 20, Instant.now()))));
+
+        verify(userDao, never()).create(any(User.class));
+    }
+
+    @Test
+    void inTransaction_TracesUnitAndNestedCalls() {
+        List<Span> exported = new ArrayList<>();
+        Tracing.configure(1.0, new SpanExporter() {
+            @Override
+            public void export(Span span) {
+                exported.add(span);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        try {
+            when(userDao.inTransaction(eq(false), any())).thenAnswer(inv -> inv.<Function<UserDao, ?>>getArgument(1).apply(userDao));
+
+            userService.inTransaction(unit -> unit.getUsersChangedSince(Instant.EPOCH, null, 10));
+
+            assertEquals(List.of("UserService.getUsersChangedSince", "UserService.inTransaction"),
+                    exported.stream().map(Span::getName).toList());
+            assertEquals(exported.get(1).getSpanId(), exported.get(0).getParentSpanId());
+        } finally {
+            Tracing.shutdown();
+        }
+    }
+}
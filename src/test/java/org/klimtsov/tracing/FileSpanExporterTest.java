@@ -0,0 +1,64 @@
+package org.klimtsov.tracing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileSpanExporterTest {
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void tearDown() {
+        Tracing.shutdown();
+    }
+
+    @Test
+    void close_FlushesSpansAsOtlpJsonLines() throws Exception {
+        Path file = dir.resolve("traces.jsonl");
+        FileSpanExporter exporter = new FileSpanExporter(file, "test-service");
+        Tracing.configure(1.0, exporter);
+
+        String traceId;
+        String childId;
+        try (Span root = Tracing.start("root", Span.KIND_SERVER)) {
+            traceId = root.getTraceId();
+            try (Span child = Tracing.start("sql.execute", Span.KIND_CLIENT)
+                    .setAttribute("db.statement", "select \"name\" from users")
+                    .setAttribute("rows", 2L)) {
+                childId = child.getSpanId();
+                child.recordError(new IllegalStateException("line\nbreak"));
+            }
+        }
+        Tracing.shutdown();
+
+        String json = String.join("\n", Files.readAllLines(file));
+        assertEquals(2, exporter.getExported());
+        assertEquals(0, exporter.getDropped());
+        assertTrue(json.startsWith("{\"resourceSpans\":[{\"resource\":{\"attributes\":[{\"key\":\"service.name\","
+                + "\"value\":{\"stringValue\":\"test-service\"}}]}"));
+        assertTrue(json.contains("\"traceId\":\"" + traceId + "\""));
+        assertTrue(json.contains("\"spanId\":\"" + childId + "\""));
+        assertTrue(json.contains("{\"key\":\"db.statement\",\"value\":{\"stringValue\":\"select \\\"name\\\" from users\"}}"));
+        assertTrue(json.contains("{\"key\":\"rows\",\"value\":{\"intValue\":\"2\"}}"));
+        assertTrue(json.contains("\"status\":{\"code\":2,\"message\":\"IllegalStateException: line\\nbreak\"}"));
+        assertTrue(json.contains("\"kind\":2"));
+    }
+
+    @Test
+    void toJson_OmitsParentForRootSpan() {
+        Span root = new Span("root", "0".repeat(32), "1".repeat(16), null, true, Span.KIND_INTERNAL);
+
+        String json = FileSpanExporter.toJson("svc", List.of(root));
+
+        assertFalse(json.contains("parentSpanId"));
+        assertTrue(json.contains("\"status\":{\"code\":1}"));
+    }
+}
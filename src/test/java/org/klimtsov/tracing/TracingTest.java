@@ -0,0 +1,91 @@
+package org.klimtsov.tracing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TracingTest {
+
+    private final List<Span> exported = new ArrayList<>();
+    private final SpanExporter collector = new SpanExporter() {
+        @Override
+        public void export(Span span) {
+            exported.add(span);
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @AfterEach
+    void tearDown() {
+        Tracing.shutdown();
+    }
+
+    @Test
+    void nestedSpans_ShareTraceAndLinkToParent() {
+        Tracing.configure(1.0, collector);
+
+        try (Span root = Tracing.start("root")) {
+            Tracing.run("child", () -> Tracing.current().setAttribute("rows", 3));
+            assertSame(root, Tracing.current());
+        }
+
+        assertEquals(2, exported.size());
+        Span child = exported.get(0);
+        Span root = exported.get(1);
+        assertEquals("child", child.getName());
+        assertEquals(root.getTraceId(), child.getTraceId());
+        assertEquals(root.getSpanId(), child.getParentSpanId());
+        assertNull(root.getParentSpanId());
+        assertEquals(32, root.getTraceId().length());
+        assertEquals(3, child.getAttributes().get("rows"));
+        assertTrue(root.getDurationNanos() >= child.getDurationNanos());
+        assertSame(Span.NOOP, Tracing.current());
+    }
+
+    @Test
+    void zeroSampleRate_ExportsNothing() {
+        Tracing.configure(0.0, collector);
+
+        Tracing.run("root", () -> Tracing.run("child", () -> { }));
+
+        assertTrue(exported.isEmpty());
+        assertFalse(Tracing.isEnabled());
+    }
+
+    @Test
+    void unsampledTrace_SkipsWholeTree() {
+        Tracing.configure(1e-12, collector);
+
+        try (Span root = Tracing.start("root")) {
+            assertFalse(root.isSampled());
+            assertSame(Span.NOOP, Tracing.start("child"));
+        }
+
+        assertTrue(exported.isEmpty());
+        assertSame(Span.NOOP, Tracing.current());
+    }
+
+    @Test
+    void failedCall_IsRecordedAndRethrown() {
+        Tracing.configure(1.0, collector);
+
+        assertThrows(IllegalStateException.class,
+                () -> Tracing.trace("op", () -> {
+                    throw new IllegalStateException("boom");
+                }));
+
+        assertEquals("IllegalStateException: boom", exported.get(0).getErrorMessage());
+    }
+
+    @Test
+    void configure_RejectsRateOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> Tracing.configure(1.5, collector));
+    }
+}
@@ -0,0 +1,81 @@
+package org.klimtsov.validation;
+
+import org.junit.jupiter.api.Test;
+import org.klimtsov.userservice.model.User;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserValidatorTest {
+
+    //Шаблон, который раньше проверял email в ConsoleHelper.
+    private static final Pattern EMAIL_PATTERN =
+            Pattern.compile("^[A-Za-z0-9._%+\\-]+@[A-Za-z0-9.\\-]+\\.[A-Za-z]{2,}$");
+
+    @Test
+    void isValidEmail_KnownCases() {
+        assertTrue(UserValidator.isValidEmail("user@example.com"));
+        assertTrue(UserValidator.isValidEmail("first.last+tag@sub-domain.example.co"));
+        assertTrue(UserValidator.isValidEmail("a@b..cd"));
+        assertFalse(UserValidator.isValidEmail("user@example"));
+        assertFalse(UserValidator.isValidEmail("user@.com"));
+        assertFalse(UserValidator.isValidEmail("@example.com"));
+        assertFalse(UserValidator.isValidEmail("user@example.c"));
+        assertFalse(UserValidator.isValidEmail("user@example.c0m"));
+        assertFalse(UserValidator.isValidEmail("us er@example.com"));
+        assertFalse(UserValidator.isValidEmail("user@@example.com"));
+        assertFalse(UserValidator.isValidEmail("пользователь@example.com"));
+        assertFalse(UserValidator.isValidEmail(null));
+    }
+
+    @Test
+    void isValidEmail_AgreesWithRegexOnRandomInput() {
+        char[] alphabet = {'a', 'Z', '0', '.', '-', '_', '%', '+', '@', ' ', 'ы', '9', 'c', 'o', 'm'};
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            char[] chars = new char[1 + random.nextInt(10)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String email = new String(chars);
+            assertEquals(EMAIL_PATTERN.matcher(email).matches(), UserValidator.isValidEmail(email), email);
+        }
+    }
+
+    @Test
+    void isBlank_MatchesTrimIsEmpty() {
+        for (String value : new String[]{"", " ", "\t\n", "\u0000 ", " a ", " ", "x"}) {
+            assertEquals(value.trim().isEmpty(), UserValidator.isBlank(value), value);
+        }
+        assertTrue(UserValidator.isBlank(null));
+    }
+
+    @Test
+    void validate_ReportsAllErrorsOfRow() {
+        int errors = UserValidator.validate(" ", "bad", 121);
+
+        assertEquals(List.of(ValidationError.NAME_EMPTY, ValidationError.EMAIL_FORMAT, ValidationError.AGE_RANGE),
+                ValidationError.of(errors));
+        assertEquals(ValidationError.NAME_EMPTY, ValidationError.first(errors));
+        assertEquals(0, UserValidator.validate("Name", "name@example.com", null));
+        assertEquals(ValidationError.EMAIL_EMPTY.bit(), UserValidator.validate("Name", "  ", 0));
+    }
+
+    @Test
+    void validateAll_ReturnsMaskPerRow() {
+        List<User> users = List.of(
+                new User(null, "Ok", "ok@example.com", 20, Instant.now()),
+                new User(null, "", "bad", -1, Instant.now()),
+                new User(null, "Ok", null, 20, Instant.now()));
+
+        int[] errors = UserValidator.validateAll(users);
+
+        assertEquals(0, errors[0]);
+        assertEquals(3, Integer.bitCount(errors[1]));
+        assertEquals(ValidationError.EMAIL_EMPTY, ValidationError.first(errors[2]));
+    }
+}